@@ -0,0 +1,356 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.ObjLongConsumer;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/** Converts many input files with one configuration, read once, on a
+ *  pool of threads.  Each file gets its own copy of the machine, so files
+ *  are independent of each other, and each is converted exactly as
+ *  running Main on it alone would: the same output, including the part
+ *  written before an error, and the same error.  Output is written to a
+ *  temporary file beside its destination and renamed into place when
+ *  the file is done, so no reader sees a partly written output.  A
+ *  failure of any kind in one file is recorded as that file's outcome,
+ *  and the others go on.
+ *  @author Eric Huang
+ */
+class BatchProcessor {
+
+    /** An input file and the output file for its conversion. */
+    static final class Job {
+
+        /** A job converting INPUT to OUTPUT. */
+        Job(Path input, Path output) {
+            _input = input;
+            _output = output;
+        }
+
+        /** Return my input file. */
+        Path input() {
+            return _input;
+        }
+
+        /** Return my output file. */
+        Path output() {
+            return _output;
+        }
+
+        /** The files. */
+        private final Path _input, _output;
+    }
+
+    /** What became of a Job. */
+    static final class Outcome {
+
+        /** The outcome of JOB, which read BYTES bytes of input in NANOS
+         *  nanoseconds and failed with ERROR, or succeeded if ERROR is
+         *  null. */
+        Outcome(Job job, long bytes, long nanos, String error) {
+            _job = job;
+            _bytes = bytes;
+            _nanos = nanos;
+            _error = error;
+        }
+
+        /** Return my job. */
+        Job job() {
+            return _job;
+        }
+
+        /** Return the size of my job's input in bytes. */
+        long bytes() {
+            return _bytes;
+        }
+
+        /** Return the nanoseconds my job took. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Return the message of the error that ended my job, or null if
+         *  it succeeded. */
+        String error() {
+            return _error;
+        }
+
+        /** My job. */
+        private final Job _job;
+
+        /** Input size and time taken. */
+        private final long _bytes, _nanos;
+
+        /** Error message, or null. */
+        private final String _error;
+    }
+
+    /** A processor converting JOBS with copies of MACHINE on THREADS
+     *  threads, calling STRATEGY with each copy and the expected length
+     *  of a message in its input (see Main.messageLength) before
+     *  converting. */
+    BatchProcessor(Machine machine, List<Job> jobs, int threads,
+                   ObjLongConsumer<Machine> strategy) {
+        HashSet<Path> outputs = new HashSet<>();
+        for (Job job : jobs) {
+            if (!outputs.add(job.output().toAbsolutePath().normalize())) {
+                throw error("output %s is listed twice", job.output());
+            }
+        }
+        _machine = machine;
+        _jobs = jobs;
+        _threads = threads;
+        _strategy = strategy;
+    }
+
+    /** Return jobs converting each regular file in directory INPUT, in
+     *  order of name, to a file of the same name in directory OUTPUT,
+     *  which is created if need be. */
+    static List<Job> directory(Path input, Path output) {
+        ArrayList<Path> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(input)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    names.add(file.getFileName());
+                }
+            }
+            Files.createDirectories(output);
+        } catch (IOException excp) {
+            throw error("could not list %s into %s: %s", input, output,
+                        excp.getMessage());
+        }
+        names.sort(null);
+        ArrayList<Job> result = new ArrayList<>();
+        for (Path name : names) {
+            result.add(new Job(input.resolve(name), output.resolve(name)));
+        }
+        return result;
+    }
+
+    /** Return the jobs listed in the file MANIFEST, one per line as an
+     *  input file name and an output file name separated by whitespace.
+     *  Blank lines and lines starting with # are ignored. */
+    static List<Job> manifest(Path manifest) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(manifest);
+        } catch (IOException excp) {
+            throw error("could not open %s", manifest);
+        }
+        ArrayList<Job> result = new ArrayList<>();
+        for (int n = 0; n < lines.size(); n += 1) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] names = line.split("\\s+");
+            if (names.length != 2) {
+                throw error("%s:%d: expected an input and an output file",
+                            manifest, n + 1);
+            }
+            result.add(new Job(Path.of(names[0]), Path.of(names[1])));
+        }
+        return result;
+    }
+
+    /** Convert every job, returning their outcomes in the order of the
+     *  jobs. */
+    List<Outcome> run() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread thread = new Thread(r, "enigma-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ArrayList<Future<Outcome>> pending = new ArrayList<>();
+            for (Job job : _jobs) {
+                pending.add(pool.submit(() -> convert(job)));
+            }
+            ArrayList<Outcome> result = new ArrayList<>();
+            for (Future<Outcome> outcome : pending) {
+                result.add(await(outcome));
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Convert JOB with a fresh copy of my machine, as Main does a single
+     *  input and output file, and return its outcome. */
+    private Outcome convert(Job job) {
+        long start = System.nanoTime();
+        long bytes = job.input().toFile().length();
+        Path target = job.output().toAbsolutePath();
+        Path temp = null;
+        String failure = null;
+        try (Scanner scanner = open(job.input())) {
+            try {
+                temp = createTemp(target);
+            } catch (IOException excp) {
+                throw error("could not open %s", job.output());
+            }
+            try (PrintStream output = new PrintStream(new BufferedOutputStream(
+                     Files.newOutputStream(temp), OUTPUT_BUFFER), false,
+                     Main.CHARSET)) {
+                try {
+                    Machine machine = _machine.copy();
+                    _strategy.accept(machine,
+                                     Main.messageLength(job.input()));
+                    if (!scanner.hasNext("[*].*")) {
+                        throw error("Missing setting");
+                    }
+                    Main.convertLines(machine, scanner, output);
+                } catch (RuntimeException excp) {
+                    failure = describe(excp);
+                }
+                output.flush();
+                if (output.checkError()) {
+                    throw new IOException("write failed");
+                }
+            }
+            Files.move(temp, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            temp = null;
+        } catch (IOException excp) {
+            failure = String.format("could not write %s: %s", job.output(),
+                                    excp.getMessage());
+        } catch (RuntimeException excp) {
+            failure = describe(excp);
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException excp) {
+                    /* Leave the temporary file behind. */
+                }
+            }
+        }
+        return new Outcome(job, bytes, System.nanoTime() - start, failure);
+    }
+
+    /** Return the failure message for EXCP: its message if it is an
+     *  EnigmaException, and otherwise its description, since only an
+     *  error in this program throws anything else. */
+    private static String describe(RuntimeException excp) {
+        if (excp instanceof EnigmaException) {
+            return excp.getMessage();
+        }
+        return "internal error: " + excp;
+    }
+
+    /** Return a new, empty file beside TARGET in which to write what is
+     *  to replace it.  Unlike Files.createTempFile, which makes files
+     *  only their owner can read, this gives it the permissions any new
+     *  file gets, as Main's output files do. */
+    private static Path createTemp(Path target) throws IOException {
+        while (true) {
+            Path temp = target.resolveSibling(
+                "." + target.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong())
+                + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException excp) {
+                /* Try another name. */
+            }
+        }
+    }
+
+    /** Return a Scanner reading the file INPUT. */
+    private static Scanner open(Path input) {
+        try {
+            return new Scanner(input.toFile(), Main.CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+    }
+
+    /** Return the result of PENDING once it is available. */
+    private static Outcome await(Future<Outcome> pending) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pending.get();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                } catch (ExecutionException excp) {
+                    Throwable cause = excp.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Print a summary of OUTCOMES, which took NANOS nanoseconds in all,
+     *  on OUT: a line per job with its status, time and throughput, and
+     *  then the totals.  Return the number of jobs that failed. */
+    static int summarize(List<Outcome> outcomes, long nanos,
+                         PrintStream out) {
+        int failed = 0;
+        long bytes = 0;
+        for (Outcome outcome : outcomes) {
+            Job job = outcome.job();
+            bytes += outcome.bytes();
+            if (outcome.error() == null) {
+                out.printf("OK     %s -> %s: %d bytes in %.3f s "
+                           + "(%.1f MB/s)%n", job.input(), job.output(),
+                           outcome.bytes(), outcome.nanos() * 1e-9,
+                           rate(outcome.bytes(), outcome.nanos()));
+            } else {
+                failed += 1;
+                out.printf("FAILED %s -> %s: Error: %s%n", job.input(),
+                           job.output(), outcome.error());
+            }
+        }
+        out.printf("%d files, %d failed, %d bytes in %.3f s (%.1f MB/s)%n",
+                   outcomes.size(), failed, bytes, nanos * 1e-9,
+                   rate(bytes, nanos));
+        return failed;
+    }
+
+    /** Return BYTES bytes per NANOS nanoseconds in megabytes per
+     *  second. */
+    private static double rate(long bytes, long nanos) {
+        return bytes * 1e9 / (1 << 20) / Math.max(1, nanos);
+    }
+
+    /** Machine copied for each job. */
+    private final Machine _machine;
+
+    /** The jobs. */
+    private final List<Job> _jobs;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** Sets the strategy of each job's machine from its message length. */
+    private final ObjLongConsumer<Machine> _strategy;
+
+    /** Size of the buffer of each output file. */
+    private static final int OUTPUT_BUFFER = 1 << 16;
+}
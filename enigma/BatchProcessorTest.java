@@ -0,0 +1,222 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** Tests of BatchProcessor against Main run on one file at a time.
+ *  @author Eric Huang
+ */
+public class BatchProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Inputs, by file name: good ones, and ones that fail part way. */
+    private static final String[][] INPUTS = {
+        { "good1", "* B BETA III II I AAAA (YF) (ZH)\n"
+          + "HELLO WORLD\n\n* B BETA I II III ZZZZ\nFROM HIS SHOULDER\n" },
+        { "good2", "* B BETA I II III AXLE\nA\nLONGER MESSAGE THAN THAT\n" },
+        { "nosetting", "HELLO\n* B BETA I II III AAAA\n" },
+        { "badrotor", "* B BETA I II III AAAA\nFIRST LINE\n"
+          + "* B BETA I II IV AAAA\nNEVER\n" },
+        { "empty", "" },
+    };
+
+    /** Return the contents of FILE. */
+    private static String read(Path file) throws IOException {
+        return Files.readString(file);
+    }
+
+    /** Delete DIR and everything in it. */
+    private static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder())
+                     .toArray(Path[]::new)) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /** Return the output and error message of Main converting INPUT with
+     *  SMALL_CONFIG, both files, writing the file OUTPUT. */
+    private static String[] single(Path config, Path input, Path output)
+        throws IOException {
+        String error = null;
+        try {
+            new Main(new String[] { config.toString(), input.toString(),
+                                    output.toString() }).process();
+        } catch (EnigmaException excp) {
+            error = excp.getMessage();
+        }
+        return new String[] { read(output), error };
+    }
+
+    @Test
+    public void checkDirectoryMatchesSingleFiles() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            Path config = dir.resolve("config");
+            Path in = Files.createDirectory(dir.resolve("in"));
+            Path out = dir.resolve("out");
+            Files.writeString(config, SMALL_CONFIG);
+            for (String[] input : INPUTS) {
+                Files.writeString(in.resolve(input[0]), input[1]);
+            }
+            Files.writeString(Files.createDirectory(out).resolve("good1"),
+                              "stale output");
+            List<BatchProcessor.Job> jobs = BatchProcessor.directory(in, out);
+            assertEquals(INPUTS.length, jobs.size());
+            Machine machine = Main.parseConfig(SMALL_CONFIG);
+            List<BatchProcessor.Outcome> outcomes =
+                new BatchProcessor(machine, jobs, 3,
+                                   Machine::chooseStrategy).run();
+            Path single = dir.resolve("single");
+            int failures = 0;
+            for (BatchProcessor.Outcome outcome : outcomes) {
+                BatchProcessor.Job job = outcome.job();
+                String[] expected = single(config, job.input(), single);
+                assertEquals(job.input().toString(), expected[0],
+                             read(job.output()));
+                assertEquals(expected[1], outcome.error());
+                failures += expected[1] == null ? 0 : 1;
+            }
+            assertEquals(3, failures);
+            try (Stream<Path> files = Files.list(out)) {
+                assertEquals(INPUTS.length, files.count());
+            }
+            ByteArrayOutputStream summary = new ByteArrayOutputStream();
+            assertEquals(failures,
+                         BatchProcessor.summarize(outcomes, 1,
+                                                  new PrintStream(summary)));
+            assertTrue(summary.toString().contains("5 files, 3 failed"));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void checkManifest() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            Path manifest = dir.resolve("manifest");
+            ArrayList<String> lines = new ArrayList<>();
+            lines.add("# input output");
+            for (int k = 0; k < 2; k += 1) {
+                Path input = dir.resolve(INPUTS[k][0]);
+                Files.writeString(input, INPUTS[k][1]);
+                lines.add(input + "  " + dir.resolve(k + ".out"));
+                lines.add("");
+            }
+            Files.write(manifest, lines);
+            List<BatchProcessor.Job> jobs = BatchProcessor.manifest(manifest);
+            assertEquals(2, jobs.size());
+            List<BatchProcessor.Outcome> outcomes =
+                new BatchProcessor(Main.parseConfig(SMALL_CONFIG), jobs, 2,
+                                   Machine::chooseStrategy).run();
+            for (BatchProcessor.Outcome outcome : outcomes) {
+                assertNull(outcome.error());
+            }
+            Path config = dir.resolve("config");
+            Files.writeString(config, SMALL_CONFIG);
+            for (BatchProcessor.Job job : jobs) {
+                assertEquals(single(config, job.input(),
+                                    dir.resolve("single"))[0],
+                             read(job.output()));
+            }
+
+            jobs = new ArrayList<>(jobs);
+            jobs.add(new BatchProcessor.Job(dir.resolve("other"),
+                                            dir.resolve("1.out")));
+            try {
+                new BatchProcessor(Main.parseConfig(SMALL_CONFIG), jobs, 2,
+                                   Machine::chooseStrategy);
+                fail("duplicate output accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("twice"));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void checkUnexpectedFailure() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            Path in = Files.createDirectory(dir.resolve("in"));
+            Path out = Files.createDirectory(dir.resolve("out"));
+            Files.writeString(in.resolve("a"), INPUTS[1][1]);
+            Files.writeString(in.resolve("b"),
+                              "* B BETA I II III AAAA (AB\nHELLO\n");
+            Files.writeString(in.resolve("c"), INPUTS[0][1]);
+            List<BatchProcessor.Outcome> outcomes =
+                new BatchProcessor(Main.parseConfig(SMALL_CONFIG),
+                                   BatchProcessor.directory(in, out), 2,
+                                   Machine::chooseStrategy).run();
+            assertEquals(3, outcomes.size());
+            assertNull(outcomes.get(0).error());
+            assertNotNull(outcomes.get(1).error());
+            assertNull(outcomes.get(2).error());
+            assertEquals(1, BatchProcessor.summarize(
+                outcomes, 1, new PrintStream(new ByteArrayOutputStream())));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void checkOutputPermissions() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            if (!Files.getFileStore(dir).supportsFileAttributeView(
+                    PosixFileAttributeView.class)) {
+                return;
+            }
+            Path input = dir.resolve("in");
+            Files.writeString(input, INPUTS[0][1]);
+            List<BatchProcessor.Job> jobs = new ArrayList<>();
+            jobs.add(new BatchProcessor.Job(input, dir.resolve("out")));
+            new BatchProcessor(Main.parseConfig(SMALL_CONFIG), jobs, 1,
+                               Machine::chooseStrategy).run();
+            Path plain = Files.createFile(dir.resolve("plain"));
+            assertEquals(Files.getPosixFilePermissions(plain),
+                         Files.getPosixFilePermissions(dir.resolve("out")));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    @Test
+    public void checkMissingInput() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            List<BatchProcessor.Job> jobs = new ArrayList<>();
+            jobs.add(new BatchProcessor.Job(dir.resolve("absent"),
+                                            dir.resolve("out")));
+            BatchProcessor.Outcome outcome =
+                new BatchProcessor(Main.parseConfig(SMALL_CONFIG), jobs, 1,
+                                   Machine::chooseStrategy).run().get(0);
+            assertEquals("could not open " + dir.resolve("absent"),
+                         outcome.error());
+            assertFalse(Files.exists(dir.resolve("out")));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** An Alphabet of the 256 possible byte values, used to encrypt binary
+ *  data.  Index I corresponds to the byte with unsigned value I and to
+ *  the character (char) I.
+ *  @author Eric Huang
+ */
+class ByteAlphabet extends Alphabet {
+
+    @Override
+    int size() {
+        return SIZE;
+    }
+
+    @Override
+    boolean contains(char ch) {
+        return ch < SIZE;
+    }
+
+    @Override
+    char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("byte index out of range");
+        }
+        return (char) index;
+    }
+
+    @Override
+    int toInt(char ch) {
+        if (!contains(ch)) {
+            throw error("character out of byte range");
+        }
+        return ch;
+    }
+
+    /** Number of distinct byte values. */
+    static final int SIZE = 256;
+
+}
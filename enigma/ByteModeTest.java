@@ -0,0 +1,169 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/** Tests of the byte alphabet and Main's byte mode.
+ *  @author Eric Huang
+ */
+public class ByteModeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** A setting line for config() whose rotor positions, 00, 28 and 20,
+     *  are '\0', '(' and ' '. */
+    private static final String SETTING = "* B III I II 002820 (0102) (FF28)";
+
+    /** Return the byte values in an order drawn with RANDOM. */
+    private static ArrayList<Integer> shuffled(Random random) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int c = 0; c < ByteAlphabet.SIZE; c += 1) {
+            result.add(c);
+        }
+        Collections.shuffle(result, random);
+        return result;
+    }
+
+    /** Return a configuration with the byte alphabet, four slots and
+     *  three pawls, whose wirings are drawn with RANDOM. */
+    private static String config(Random random) {
+        StringBuilder result = new StringBuilder("00-FF\n4 3\n");
+        String[] names = { "I", "II", "III" };
+        for (int k = 0; k < names.length; k += 1) {
+            result.append(String.format(" %s M%02X%02X (", names[k],
+                                        k * 40, 255 - k));
+            for (int c : shuffled(random)) {
+                result.append(String.format("%02X", c));
+            }
+            result.append(")\n");
+        }
+        result.append(" B R");
+        ArrayList<Integer> pairs = shuffled(random);
+        for (int k = 0; k < pairs.size(); k += 2) {
+            result.append(String.format(" (%02X%02X)", pairs.get(k),
+                                        pairs.get(k + 1)));
+        }
+        return result.append("\n").toString();
+    }
+
+    /** Return a machine configured by TEXT and set by SETTING. */
+    private static Machine machine(String text, String setting) {
+        Machine result = Main.parseConfig(text);
+        Main.applySetting(result, setting);
+        return result;
+    }
+
+    @Test
+    public void checkHexCycles() {
+        int[] map = Main.hexCycles("(00FF7A)(0102)");
+        assertEquals(0xFF, map[0]);
+        assertEquals(0x7A, map[0xFF]);
+        assertEquals(0, map[0x7A]);
+        assertEquals(2, map[1]);
+        assertEquals(1, map[2]);
+        assertEquals(3, map[3]);
+        assertEquals(0x28, Main.hexCycles("(2820)")[0x20]);
+        String[] bad = { "(0001)(01)", "(0G)", "(001)", "0001)", "(0001" };
+        for (String cycles : bad) {
+            try {
+                Main.hexCycles(cycles);
+                fail("accepted " + cycles);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkHexPositions() {
+        String text = config(new Random(1));
+        Machine machine = machine(text, SETTING);
+        assertEquals(0x00, machine.rotors().get(1).setting());
+        assertEquals(0x28, machine.rotors().get(2).setting());
+        assertEquals(0x20, machine.rotors().get(3).setting());
+        String[] bad = { "* B III I II 00010203", "* B III I II 0001G2",
+                         "* B III I II 00010" };
+        for (String setting : bad) {
+            try {
+                machine(text, setting);
+                fail("accepted " + setting);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkConvertBuffers() {
+        String text = config(new Random(2));
+        Machine machine = machine(text, SETTING);
+        Machine direct = machine(text, SETTING);
+        byte[] data = new byte[1000];
+        new Random(3).nextBytes(data);
+        for (int c = 0; c < ByteAlphabet.SIZE; c += 1) {
+            data[c] = (byte) c;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data);
+        ByteBuffer out = ByteBuffer.allocate(600);
+        assertEquals(600, machine.convert(in, out));
+        assertEquals(600, in.position());
+        ByteBuffer rest = ByteBuffer.allocate(1000);
+        assertEquals(400, machine.convert(in, rest));
+        byte[] converted = new byte[1000];
+        System.arraycopy(out.array(), 0, converted, 0, 600);
+        System.arraycopy(rest.array(), 0, converted, 600, 400);
+        for (int i = 0; i < data.length; i += 1) {
+            direct.advance();
+            assertEquals((byte) direct.convert(data[i] & 0xFF),
+                         converted[i]);
+        }
+        ByteBuffer back = ByteBuffer.allocate(1000);
+        machine(text, SETTING).convert(ByteBuffer.wrap(converted), back);
+        assertArrayEquals(data, back.array());
+    }
+
+    @Test
+    public void checkByteMode() throws IOException {
+        Path dir = Files.createTempDirectory("bytes");
+        Path config = dir.resolve("bytes.conf");
+        Path plain = dir.resolve("plain");
+        Path cipher = dir.resolve("cipher");
+        Path back = dir.resolve("back");
+        try {
+            String text = config(new Random(4));
+            Files.writeString(config, text);
+            byte[] data = new byte[5000];
+            new Random(5).nextBytes(data);
+            Files.write(plain, data);
+            String setting = "--setting=" + SETTING;
+            new Main(new String[] { "--bytes", setting, config.toString(),
+                                    plain.toString(), cipher.toString() })
+                .process();
+            new Main(new String[] { "--bytes", setting, config.toString(),
+                                    cipher.toString(), back.toString() })
+                .process();
+            byte[] converted = Files.readAllBytes(cipher);
+            ByteBuffer expected = ByteBuffer.allocate(data.length);
+            machine(text, SETTING).convert(ByteBuffer.wrap(data), expected);
+            assertArrayEquals(expected.array(), converted);
+            assertArrayEquals(data, Files.readAllBytes(back));
+        } finally {
+            for (Path file : new Path[] { config, plain, cipher, back }) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** An on-disk catalog of the characteristics (see Cyclometer) of every
+ *  rotor order and start position of a configuration, indexed so that
+ *  all settings having an observed characteristic can be found quickly.
+ *
+ *  The catalog file holds a header describing the rotor orders followed
+ *  by one long per setting, sorted: the high bits of each are a
+ *  fingerprint of the characteristic and the low bits number the
+ *  setting.  The entries are memory-mapped when the catalog is opened,
+ *  so a query is a binary search plus a check of each candidate, which
+ *  weeds out the rare fingerprint collision.
+ *
+ *  Building computes each rotor order's characteristics as a fork-join
+ *  task, sorts them into a run in a scratch file, and merges the runs.
+ *  @author Eric Huang
+ */
+final class Catalog implements AutoCloseable {
+
+    /** Build or query a catalog.  ARGS[0] names a configuration file and
+     *  ARGS[1] a catalog file.  With no more arguments, builds the
+     *  catalog of the configuration's rotors.  Otherwise ARGS[2..4] give
+     *  the cycle types of AD, BE and CF as comma-separated cycle lengths,
+     *  such as "13,13", and every matching setting line is printed. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2 && args.length != 5) {
+                throw error("usage: Catalog CONFIG CATALOG [AD BE CF]");
+            }
+            Machine machine = Main.loadConfig(args[0]);
+            Path file = Paths.get(args[1]);
+            if (args.length == 2) {
+                long start = System.nanoTime();
+                long count = build(machine, file);
+                System.out.printf("%d settings cataloged in %.1f s%n",
+                                  count, (System.nanoTime() - start) * 1e-9);
+                return;
+            }
+            int[][] characteristic = new int[Cyclometer.KEYSTROKES / 2][];
+            for (int k = 0; k < characteristic.length; k += 1) {
+                characteristic[k] = parseCycleType(args[k + 2]);
+            }
+            try (Catalog catalog = open(file, machine)) {
+                for (String setting : catalog.find(characteristic)) {
+                    System.out.println(setting);
+                }
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the cycle lengths listed, separated by commas, in TYPE, in
+     *  decreasing order. */
+    static int[] parseCycleType(String type) {
+        String[] parts = type.split(",");
+        int[] result = new int[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i += 1) {
+                result[parts.length - 1 - i] = Integer.parseInt(parts[i]);
+            }
+        } catch (NumberFormatException excp) {
+            throw error("bad cycle type: %s", type);
+        }
+        Arrays.sort(result);
+        for (int i = 0, j = result.length - 1; i < j; i += 1, j -= 1) {
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Write the catalog of every rotor order and start position of
+     *  MACHINE's configuration to FILE, using the common fork-join pool.
+     *  Returns the number of settings cataloged. */
+    static long build(Machine machine, Path file) {
+        return build(machine, file, ForkJoinPool.commonPool());
+    }
+
+    /** Write the catalog of MACHINE's configuration to FILE, computing
+     *  characteristics on POOL.  Returns the number of settings. */
+    static long build(Machine machine, Path file, ForkJoinPool pool) {
+        Cyclometer cyclometer = new Cyclometer(machine);
+        if (cyclometer.positions() > MAX_RUN) {
+            throw error("too many start positions per rotor order");
+        }
+        int orders = cyclometer.orders();
+        int run = (int) cyclometer.positions();
+        long count = (long) orders * run;
+        int idBits = Math.max(1, 64 - Long.numberOfLeadingZeros(count - 1));
+        if (Long.SIZE - 1 - idBits < MIN_KEY_BITS) {
+            throw error("too many settings to catalog");
+        }
+        Path scratch = null;
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            scratch = Files.createTempFile(dir, "catalog", ".runs");
+            try (FileChannel runs = FileChannel.open(scratch, READ, WRITE)) {
+                pool.invoke(new Runs(cyclometer, runs, idBits, 0, orders));
+                try (FileChannel out = FileChannel.open(file, CREATE, WRITE,
+                                                        TRUNCATE_EXISTING)) {
+                    writeFully(out, ByteBuffer.wrap(header(cyclometer,
+                                                           idBits, count)));
+                    merge(runs, orders, run, out);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not build catalog %s: %s", file,
+                        excp.getMessage());
+        } finally {
+            if (scratch != null) {
+                try {
+                    Files.deleteIfExists(scratch);
+                } catch (IOException excp) {
+                    /* Leave the scratch file behind. */
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Computes the sorted runs of a range of rotor orders. */
+    private static final class Runs extends RecursiveAction {
+
+        /** Computes the runs of orders LOW .. HIGH-1 of CYCLOMETER, with
+         *  IDBITS bits of each entry numbering its setting, writing them
+         *  to RUNS. */
+        Runs(Cyclometer cyclometer, FileChannel runs, int idBits,
+             int low, int high) {
+            _cyclometer = cyclometer;
+            _runs = runs;
+            _idBits = idBits;
+            _low = low;
+            _high = high;
+        }
+
+        @Override
+        protected void compute() {
+            if (_high - _low > 1) {
+                int mid = (_low + _high) >>> 1;
+                invokeAll(new Runs(_cyclometer, _runs, _idBits, _low, mid),
+                          new Runs(_cyclometer, _runs, _idBits, mid, _high));
+                return;
+            }
+            int run = (int) _cyclometer.positions();
+            Cyclometer.Worker worker = _cyclometer.worker(_low);
+            long[] entries = new long[run];
+            long first = (long) _low * run;
+            for (int p = 0; p < run; p += 1) {
+                long fingerprint =
+                    Cyclometer.fingerprint(worker.characteristic(p));
+                entries[p] = entry(fingerprint, first + p, _idBits);
+            }
+            Arrays.sort(entries);
+            ByteBuffer bytes = ByteBuffer.allocate(run * Long.BYTES);
+            bytes.asLongBuffer().put(entries);
+            try {
+                long offset = first * Long.BYTES;
+                while (bytes.hasRemaining()) {
+                    offset += _runs.write(bytes, offset);
+                }
+            } catch (IOException excp) {
+                throw error("could not write catalog run: %s",
+                            excp.getMessage());
+            }
+        }
+
+        /** Source of characteristics. */
+        private final Cyclometer _cyclometer;
+
+        /** Scratch file holding the runs. */
+        private final FileChannel _runs;
+
+        /** Number of bits numbering settings. */
+        private final int _idBits;
+
+        /** Range of rotor orders. */
+        private final int _low, _high;
+    }
+
+    /** Merge the ORDERS sorted runs of RUN entries each in RUNS into OUT. */
+    private static void merge(FileChannel runs, int orders, int run,
+                              FileChannel out) throws IOException {
+        LongBuffer[] sources = new LongBuffer[orders];
+        for (int k = 0; k < orders; k += 1) {
+            sources[k] = runs.map(READ_ONLY, (long) k * run * Long.BYTES,
+                                  (long) run * Long.BYTES).asLongBuffer();
+        }
+        int[] heap = new int[orders];
+        long[] heads = new long[orders];
+        int size = 0;
+        for (int k = 0; k < orders; k += 1) {
+            if (sources[k].hasRemaining()) {
+                heads[k] = sources[k].get();
+                heap[size] = k;
+                size += 1;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i -= 1) {
+            siftDown(heap, heads, size, i);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+        while (size > 0) {
+            int k = heap[0];
+            buffer.putLong(heads[k]);
+            if (!buffer.hasRemaining()) {
+                writeFully(out, buffer.flip());
+                buffer.clear();
+            }
+            if (sources[k].hasRemaining()) {
+                heads[k] = sources[k].get();
+            } else {
+                size -= 1;
+                heap[0] = heap[size];
+            }
+            siftDown(heap, heads, size, 0);
+        }
+        writeFully(out, buffer.flip());
+    }
+
+    /** Restore the heap order of the first SIZE run numbers in HEAP,
+     *  keyed by HEADS, below position I. */
+    private static void siftDown(int[] heap, long[] heads, int size, int i) {
+        int k = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size
+                && heads[heap[child + 1]] < heads[heap[child]]) {
+                child += 1;
+            }
+            if (heads[heap[child]] >= heads[k]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = k;
+    }
+
+    /** Write all of BYTES to OUT. */
+    private static void writeFully(FileChannel out, ByteBuffer bytes)
+        throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    /** Return the catalog header for CYCLOMETER's orders with IDBITS bits
+     *  numbering each of COUNT settings, padded to a whole number of
+     *  longs. */
+    private static byte[] header(Cyclometer cyclometer, int idBits,
+                                 long count) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(MAGIC);
+        out.writeInt(cyclometer.size());
+        out.writeInt(cyclometer.slots());
+        out.writeInt(cyclometer.orders());
+        out.writeInt(idBits);
+        out.writeLong(count);
+        for (int k = 0; k < cyclometer.orders(); k += 1) {
+            for (String name : cyclometer.orderNames(k)) {
+                out.writeUTF(name);
+            }
+        }
+        while (out.size() % Long.BYTES != 0) {
+            out.writeByte(0);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the catalog entry for setting number ID, whose
+     *  characteristic has fingerprint FINGERPRINT, with IDBITS bits
+     *  numbering settings. */
+    private static long entry(long fingerprint, long id, int idBits) {
+        return (fingerprint >>> (idBits + 1)) << idBits | id;
+    }
+
+    /** Return the catalog in FILE, which must have been built from the
+     *  configuration of MACHINE. */
+    static Catalog open(Path file, Machine machine) {
+        try (FileChannel in = FileChannel.open(file, READ)) {
+            return new Catalog(in, machine);
+        } catch (IOException excp) {
+            throw error("could not open catalog %s: %s", file,
+                        excp.getMessage());
+        }
+    }
+
+    /** A catalog read from IN, built from the configuration of MACHINE. */
+    private Catalog(FileChannel in, Machine machine) throws IOException {
+        _alphabet = machine.alphabet();
+        _cyclometer = new Cyclometer(machine);
+        DataInputStream header =
+            new DataInputStream(Channels.newInputStream(in));
+        if (header.readLong() != MAGIC) {
+            throw error("not a catalog file");
+        }
+        if (header.readInt() != _cyclometer.size()
+            || header.readInt() != _cyclometer.slots()
+            || header.readInt() != _cyclometer.orders()) {
+            throw error("catalog does not match configuration");
+        }
+        _idBits = header.readInt();
+        _count = header.readLong();
+        long length = Long.BYTES + 4 * Integer.BYTES + Long.BYTES;
+        for (int k = 0; k < _cyclometer.orders(); k += 1) {
+            for (String name : _cyclometer.orderNames(k)) {
+                String stored = header.readUTF();
+                if (!stored.equals(name)) {
+                    throw error("catalog does not match configuration");
+                }
+                length += 2 + stored.getBytes("UTF-8").length;
+            }
+        }
+        length = (length + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+        if (in.size() != length + _count * Long.BYTES) {
+            throw error("catalog file is truncated");
+        }
+        int segments = (int) ((_count + SEGMENT - 1) / SEGMENT);
+        _entries = new LongBuffer[segments];
+        for (int s = 0; s < segments; s += 1) {
+            long first = (long) s * SEGMENT;
+            long n = Math.min(SEGMENT, _count - first);
+            _entries[s] = in.map(READ_ONLY, length + first * Long.BYTES,
+                                 n * Long.BYTES).asLongBuffer();
+        }
+    }
+
+    /** Return the number of settings in the catalog. */
+    long size() {
+        return _count;
+    }
+
+    /** Return entry I. */
+    private long entry(long i) {
+        return _entries[(int) (i / SEGMENT)].get((int) (i % SEGMENT));
+    }
+
+    /** Return the setting lines of every rotor order and start position
+     *  whose characteristic is CHARACTERISTIC: the cycle types of AD, BE
+     *  and CF, each listing its cycle lengths in decreasing order.  The
+     *  settings are listed in catalog order.  Safe to call from several
+     *  threads at once. */
+    List<String> find(int[][] characteristic) {
+        long key = entry(Cyclometer.fingerprint(characteristic), 0, _idBits);
+        long low = 0, high = _count;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (entry(mid) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        long mask = (1L << _idBits) - 1;
+        long positions = _cyclometer.positions();
+        HashMap<Integer, Cyclometer.Worker> workers = new HashMap<>();
+        ArrayList<String> result = new ArrayList<>();
+        for (long i = low; i < _count && (entry(i) & ~mask) == key; i += 1) {
+            long id = entry(i) & mask;
+            int order = (int) (id / positions);
+            long position = id % positions;
+            Cyclometer.Worker worker =
+                workers.computeIfAbsent(order, _cyclometer::worker);
+            if (Arrays.deepEquals(worker.characteristic(position),
+                                  characteristic)) {
+                result.add(_cyclometer.settingLine(order, position,
+                                                   _alphabet));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        Arrays.fill(_entries, null);
+    }
+
+    /** Identifies catalog files ("ENIGCAT1"). */
+    private static final long MAGIC = 0x454e494743415431L;
+
+    /** Largest number of start positions per rotor order, so that a run
+     *  fits in memory. */
+    private static final long MAX_RUN = 1 << 26;
+
+    /** Fewest fingerprint bits an entry may have. */
+    private static final int MIN_KEY_BITS = 16;
+
+    /** Number of entries per mapped segment. */
+    private static final long SEGMENT = 1 << 27;
+
+    /** Size of the buffer through which merged entries are written. */
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    /** The alphabet used to write setting lines. */
+    private final Alphabet _alphabet;
+
+    /** The rotor orders, and the means to check candidates. */
+    private final Cyclometer _cyclometer;
+
+    /** Number of bits numbering settings in each entry. */
+    private final int _idBits;
+
+    /** Number of entries. */
+    private final long _count;
+
+    /** The mapped entries, SEGMENT per buffer. */
+    private final LongBuffer[] _entries;
+}
@@ -0,0 +1,129 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** Tests of Cyclometer and Catalog.
+ *  @author Eric Huang
+ */
+public class CatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return a three-slot machine with reflectors B and C and moving
+     *  rotors I, II and III. */
+    private Machine machine() {
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        allRotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        allRotors.add(new Reflector("C",
+                new Permutation(NAVALA.get("C"), UPPER)));
+        allRotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        allRotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        allRotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        return new Machine(UPPER, 4, 3, allRotors);
+    }
+
+    /** Return the characteristic of SETTING on MACHINE, computed by
+     *  encrypting with the machine itself. */
+    private int[][] characteristic(Machine machine, String setting) {
+        Main.applySetting(machine, setting);
+        int[][] perms = new int[Cyclometer.KEYSTROKES][26];
+        for (int k = 0; k < perms.length; k += 1) {
+            machine.advance();
+            for (int c = 0; c < 26; c += 1) {
+                perms[k][c] = machine.convert(c);
+            }
+        }
+        int[][] result = new int[3][];
+        for (int k = 0; k < 3; k += 1) {
+            int[] product = new int[26];
+            for (int c = 0; c < 26; c += 1) {
+                product[c] = perms[k + 3][perms[k][c]];
+            }
+            result[k] = Permutations.cycleType(product);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkOrders() {
+        Cyclometer cyclometer = new Cyclometer(machine());
+        assertEquals(12, cyclometer.orders());
+        assertEquals(26 * 26 * 26, cyclometer.positions());
+        assertEquals("* C III II I AQZ",
+                     cyclometer.settingLine(11, 16 * 26 + 25, UPPER));
+    }
+
+    @Test
+    public void checkCycleType() {
+        assertArrayEquals(new int[] {3, 2, 1},
+                          Permutations.cycleType(new int[] {1, 2, 0, 4, 3, 5}));
+        assertArrayEquals(new int[] {13, 13},
+                          Catalog.parseCycleType("13,13"));
+    }
+
+    @Test
+    public void checkCharacteristics() {
+        Machine machine = machine();
+        Cyclometer cyclometer = new Cyclometer(machine);
+        String[] settings = {"AAA", "ADU", "QEV", "ZZZ", "MEQ"};
+        for (int k = 0; k < cyclometer.orders(); k += 3) {
+            Cyclometer.Worker worker = cyclometer.worker(k);
+            for (String setting : settings) {
+                long position = 0;
+                for (char c : setting.toCharArray()) {
+                    position = position * 26 + (c - 'A');
+                }
+                String line = cyclometer.settingLine(k, position, UPPER);
+                assertTrue(msg("cyclometer", line),
+                           Arrays.deepEquals(characteristic(machine, line),
+                                             worker.characteristic(position)));
+            }
+        }
+    }
+
+    @Test
+    public void checkCatalog() throws IOException {
+        Machine machine = machine();
+        Path file = Files.createTempFile("catalog", ".cat");
+        try {
+            assertEquals(12 * 26 * 26 * 26, Catalog.build(machine, file));
+            try (Catalog catalog = Catalog.open(file, machine)) {
+                assertEquals(12 * 26 * 26 * 26, catalog.size());
+                for (String line : new String[] {"* B I II III AAA",
+                                                 "* C II III I QEV",
+                                                 "* B III I II XYZ"}) {
+                    int[][] observed = characteristic(machine, line);
+                    List<String> found = catalog.find(observed);
+                    assertTrue(msg("catalog", line), found.contains(line));
+                    for (String other : found) {
+                        assertTrue(msg("catalog", other),
+                                   Arrays.deepEquals(observed,
+                                       characteristic(machine, other)));
+                    }
+                }
+                assertTrue(catalog.find(new int[][] {{26}, {26}, {26}})
+                           .isEmpty());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package enigma;
+
+/** A reusable batch of text lines passed between the stages of a
+ *  Pipeline.  The lines are stored back to back in one character array,
+ *  and each carries a flag saying whether it is a setting line.  The
+ *  last chunk of a stream is marked as such and may carry the error that
+ *  ended the stream.
+ *  @author Eric Huang
+ */
+class Chunk {
+
+    /** An empty chunk holding up to MAXLINES lines, whose character
+     *  storage is initially CAPACITY characters. */
+    Chunk(int maxLines, int capacity) {
+        _chars = new char[capacity];
+        _ends = new int[maxLines];
+        _settings = new boolean[maxLines];
+    }
+
+    /** Remove all lines and flags from this chunk. */
+    void clear() {
+        _lines = 0;
+        _length = 0;
+        _last = false;
+        _failure = null;
+    }
+
+    /** Return true iff another line would not fit in this chunk. */
+    boolean full() {
+        return _lines == _ends.length || _length >= _chars.length;
+    }
+
+    /** Return the number of lines in this chunk. */
+    int lines() {
+        return _lines;
+    }
+
+    /** Return the character storage of this chunk. */
+    char[] chars() {
+        return _chars;
+    }
+
+    /** Return the index in chars() of the first character of line K. */
+    int start(int k) {
+        return k == 0 ? 0 : _ends[k - 1];
+    }
+
+    /** Return the index in chars() just past the last character of
+     *  line K. */
+    int end(int k) {
+        return _ends[k];
+    }
+
+    /** Return true iff line K is a setting line. */
+    boolean setting(int k) {
+        return _settings[k];
+    }
+
+    /** Append LINE, a setting line iff SETTING, to this chunk. */
+    void add(String line, boolean setting) {
+        int start = reserve(line.length());
+        line.getChars(0, line.length(), _chars, start);
+        finish(start + line.length(), setting);
+    }
+
+    /** Append LINE, a message line, converted to upper case. */
+    void addUpperCase(String line) {
+        if (!ASCII_UPPER_CASE) {
+            add(line.toUpperCase(), false);
+            return;
+        }
+        int n = line.length();
+        int start = reserve(n);
+        for (int i = 0; i < n; i += 1) {
+            char c = line.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            } else if (c >= ASCII_LIMIT) {
+                add(line.toUpperCase(), false);
+                return;
+            }
+            _chars[start + i] = c;
+        }
+        finish(start + n, false);
+    }
+
+    /** Append the characters SRC[START .. END-1] as a message line. */
+    void add(char[] src, int start, int end) {
+        int from = reserve(end - start);
+        System.arraycopy(src, start, _chars, from, end - start);
+        finish(from + end - start, false);
+    }
+
+    /** Return true iff this is the final chunk of its stream. */
+    boolean last() {
+        return _last;
+    }
+
+    /** Mark this chunk as the final one of its stream. */
+    void setLast() {
+        _last = true;
+    }
+
+    /** Return the error that ended the stream, or null if the stream
+     *  ended normally or has not ended. */
+    RuntimeException failure() {
+        return _failure;
+    }
+
+    /** Mark this chunk as the final one of a stream ended by EXCP. */
+    void fail(RuntimeException excp) {
+        _last = true;
+        _failure = excp;
+    }
+
+    /** Make room for a line of N characters, returning the index at which
+     *  it starts.  Storage grows only for lines longer than any seen
+     *  so far. */
+    private int reserve(int n) {
+        if (_length + n > _chars.length) {
+            char[] bigger = new char[Math.max(_chars.length * 2,
+                                              _length + n)];
+            System.arraycopy(_chars, 0, bigger, 0, _length);
+            _chars = bigger;
+        }
+        return _length;
+    }
+
+    /** Record a line ending just before index END, a setting line iff
+     *  SETTING. */
+    private void finish(int end, boolean setting) {
+        _ends[_lines] = end;
+        _settings[_lines] = setting;
+        _lines += 1;
+        _length = end;
+    }
+
+    /** Characters at or above this value are not ASCII. */
+    private static final char ASCII_LIMIT = 0x80;
+
+    /** True iff String.toUpperCase maps ASCII letters to ASCII letters
+     *  in the default locale (it does not in Turkic locales). */
+    private static final boolean ASCII_UPPER_CASE =
+        "i".toUpperCase().equals("I");
+
+    /** Characters of all lines, back to back. */
+    private char[] _chars;
+
+    /** End index of each line in _chars. */
+    private final int[] _ends;
+
+    /** Setting-line flag of each line. */
+    private final boolean[] _settings;
+
+    /** Number of lines held. */
+    private int _lines;
+
+    /** Number of characters of _chars in use. */
+    private int _length;
+
+    /** True iff this is the final chunk of its stream. */
+    private boolean _last;
+
+    /** The error that ended the stream, if any. */
+    private RuntimeException _failure;
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A machine state packed into a few primitive arrays, for code that
+ *  keeps many machines live at once.  The wirings of the rotors in their
+ *  current order and the plugboard are laid out in one table: for each
+ *  slot S, the forward wiring at S * 2 * size() and its inverse just
+ *  after it, then the plugboard.  Notches are bit masks, one run of
+ *  longs per slot, and positions are a parallel int array.  A keystroke
+ *  therefore reads a few consecutive cache lines rather than following
+ *  references from rotor to permutation to alphabet.
+ *
+ *  Subclasses hold the table in the narrowest type that fits:
+ *  ByteCompactMachine for alphabets of at most 256 characters and
+ *  ShortCompactMachine otherwise.  Copies share the table and masks,
+ *  which never change, so each further machine costs only its positions.
+ *  Conversions behave exactly as Machine's do.  Since each slot has its
+ *  own position, a machine with a rotor inserted in two slots, which
+ *  moves as one, cannot be made compact.
+ *  @author Eric Huang
+ */
+abstract class CompactMachine implements Engine {
+
+    /** Return a compact machine in the current state of MACHINE. */
+    static CompactMachine create(Machine machine) {
+        if (machine.alphabet().size() <= BYTE_LIMIT) {
+            return new ByteCompactMachine(machine);
+        }
+        return new ShortCompactMachine(machine);
+    }
+
+    /** A compact machine in the current state of MACHINE, whose
+     *  subclass fills the table from wiring(). */
+    CompactMachine(Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        if (rotors.size() < 2) {
+            throw error("machine has no rotors inserted");
+        }
+        if (!rotors.get(0).reflecting()) {
+            throw error("First rotor isn't reflector");
+        }
+        Rotor last = rotors.get(rotors.size() - 1);
+        if (!last.rotates()) {
+            throw error(last.name() + " is fixed: cannot advance");
+        }
+        for (int s = 0; s < rotors.size(); s += 1) {
+            if (rotors.indexOf(rotors.get(s)) != s) {
+                throw error("rotor %s is inserted twice",
+                            rotors.get(s).name());
+            }
+        }
+        _size = machine.alphabet().size();
+        _slots = rotors.size();
+        _words = (_size + Long.SIZE - 1) / Long.SIZE;
+        _rotates = new boolean[_slots];
+        _notches = new long[_slots * _words];
+        _positions = new int[_slots];
+        for (int s = 0; s < _slots; s += 1) {
+            Rotor rotor = rotors.get(s);
+            _rotates[s] = rotor.rotates();
+            for (int p = 0; p < _size; p += 1) {
+                if (rotor.notchAt(p)) {
+                    _notches[s * _words + p / Long.SIZE] |= 1L << p;
+                }
+            }
+        }
+        load(machine);
+    }
+
+    /** A compact machine sharing the tables of ORIGINAL and starting at
+     *  its positions. */
+    CompactMachine(CompactMachine original) {
+        _size = original._size;
+        _slots = original._slots;
+        _words = original._words;
+        _rotates = original._rotates;
+        _notches = original._notches;
+        _positions = original._positions.clone();
+    }
+
+    /** Return the table described in the class comment for the current
+     *  rotor order and plugboard of MACHINE, as ints. */
+    static int[] wiring(Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        int size = machine.alphabet().size();
+        int[] result = new int[(2 * rotors.size() + 1) * size];
+        for (int s = 0; s < rotors.size(); s += 1) {
+            Permutation perm = rotors.get(s).permutation();
+            for (int c = 0; c < size; c += 1) {
+                result[2 * s * size + c] = perm.permute(c);
+                result[(2 * s + 1) * size + c] = perm.invert(c);
+            }
+        }
+        int[] plugboard = machine.plugboard().table(new int[size]);
+        System.arraycopy(plugboard, 0, result, 2 * rotors.size() * size,
+                         size);
+        return result;
+    }
+
+    /** Return a machine that shares my tables and starts at my positions,
+     *  but converts independently of me. */
+    abstract CompactMachine copy();
+
+    /** Return the number of bytes in each entry of my table. */
+    abstract int width();
+
+    /** Return the size of my alphabet. */
+    int size() {
+        return _size;
+    }
+
+    /** Return my number of slots, counting the reflector. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the position of the rotor in slot S. */
+    int position(int s) {
+        return _positions[s];
+    }
+
+    /** Advance my rotors as Machine.advance() does. */
+    final void advance() {
+        int last = _slots - 1;
+        boolean carry = false;
+        for (int s = 0; s <= last; s += 1) {
+            boolean pushed = carry || s == last;
+            carry = s < last && _rotates[s] && atNotch(s + 1);
+            if (pushed || carry) {
+                int p = _positions[s] + 1;
+                _positions[s] = p == _size ? 0 : p;
+            }
+        }
+    }
+
+    /** Return true iff the rotor in slot S is at a notch. */
+    private boolean atNotch(int s) {
+        int p = _positions[s];
+        return (_notches[s * _words + p / Long.SIZE] >>> p & 1) != 0;
+    }
+
+    @Override
+    public void load(Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        for (int s = 0; s < _slots; s += 1) {
+            _positions[s] = rotors.get(s).setting();
+        }
+    }
+
+    @Override
+    public void store(Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        for (int s = 0; s < _slots; s += 1) {
+            rotors.get(s).set(_positions[s]);
+        }
+    }
+
+    /** Largest alphabet whose table is held in bytes. */
+    static final int BYTE_LIMIT = 1 << Byte.SIZE;
+
+    /** Size of my alphabet. */
+    protected final int _size;
+
+    /** Number of slots. */
+    protected final int _slots;
+
+    /** Longs per slot in _notches. */
+    private final int _words;
+
+    /** True for slots whose rotors move. */
+    private final boolean[] _rotates;
+
+    /** Bit P of run S is set iff the rotor in slot S has a notch at P. */
+    private final long[] _notches;
+
+    /** Position of the rotor in each slot. */
+    protected final int[] _positions;
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Tests of CompactMachine against Machine.
+ *  @author Eric Huang
+ */
+public class CompactMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Check that COMPACT, made from MACHINE, converts KEYS random
+     *  keystrokes as MACHINE does. */
+    private static void checkAgainst(CompactMachine compact, Machine machine,
+                                     int keys) {
+        Random random = new Random(keys);
+        int size = machine.alphabet().size();
+        for (int k = 0; k < keys; k += 1) {
+            int c = random.nextInt(size);
+            machine.advance();
+            assertEquals(machine.convert(c), compact.convert(c));
+        }
+        for (int s = 0; s < compact.slots(); s += 1) {
+            assertEquals(machine.rotors().get(s).setting(),
+                         compact.position(s));
+        }
+    }
+
+    @Test
+    public void checkNarrowTables() {
+        int[][] widths = { { 1, 26, 1 }, { 2, 256, 1 }, { 3, 258, 2 } };
+        for (int[] width : widths) {
+            Machine machine =
+                generatedMachine(new LoadGenerator(width[0]), width[1]);
+            assertEquals(width[2], CompactMachine.create(machine).width());
+        }
+    }
+
+    @Test
+    public void checkMatchesMachine() {
+        int[] sizes = {2, 6, 26, 100, 256, 258, 700};
+        for (int k = 0; k < sizes.length; k += 1) {
+            Machine machine =
+                generatedMachine(new LoadGenerator(k), sizes[k]);
+            checkAgainst(CompactMachine.create(machine), machine, 20000);
+        }
+    }
+
+    @Test
+    public void checkCopies() {
+        Machine machine = generatedMachine(new LoadGenerator(7), 26);
+        CompactMachine first = CompactMachine.create(machine);
+        Machine other = machine.copy();
+        checkAgainst(first, machine, 500);
+        CompactMachine second = first.copy();
+        Machine copy = machine.copy();
+        checkAgainst(first, machine, 700);
+        checkAgainst(second, copy, 300);
+        first.store(other);
+        for (int s = 0; s < first.slots(); s += 1) {
+            assertEquals(machine.rotors().get(s).setting(),
+                         other.rotors().get(s).setting());
+        }
+        second.load(other);
+        checkAgainst(second, other, 200);
+    }
+
+    @Test
+    public void checkRejectsRepeatedRotors() {
+        Machine machine = Main.loadConfig("../testing/correct/test4.conf");
+        Main.applySetting(machine, "* B BETA I II III IV V VI VII VIII "
+                          + "I II III IV V VI VII VIII AAAAAAAAAAAAAAAAA");
+        try {
+            CompactMachine.create(machine);
+            fail("accepted a rotor inserted twice");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("inserted twice"));
+        }
+    }
+}
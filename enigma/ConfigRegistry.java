@@ -0,0 +1,265 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/** The machine configurations in a directory, one per file named
+ *  NAME.conf, kept current as the files change.
+ *
+ *  Each configuration is compiled once into an immutable Config, which
+ *  hands out independent machines.  When a file changes, a background
+ *  thread reads, validates and compiles it and then replaces the old
+ *  Config in a single map update.  A conversion holds its own machine, so
+ *  it finishes on the version it started with, while later calls to
+ *  machine() see the new one.  Readers never block: lookups go through a
+ *  ConcurrentHashMap, and the lock serializing loads is never taken by
+ *  readers.  A file that fails to load leaves its previous version in
+ *  service, and the error is available from failures().
+ *  @author Eric Huang
+ */
+final class ConfigRegistry implements AutoCloseable {
+
+    /** A compiled version of one configuration file. */
+    static final class Config {
+
+        /** Version VERSION of configuration NAME, compiled into
+         *  TEMPLATE. */
+        private Config(String name, long version, Machine template) {
+            _name = name;
+            _version = version;
+            _template = template;
+        }
+
+        /** Return the configuration's name. */
+        String name() {
+            return _name;
+        }
+
+        /** Return my version number, which increases with every load of
+         *  any configuration in the registry. */
+        long version() {
+            return _version;
+        }
+
+        /** Return a new machine with this configuration and no rotors
+         *  inserted, independent of all others. */
+        Machine machine() {
+            return _template.copy();
+        }
+
+        /** Configuration name. */
+        private final String _name;
+
+        /** Version number. */
+        private final long _version;
+
+        /** The compiled machine, never used directly. */
+        private final Machine _template;
+    }
+
+    /** A registry of the configurations in DIRECTORY, all loaded before
+     *  returning.  Call start() to follow later changes. */
+    ConfigRegistry(Path directory) {
+        _directory = directory;
+        scan();
+    }
+
+    /** Start watching my directory on a background daemon thread. */
+    synchronized void start() {
+        if (_watcher != null) {
+            return;
+        }
+        try {
+            _watchService = _directory.getFileSystem().newWatchService();
+            _directory.register(_watchService, ENTRY_CREATE, ENTRY_MODIFY,
+                                ENTRY_DELETE);
+        } catch (IOException excp) {
+            throw error("cannot watch %s: %s", _directory, excp.getMessage());
+        }
+        _watcher = new Thread(this::watch, "config-registry");
+        _watcher.setDaemon(true);
+        _watcher.start();
+        scan();
+    }
+
+    /** Return the current version of configuration NAME, or null if there
+     *  is none. */
+    Config get(String name) {
+        return _configs.get(name);
+    }
+
+    /** Return a new machine with the current version of configuration
+     *  NAME. */
+    Machine machine(String name) {
+        Config config = _configs.get(name);
+        if (config == null) {
+            throw error("no configuration named %s", name);
+        }
+        return config.machine();
+    }
+
+    /** Return the names of the configurations now loaded. */
+    Set<String> names() {
+        return Collections.unmodifiableSet(_configs.keySet());
+    }
+
+    /** Return the error message of the last failed load of each file
+     *  whose current contents could not be loaded, by configuration name
+     *  (or by directory, if the directory itself could not be read). */
+    Map<String, String> failures() {
+        return Collections.unmodifiableMap(_failures);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (_watchService != null) {
+            try {
+                _watchService.close();
+            } catch (IOException excp) {
+                /* Nothing more to release. */
+            }
+        }
+    }
+
+    /** Load every configuration file in my directory and drop the
+     *  configurations whose files are gone. */
+    private void scan() {
+        synchronized (_loading) {
+            rescan();
+        }
+    }
+
+    /** Body of scan(), holding _loading. */
+    private void rescan() {
+        Set<String> present = new HashSet<>();
+        try (DirectoryStream<Path> files =
+                 Files.newDirectoryStream(_directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                present.add(nameOf(file));
+                load(file);
+            }
+        } catch (IOException excp) {
+            throw error("cannot read %s: %s", _directory, excp.getMessage());
+        }
+        _configs.keySet().retainAll(present);
+        _failures.keySet().retainAll(present);
+    }
+
+    /** Handle changes to my directory until the registry is closed. */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = _watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        try {
+                            scan();
+                        } catch (EnigmaException excp) {
+                            _failures.put(_directory.toString(),
+                                          excp.getMessage());
+                        }
+                        continue;
+                    }
+                    Path file = _directory.resolve((Path) event.context());
+                    if (!file.toString().endsWith(SUFFIX)) {
+                        continue;
+                    }
+                    synchronized (_loading) {
+                        if (event.kind() == ENTRY_DELETE) {
+                            _configs.remove(nameOf(file));
+                            _failures.remove(nameOf(file));
+                        } else {
+                            load(file);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException excp) {
+            return;
+        }
+    }
+
+    /** Read, validate and compile FILE and install the result, or record
+     *  why it could not be loaded.  Must hold _loading, so that
+     *  the newest contents read are the ones installed. */
+    private void load(Path file) {
+        String name = nameOf(file);
+        try {
+            String text = Files.readString(file);
+            List<ConfigValidator.Problem> problems =
+                ConfigValidator.validate(text);
+            if (!problems.isEmpty()) {
+                throw error("%s:%s", file, problems.get(0)
+                            + (problems.size() > 1 ? String.format(
+                                   " (and %d more)", problems.size() - 1)
+                               : ""));
+            }
+            Machine template = Main.parseConfig(text);
+            for (Rotor rotor : template.allRotors()) {
+                rotor.setLookup(Rotor.Lookup.forSize(rotor.size()));
+            }
+            _configs.put(name, new Config(name, _versions.incrementAndGet(),
+                                          template));
+            _failures.remove(name);
+        } catch (IOException | RuntimeException excp) {
+            if (Files.exists(file)) {
+                _failures.put(name, excp.getMessage());
+            }
+        }
+    }
+
+    /** Return the configuration name of FILE. */
+    private static String nameOf(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - SUFFIX.length());
+    }
+
+    /** Suffix of configuration file names. */
+    static final String SUFFIX = ".conf";
+
+    /** The watched directory. */
+    private final Path _directory;
+
+    /** Current version of each configuration. */
+    private final ConcurrentHashMap<String, Config> _configs =
+        new ConcurrentHashMap<>();
+
+    /** Last load error of each file that failed to load. */
+    private final ConcurrentHashMap<String, String> _failures =
+        new ConcurrentHashMap<>();
+
+    /** Held while loading, so that loads of one file do not overtake
+     *  each other.  Never taken on the conversion path. */
+    private final Object _loading = new Object();
+
+    /** Source of version numbers. */
+    private final AtomicLong _versions = new AtomicLong();
+
+    /** Notifies me of changes, once started. */
+    private WatchService _watchService;
+
+    /** Thread handling changes, once started. */
+    private Thread _watcher;
+}
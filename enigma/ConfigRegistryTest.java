@@ -0,0 +1,98 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Tests of ConfigRegistry.
+ *  @author Eric Huang
+ */
+public class ConfigRegistryTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** A small configuration whose reflector is REFLECTOR's cycles. */
+    private static String config(String reflector) {
+        return "A-Z\n3 1\n"
+            + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+            + " BETA N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+            + " B R " + reflector + "\n";
+    }
+
+    /** Reflector B. */
+    private static final String B = "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) "
+        + "(IJ) (LO) (MP) (RX) (SZ) (TV)";
+
+    /** Reflector C. */
+    private static final String C = "(AR) (BD) (CO) (EJ) (FN) (GT) (HK) "
+        + "(IV) (LM) (PW) (QZ) (SX) (UY)";
+
+    /** Return the conversion of HELLO by M set to "* B BETA I AA". */
+    private static String hello(Machine m) {
+        Main.applySetting(m, "* B BETA I AA");
+        return m.convert("HELLO");
+    }
+
+    /** Wait until configuration NAME of REGISTRY is newer than VERSION,
+     *  or the test times out. */
+    private static void awaitNewer(ConfigRegistry registry, String name,
+                                   long version) throws InterruptedException {
+        while (registry.get(name) == null
+               || registry.get(name).version() <= version) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void checkReload() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("registry");
+        Path file = dir.resolve("net" + ConfigRegistry.SUFFIX);
+        Files.writeString(file, config(B));
+        Files.writeString(dir.resolve("ignored.txt"), "not a config");
+        try (ConfigRegistry registry = new ConfigRegistry(dir)) {
+            assertEquals(1, registry.names().size());
+            Machine old = registry.machine("net");
+            String before = hello(registry.machine("net"));
+            registry.start();
+            ConfigRegistry.Config first = registry.get("net");
+
+            Files.writeString(file, config(C));
+            awaitNewer(registry, "net", first.version());
+            String after = hello(registry.machine("net"));
+            assertFalse(before.equals(after));
+            assertEquals(before, hello(old));
+
+            long current = registry.get("net").version();
+            Files.writeString(file, "A-Z\n3 1\n I MQ (AB\n");
+            while (!registry.failures().containsKey("net")) {
+                Thread.sleep(10);
+            }
+            assertEquals(current, registry.get("net").version());
+            assertEquals(after, hello(registry.machine("net")));
+
+            Path other = dir.resolve("other" + ConfigRegistry.SUFFIX);
+            Files.writeString(other, config(B));
+            awaitNewer(registry, "other", 0);
+            assertEquals(before, hello(registry.machine("other")));
+            Files.delete(other);
+            while (registry.get("other") != null) {
+                Thread.sleep(10);
+            }
+        } finally {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                for (Path path : files) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+}
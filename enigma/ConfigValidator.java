@@ -0,0 +1,542 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Checks the text of a configuration file and reports every problem it
+ *  finds, each with its line and column, rather than stopping at the
+ *  first as Main does.  Beyond what Main checks, it reports characters
+ *  repeated in an alphabet, a rotor's cycles or its notches; cycle and
+ *  notch characters missing from the alphabet; misplaced parentheses;
+ *  notches on rotors that do not move; reflectors that map a character
+ *  to itself; repeated rotor names; and libraries that no setting could
+ *  use.
+ *
+ *  The text is split into rotor descriptions in one pass, and the rotors
+ *  are then checked in parallel.  Checking a rotor takes time
+ *  proportional to its description (plus the alphabet size, for
+ *  reflectors), since each worker thread marks the characters it has
+ *  seen in an array indexed by alphabet position and stamped with the
+ *  rotor's number, which never needs clearing.
+ *  @author Eric Huang
+ */
+final class ConfigValidator {
+
+    /** One problem in a configuration. */
+    static final class Problem {
+
+        /** A problem described by MESSAGE at line LINE, column COLUMN
+         *  (both numbered from 1). */
+        Problem(int line, int column, String message) {
+            _line = line;
+            _column = column;
+            _message = message;
+        }
+
+        /** Return the line number of the problem. */
+        int line() {
+            return _line;
+        }
+
+        /** Return the column number of the problem. */
+        int column() {
+            return _column;
+        }
+
+        /** Return the description of the problem. */
+        String message() {
+            return _message;
+        }
+
+        @Override
+        public String toString() {
+            return _line + ":" + _column + ": " + _message;
+        }
+
+        /** Location. */
+        private final int _line, _column;
+
+        /** Description. */
+        private final String _message;
+    }
+
+    /** Check each configuration file named in ARGS, printing its problems
+     *  as FILE:LINE:COLUMN: MESSAGE.  Exits with code 1 if there are
+     *  any. */
+    public static void main(String... args) {
+        boolean ok = true;
+        for (String name : args) {
+            try {
+                for (Problem problem : validate(Files.readString(
+                         Paths.get(name)))) {
+                    System.out.printf("%s:%s%n", name, problem);
+                    ok = false;
+                }
+            } catch (IOException excp) {
+                System.err.printf("Error: could not read %s%n", name);
+                ok = false;
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /** Return the problems in the configuration TEXT, in order of
+     *  position, checking rotors in the common fork-join pool. */
+    static List<Problem> validate(String text) {
+        return validate(text, ForkJoinPool.commonPool());
+    }
+
+    /** Return the problems in the configuration TEXT, in order of
+     *  position, checking rotors in POOL. */
+    static List<Problem> validate(String text, ForkJoinPool pool) {
+        ConfigValidator validator = new ConfigValidator(text);
+        validator.parse();
+        if (!validator._rotors.isEmpty() && validator._index != null) {
+            pool.invoke(validator.new Check(0, validator._rotors.size()));
+        }
+        validator.checkLibrary();
+        ArrayList<Problem> result = new ArrayList<>(validator._problems);
+        for (RotorSpec rotor : validator._rotors) {
+            result.addAll(rotor.problems);
+        }
+        result.sort(Comparator.comparingInt(Problem::line)
+                    .thenComparingInt(Problem::column));
+        return Collections.unmodifiableList(result);
+    }
+
+    /** A validator for TEXT. */
+    private ConfigValidator(String text) {
+        _text = text;
+    }
+
+    /** A whitespace-delimited word of the text. */
+    private static final class Token {
+
+        /** The word TEXT, starting at LINE and COLUMN. */
+        Token(String text, int line, int column) {
+            this.text = text;
+            this.line = line;
+            this.column = column;
+        }
+
+        /** Contents. */
+        final String text;
+
+        /** Position of the first character. */
+        final int line, column;
+    }
+
+    /** The description of one rotor. */
+    private static final class RotorSpec {
+
+        /** A rotor whose name is NAME, numbered NUMBER from 1. */
+        RotorSpec(Token name, int number) {
+            this.name = name;
+            this.number = number;
+        }
+
+        /** Name. */
+        final Token name;
+
+        /** Position in the library, from 1. */
+        final int number;
+
+        /** Type letter and notches, or null if missing. */
+        Token details;
+
+        /** Words holding the cycles. */
+        final ArrayList<Token> cycles = new ArrayList<>();
+
+        /** Problems found in this rotor. */
+        final ArrayList<Problem> problems = new ArrayList<>();
+
+        /** Record a problem at column COLUMN of TOKEN described by FORMAT
+         *  and ARGS. */
+        void report(Token token, int column, String format,
+                    Object... args) {
+            problems.add(new Problem(token.line, token.column + column,
+                                     String.format(format, args)));
+        }
+    }
+
+    /** Split _text into the alphabet, the rotor and pawl counts and the
+     *  rotor descriptions, recording the problems found on the way. */
+    private void parse() {
+        int end = _text.indexOf('\n');
+        end = end < 0 ? _text.length() : end;
+        String alphabet = _text.substring(0, end);
+        if (alphabet.endsWith("\r")) {
+            alphabet = alphabet.substring(0, alphabet.length() - 1);
+        }
+        parseAlphabet(alphabet);
+        ArrayList<Token> tokens = tokens(end);
+        int[] counts = new int[2];
+        String[] what = {"rotor", "pawl"};
+        for (int k = 0; k < 2; k += 1) {
+            if (k >= tokens.size()) {
+                report(lastLine(), 0, "missing %s number", what[k]);
+                return;
+            }
+            Token token = tokens.get(k);
+            if (!token.text.matches("[0-9]{1,9}")) {
+                report(token, 0, "bad %s number: %s", what[k], token.text);
+                return;
+            }
+            counts[k] = Integer.parseInt(token.text);
+        }
+        _slots = counts[0];
+        _pawls = counts[1];
+        _counts = tokens.get(0);
+        if (_slots < 2 || _pawls >= _slots) {
+            report(tokens.get(0), 0, "cannot have %d pawls with %d rotors",
+                   _pawls, _slots);
+        }
+        RotorSpec rotor = null;
+        for (int k = 2; k < tokens.size(); k += 1) {
+            Token token = tokens.get(k);
+            if (rotor != null && rotor.details == null) {
+                rotor.details = token;
+            } else if (rotor != null && token.text.startsWith("(")) {
+                rotor.cycles.add(token);
+            } else {
+                rotor = new RotorSpec(token, _rotors.size() + 1);
+                _rotors.add(rotor);
+            }
+        }
+    }
+
+    /** Check the alphabet line ALPHABET and set up _index for it. */
+    private void parseAlphabet(String alphabet) {
+        if (alphabet.matches("[A-Z]-[A-Z]")) {
+            if (alphabet.charAt(0) > alphabet.charAt(2)) {
+                report(1, 1, "empty alphabet range %s", alphabet);
+                return;
+            }
+            index(alphabet.charAt(0) + "", alphabet.charAt(2));
+            return;
+        } else if (alphabet.equals("00-FF")) {
+            _hex = true;
+            _index = new int[ByteAlphabet.SIZE];
+            _size = ByteAlphabet.SIZE;
+            for (int i = 0; i < _size; i += 1) {
+                _index[i] = i;
+            }
+            return;
+        } else if (alphabet.isEmpty()
+                   || !alphabet.substring(0, 1).matches("[A-Za-z0-9]")) {
+            report(1, 1, "bad alphabet");
+            return;
+        }
+        index(alphabet, (char) 0);
+    }
+
+    /** Set up _index for an alphabet consisting of the characters of
+     *  CHARS, followed by the characters after the last one up to LAST
+     *  if LAST is not 0, reporting characters that are repeated or not
+     *  allowed. */
+    private void index(String chars, char last) {
+        if (last != 0) {
+            StringBuilder all = new StringBuilder();
+            for (char c = chars.charAt(0); c <= last; c += 1) {
+                all.append(c);
+            }
+            chars = all.toString();
+        }
+        char max = 0;
+        for (int i = 0; i < chars.length(); i += 1) {
+            max = (char) Math.max(max, chars.charAt(i));
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            if (Character.isWhitespace(c) || c == '(' || c == ')'
+                || c == '*') {
+                report(1, i + 1, "character '%c' not allowed in alphabet",
+                       c);
+            } else if (_index[c] != -1) {
+                report(1, i + 1, "'%c' repeated in alphabet", c);
+            } else {
+                _index[c] = _size;
+                _size += 1;
+            }
+        }
+    }
+
+    /** Return the words of _text after position START. */
+    private ArrayList<Token> tokens(int start) {
+        ArrayList<Token> result = new ArrayList<>();
+        int line = 1, lineStart = 0;
+        if (start < _text.length()) {
+            line = 2;
+            lineStart = start + 1;
+        }
+        for (int i = start + 1; i < _text.length();) {
+            char c = _text.charAt(i);
+            if (c == '\n') {
+                line += 1;
+                lineStart = i + 1;
+                i += 1;
+            } else if (Character.isWhitespace(c)) {
+                i += 1;
+            } else {
+                int j = i;
+                while (j < _text.length()
+                       && !Character.isWhitespace(_text.charAt(j))) {
+                    j += 1;
+                }
+                result.add(new Token(_text.substring(i, j), line,
+                                     i - lineStart + 1));
+                i = j;
+            }
+        }
+        _lines = line;
+        return result;
+    }
+
+    /** Return a token standing for the end of the last line. */
+    private Token lastLine() {
+        return new Token("", _lines, 1);
+    }
+
+    /** Checks the rotors in a range of _rotors. */
+    private final class Check extends RecursiveAction {
+
+        /** Checks rotors LOW .. HIGH-1. */
+        Check(int low, int high) {
+            _low = low;
+            _high = high;
+        }
+
+        @Override
+        protected void compute() {
+            if (_high - _low > GRAIN) {
+                int mid = (_low + _high) >>> 1;
+                invokeAll(new Check(_low, mid), new Check(mid, _high));
+                return;
+            }
+            int[] seen = _seen.get();
+            for (int r = _low; r < _high; r += 1) {
+                checkRotor(_rotors.get(r), seen);
+            }
+        }
+
+        /** Range of rotors. */
+        private final int _low, _high;
+    }
+
+    /** Check ROTOR, using SEEN, an array private to this thread whose
+     *  entries equal ROTOR's number only for characters already seen in
+     *  ROTOR's description. */
+    private void checkRotor(RotorSpec rotor, int[] seen) {
+        Token details = rotor.details;
+        String name = rotor.name.text;
+        if (details == null) {
+            rotor.report(rotor.name, 0, "rotor %s has no type", name);
+            return;
+        }
+        char type = details.text.charAt(0);
+        if (type != 'M' && type != 'N' && type != 'R') {
+            rotor.report(details, 0, "rotor %s has unknown type '%c'",
+                         name, type);
+        }
+        if (type != 'M' && details.text.length() > 1) {
+            rotor.report(details, 1, "rotor %s does not move but has "
+                         + "notches", name);
+        }
+        int stamp = rotor.number;
+        for (int k = 1; k < details.text.length(); k += _hex ? 2 : 1) {
+            int c = element(rotor, details, k, "notch");
+            if (c >= 0) {
+                if (seen[c] == stamp) {
+                    rotor.report(details, k, "notch %s repeated in rotor %s",
+                                 details.text.substring(k, k + width()),
+                                 name);
+                }
+                seen[c] = stamp;
+            }
+        }
+        stamp = -rotor.number;
+        int listed = 0;
+        for (Token token : rotor.cycles) {
+            String text = token.text;
+            int open = -1, members = 0;
+            for (int k = 0; k < text.length();) {
+                char c = text.charAt(k);
+                if (c == '(') {
+                    if (open >= 0) {
+                        rotor.report(token, k, "'(' inside a cycle");
+                    }
+                    open = k;
+                    members = 0;
+                    k += 1;
+                } else if (c == ')') {
+                    if (open < 0) {
+                        rotor.report(token, k, "')' outside a cycle");
+                    } else if (members == 1 && type == 'R') {
+                        rotor.report(token, open + 1, "reflector %s maps "
+                                     + "%s to itself", name,
+                                     text.substring(open + 1, k));
+                    }
+                    open = -1;
+                    k += 1;
+                } else {
+                    if (open < 0) {
+                        rotor.report(token, k, "'%c' outside a cycle", c);
+                    }
+                    int x = element(rotor, token, k, "cycle");
+                    if (x >= 0) {
+                        if (seen[x] == stamp) {
+                            rotor.report(token, k, "%s repeated in cycles "
+                                         + "of rotor %s",
+                                         text.substring(k, Math.min(
+                                             k + width(), text.length())),
+                                         name);
+                            members -= 1;
+                            listed -= 1;
+                        }
+                        seen[x] = stamp;
+                        listed += 1;
+                    }
+                    members += 1;
+                    k += width();
+                }
+            }
+            if (open >= 0) {
+                rotor.report(token, open, "unclosed cycle");
+            }
+        }
+        if (type == 'R' && listed < _size) {
+            rotor.report(rotor.name, 0, "reflector %s maps the %d "
+                         + "characters missing from its cycles to "
+                         + "themselves", name, _size - listed);
+        }
+    }
+
+    /** Return the number of characters naming an alphabet element. */
+    private int width() {
+        return _hex ? 2 : 1;
+    }
+
+    /** Return the alphabet index of the element at position K of TOKEN,
+     *  part of ROTOR's WHAT, or -1 (after reporting it) if there is
+     *  none. */
+    private int element(RotorSpec rotor, Token token, int k, String what) {
+        String text = token.text;
+        if (_hex) {
+            int hi = k + 1 < text.length()
+                ? Character.digit(text.charAt(k), HEX) : -1;
+            int lo = k + 1 < text.length()
+                ? Character.digit(text.charAt(k + 1), HEX) : -1;
+            if (hi < 0 || lo < 0) {
+                rotor.report(token, k, "bad hexadecimal %s in rotor %s",
+                             what, rotor.name.text);
+                return -1;
+            }
+            return hi * HEX + lo;
+        }
+        char c = text.charAt(k);
+        if (c >= _index.length || _index[c] < 0) {
+            rotor.report(token, k, "%s character '%c' of rotor %s is not "
+                         + "in the alphabet", what, c, rotor.name.text);
+            return -1;
+        }
+        return _index[c];
+    }
+
+    /** Check that rotor names are distinct and that some setting line
+     *  could use the library. */
+    private void checkLibrary() {
+        HashMap<String, Token> names = new HashMap<>();
+        int reflectors = 0, moving = 0;
+        for (RotorSpec rotor : _rotors) {
+            String name = rotor.name.text.toUpperCase();
+            Token other = names.putIfAbsent(name, rotor.name);
+            if (other != null) {
+                report(rotor.name, 0, "rotor %s already described at %d:%d",
+                       rotor.name.text, other.line, other.column);
+            }
+            if (rotor.details != null) {
+                char type = rotor.details.text.charAt(0);
+                reflectors += type == 'R' ? 1 : 0;
+                moving += type == 'M' ? 1 : 0;
+            }
+        }
+        if (_slots == 0) {
+            return;
+        }
+        if (reflectors == 0) {
+            report(_counts, 0, "no reflector described");
+        }
+        if (moving < _pawls) {
+            report(_counts, 0, "%d moving rotors described, but %d are "
+                   + "needed", moving, _pawls);
+        }
+        if (_rotors.size() - reflectors < _slots - 1) {
+            report(_counts, 0, "%d non-reflectors described, but %d "
+                   + "are needed", _rotors.size() - reflectors, _slots - 1);
+        }
+    }
+
+    /** Record a problem at column COLUMN of TOKEN described by FORMAT and
+     *  ARGS. */
+    private void report(Token token, int column, String format,
+                        Object... args) {
+        report(token.line, token.column + column, format, args);
+    }
+
+    /** Record a problem at LINE and COLUMN described by FORMAT and
+     *  ARGS. */
+    private void report(int line, int column, String format,
+                        Object... args) {
+        _problems.add(new Problem(line, column, String.format(format, args)));
+    }
+
+    /** Most rotors checked by one task. */
+    private static final int GRAIN = 16;
+
+    /** Radix of hexadecimal numerals. */
+    private static final int HEX = 16;
+
+    /** The configuration text. */
+    private final String _text;
+
+    /** Alphabet index of each character, -1 for those not in the
+     *  alphabet; null if the alphabet is unusable. */
+    private int[] _index;
+
+    /** True for the byte alphabet, whose elements are written as pairs
+     *  of hexadecimal digits. */
+    private boolean _hex;
+
+    /** Number of alphabet elements. */
+    private int _size;
+
+    /** Number of rotor slots and of pawls, or 0 if not read. */
+    private int _slots, _pawls;
+
+    /** The word giving the number of rotor slots. */
+    private Token _counts;
+
+    /** Number of lines in _text. */
+    private int _lines = 1;
+
+    /** The rotor descriptions, in order. */
+    private final ArrayList<RotorSpec> _rotors = new ArrayList<>();
+
+    /** Problems not belonging to one rotor. */
+    private final ArrayList<Problem> _problems = new ArrayList<>();
+
+    /** Per-thread marks of the characters seen in a rotor. */
+    private final ThreadLocal<int[]> _seen =
+        ThreadLocal.withInitial(() -> new int[_size]);
+}
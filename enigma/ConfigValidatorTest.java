@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+/** Tests of ConfigValidator.
+ *  @author Eric Huang
+ */
+public class ConfigValidatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return the problems in TEXT as strings, one per line. */
+    private static String problems(String text) {
+        StringBuilder result = new StringBuilder();
+        for (ConfigValidator.Problem problem
+                 : ConfigValidator.validate(text)) {
+            result.append(problem).append('\n');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkValid() {
+        assertEquals("", problems(
+            "A-Z\n 3 1\n"
+            + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+            + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+            + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+            + "     (RX) (SZ) (TV)\n"));
+        assertEquals("", problems(
+            "00-FF\n 2 1\n M1 M0A (00FF)\n"
+            + " R R" + hexPairs() + "\n"));
+    }
+
+    /** Return cycles pairing each byte value 2K with 2K+1. */
+    private static String hexPairs() {
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k < 256; k += 2) {
+            result.append(String.format(" (%02X%02X)", k, k + 1));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void checkReportsEverything() {
+        String text = "ABCA\n 3 1\n"
+            + " I MZ (AB) (CA)\n"
+            + " I NB (AC\n"
+            + " R R (AB) (C)\n";
+        assertEquals("1:4: 'A' repeated in alphabet\n"
+                     + "3:5: notch character 'Z' of rotor I is not in the "
+                     + "alphabet\n"
+                     + "3:14: A repeated in cycles of rotor I\n"
+                     + "4:2: rotor I already described at 3:2\n"
+                     + "4:5: rotor I does not move but has notches\n"
+                     + "4:7: unclosed cycle\n"
+                     + "5:12: reflector R maps C to itself\n",
+                     problems(text));
+        assertEquals("2:2: 0 moving rotors described, but 1 are needed\n"
+                     + "2:2: 0 non-reflectors described, but 2 are needed\n"
+                     + "3:2: reflector R maps the 2 characters missing from "
+                     + "its cycles to themselves\n",
+                     problems("ABCD\n 3 1\n R R (AB)\n"));
+    }
+
+    @Test
+    public void checkLibrary() {
+        assertEquals("2:2: cannot have 3 pawls with 3 rotors\n"
+                     + "2:2: no reflector described\n"
+                     + "2:2: 0 moving rotors described, but 3 are needed\n"
+                     + "2:2: 0 non-reflectors described, but 2 are needed\n",
+                     problems("A-Z\n 3 3\n"));
+        assertEquals("2:4: bad pawl number: x\n", problems("A-Z\n 3 x\n"));
+    }
+
+    @Test
+    public void checkLargeLibrary() {
+        String config = new LoadGenerator(8).config(2000, 500, 500, 100, 6);
+        List<ConfigValidator.Problem> problems =
+            ConfigValidator.validate(config);
+        assertTrue(problems.toString(), problems.isEmpty());
+        String broken = config.replaceFirst("\n N1 N", "\n N0 N");
+        assertEquals(1, ConfigValidator.validate(broken).size());
+    }
+
+}
@@ -0,0 +1,586 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** A file of encrypted keystrokes divided into chunks that can each be
+ *  decrypted on its own, so that a reader can start anywhere and can
+ *  decrypt on every core at once.
+ *
+ *  The file holds a header, the chunks, an index and a trailer.  The
+ *  header starts with MAGIC and gives the fingerprint of the
+ *  configuration (see Machine.fingerprint()), the number of keystrokes
+ *  per chunk, the bytes per keystroke (1 for alphabets of up to 256
+ *  characters, otherwise 2), the snapshot length and the setting line
+ *  the writer started from, padded to a multiple of 8 bytes.  Each chunk
+ *  holds the alphabet indices of its encrypted keystrokes.  For each
+ *  chunk, the index gives its file offset, the number of keystrokes
+ *  before it, its length, a CRC-32 of its bytes and a snapshot of the
+ *  machine as it was before the chunk's first keystroke.  The trailer,
+ *  the last TRAILER bytes, gives the index's offset, the number of
+ *  keystrokes and chunks, and END_MAGIC.  Numbers are big-endian.
+ *
+ *  Only characters of the alphabet are keystrokes.  Writers handle
+ *  other characters according to an InputFilter.Policy, which may not be
+ *  PASS, since a container has nowhere to keep them.
+ *  @author Eric Huang
+ */
+final class Container {
+
+    /** Encrypt or decrypt as described by ARGS:
+     *    encrypt CONFIG SETTING INPUT OUTPUT [CHUNK]
+     *        encrypts the alphabet characters of the text file INPUT with
+     *        the configuration in file CONFIG, starting from the setting
+     *        line SETTING, into container OUTPUT, with CHUNK keystrokes
+     *        per chunk;
+     *    decrypt CONFIG INPUT OUTPUT [THREADS]
+     *        decrypts the whole of container INPUT into the text file
+     *        OUTPUT, on THREADS threads;
+     *    chunk CONFIG INPUT K
+     *        decrypts chunk K of container INPUT to the standard output.
+     *  Text files are UTF-8. */
+    public static void main(String... args) {
+        try {
+            checkArguments(args);
+            Machine template = Main.loadConfig(args[1]);
+            switch (args[0]) {
+            case "encrypt":
+                encrypt(template, args[2], Paths.get(args[3]),
+                        Paths.get(args[4]), args.length > 5
+                        ? Integer.parseInt(args[5]) : DEFAULT_CHUNK);
+                break;
+            case "decrypt":
+                int threads = args.length > 4 ? Integer.parseInt(args[4])
+                    : Runtime.getRuntime().availableProcessors();
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try (Reader reader = new Reader(Paths.get(args[2]),
+                                                template);
+                     BufferedWriter out = Files.newBufferedWriter(
+                         Paths.get(args[3]), StandardCharsets.UTF_8)) {
+                    reader.decryptAll(out, pool);
+                } finally {
+                    pool.shutdown();
+                }
+                break;
+            case "chunk":
+                try (Reader reader = new Reader(Paths.get(args[2]),
+                                                template)) {
+                    System.out.println(reader.decrypt(
+                        Integer.parseInt(args[3])));
+                }
+                break;
+            default:
+                break;
+            }
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Throw the usage error unless ARGS names a command and gives it
+     *  as many arguments as it takes. */
+    static void checkArguments(String... args) {
+        int min = 1, max = 1;
+        if (args.length > 0) {
+            switch (args[0]) {
+            case "encrypt":
+                min = 5;
+                max = 6;
+                break;
+            case "decrypt":
+                min = 4;
+                max = 5;
+                break;
+            case "chunk":
+                min = max = 4;
+                break;
+            default:
+                throw error("unknown command: %s", args[0]);
+            }
+        }
+        if (args.length < min || args.length > max) {
+            throw error("usage: Container encrypt CONFIG SETTING INPUT "
+                        + "OUTPUT [CHUNK] | decrypt CONFIG INPUT OUTPUT "
+                        + "[THREADS] | chunk CONFIG INPUT K");
+        }
+    }
+
+    /** Not instantiable. */
+    private Container() {
+    }
+
+    /** Encrypt the alphabet characters of the UTF-8 text file INPUT with
+     *  TEMPLATE's configuration, set up by SETTING, into the container
+     *  OUTPUT with CHUNK keystrokes per chunk. */
+    private static void encrypt(Machine template, String setting, Path input,
+                                Path output, int chunk) throws IOException {
+        char[] buffer = new char[1 << 16];
+        try (BufferedReader in = Files.newBufferedReader(
+                 input, StandardCharsets.UTF_8);
+             Writer out = new Writer(output, template, setting, chunk,
+                                     InputFilter.Policy.SKIP)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /** Creates a container. */
+    static final class Writer implements AutoCloseable {
+
+        /** A writer creating FILE (replacing any existing file) that
+         *  encrypts with a copy of TEMPLATE set up by SETTING, putting
+         *  CHUNK keystrokes in each chunk and handling characters outside
+         *  the alphabet according to POLICY. */
+        Writer(Path file, Machine template, String setting, int chunk,
+               InputFilter.Policy policy) throws IOException {
+            if (chunk <= 0 || chunk > MAX_CHUNK) {
+                throw error("chunk size must be between 1 and %d",
+                            MAX_CHUNK);
+            }
+            if (policy == InputFilter.Policy.PASS) {
+                throw error("containers cannot hold characters outside "
+                            + "the alphabet");
+            }
+            _machine = template.copy();
+            Main.applySetting(_machine, setting);
+            _filter = new InputFilter(_machine.alphabet(), policy);
+            _width = width(_machine.alphabet().size());
+            _chunk = ByteBuffer.allocate(chunk * _width);
+            _channel = FileChannel.open(file, CREATE, WRITE,
+                                        TRUNCATE_EXISTING);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeLong(MAGIC);
+            header.writeLong(_machine.fingerprint());
+            header.writeInt(chunk);
+            header.writeInt(_width);
+            header.writeInt(_machine.snapshotLength());
+            header.writeUTF(setting);
+            while (header.size() % Long.BYTES != 0) {
+                header.writeByte(0);
+            }
+            writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+
+        /** Encrypt CHARS[START .. END-1] and append the result.  Blanks
+         *  are dropped, like other characters outside the alphabet under
+         *  InputFilter.Policy.SKIP. */
+        void write(char[] chars, int start, int end) throws IOException {
+            for (int i = start; i < end; i += 1) {
+                char ch = chars[i];
+                int c = _filter.index(ch);
+                if (c < 0) {
+                    if (ch != ' '
+                        && _filter.policy() == InputFilter.Policy.REJECT) {
+                        throw _filter.invalid(ch, i - start + 1);
+                    }
+                    continue;
+                }
+                if (_chunk.position() == 0) {
+                    _snapshot = _machine.snapshot();
+                }
+                _machine.advance();
+                c = _machine.convert(c);
+                if (_width == 1) {
+                    _chunk.put((byte) c);
+                } else {
+                    _chunk.putChar((char) c);
+                }
+                _keystrokes += 1;
+                if (!_chunk.hasRemaining()) {
+                    flushChunk();
+                }
+            }
+        }
+
+        /** Encrypt TEXT and append the result, as for write(char[], int,
+         *  int). */
+        void write(String text) throws IOException {
+            write(text.toCharArray(), 0, text.length());
+        }
+
+        /** Write out the chunk being filled, if it is not empty. */
+        private void flushChunk() throws IOException {
+            if (_chunk.position() == 0) {
+                return;
+            }
+            _chunk.flip();
+            CRC32 crc = new CRC32();
+            crc.update(_chunk.duplicate());
+            _index.add(new Entry(_channel.position(),
+                                 _keystrokes - _chunk.remaining() / _width,
+                                 _chunk.remaining() / _width,
+                                 (int) crc.getValue(), _snapshot));
+            writeFully(_chunk);
+            _chunk.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushChunk();
+                long indexOffset = _channel.position();
+                int snapshotLength = _machine.snapshotLength();
+                ByteBuffer entry = ByteBuffer.allocate(
+                    entryLength(snapshotLength));
+                for (Entry chunk : _index) {
+                    entry.clear();
+                    chunk.put(entry);
+                    entry.flip();
+                    writeFully(entry);
+                }
+                ByteBuffer trailer = ByteBuffer.allocate(TRAILER);
+                trailer.putLong(indexOffset).putLong(_keystrokes)
+                    .putInt(_index.size()).putInt(0).putLong(END_MAGIC);
+                trailer.flip();
+                writeFully(trailer);
+            } finally {
+                _channel.close();
+            }
+        }
+
+        /** Return the number of keystrokes written so far. */
+        long keystrokes() {
+            return _keystrokes;
+        }
+
+        /** Write all of BYTES at the end of the file. */
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            while (bytes.hasRemaining()) {
+                _channel.write(bytes);
+            }
+        }
+
+        /** The encrypting machine. */
+        private final Machine _machine;
+
+        /** Classifies input characters. */
+        private final InputFilter _filter;
+
+        /** Bytes per keystroke. */
+        private final int _width;
+
+        /** The chunk being filled. */
+        private final ByteBuffer _chunk;
+
+        /** The container file. */
+        private final FileChannel _channel;
+
+        /** Index entries of the chunks written. */
+        private final ArrayList<Entry> _index = new ArrayList<>();
+
+        /** Snapshot of the machine before the current chunk. */
+        private long[] _snapshot;
+
+        /** Keystrokes written. */
+        private long _keystrokes;
+    }
+
+    /** Reads a container.  Chunks may be decrypted concurrently. */
+    static final class Reader implements AutoCloseable {
+
+        /** A reader of the container FILE, which must have been written
+         *  with TEMPLATE's configuration. */
+        Reader(Path file, Machine template) throws IOException {
+            _channel = FileChannel.open(file, READ);
+            _template = template.copy();
+            long size = _channel.size();
+            if (size < TRAILER) {
+                throw error("%s is not a container", file);
+            }
+            ByteBuffer trailer = read(size - TRAILER, TRAILER);
+            long indexOffset = trailer.getLong();
+            _keystrokes = trailer.getLong();
+            int chunks = trailer.getInt();
+            trailer.getInt();
+            if (trailer.getLong() != END_MAGIC) {
+                throw error("%s is not a complete container", file);
+            }
+            DataInputStream header = new DataInputStream(
+                new ByteArrayInputStream(read(0, (int) Math.min(
+                    size, HEADER_LIMIT)).array()));
+            if (header.readLong() != MAGIC) {
+                throw error("%s is not a container", file);
+            }
+            if (header.readLong() != template.fingerprint()) {
+                throw error("%s was written with a different configuration",
+                            file);
+            }
+            _chunkSize = header.readInt();
+            _width = header.readInt();
+            int snapshotLength = header.readInt();
+            _setting = header.readUTF();
+            if (_width != width(template.alphabet().size())
+                || snapshotLength != template.snapshotLength()) {
+                throw error("%s has a bad header", file);
+            }
+            int entryLength = entryLength(snapshotLength);
+            if (indexOffset + (long) chunks * entryLength != size - TRAILER) {
+                throw error("%s has a bad index", file);
+            }
+            ByteBuffer index = read(indexOffset, chunks * entryLength);
+            _index = new Entry[chunks];
+            for (int k = 0; k < chunks; k += 1) {
+                _index[k] = Entry.get(index, snapshotLength);
+            }
+        }
+
+        /** Return the number of chunks. */
+        int chunks() {
+            return _index.length;
+        }
+
+        /** Return the number of keystrokes in the container. */
+        long keystrokes() {
+            return _keystrokes;
+        }
+
+        /** Return the number of keystrokes in each chunk but the last. */
+        int chunkSize() {
+            return _chunkSize;
+        }
+
+        /** Return the setting line the container was written from. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the number of keystrokes before chunk K. */
+        long position(int k) {
+            return _index[k].position;
+        }
+
+        /** Return the index of the chunk holding keystroke POSITION
+         *  (numbered from 0). */
+        int chunkAt(long position) {
+            if (position < 0 || position >= _keystrokes) {
+                throw error("no keystroke %d", position);
+            }
+            int low = 0, high = _index.length - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (_index[mid].position <= position) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        /** Return the decryption of chunk K. */
+        String decrypt(int k) throws IOException {
+            if (k < 0 || k >= _index.length) {
+                throw error("no chunk %d", k);
+            }
+            Entry entry = _index[k];
+            MappedByteBuffer bytes = _channel.map(
+                READ_ONLY, entry.offset, (long) entry.length * _width);
+            CRC32 crc = new CRC32();
+            crc.update(bytes.duplicate());
+            if ((int) crc.getValue() != entry.crc) {
+                throw error("chunk %d is corrupt", k);
+            }
+            Machine machine = _template.copy();
+            machine.restore(entry.snapshot);
+            Alphabet alphabet = machine.alphabet();
+            int size = alphabet.size();
+            char[] result = new char[entry.length];
+            for (int i = 0; i < result.length; i += 1) {
+                int c = _width == 1 ? bytes.get() & BYTE_MASK
+                    : bytes.getChar();
+                if (c >= size) {
+                    throw error("chunk %d is corrupt", k);
+                }
+                machine.advance();
+                result[i] = alphabet.toChar(machine.convert(c));
+            }
+            return new String(result);
+        }
+
+        /** Decrypt every chunk, on the threads of POOL, appending the
+         *  results to OUT in order.  At most a few chunks per thread are
+         *  held in memory at once. */
+        void decryptAll(Appendable out, ForkJoinPool pool)
+            throws IOException {
+            int window = Math.max(1, WINDOW_PER_THREAD
+                                  * pool.getParallelism());
+            ArrayList<ForkJoinTask<String>> pending = new ArrayList<>();
+            for (int next = 0, done = 0; done < _index.length;) {
+                while (next < _index.length && next - done < window) {
+                    int k = next;
+                    pending.add(pool.submit(() -> decrypt(k)));
+                    next += 1;
+                }
+                try {
+                    out.append(pending.get(0).join());
+                } catch (RuntimeException excp) {
+                    for (ForkJoinTask<String> task : pending) {
+                        task.cancel(false);
+                    }
+                    throw excp;
+                }
+                pending.remove(0);
+                done += 1;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            _channel.close();
+        }
+
+        /** Return LENGTH bytes at OFFSET of the container. */
+        private ByteBuffer read(long offset, int length) throws IOException {
+            ByteBuffer result = ByteBuffer.allocate(length);
+            while (result.hasRemaining()) {
+                if (_channel.read(result, offset + result.position()) < 0) {
+                    throw error("container is truncated");
+                }
+            }
+            result.flip();
+            return result;
+        }
+
+        /** The container file. */
+        private final FileChannel _channel;
+
+        /** A machine with the container's configuration. */
+        private final Machine _template;
+
+        /** Keystrokes per chunk, except perhaps the last. */
+        private final int _chunkSize;
+
+        /** Bytes per keystroke. */
+        private final int _width;
+
+        /** Setting line the writer started from. */
+        private final String _setting;
+
+        /** Total keystrokes. */
+        private final long _keystrokes;
+
+        /** The index. */
+        private final Entry[] _index;
+    }
+
+    /** The index entry of one chunk. */
+    private static final class Entry {
+
+        /** A chunk at file offset OFFSET, after POSITION keystrokes,
+         *  holding LENGTH keystrokes whose bytes have CRC-32 CRC,
+         *  starting with the machine in state SNAPSHOT. */
+        Entry(long offset, long position, int length, int crc,
+              long[] snapshot) {
+            this.offset = offset;
+            this.position = position;
+            this.length = length;
+            this.crc = crc;
+            this.snapshot = snapshot;
+        }
+
+        /** Write me to BYTES. */
+        void put(ByteBuffer bytes) {
+            bytes.putLong(offset).putLong(position).putInt(length)
+                .putInt(crc);
+            for (long word : snapshot) {
+                bytes.putLong(word);
+            }
+        }
+
+        /** Return the entry read from BYTES, whose snapshots have
+         *  SNAPSHOTLENGTH longs. */
+        static Entry get(ByteBuffer bytes, int snapshotLength) {
+            long offset = bytes.getLong(), position = bytes.getLong();
+            int length = bytes.getInt(), crc = bytes.getInt();
+            long[] snapshot = new long[snapshotLength];
+            for (int i = 0; i < snapshotLength; i += 1) {
+                snapshot[i] = bytes.getLong();
+            }
+            return new Entry(offset, position, length, crc, snapshot);
+        }
+
+        /** File offset. */
+        final long offset;
+
+        /** Keystrokes before the chunk. */
+        final long position;
+
+        /** Keystrokes in the chunk. */
+        final int length;
+
+        /** CRC-32 of the chunk's bytes. */
+        final int crc;
+
+        /** Machine state before the chunk. */
+        final long[] snapshot;
+    }
+
+    /** Return the bytes per keystroke for an alphabet of SIZE
+     *  characters. */
+    private static int width(int size) {
+        return size <= BYTE_MASK + 1 ? 1 : 2;
+    }
+
+    /** Return the bytes in an index entry with snapshots of
+     *  SNAPSHOTLENGTH longs. */
+    private static int entryLength(int snapshotLength) {
+        return 2 * Long.BYTES + 2 * Integer.BYTES
+            + snapshotLength * Long.BYTES;
+    }
+
+    /** First bytes of a container: "ENIGBOX1". */
+    static final long MAGIC = 0x454E4947424F5831L;
+
+    /** Last bytes of a container: "BOXINDX1". */
+    static final long END_MAGIC = 0x424F58494E445831L;
+
+    /** Bytes in the trailer. */
+    static final int TRAILER = 4 * Long.BYTES;
+
+    /** Default keystrokes per chunk. */
+    static final int DEFAULT_CHUNK = 1 << 20;
+
+    /** Most keystrokes per chunk. */
+    static final int MAX_CHUNK = 1 << 28;
+
+    /** Most bytes read when looking for the header. */
+    private static final int HEADER_LIMIT = 1 << 17;
+
+    /** Chunks decrypted ahead per thread by decryptAll. */
+    private static final int WINDOW_PER_THREAD = 2;
+
+    /** Mask extracting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+}
@@ -0,0 +1,161 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** Tests of Container.
+ *  @author Eric Huang
+ */
+public class ContainerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return a generated configuration with an alphabet of SIZE
+     *  characters. */
+    private static Machine machine(int size) {
+        return Main.parseConfig(new LoadGenerator(size).config(size, 5, 1,
+                                                               2, 5));
+    }
+
+    /** Return a message of LENGTH characters of M's alphabet, with a
+     *  blank after every ten. */
+    private static String message(Machine m, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(m.alphabet().toChar((i * 7 + i / 3) % m.alphabet()
+                                              .size()));
+            if (i % 10 == 9) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Check that a container of a message for M round-trips. */
+    private void checkRoundTrip(Machine m) throws IOException {
+        String setting = new LoadGenerator(1).setting(m);
+        String plain = message(m, 1000);
+        String letters = plain.replace(" ", "");
+        Path file = Files.createTempFile("container", ".box");
+        try {
+            try (Container.Writer out = new Container.Writer(
+                     file, m, setting, 64, InputFilter.Policy.REJECT)) {
+                out.write(plain.substring(0, 300));
+                out.write(plain.substring(300));
+                assertEquals(1000, out.keystrokes());
+            }
+            Machine direct = m.copy();
+            Main.applySetting(direct, setting);
+            String cipher = direct.convert(letters);
+            try (Container.Reader in = new Container.Reader(file, m)) {
+                assertEquals(setting, in.setting());
+                assertEquals(16, in.chunks());
+                assertEquals(1000, in.keystrokes());
+                assertEquals(15, in.chunkAt(999));
+                assertEquals(2, in.chunkAt(128));
+                assertEquals(1, in.chunkAt(127));
+                assertEquals(letters.substring(128, 192), in.decrypt(2));
+                assertEquals(letters.substring(960), in.decrypt(15));
+                StringBuilder all = new StringBuilder();
+                ForkJoinPool pool = new ForkJoinPool(3);
+                in.decryptAll(all, pool);
+                pool.shutdown();
+                assertEquals(letters, all.toString());
+            }
+            Machine decoder = m.copy();
+            Main.applySetting(decoder, setting);
+            assertEquals(letters, decoder.convert(cipher));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkRoundTrips() throws IOException {
+        checkRoundTrip(machine(26));
+        checkRoundTrip(machine(300));
+    }
+
+    @Test
+    public void checkArguments() {
+        Container.checkArguments("encrypt", "c", "* s", "in", "out");
+        Container.checkArguments("encrypt", "c", "* s", "in", "out", "64");
+        Container.checkArguments("decrypt", "c", "in", "out");
+        Container.checkArguments("decrypt", "c", "in", "out", "2");
+        Container.checkArguments("chunk", "c", "in", "0");
+        String[][] bad = {
+            {}, { "encrypt", "c", "* s", "in" },
+            { "encrypt", "c", "* s", "in", "out", "64", "x" },
+            { "decrypt", "c", "in" },
+            { "decrypt", "c", "in", "out", "2", "x" },
+            { "chunk", "c", "in" }, { "chunk", "c", "in", "0", "1" },
+            { "compress", "c", "in", "out" },
+        };
+        for (String[] args : bad) {
+            try {
+                Container.checkArguments(args);
+                fail("accepted " + String.join(" ", args));
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkRejects() throws IOException {
+        Machine m = machine(26);
+        String setting = new LoadGenerator(2).setting(m);
+        Path file = Files.createTempFile("container", ".box");
+        try {
+            try (Container.Writer out = new Container.Writer(
+                     file, m, setting, 10, InputFilter.Policy.SKIP)) {
+                out.write("HELLO, WORLD! THIS IS A TEST");
+            }
+            try {
+                new Container.Reader(file, machine(28)).close();
+                fail("accepted the wrong configuration");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("configuration"));
+            }
+            try (FileChannel channel = FileChannel.open(file, WRITE)) {
+                channel.write(ByteBuffer.wrap(new byte[] {(byte) 99}),
+                              Files.size(file) - Container.TRAILER
+                              - 3 * (24 + 8 * m.snapshotLength()) - 1);
+            }
+            try (Container.Reader in = new Container.Reader(file, m)) {
+                assertEquals(21, in.keystrokes());
+                assertEquals("HELLOWORLD", in.decrypt(0));
+                in.decrypt(2);
+                fail("missed a corrupt chunk");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().contains("corrupt"));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkFingerprint() {
+        Machine m = machine(26);
+        long fingerprint = m.fingerprint();
+        Main.applySetting(m, new LoadGenerator(3).setting(m));
+        assertEquals(fingerprint, m.fingerprint());
+        assertEquals(fingerprint, m.copy().fingerprint());
+        assertFalse(fingerprint == machine(28).fingerprint());
+    }
+
+}
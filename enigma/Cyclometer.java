@@ -0,0 +1,309 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Computes the characteristics used in Rejewski's attack: for a rotor
+ *  order and start position, the cycle structures of the products AD, BE
+ *  and CF, where A through F are the permutations the machine applies at
+ *  its first six keystrokes (with no plugboard, which does not affect
+ *  cycle structure).
+ *
+ *  The rotor orders considered are those allowed by a machine's
+ *  configuration: a reflector, then non-moving rotors, then moving rotors
+ *  in the rightmost numPawls() slots, with no rotor used twice.  A start
+ *  position is numbered in base alphabet-size with the leftmost
+ *  non-reflector rotor as the most significant digit.
+ *  @author Eric Huang
+ */
+class Cyclometer {
+
+    /** Number of keystrokes in a doubled three-letter message key. */
+    static final int KEYSTROKES = 6;
+
+    /** A cyclometer for the rotors available to MACHINE. */
+    Cyclometer(Machine machine) {
+        _size = machine.alphabet().size();
+        _slots = machine.numRotors() - 1;
+        int moving = machine.numPawls();
+        ArrayList<Rotor> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), rotating = new ArrayList<>();
+        for (Rotor rotor : machine.allRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor);
+            } else if (rotor.rotates()) {
+                rotating.add(rotor);
+            } else {
+                fixed.add(rotor);
+            }
+        }
+        if (moving < 1 || moving > _slots) {
+            throw error("cyclometer needs between 1 and %d moving rotors",
+                        _slots);
+        }
+        Rotor[] order = new Rotor[_slots + 1];
+        for (Rotor reflector : reflectors) {
+            order[0] = reflector;
+            enumerate(order, 1, _slots - moving, fixed, rotating);
+        }
+        if (_orders.isEmpty()) {
+            throw error("configuration allows no rotor orders");
+        }
+        long positions = 1;
+        for (int s = 0; s < _slots; s += 1) {
+            positions = Math.multiplyExact(positions, (long) _size);
+        }
+        _positions = positions;
+    }
+
+    /** Fill ORDER from slot K on with all choices of distinct rotors,
+     *  taking the first FIXEDSLOTS non-reflector slots from FIXED and the
+     *  rest from ROTATING, and record each complete order. */
+    private void enumerate(Rotor[] order, int k, int fixedSlots,
+                           ArrayList<Rotor> fixed,
+                           ArrayList<Rotor> rotating) {
+        if (k == order.length) {
+            _orders.add(order.clone());
+            return;
+        }
+        ArrayList<Rotor> choices = k <= fixedSlots ? fixed : rotating;
+        for (Rotor rotor : choices) {
+            boolean used = false;
+            for (int j = 1; j < k; j += 1) {
+                used |= order[j] == rotor;
+            }
+            if (!used) {
+                order[k] = rotor;
+                enumerate(order, k + 1, fixedSlots, fixed, rotating);
+            }
+        }
+    }
+
+    /** Return the number of rotor orders. */
+    int orders() {
+        return _orders.size();
+    }
+
+    /** Return the number of start positions of each rotor order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the names of the rotors of order K, reflector first. */
+    String[] orderNames(int k) {
+        Rotor[] order = _orders.get(k);
+        String[] result = new String[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            result[i] = order[i].name();
+        }
+        return result;
+    }
+
+    /** Return the alphabet size. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of non-reflector slots. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the setting line for order K at start position POSITION,
+     *  written with the characters of ALPHABET. */
+    String settingLine(int k, long position, Alphabet alphabet) {
+        StringBuilder result = new StringBuilder("*");
+        for (String name : orderNames(k)) {
+            result.append(' ').append(name);
+        }
+        result.append(' ');
+        char[] letters = new char[_slots];
+        for (int s = _slots - 1; s >= 0; s -= 1) {
+            letters[s] = alphabet.toChar((int) (position % _size));
+            position /= _size;
+        }
+        return result.append(letters).toString();
+    }
+
+    /** Return a fresh Worker that computes characteristics for order K.
+     *  Workers are not thread-safe; use one per thread. */
+    Worker worker(int k) {
+        return new Worker(_orders.get(k));
+    }
+
+    /** Return a 64-bit fingerprint of the characteristic TYPES, three
+     *  cycle types each listing cycle lengths in decreasing order.
+     *  Equal characteristics have equal fingerprints. */
+    static long fingerprint(int[][] types) {
+        long h = 0;
+        for (int[] type : types) {
+            for (int length : type) {
+                h = h * HASH_MULTIPLIER + length;
+            }
+            h = h * HASH_MULTIPLIER + HASH_SEPARATOR;
+        }
+        h ^= h >>> 33;
+        h *= MIX_1;
+        h ^= h >>> 33;
+        h *= MIX_2;
+        return h ^ (h >>> 33);
+    }
+
+    /** Computes characteristics for one rotor order, caching the
+     *  permutations of recently visited machine states. */
+    class Worker {
+
+        /** A worker for ORDER, a reflector followed by _slots rotors. */
+        Worker(Rotor[] order) {
+            _reflector = new int[_size];
+            _forward = new int[_slots][_size];
+            _backward = new int[_slots][_size];
+            _notches = new boolean[_slots][_size];
+            _carries = new boolean[_slots];
+            order[0].permutation().table(_reflector);
+            for (int s = 0; s < _slots; s += 1) {
+                Permutation perm = order[s + 1].permutation();
+                perm.table(_forward[s]);
+                Permutations.inverse(_forward[s], _backward[s]);
+                for (int c = 0; c < _size; c += 1) {
+                    _notches[s][c] = order[s + 1].notchAt(c);
+                }
+                _carries[s] = order[s].rotates();
+            }
+            _cacheKeys = new long[CACHE_SIZE];
+            Arrays.fill(_cacheKeys, -1);
+            _cachePerms = new int[CACHE_SIZE][_size];
+        }
+
+        /** Return the characteristic of start position POSITION: the
+         *  cycle types of AD, BE and CF. */
+        int[][] characteristic(long position) {
+            int[] posns = _posns;
+            for (int s = _slots - 1; s >= 0; s -= 1) {
+                posns[s] = (int) (position % _size);
+                position /= _size;
+            }
+            for (int k = 0; k < KEYSTROKES; k += 1) {
+                step(posns);
+                System.arraycopy(permutation(posns), 0, _perms[k], 0, _size);
+            }
+            int half = KEYSTROKES / 2;
+            int[][] result = new int[half][];
+            for (int k = 0; k < half; k += 1) {
+                Permutations.compose(_perms[k], _perms[k + half], _product);
+                result[k] = Arrays.copyOf(_lengths, Permutations.cycleType(
+                    _product, _lengths));
+            }
+            return result;
+        }
+
+        /** Advance POSNS as Machine.advance() would. */
+        void step(int[] posns) {
+            boolean right = true;
+            for (int s = _slots - 1; s >= 0; s -= 1) {
+                boolean trigger = _carries[s] && _notches[s][posns[s]];
+                if (trigger || right) {
+                    posns[s] = posns[s] + 1 == _size ? 0 : posns[s] + 1;
+                }
+                right = trigger;
+            }
+        }
+
+        /** Return the permutation the machine applies with its rotors at
+         *  POSNS, from the cache if possible.  The result must not be
+         *  modified, and is valid only until the next call. */
+        int[] permutation(int[] posns) {
+            long key = 0;
+            for (int s = 0; s < _slots; s += 1) {
+                key = key * _size + posns[s];
+            }
+            int slot = (int) (key ^ (key >>> 17)) & (CACHE_SIZE - 1);
+            int[] perm = _cachePerms[slot];
+            if (_cacheKeys[slot] == key) {
+                return perm;
+            }
+            _cacheKeys[slot] = key;
+            for (int c = 0; c < _size; c += 1) {
+                int x = c;
+                for (int s = _slots - 1; s >= 0; s -= 1) {
+                    x = shift(_forward[s], x, posns[s]);
+                }
+                x = _reflector[x];
+                for (int s = 0; s < _slots; s += 1) {
+                    x = shift(_backward[s], x, posns[s]);
+                }
+                perm[c] = x;
+            }
+            return perm;
+        }
+
+        /** Return C passed through WIRING at rotor position POSN. */
+        private int shift(int[] wiring, int c, int posn) {
+            int contact = c + posn;
+            if (contact >= _size) {
+                contact -= _size;
+            }
+            int result = wiring[contact] - posn;
+            return result < 0 ? result + _size : result;
+        }
+
+        /** Reflector wiring. */
+        private final int[] _reflector;
+
+        /** Forward and inverse wiring of each non-reflector slot. */
+        private final int[][] _forward, _backward;
+
+        /** Notch positions of each non-reflector slot. */
+        private final boolean[][] _notches;
+
+        /** True for slots whose left neighbor rotates. */
+        private final boolean[] _carries;
+
+        /** Current rotor positions. */
+        private final int[] _posns = new int[_slots];
+
+        /** Permutations at each of the keystrokes, copied since the
+         *  cache may evict them. */
+        private final int[][] _perms = new int[KEYSTROKES][_size];
+
+        /** Scratch space for a product. */
+        private final int[] _product = new int[_size];
+
+        /** Scratch space for the cycle type of _product. */
+        private final int[] _lengths = new int[_size];
+
+        /** Packed rotor positions of each cached permutation. */
+        private final long[] _cacheKeys;
+
+        /** Cached permutations. */
+        private final int[][] _cachePerms;
+    }
+
+    /** Number of cached machine permutations per worker (a power of 2).
+     *  Consecutive start positions share most of their states. */
+    private static final int CACHE_SIZE = 64;
+
+    /** Multiplier combining cycle lengths into a fingerprint. */
+    private static final long HASH_MULTIPLIER = 1_000_003;
+
+    /** Value separating the cycle types in a fingerprint. */
+    private static final long HASH_SEPARATOR = 0x5bd1e995L;
+
+    /** Finalizer constants (from MurmurHash3). */
+    private static final long MIX_1 = 0xff51afd7ed558ccdL,
+        MIX_2 = 0xc4ceb9fe1a85ec53L;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Number of non-reflector slots. */
+    private final int _slots;
+
+    /** Number of start positions per order. */
+    private final long _positions;
+
+    /** All rotor orders, reflector first. */
+    private final ArrayList<Rotor[]> _orders = new ArrayList<>();
+}
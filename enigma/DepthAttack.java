@@ -0,0 +1,342 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Ranks daily keys, that is rotor orders, given many messages sent with
+ *  the same rotor order and plugboard but each from its own start
+ *  position.  Every rotor order is enumerated once for all the messages:
+ *  at each start position, the permutations the machine applies at its
+ *  first keystrokes are computed once and each message is decrypted
+ *  through them, so adding a message adds only the cost of scoring it.
+ *  The permutations are kept in a sliding window, and start positions
+ *  are visited in the order the rotors step through them, so that moving
+ *  to the next start costs one new permutation rather than a window's
+ *  worth.
+ *
+ *  Each message keeps the best score it reaches at any start position,
+ *  abandoning a position once its score so far plus the most its
+ *  remaining characters could add no longer beats that best, and an
+ *  order's score is the sum of its messages' best scores: the evidence
+ *  of all the messages in depth.  Orders are searched in parallel.
+ *  @author Eric Huang
+ */
+final class DepthAttack {
+
+    /** Print the TOP best rotor orders for the messages, one per line, in
+     *  a file, scoring with bigram frequencies from a sample text.
+     *  Arguments are CONFIG SAMPLE MESSAGES [TOP [PREFIX]]. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 5) {
+                throw error("usage: DepthAttack CONFIG SAMPLE MESSAGES "
+                            + "[TOP [PREFIX]]");
+            }
+            Machine machine = Main.loadConfig(args[0]);
+            Alphabet alphabet = machine.alphabet();
+            TrialDecryptor.Scorer scorer =
+                TrialDecryptor.bigrams(alphabet, read(args[1]));
+            ArrayList<int[]> messages = new ArrayList<>();
+            for (String line : read(args[2]).split("\\R")) {
+                if (!line.isBlank()) {
+                    messages.add(TrialDecryptor.indices(alphabet, line));
+                }
+            }
+            int top = args.length > 3 ? Integer.parseInt(args[3]) : TOP;
+            int prefix = args.length > 4 ? Integer.parseInt(args[4])
+                : PREFIX;
+            DepthAttack attack =
+                new DepthAttack(machine, messages, scorer, prefix, null);
+            long start = System.nanoTime();
+            List<Result> results = attack.run(ForkJoinPool.commonPool());
+            System.out.printf("%d orders x %d positions, %d messages in "
+                              + "%.1f s%n", attack.orders(),
+                              attack.positions(), messages.size(),
+                              (System.nanoTime() - start) * 1e-9);
+            top = Math.min(top, results.size());
+            for (Result result : results.subList(0, top)) {
+                System.out.printf("%10.1f  %s%n", result.score(),
+                                  String.join(" ", result.order()));
+            }
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String read(String name) {
+        try {
+            return Files.readString(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** The outcome for one rotor order. */
+    static final class Result {
+
+        /** The result for ORDER, rotor names reflector first, whose
+         *  messages scored best SCORES at start positions POSITIONS. */
+        Result(String[] order, double[] scores, long[] positions,
+               String[] settings) {
+            _order = order;
+            _scores = scores;
+            _positions = positions;
+            _settings = settings;
+            double total = 0;
+            for (double score : scores) {
+                total += score;
+            }
+            _score = total;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] order() {
+            return _order;
+        }
+
+        /** Return the sum of my messages' best scores. */
+        double score() {
+            return _score;
+        }
+
+        /** Return the best score of message M. */
+        double score(int m) {
+            return _scores[m];
+        }
+
+        /** Return the start position at which message M scored best,
+         *  numbered as by Cyclometer. */
+        long position(int m) {
+            return _positions[m];
+        }
+
+        /** Return the setting line, without plugboard, at which message M
+         *  scored best. */
+        String setting(int m) {
+            return _settings[m];
+        }
+
+        /** Rotor names. */
+        private final String[] _order;
+
+        /** Best score and its position for each message. */
+        private final double[] _scores;
+
+        /** Start positions of the best scores. */
+        private final long[] _positions;
+
+        /** Setting lines of the best scores. */
+        private final String[] _settings;
+
+        /** Total score. */
+        private final double _score;
+    }
+
+    /** An attack on MESSAGES, alphabet indices, with the rotors of
+     *  MACHINE, scoring the first PREFIX characters of each decryption
+     *  with SCORER.  PLUGBOARD is the plugboard the messages share, or
+     *  null for none. */
+    DepthAttack(Machine machine, List<int[]> messages,
+                TrialDecryptor.Scorer scorer, int prefix,
+                Permutation plugboard) {
+        if (messages.isEmpty()) {
+            throw error("no messages to attack");
+        }
+        if (prefix <= 0) {
+            throw error("prefix must be positive");
+        }
+        _alphabet = machine.alphabet();
+        _cyclometer = new Cyclometer(machine);
+        if (_cyclometer.positions() > Integer.MAX_VALUE) {
+            throw error("too many start positions: %d",
+                        _cyclometer.positions());
+        }
+        _size = _alphabet.size();
+        _scorer = scorer;
+        _messages = new int[messages.size()][];
+        int window = 0;
+        for (int m = 0; m < _messages.length; m += 1) {
+            int[] message = messages.get(m);
+            _messages[m] =
+                Arrays.copyOf(message, Math.min(prefix, message.length));
+            window = Math.max(window, _messages[m].length);
+        }
+        if (window == 0) {
+            throw error("messages are empty");
+        }
+        _window = window;
+        _plugboard = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugboard[c] = plugboard == null ? c : plugboard.permute(c);
+        }
+    }
+
+    /** Return the number of rotor orders. */
+    int orders() {
+        return _cyclometer.orders();
+    }
+
+    /** Return the number of start positions of each order. */
+    long positions() {
+        return _cyclometer.positions();
+    }
+
+    /** Return the results for every rotor order, computed on POOL, best
+     *  first. */
+    List<Result> run(ForkJoinPool pool) {
+        Result[] results = new Result[orders()];
+        pool.invoke(new Orders(0, results.length, results));
+        ArrayList<Result> sorted = new ArrayList<>(Arrays.asList(results));
+        sorted.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return sorted;
+    }
+
+    /** Return the result for rotor order K. */
+    Result search(int k) {
+        Cyclometer.Worker worker = _cyclometer.worker(k);
+        int slots = _cyclometer.slots();
+        int count = (int) positions();
+        long[] visited = new long[(count + Long.SIZE - 1) / Long.SIZE];
+        int[][] window = new int[_window][_size];
+        int[] posns = new int[slots], ahead = new int[slots];
+        double[] best = new double[_messages.length];
+        long[] where = new long[_messages.length];
+        Arrays.fill(best, Double.NEGATIVE_INFINITY);
+        double top = _scorer.best();
+        for (int first = 0; first < count; first += 1) {
+            if ((visited[first / Long.SIZE] & 1L << first) != 0) {
+                continue;
+            }
+            for (int s = slots - 1, rest = first; s >= 0; s -= 1) {
+                posns[s] = rest % _size;
+                rest /= _size;
+            }
+            System.arraycopy(posns, 0, ahead, 0, slots);
+            for (int t = 0; t < _window; t += 1) {
+                worker.step(ahead);
+                fill(window[t], worker.permutation(ahead));
+            }
+            int head = 0;
+            int start = first;
+            while ((visited[start / Long.SIZE] & 1L << start) == 0) {
+                visited[start / Long.SIZE] |= 1L << start;
+                for (int m = 0; m < _messages.length; m += 1) {
+                    double score = score(_messages[m], window, head,
+                                         best[m], top);
+                    if (score > best[m]) {
+                        best[m] = score;
+                        where[m] = start;
+                    }
+                }
+                worker.step(posns);
+                start = 0;
+                for (int s = 0; s < slots; s += 1) {
+                    start = start * _size + posns[s];
+                }
+                worker.step(ahead);
+                fill(window[head], worker.permutation(ahead));
+                head = head + 1 == _window ? 0 : head + 1;
+            }
+        }
+        String[] settings = new String[_messages.length];
+        for (int m = 0; m < settings.length; m += 1) {
+            settings[m] = _cyclometer.settingLine(k, where[m], _alphabet);
+        }
+        return new Result(_cyclometer.orderNames(k), best, where, settings);
+    }
+
+    /** Set PERM to MACHINE, a permutation without plugboard, with my
+     *  plugboard applied before and after. */
+    private void fill(int[] perm, int[] machine) {
+        for (int c = 0; c < _size; c += 1) {
+            perm[c] = _plugboard[machine[_plugboard[c]]];
+        }
+    }
+
+    /** Return the score of MESSAGE decrypted through WINDOW, whose
+     *  keystroke 0 is at HEAD, or NEGATIVE_INFINITY if it falls short of
+     *  BEST, given that no character scores more than TOP. */
+    private double score(int[] message, int[][] window, int head,
+                         double best, double top) {
+        double score = 0;
+        int previous = -1;
+        for (int t = 0, w = head; t < message.length; t += 1) {
+            int c = window[w][message[t]];
+            score += _scorer.score(t, previous, c);
+            if (score + top * (message.length - t - 1) <= best) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            previous = c;
+            w = w + 1 == _window ? 0 : w + 1;
+        }
+        return score;
+    }
+
+    /** Searches a range of rotor orders. */
+    private final class Orders extends RecursiveAction {
+
+        /** Searches orders LOW .. HIGH-1, storing results in RESULTS. */
+        Orders(int low, int high, Result[] results) {
+            _low = low;
+            _high = high;
+            _results = results;
+        }
+
+        @Override
+        protected void compute() {
+            if (_high - _low > 1) {
+                int mid = (_low + _high) >>> 1;
+                invokeAll(new Orders(_low, mid, _results),
+                          new Orders(mid, _high, _results));
+                return;
+            }
+            _results[_low] = search(_low);
+        }
+
+        /** Range of orders. */
+        private final int _low, _high;
+
+        /** Where results go. */
+        private final Result[] _results;
+    }
+
+    /** Default number of orders main() prints. */
+    private static final int TOP = 10;
+
+    /** Default number of characters of each message scored. */
+    private static final int PREFIX = 40;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Source of rotor orders and stepping. */
+    private final Cyclometer _cyclometer;
+
+    /** Alphabet size. */
+    private final int _size;
+
+    /** Rates decryptions. */
+    private final TrialDecryptor.Scorer _scorer;
+
+    /** The messages, cut to the characters scored. */
+    private final int[][] _messages;
+
+    /** Keystrokes held in the window: the longest message scored. */
+    private final int _window;
+
+    /** The plugboard, as a table. */
+    private final int[] _plugboard;
+}
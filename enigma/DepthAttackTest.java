@@ -0,0 +1,153 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** Tests of DepthAttack.
+ *  @author Eric Huang
+ */
+public class DepthAttackTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Sample text for scoring, from which the messages are taken. */
+    private static final String SAMPLE =
+        "BY THE SHORES OF GITCHE GUMEE BY THE SHINING BIG SEA WATER STOOD "
+        + "THE WIGWAM OF NOKOMIS DAUGHTER OF THE MOON NOKOMIS DARK BEHIND "
+        + "IT ROSE THE FOREST ROSE THE BLACK AND GLOOMY PINE TREES ROSE THE "
+        + "FIRS WITH CONES UPON THEM BRIGHT BEFORE IT BEAT THE WATER BEAT "
+        + "THE CLEAR AND SUNNY WATER BEAT THE SHINING BIG SEA WATER THERE "
+        + "THE WRINKLED OLD NOKOMIS NURSED THE LITTLE HIAWATHA ROCKED HIM "
+        + "IN HIS LINDEN CRADLE BEDDED SOFT IN MOSS AND RUSHES SAFELY "
+        + "BOUND WITH REINDEER SINEWS";
+
+    /** Return the messages given by their plaintexts PLAINS, alphabet
+     *  indices, encrypted by MACHINE from the start given by each of
+     *  SETTINGS. */
+    private static List<int[]> encrypt(Machine machine, List<int[]> plains,
+                                       List<String> settings) {
+        ArrayList<int[]> result = new ArrayList<>();
+        for (int m = 0; m < plains.size(); m += 1) {
+            Machine sample = machine.copy();
+            Main.applySetting(sample, settings.get(m));
+            sample.setPlugboard(machine.plugboard());
+            int[] cipher = plains.get(m).clone();
+            for (int i = 0; i < cipher.length; i += 1) {
+                sample.advance();
+                cipher[i] = sample.convert(cipher[i]);
+            }
+            result.add(cipher);
+        }
+        return result;
+    }
+
+    /** Start positions that differ only by a double step give the same
+     *  keystrokes, so the keys found are checked by decrypting with them. */
+    @Test
+    public void checkFindsOrderAndMessageKeys() {
+        LoadGenerator generator = new LoadGenerator(4);
+        Machine machine =
+            Main.parseConfig(generator.config(26, 3, 0, 1, 4));
+        Cyclometer cyclometer = new Cyclometer(machine);
+        int order = 2;
+        Random random = new Random(5);
+        int[] sample = TrialDecryptor.indices(UPPER, SAMPLE);
+        ArrayList<int[]> plains = new ArrayList<>();
+        ArrayList<String> settings = new ArrayList<>();
+        for (int m = 0; m < 8; m += 1) {
+            int at = random.nextInt(sample.length - 30);
+            plains.add(Arrays.copyOfRange(sample, at, at + 30));
+            settings.add(cyclometer.settingLine(
+                order, random.nextInt((int) cyclometer.positions()), UPPER));
+        }
+        List<int[]> messages = encrypt(machine, plains, settings);
+        DepthAttack attack =
+            new DepthAttack(machine, messages,
+                            TrialDecryptor.bigrams(UPPER, SAMPLE), 30, null);
+        List<DepthAttack.Result> results =
+            attack.run(ForkJoinPool.commonPool());
+        assertEquals(cyclometer.orders(), results.size());
+        DepthAttack.Result best = results.get(0);
+        assertArrayEquals(cyclometer.orderNames(order), best.order());
+        ArrayList<String> found = new ArrayList<>();
+        for (int m = 0; m < settings.size(); m += 1) {
+            found.add(best.setting(m));
+        }
+        List<int[]> decrypted = encrypt(machine, messages, found);
+        for (int m = 0; m < settings.size(); m += 1) {
+            assertArrayEquals(plains.get(m), decrypted.get(m));
+        }
+    }
+
+    @Test
+    public void checkScoresMatchMachine() {
+        for (int trial = 0; trial < 3; trial += 1) {
+            LoadGenerator generator = new LoadGenerator(10 + trial);
+            Machine machine =
+                Main.parseConfig(generator.config(6, 3, 1, 2, 4));
+            Alphabet alphabet = machine.alphabet();
+            Permutation plugboard = trial == 0 ? null
+                : new Permutation("(" + alphabet.toChar(0)
+                                  + alphabet.toChar(trial + 1) + ")",
+                                  alphabet);
+            if (plugboard != null) {
+                machine.setPlugboard(plugboard);
+            }
+            Random random = new Random(trial);
+            ArrayList<int[]> messages = new ArrayList<>();
+            for (int m = 0; m < 4; m += 1) {
+                int[] message = new int[5 + m * 3];
+                for (int i = 0; i < message.length; i += 1) {
+                    message[i] = random.nextInt(alphabet.size());
+                }
+                messages.add(message);
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 300; i += 1) {
+                text.append(alphabet.toChar(random.nextInt(3)
+                                            + random.nextInt(4)));
+            }
+            TrialDecryptor.Scorer scorer =
+                TrialDecryptor.bigrams(alphabet, text.toString());
+            DepthAttack attack =
+                new DepthAttack(machine, messages, scorer, 9, plugboard);
+            Cyclometer cyclometer = new Cyclometer(machine);
+            for (int k = 0; k < cyclometer.orders(); k += 1) {
+                DepthAttack.Result result = attack.search(k);
+                for (int m = 0; m < messages.size(); m += 1) {
+                    int[] message = messages.get(m);
+                    int length = Math.min(9, message.length);
+                    double best = Double.NEGATIVE_INFINITY;
+                    for (long p = 0; p < cyclometer.positions(); p += 1) {
+                        Machine sample = machine.copy();
+                        Main.applySetting(sample,
+                            cyclometer.settingLine(k, p, alphabet));
+                        sample.setPlugboard(machine.plugboard());
+                        double score = 0;
+                        int previous = -1;
+                        for (int i = 0; i < length; i += 1) {
+                            sample.advance();
+                            int c = sample.convert(message[i]);
+                            score += scorer.score(i, previous, c);
+                            previous = c;
+                        }
+                        best = Math.max(best, score);
+                    }
+                    assertEquals(best, result.score(m), 1e-9);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,554 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static enigma.EnigmaException.*;
+
+/** Checks every conversion path against a direct simulation of the
+ *  machine.  Each case is a random configuration from a LoadGenerator
+ *  and random input for it: setting lines and message lines.  The
+ *  reference simulates the rotors with nothing but their permutations and
+ *  notches, stepping them one keystroke at a time.  The Routes are the
+ *  alternatives: each Strategy, each kind of Engine, LaneEngine,
+ *  conversion between CharBuffers, and the serial, pipelined and
+ *  parallel line processors used by Main.  Any difference, or any
+ *  exception, fails the case, which is then shrunk to a short
+ *  reproducer.
+ *
+ *  Cases are determined by the run's seed and their number, and are
+ *  checked on several threads until a time budget runs out.
+ *  @author Eric Huang
+ */
+final class DifferentialFuzzer {
+
+    /** Fuzz as described by ARGS: SECONDS [THREADS [SEED]].  Prints the
+     *  reduced failing case, if any, and exits with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 1 || args.length > 3) {
+                throw error("usage: DifferentialFuzzer SECONDS [THREADS "
+                            + "[SEED]]");
+            }
+            double seconds = Double.parseDouble(args[0]);
+            int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+            long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+            DifferentialFuzzer fuzzer = new DifferentialFuzzer(seed, threads);
+            if (fuzzer.run((long) (seconds * 1e9), System.out) == null) {
+                return;
+            }
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A fuzzer checking the cases determined by SEED on THREADS
+     *  threads. */
+    DifferentialFuzzer(long seed, int threads) {
+        if (threads <= 0) {
+            throw error("need at least one thread");
+        }
+        _seed = seed;
+        _threads = threads;
+    }
+
+    /** Check cases for NANOS nanoseconds or until one fails, reporting to
+     *  LOG.  Return the failing case, reduced, or null if none failed. */
+    Case run(long nanos, PrintStream log) {
+        long start = System.nanoTime(), deadline = start + nanos;
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < _threads; t += 1) {
+            Thread thread = new Thread(() -> work(deadline), "fuzz-" + t);
+            thread.setDaemon(true);
+            workers.add(thread);
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.printf("%d cases checked in %.1f s on %d threads%n",
+                   _checked.get(), (System.nanoTime() - start) / 1e9,
+                   _threads);
+        Case failed = _failure.get();
+        if (failed == null) {
+            log.println("no differences found");
+            return null;
+        }
+        log.printf("case %d failed: %s%n", failed.number(), check(failed));
+        Case reduced = minimize(failed);
+        log.printf("reduced to %d lines: %s%n%s", reduced.lines().size(),
+                   check(reduced), reduced);
+        return reduced;
+    }
+
+    /** Check cases on behalf of one worker until DEADLINE or a
+     *  failure. */
+    private void work(long deadline) {
+        while (System.nanoTime() < deadline && _failure.get() == null) {
+            long number = _next.getAndIncrement();
+            Case c = generate(_seed * SEED_MULTIPLIER + number);
+            if (check(c) != null) {
+                _failure.compareAndSet(null, c);
+            }
+            _checked.incrementAndGet();
+        }
+    }
+
+    /** A configuration and the lines of input for it. */
+    static final class Case {
+
+        /** The case with configuration text CONFIG and input LINES,
+         *  generated with seed NUMBER. */
+        Case(long number, String config, List<String> lines) {
+            _number = number;
+            _config = config;
+            _lines = lines;
+        }
+
+        /** Return the seed I was generated from. */
+        long number() {
+            return _number;
+        }
+
+        /** Return my configuration text. */
+        String config() {
+            return _config;
+        }
+
+        /** Return my lines of input, the first a setting line. */
+        List<String> lines() {
+            return _lines;
+        }
+
+        /** Return my input as the text of an input file. */
+        String input() {
+            return String.join("\n", _lines) + "\n";
+        }
+
+        /** Return a case with my configuration and input LINES. */
+        Case withLines(List<String> lines) {
+            return new Case(_number, _config, lines);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("--- configuration%n%s%n--- input%n%s",
+                                 _config.trim(), input());
+        }
+
+        /** Seed I was generated from. */
+        private final long _number;
+
+        /** Configuration text. */
+        private final String _config;
+
+        /** Input lines. */
+        private final List<String> _lines;
+    }
+
+    /** Return the case generated from SEED. */
+    static Case generate(long seed) {
+        Random random = new Random(seed);
+        LoadGenerator generator = new LoadGenerator(seed);
+        int size = random.nextBoolean() ? UPPER_SIZE
+            : 2 + random.nextInt(MAX_SIZE - 1);
+        int fixed = random.nextInt(MAX_FIXED + 1);
+        int moving = 1 + random.nextInt(MAX_MOVING);
+        int slots = 2 + random.nextInt(fixed + moving);
+        String config = generator.config(size, moving, fixed,
+                                         1 + random.nextInt(2), slots);
+        StringBuilder input = new StringBuilder();
+        try {
+            generator.input(Main.parseConfig(config), input,
+                            1 + random.nextInt(MAX_CHARS), SETTING_RATE,
+                            MAX_LINE);
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        return new Case(seed, config,
+                        Arrays.asList(input.toString().split("\n")));
+    }
+
+    /** Return a description of the first difference between the
+     *  reference and a route on C, or null if there is none. */
+    static String check(Case c) {
+        List<String> expected = reference(c);
+        ArrayList<String> grouped = new ArrayList<>();
+        for (String line : expected) {
+            StringBuilder result = new StringBuilder();
+            Main.formatGroups(line.toCharArray(), 0, line.length(), result);
+            grouped.add(result.toString());
+        }
+        for (Route route : Route.values()) {
+            List<String> actual;
+            try {
+                actual = route.convert(c);
+            } catch (RuntimeException excp) {
+                return String.format("%s threw %s", route, excp);
+            }
+            List<String> wanted = route.grouped() ? grouped : expected;
+            for (int k = 0; k < Math.max(wanted.size(), actual.size());
+                 k += 1) {
+                String want = k < wanted.size() ? wanted.get(k) : null;
+                String got = k < actual.size() ? actual.get(k) : null;
+                if (want == null || !want.equals(got)) {
+                    return String.format("%s output line %d is %s, not %s",
+                                         route, k + 1, got, want);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return a case with C's configuration that fails check() and whose
+     *  input is as short as removing lines and characters from C's input
+     *  one chunk at a time can make it.  C must fail check(). */
+    static Case minimize(Case c) {
+        ArrayList<String> lines = new ArrayList<>(c.lines());
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (int chunk = lines.size() / 2; chunk >= 1; chunk /= 2) {
+                for (int k = 1; k + chunk <= lines.size(); ) {
+                    ArrayList<String> fewer = new ArrayList<>(lines);
+                    fewer.subList(k, k + chunk).clear();
+                    if (check(c.withLines(fewer)) != null) {
+                        lines = fewer;
+                        progress = true;
+                    } else {
+                        k += chunk;
+                    }
+                }
+            }
+            for (int k = 1; k < lines.size(); k += 1) {
+                String line = lines.get(k);
+                if (line.startsWith("*")) {
+                    continue;
+                }
+                for (int cut = line.length() / 2; cut >= 1; cut /= 2) {
+                    for (int at = 0; at + cut <= line.length(); ) {
+                        String shorter = line.substring(0, at)
+                            + line.substring(at + cut);
+                        lines.set(k, shorter);
+                        if (check(c.withLines(lines)) != null) {
+                            line = shorter;
+                            progress = true;
+                        } else {
+                            lines.set(k, line);
+                            at += cut;
+                        }
+                    }
+                }
+            }
+        }
+        return c.withLines(lines);
+    }
+
+    /** Return the conversion of each message line of C, computed
+     *  directly from the permutations and notches of the rotors. */
+    static List<String> reference(Case c) {
+        Machine machine = Main.parseConfig(c.config());
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : c.lines()) {
+            if (line.startsWith("*")) {
+                Main.applySetting(machine, line);
+                continue;
+            }
+            ArrayList<Rotor> rotors = machine.rotors();
+            int last = rotors.size() - 1;
+            int[] positions = new int[rotors.size()];
+            for (int s = 0; s <= last; s += 1) {
+                positions[s] = rotors.get(s).setting();
+            }
+            char[] text = line.toCharArray();
+            for (int k = 0; k < text.length; k += 1) {
+                if (text[k] == ' ') {
+                    continue;
+                }
+                boolean[] moves = new boolean[rotors.size()];
+                moves[last] = true;
+                for (int s = 1; s <= last; s += 1) {
+                    if (rotors.get(s).notchAt(positions[s])
+                        && rotors.get(s - 1).rotates()) {
+                        moves[s] = moves[s - 1] = true;
+                    }
+                }
+                for (int s = 0; s <= last; s += 1) {
+                    if (moves[s]) {
+                        positions[s] = (positions[s] + 1) % size;
+                    }
+                }
+                int x = machine.plugboard().permute(
+                    alphabet.toInt(text[k]));
+                for (int s = last; s >= 0; s -= 1) {
+                    Permutation perm = rotors.get(s).permutation();
+                    x = Math.floorMod(perm.permute((x + positions[s]) % size)
+                                      - positions[s], size);
+                }
+                for (int s = 1; s <= last; s += 1) {
+                    Permutation perm = rotors.get(s).permutation();
+                    x = Math.floorMod(perm.invert((x + positions[s]) % size)
+                                      - positions[s], size);
+                }
+                text[k] = alphabet.toChar(machine.plugboard().permute(x));
+            }
+            for (int s = 0; s <= last; s += 1) {
+                rotors.get(s).set(positions[s]);
+            }
+            result.add(new String(text));
+        }
+        return result;
+    }
+
+    /** The conversion paths checked against the reference. */
+    enum Route {
+        /** Machine.convert(String) under Strategy.ARITHMETIC. */
+        ARITHMETIC(c -> strategyLines(c, Strategy.ARITHMETIC), false),
+        /** Machine.convert(String) under Strategy.SHIFTED. */
+        SHIFTED(c -> strategyLines(c, Strategy.SHIFTED), false),
+        /** Machine.convert(String) under Strategy.SPECIALIZED. */
+        SPECIALIZED(c -> strategyLines(c, Strategy.SPECIALIZED), false),
+        /** An Engine from Engine.create for each message line. */
+        ENGINE(c -> engineLines(c, Engine::create), false),
+        /** An InterpretedEngine for each message line. */
+        INTERPRETED(c -> engineLines(c, InterpretedEngine::new), false),
+        /** A CompactMachine for each message line. */
+        COMPACT(c -> engineLines(c, CompactMachine::create), false),
+        /** A one-lane LaneEngine. */
+        LANES(DifferentialFuzzer::laneLines, false),
+        /** Machine.convert(CharBuffer, CharBuffer) with small outputs. */
+        BUFFERS(DifferentialFuzzer::bufferLines, false),
+        /** Main's serial processing of lines. */
+        SERIAL(c -> printed(c, (machine, input, output)
+                            -> Main.convertLines(machine, input, output)),
+               true),
+        /** A Pipeline. */
+        PIPELINE(c -> printed(c, (machine, input, output)
+                              -> new Pipeline(machine, input, output,
+                                              line -> Main.applySetting(
+                                                  machine, line)).run()),
+                 true),
+        /** A SegmentProcessor on three threads. */
+        SEGMENTS(c -> printed(c, (machine, input, output)
+                              -> new SegmentProcessor(machine, input, output,
+                                                      Main::applySetting,
+                                                      3).run()),
+                 true);
+
+        /** A route converting cases with CONVERTER, whose output lines are
+         *  in groups of five iff GROUPED. */
+        Route(Function<Case, List<String>> converter, boolean grouped) {
+            _converter = converter;
+            _grouped = grouped;
+        }
+
+        /** Return my conversion of the message lines of C. */
+        List<String> convert(Case c) {
+            return _converter.apply(c);
+        }
+
+        /** Return true iff my output is grouped as Main prints it. */
+        boolean grouped() {
+            return _grouped;
+        }
+
+        /** Converts cases. */
+        private final Function<Case, List<String>> _converter;
+
+        /** True iff output is grouped. */
+        private final boolean _grouped;
+    }
+
+    /** Processes a whole input. */
+    private interface Processor {
+        /** Apply settings from INPUT to MACHINE and print conversions of
+         *  messages on OUTPUT. */
+        void process(Machine machine, Scanner input, PrintStream output);
+    }
+
+    /** Return the lines printed by PROCESSOR on C's input. */
+    private static List<String> printed(Case c, Processor processor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream output =
+            new PrintStream(bytes, true, StandardCharsets.UTF_8);
+        processor.process(Main.parseConfig(c.config()),
+                          new Scanner(c.input()), output);
+        output.flush();
+        String text = bytes.toString(StandardCharsets.UTF_8);
+        ArrayList<String> result =
+            new ArrayList<>(Arrays.asList(text.split("\r?\n", -1)));
+        result.remove(result.size() - 1);
+        return result;
+    }
+
+    /** Return the conversions of C's message lines by
+     *  Machine.convert(String) under STRATEGY. */
+    private static List<String> strategyLines(Case c, Strategy strategy) {
+        Machine machine = Main.parseConfig(c.config());
+        machine.setStrategy(strategy);
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : c.lines()) {
+            if (line.startsWith("*")) {
+                Main.applySetting(machine, line);
+            } else {
+                result.add(machine.convert(line));
+            }
+        }
+        return result;
+    }
+
+    /** Return the conversions of C's message lines by an Engine made for
+     *  each by FACTORY from the machine's state.  Lines with nothing to
+     *  convert get no engine, since they may come before any setting
+     *  line, when the machine has no rotors to make one from. */
+    private static List<String> engineLines(
+        Case c, Function<Machine, Engine> factory) {
+        Machine machine = Main.parseConfig(c.config());
+        Alphabet alphabet = machine.alphabet();
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : c.lines()) {
+            if (line.startsWith("*")) {
+                Main.applySetting(machine, line);
+                continue;
+            }
+            if (line.isBlank()) {
+                result.add(line);
+                continue;
+            }
+            Engine engine = factory.apply(machine);
+            char[] text = line.toCharArray();
+            for (int k = 0; k < text.length; k += 1) {
+                if (text[k] != ' ') {
+                    text[k] = alphabet.toChar(
+                        engine.convert(alphabet.toInt(text[k])));
+                }
+            }
+            engine.store(machine);
+            result.add(new String(text));
+        }
+        return result;
+    }
+
+    /** Return the conversions of C's message lines by a one-lane
+     *  LaneEngine, which, like engineLines, skips lines with nothing to
+     *  convert. */
+    private static List<String> laneLines(Case c) {
+        Machine machine = Main.parseConfig(c.config());
+        Alphabet alphabet = machine.alphabet();
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : c.lines()) {
+            if (line.startsWith("*")) {
+                Main.applySetting(machine, line);
+                continue;
+            }
+            if (line.isBlank()) {
+                result.add(line);
+                continue;
+            }
+            char[] text = line.toCharArray();
+            int[] message = new int[text.length];
+            int n = 0;
+            for (char ch : text) {
+                if (ch != ' ') {
+                    message[n] = alphabet.toInt(ch);
+                    n += 1;
+                }
+            }
+            int[] converted = Machine.convert(new Machine[] {machine},
+                new int[][] {Arrays.copyOf(message, n)})[0];
+            for (int k = 0, i = 0; k < text.length; k += 1) {
+                if (text[k] != ' ') {
+                    text[k] = alphabet.toChar(converted[i]);
+                    i += 1;
+                }
+            }
+            result.add(new String(text));
+        }
+        return result;
+    }
+
+    /** Return the conversions of C's message lines by
+     *  Machine.convert(CharBuffer, CharBuffer), into output buffers
+     *  limited to a few characters at a time. */
+    private static List<String> bufferLines(Case c) {
+        Machine machine = Main.parseConfig(c.config());
+        Random random = new Random(c.number());
+        ArrayList<String> result = new ArrayList<>();
+        for (String line : c.lines()) {
+            if (line.startsWith("*")) {
+                Main.applySetting(machine, line);
+                continue;
+            }
+            CharBuffer in = CharBuffer.wrap(line);
+            CharBuffer out = CharBuffer.allocate(line.length());
+            while (in.hasRemaining()) {
+                out.limit(Math.min(out.capacity(), out.position() + 1
+                                   + random.nextInt(MAX_BUFFER)));
+                machine.convert(in, out);
+            }
+            out.flip();
+            result.add(out.toString());
+        }
+        return result;
+    }
+
+    /** Size of the alphabet A-Z. */
+    private static final int UPPER_SIZE = 26;
+
+    /** Largest other alphabet generated. */
+    private static final int MAX_SIZE = 40;
+
+    /** Most non-moving and moving rotors generated. */
+    private static final int MAX_FIXED = 2, MAX_MOVING = 6;
+
+    /** Most characters of input per case; each has at least one. */
+    private static final int MAX_CHARS = 3000;
+
+    /** Longest message line generated. */
+    private static final int MAX_LINE = 60;
+
+    /** Chance of a setting line before each message line. */
+    private static final double SETTING_RATE = 0.1;
+
+    /** Most characters converted per call in the BUFFERS route. */
+    private static final int MAX_BUFFER = 7;
+
+    /** Multiplier spreading the seeds of runs apart. */
+    private static final long SEED_MULTIPLIER = 1_000_003;
+
+    /** Seed of the run. */
+    private final long _seed;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** Number of the next case to check. */
+    private final AtomicLong _next = new AtomicLong();
+
+    /** Number of cases checked. */
+    private final AtomicLong _checked = new AtomicLong();
+
+    /** The first case found to fail. */
+    private final AtomicReference<Case> _failure = new AtomicReference<>();
+}
@@ -0,0 +1,68 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Tests of DifferentialFuzzer.
+ *  @author Eric Huang
+ */
+public class DifferentialFuzzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkGeneratedCasesAgree() {
+        for (long seed = 0; seed < 20; seed += 1) {
+            DifferentialFuzzer.Case c = DifferentialFuzzer.generate(seed);
+            assertTrue(c.lines().get(0).startsWith("*"));
+            assertNull(c.toString(), DifferentialFuzzer.check(c));
+        }
+    }
+
+    @Test
+    public void checkEveryCaseHasInput() {
+        for (long seed = 0; seed < 5000; seed += 1) {
+            DifferentialFuzzer.Case c = DifferentialFuzzer.generate(seed);
+            assertTrue(c.toString(), c.lines().get(0).startsWith("*"));
+        }
+        DifferentialFuzzer.Case c = DifferentialFuzzer.generate(7);
+        ArrayList<String> lines = new ArrayList<>();
+        lines.add("");
+        lines.addAll(c.lines());
+        assertNull(DifferentialFuzzer.check(c.withLines(lines)));
+    }
+
+    @Test
+    public void checkReference() {
+        DifferentialFuzzer.Case c = DifferentialFuzzer.generate(5);
+        Machine machine = Main.parseConfig(c.config());
+        List<String> expected = DifferentialFuzzer.reference(c);
+        int k = 0;
+        for (String line : c.lines()) {
+            if (line.startsWith("*")) {
+                Main.applySetting(machine, line);
+            } else {
+                assertEquals(machine.convert(line), expected.get(k));
+                k += 1;
+            }
+        }
+        assertEquals(k, expected.size());
+    }
+
+    @Test
+    public void checkRun() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertNull(new DifferentialFuzzer(3, 2)
+                   .run(500_000_000L, new PrintStream(bytes)));
+        assertTrue(bytes.toString().contains("no differences found"));
+    }
+}
@@ -1,5 +1,9 @@
 package enigma;
 
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
 /** Alphabet written as a sequence of letters.
  * @author Eric Huang
  */
@@ -9,6 +13,15 @@ public class DynamicAlphabet extends Alphabet {
      */
     DynamicAlphabet(String alphabet) {
         _alphabet = alphabet;
+        char max = 0;
+        for (int i = 0; i < alphabet.length(); i += 1) {
+            max = (char) Math.max(max, alphabet.charAt(i));
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = alphabet.length() - 1; i >= 0; i -= 1) {
+            _index[alphabet.charAt(i)] = i;
+        }
     }
 
     @Override
@@ -18,22 +31,30 @@ public class DynamicAlphabet extends Alphabet {
 
     @Override
     boolean contains(char ch) {
-        if (_alphabet.indexOf(ch) == -1) {
-            return false;
-        }
-        return true;
+        return ch < _index.length && _index[ch] != -1;
     }
 
     @Override
     char toChar(int index) {
+        if (index < 0 || index >= _alphabet.length()) {
+            throw error("character index out of range");
+        }
         return _alphabet.charAt(index);
     }
 
     @Override
     int toInt(char ch) {
-        return _alphabet.indexOf(ch);
+        int index = ch < _index.length ? _index[ch] : -1;
+        if (index == -1) {
+            throw error("character out of range");
+        }
+        return index;
     }
 
     /** Sequence of letters for this alphabet. */
     private String _alphabet;
+
+    /** Index of the first occurrence of each character in _alphabet, or
+     *  -1 if it does not occur. */
+    private int[] _index;
 }
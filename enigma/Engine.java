@@ -0,0 +1,41 @@
+package enigma;
+
+/** Converts keystrokes with a machine whose rotor order, plugboard and
+ *  non-moving rotors stay fixed, so that only the positions of the
+ *  moving rotors change.  Each conversion behaves exactly as
+ *  Machine.advance() followed by Machine.convert(int).  An engine starts
+ *  from the state of the machine it was created from and keeps its own
+ *  positions thereafter; store() copies them back.
+ *  @author Eric Huang
+ */
+interface Engine {
+
+    /** Return an engine for MACHINE's current state: a SpecializedEngine
+     *  if one can be generated for it, and otherwise an
+     *  InterpretedEngine. */
+    static Engine create(Machine machine) {
+        Engine result = EngineSpecializer.specialize(machine);
+        return result != null ? result : new InterpretedEngine(machine);
+    }
+
+    /** Advance the rotors and return the conversion of C, an alphabet
+     *  index. */
+    int convert(int c);
+
+    /** Replace MSG[START .. END-1], alphabet indices, by their
+     *  conversions, advancing before each. */
+    default void convert(int[] msg, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            msg[i] = convert(msg[i]);
+        }
+    }
+
+    /** Set my positions to those of the rotors of MACHINE, which must be
+     *  in the state I was created from apart from the positions of its
+     *  moving rotors. */
+    void load(Machine machine);
+
+    /** Set the rotors of MACHINE, which must have the rotor order I was
+     *  created from, to my positions. */
+    void store(Machine machine);
+}
@@ -0,0 +1,638 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Generates a SpecializedEngine for a machine state, as a hidden class
+ *  whose code is written for that state.
+ *
+ *  Once a setting is applied, only the positions of moving rotors
+ *  change.  The generated convert(int) therefore steps the moving rotors
+ *  with their notch tables and without branches, passes the keystroke
+ *  through a SHIFTED table (see Rotor.Lookup) for each moving rotor, and
+ *  folds each run of constant stages (the plugboard, and the non-moving
+ *  rotors and reflector at their settings) into a single table composed
+ *  at generation time.  For the usual layout, where the non-moving rotors
+ *  are at the left, a keystroke costs one table lookup per moving rotor
+ *  in each direction plus three more.  Tables live in static final
+ *  fields, which the JIT compiler treats as constants.
+ *
+ *  The code has no branches, so the class file needs no stack map
+ *  frames and is simple to write directly.  Classes are cached by the
+ *  state they were generated for, without the positions of moving
+ *  rotors, so machines that differ only in those share a class.
+ *  @author Eric Huang
+ */
+final class EngineSpecializer {
+
+    /** Not instantiable. */
+    private EngineSpecializer() {
+    }
+
+    /** Return a SpecializedEngine for MACHINE's current state, or null if
+     *  specialization is disabled or does not suit the machine. */
+    static SpecializedEngine specialize(Machine machine) {
+        if (!ENABLED) {
+            return null;
+        }
+        ArrayList<Rotor> rotors = machine.rotors();
+        int size = machine.alphabet().size();
+        int slots = rotors.size();
+        if (slots < 2 || slots > MAX_SLOTS || !rotors.get(0).reflecting()
+            || !rotors.get(slots - 1).rotates()
+            || Rotor.Lookup.forSize(size) != Rotor.Lookup.SHIFTED) {
+            return null;
+        }
+        for (int s = 0; s < slots; s += 1) {
+            if (rotors.indexOf(rotors.get(s)) != s) {
+                return null;
+            }
+        }
+        String key = key(machine);
+        MethodHandle constructor;
+        synchronized (CACHE) {
+            constructor = CACHE.get(key);
+            if (constructor == null) {
+                try {
+                    constructor = define(machine);
+                } catch (ReflectiveOperationException | LinkageError excp) {
+                    return null;
+                }
+                CACHE.put(key, constructor);
+            }
+        }
+        SpecializedEngine result;
+        try {
+            result = (SpecializedEngine) constructor.invoke();
+        } catch (Throwable excp) {
+            return null;
+        }
+        result.load(machine);
+        return result;
+    }
+
+    /** Return a description of MACHINE's state other than the positions
+     *  of its moving rotors. */
+    private static String key(Machine machine) {
+        StringBuilder result = new StringBuilder();
+        result.append(machine.fingerprint());
+        for (Rotor rotor : machine.rotors()) {
+            result.append(' ').append(machine.indexOf(rotor));
+            if (!rotor.rotates()) {
+                result.append('@').append(rotor.setting());
+            }
+        }
+        int size = machine.alphabet().size();
+        for (int c = 0; c < size; c += 1) {
+            result.append(c == 0 ? " | " : ",")
+                .append(machine.plugboard().permute(c));
+        }
+        return result.toString();
+    }
+
+    /** Return the tables passed to the static initializer of the class
+     *  being defined.  Called only from generated code. */
+    static int[][] pendingTables() {
+        return _pending;
+    }
+
+    /** Generate and define a class for MACHINE's state, and return its
+     *  constructor.  Must hold CACHE. */
+    private static MethodHandle define(Machine machine)
+        throws ReflectiveOperationException {
+        Generator generator = new Generator(machine);
+        byte[] bytes = generator.generate();
+        _pending = generator.tables();
+        try {
+            MethodHandles.Lookup lookup =
+                MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                                          MethodType.methodType(void.class))
+                .asType(MethodType.methodType(SpecializedEngine.class));
+        } finally {
+            _pending = null;
+        }
+    }
+
+    /** Writes the class file for one machine state. */
+    private static final class Generator {
+
+        /** A generator for MACHINE's current state. */
+        Generator(Machine machine) {
+            _rotors = machine.rotors();
+            _size = machine.alphabet().size();
+            _slots = _rotors.size();
+            _plugboard = machine.plugboard().table(new int[_size]);
+            _moving = new boolean[_slots];
+            for (int s = 0; s < _slots; s += 1) {
+                _moving[s] = _rotors.get(s).rotates();
+            }
+        }
+
+        /** Return the tables used by the generated class, in the order
+         *  of its static fields. */
+        int[][] tables() {
+            return _tables.toArray(new int[0][]);
+        }
+
+        /** Return the class file. */
+        byte[] generate() {
+            Code convert = convertMethod();
+            Code clinit = new Code();
+            clinit.invokestatic(THIS_PACKAGE + "EngineSpecializer",
+                                "pendingTables", "()[[I");
+            for (int k = 0; k < _tables.size(); k += 1) {
+                clinit.op(DUP).push(k).op(AALOAD).putstatic(table(k));
+            }
+            clinit.op(POP).op(RETURN);
+            Code init = new Code();
+            init.op(ALOAD_0).invokespecial(SUPER, "<init>", "()V")
+                .op(RETURN);
+            Code load = new Code(), save = new Code();
+            for (int s = 0; s < _slots; s += 1) {
+                if (_moving[s]) {
+                    load.op(ALOAD_0).op(ALOAD_1).push(s).op(IALOAD)
+                        .putfield(position(s));
+                    save.op(ALOAD_1).push(s).op(ALOAD_0)
+                        .getfield(position(s)).op(IASTORE);
+                }
+            }
+            load.op(RETURN);
+            save.op(RETURN);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                int thisClass = _pool.classRef(CLASS_NAME);
+                int superClass = _pool.classRef(SUPER);
+                ArrayList<byte[]> methods = new ArrayList<>();
+                methods.add(method(ACC_STATIC, "<clinit>", "()V", clinit,
+                                   0));
+                methods.add(method(0, "<init>", "()V", init, 1));
+                methods.add(method(ACC_PUBLIC, "convert", "(I)I", convert,
+                                   _locals));
+                methods.add(method(0, "load", "([I)V", load, 2));
+                methods.add(method(0, "save", "([I)V", save, 2));
+                ArrayList<byte[]> fields = new ArrayList<>();
+                for (int k = 0; k < _tables.size(); k += 1) {
+                    fields.add(field(ACC_PRIVATE | ACC_STATIC | ACC_FINAL,
+                                     table(k), "[I"));
+                }
+                for (int s = 0; s < _slots; s += 1) {
+                    if (_moving[s]) {
+                        fields.add(field(ACC_PRIVATE, position(s), "I"));
+                    }
+                }
+                out.writeInt(MAGIC);
+                out.writeShort(0);
+                out.writeShort(CLASS_VERSION);
+                _pool.write(out);
+                out.writeShort(ACC_FINAL | ACC_SUPER);
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(0);
+                out.writeShort(fields.size());
+                for (byte[] field : fields) {
+                    out.write(field);
+                }
+                out.writeShort(methods.size());
+                for (byte[] method : methods) {
+                    out.write(method);
+                }
+                out.writeShort(0);
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+            return bytes.toByteArray();
+        }
+
+        /** Return the code of convert(int). */
+        private Code convertMethod() {
+            Code code = new Code();
+            int last = _slots - 1;
+            int[] triggers = new int[_slots + 1];
+            int locals = 2;
+            for (int s = 1; s < _slots; s += 1) {
+                if (_moving[s] && _moving[s - 1]) {
+                    triggers[s] = locals;
+                    locals += 1;
+                    int[] notches = new int[_size];
+                    for (int p = 0; p < _size; p += 1) {
+                        notches[p] = _rotors.get(s).notchAt(p) ? 1 : 0;
+                    }
+                    code.getstatic(table(addTable(notches))).op(ALOAD_0)
+                        .getfield(position(s)).op(IALOAD).istore(triggers[s]);
+                }
+            }
+            int sum = locals;
+            locals += 1;
+            for (int s = 0; s < _slots; s += 1) {
+                if (!_moving[s]
+                    || (s != last && triggers[s] == 0
+                        && triggers[s + 1] == 0)) {
+                    continue;
+                }
+                code.op(ALOAD_0).op(ALOAD_0).getfield(position(s));
+                if (s == last) {
+                    code.push(1);
+                } else if (triggers[s] != 0 && triggers[s + 1] != 0) {
+                    code.iload(triggers[s]).iload(triggers[s + 1]).op(IOR);
+                } else {
+                    code.iload(triggers[s] + triggers[s + 1]);
+                }
+                code.op(IADD).istore(sum);
+                code.iload(sum).push(_size).push(_size - 1).iload(sum)
+                    .op(ISUB).push(SIGN_SHIFT).op(ISHR).op(IAND).op(ISUB)
+                    .putfield(position(s));
+            }
+            _locals = locals;
+
+            int[] pending = _plugboard.clone();
+            for (int s = last; s >= 0; s -= 1) {
+                pending = stage(code, pending, s, true);
+            }
+            for (int s = 1; s < _slots; s += 1) {
+                pending = stage(code, pending, s, false);
+            }
+            Permutations.compose(pending, _plugboard, pending);
+            lookup(code, pending);
+            code.iload(1).op(IRETURN);
+            return code;
+        }
+
+        /** Emit to CODE the conversion through slot S, forward if FORWARD
+         *  and otherwise backward, given that the table PENDING is still
+         *  to be applied, and return the table left to be applied after
+         *  it. */
+        private int[] stage(Code code, int[] pending, int s,
+                            boolean forward) {
+            Rotor rotor = _rotors.get(s);
+            if (!_moving[s]) {
+                int[] table = new int[_size];
+                for (int c = 0; c < _size; c += 1) {
+                    table[c] = forward ? rotor.convertForward(c)
+                        : rotor.convertBackward(c);
+                }
+                return Permutations.compose(pending, table, pending);
+            }
+            lookup(code, pending);
+            Rotor copy = rotor.copy();
+            int[] rows = new int[_size * _size];
+            for (int p = 0; p < _size; p += 1) {
+                copy.set(p);
+                for (int c = 0; c < _size; c += 1) {
+                    rows[p * _size + c] = forward ? copy.convertForward(c)
+                        : copy.convertBackward(c);
+                }
+            }
+            code.getstatic(table(addTable(rows))).op(ALOAD_0)
+                .getfield(position(s)).push(_size).op(IMUL).iload(1)
+                .op(IADD).op(IALOAD).istore(1);
+            return Permutations.identity(new int[_size]);
+        }
+
+        /** Emit to CODE the replacement of the keystroke by its image
+         *  under TABLE, unless TABLE is the identity. */
+        private void lookup(Code code, int[] table) {
+            for (int c = 0; c < table.length; c += 1) {
+                if (table[c] != c) {
+                    code.getstatic(table(addTable(table.clone())))
+                        .iload(1).op(IALOAD).istore(1);
+                    return;
+                }
+            }
+        }
+
+        /** Add TABLE to the static fields and return its number. */
+        private int addTable(int[] table) {
+            _tables.add(table);
+            return _tables.size() - 1;
+        }
+
+        /** Return the name of static table field K. */
+        private static String table(int k) {
+            return "t" + k;
+        }
+
+        /** Return the name of the position field of slot S. */
+        private static String position(int s) {
+            return "p" + s;
+        }
+
+        /** Return a field_info with ACCESS, NAME and DESCRIPTOR. */
+        private byte[] field(int access, String name, String descriptor)
+            throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(access);
+            out.writeShort(_pool.utf8(name));
+            out.writeShort(_pool.utf8(descriptor));
+            out.writeShort(0);
+            return bytes.toByteArray();
+        }
+
+        /** Return a method_info with ACCESS, NAME, DESCRIPTOR and CODE,
+         *  which uses LOCALS local variables. */
+        private byte[] method(int access, String name, String descriptor,
+                              Code code, int locals) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(access);
+            out.writeShort(_pool.utf8(name));
+            out.writeShort(_pool.utf8(descriptor));
+            out.writeShort(1);
+            byte[] body = code.bytes();
+            out.writeShort(_pool.utf8("Code"));
+            out.writeInt(2 + 2 + 4 + body.length + 2 + 2);
+            out.writeShort(MAX_STACK);
+            out.writeShort(locals);
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeShort(0);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        }
+
+        /** Straight-line bytecode for one method. */
+        private final class Code {
+
+            /** Append OPCODE and return me. */
+            Code op(int opcode) {
+                _code.write(opcode);
+                return this;
+            }
+
+            /** Append code pushing the int VALUE and return me. */
+            Code push(int value) {
+                if (value >= -1 && value <= ICONST_MAX) {
+                    return op(ICONST_0 + value);
+                } else if (value == (byte) value) {
+                    return op(BIPUSH).op(value & BYTE_MASK);
+                } else if (value == (short) value) {
+                    return op(SIPUSH).u2(value);
+                }
+                return op(LDC_W).u2(_pool.integer(value));
+            }
+
+            /** Append a load of int local variable N and return me. */
+            Code iload(int n) {
+                return op(ILOAD).op(n);
+            }
+
+            /** Append a store to int local variable N and return me. */
+            Code istore(int n) {
+                return op(ISTORE).op(n);
+            }
+
+            /** Append a load of my class's instance field NAME and return
+             *  me. */
+            Code getfield(String name) {
+                return op(GETFIELD).u2(_pool.fieldRef(CLASS_NAME, name, "I"));
+            }
+
+            /** Append a store to my class's instance field NAME and return
+             *  me. */
+            Code putfield(String name) {
+                return op(PUTFIELD).u2(_pool.fieldRef(CLASS_NAME, name, "I"));
+            }
+
+            /** Append a load of my class's static table NAME and return
+             *  me. */
+            Code getstatic(String name) {
+                return op(GETSTATIC).u2(_pool.fieldRef(CLASS_NAME, name,
+                                                       "[I"));
+            }
+
+            /** Append a store to my class's static table NAME and return
+             *  me. */
+            Code putstatic(String name) {
+                return op(PUTSTATIC).u2(_pool.fieldRef(CLASS_NAME, name,
+                                                       "[I"));
+            }
+
+            /** Append a call of static method NAME with DESCRIPTOR in class
+             *  OWNER and return me. */
+            Code invokestatic(String owner, String name, String descriptor) {
+                return op(INVOKESTATIC).u2(_pool.methodRef(owner, name,
+                                                           descriptor));
+            }
+
+            /** Append a call of constructor or private method NAME with
+             *  DESCRIPTOR in class OWNER and return me. */
+            Code invokespecial(String owner, String name,
+                               String descriptor) {
+                return op(INVOKESPECIAL).u2(_pool.methodRef(owner, name,
+                                                            descriptor));
+            }
+
+            /** Append the two-byte value VALUE and return me. */
+            private Code u2(int value) {
+                _code.write(value >> Byte.SIZE);
+                _code.write(value);
+                return this;
+            }
+
+            /** Return the code so far. */
+            byte[] bytes() {
+                return _code.toByteArray();
+            }
+
+            /** Code so far. */
+            private final ByteArrayOutputStream _code =
+                new ByteArrayOutputStream();
+        }
+
+        /** The inserted rotors. */
+        private final ArrayList<Rotor> _rotors;
+
+        /** Alphabet size and number of slots. */
+        private final int _size, _slots;
+
+        /** The plugboard as a table. */
+        private final int[] _plugboard;
+
+        /** True for slots holding moving rotors. */
+        private final boolean[] _moving;
+
+        /** Tables for the static fields. */
+        private final ArrayList<int[]> _tables = new ArrayList<>();
+
+        /** Local variables used by convert(int). */
+        private int _locals;
+
+        /** The constant pool. */
+        private final ConstantPool _pool = new ConstantPool();
+    }
+
+    /** The constant pool of a class file being written. */
+    private static final class ConstantPool {
+
+        /** Return the index of the UTF-8 constant S. */
+        int utf8(String s) {
+            return entry("U" + s, out -> {
+                out.writeByte(CONSTANT_UTF8);
+                out.writeUTF(s);
+            });
+        }
+
+        /** Return the index of the integer constant VALUE. */
+        int integer(int value) {
+            return entry("I" + value, out -> {
+                out.writeByte(CONSTANT_INTEGER);
+                out.writeInt(value);
+            });
+        }
+
+        /** Return the index of the class named NAME (in internal
+         *  form). */
+        int classRef(String name) {
+            int utf = utf8(name);
+            return entry("C" + name, out -> {
+                out.writeByte(CONSTANT_CLASS);
+                out.writeShort(utf);
+            });
+        }
+
+        /** Return the index of field NAME of type DESCRIPTOR in class
+         *  OWNER. */
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+        }
+
+        /** Return the index of method NAME of type DESCRIPTOR in class
+         *  OWNER. */
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+        }
+
+        /** Return the index of the member reference of kind TAG to NAME
+         *  with DESCRIPTOR in class OWNER. */
+        private int memberRef(int tag, String owner, String name,
+                              String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name), typeIndex = utf8(descriptor);
+            int nameAndType = entry("N" + name + " " + descriptor, out -> {
+                out.writeByte(CONSTANT_NAME_AND_TYPE);
+                out.writeShort(nameIndex);
+                out.writeShort(typeIndex);
+            });
+            return entry(tag + owner + "." + name + " " + descriptor,
+                         out -> {
+                             out.writeByte(tag);
+                             out.writeShort(ownerIndex);
+                             out.writeShort(nameAndType);
+                         });
+        }
+
+        /** Writes one constant. */
+        private interface Constant {
+            /** Write me to OUT. */
+            void write(DataOutputStream out) throws IOException;
+        }
+
+        /** Return the index of the constant identified by KEY, adding it,
+         *  written by CONSTANT, if it is new. */
+        private int entry(String key, Constant constant) {
+            Integer index = _indices.get(key);
+            if (index == null) {
+                try {
+                    constant.write(_out);
+                } catch (IOException excp) {
+                    throw new AssertionError(excp);
+                }
+                index = _indices.size() + 1;
+                _indices.put(key, index);
+            }
+            return index;
+        }
+
+        /** Write the constant pool count and entries to OUT. */
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(_indices.size() + 1);
+            out.write(_bytes.toByteArray());
+        }
+
+        /** Index of each constant, by key. */
+        private final HashMap<String, Integer> _indices = new HashMap<>();
+
+        /** The entries written so far. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+
+        /** Writes to _bytes. */
+        private final DataOutputStream _out = new DataOutputStream(_bytes);
+    }
+
+    /** True unless the system property enigma.specialize is false. */
+    private static final boolean ENABLED =
+        !"false".equals(System.getProperty("enigma.specialize"));
+
+    /** Most slots handled (limited by the local variables of
+     *  convert(int)). */
+    private static final int MAX_SLOTS = 64;
+
+    /** Most classes kept. */
+    private static final int CACHE_LIMIT = 64;
+
+    /** Constructors of the classes generated, by key(). */
+    private static final Map<String, MethodHandle> CACHE =
+        new LinkedHashMap<>(CACHE_LIMIT, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, MethodHandle> eldest) {
+                return size() > CACHE_LIMIT;
+            }
+        };
+
+    /** Tables for the class being defined; guarded by CACHE. */
+    private static int[][] _pending;
+
+    /** Package prefix of internal class names. */
+    private static final String THIS_PACKAGE = "enigma/";
+
+    /** Internal names of generated classes and their superclass. */
+    private static final String CLASS_NAME = THIS_PACKAGE + "Specialized",
+        SUPER = THIS_PACKAGE + "SpecializedEngine";
+
+    /** Class file magic number. */
+    private static final int MAGIC = 0xCAFEBABE;
+
+    /** Class file major version (Java 17). */
+    private static final int CLASS_VERSION = 61;
+
+    /** Operand stack depth allowed each method; more than any uses. */
+    private static final int MAX_STACK = 8;
+
+    /** Shift that turns a negative int into -1 and others into 0. */
+    private static final int SIGN_SHIFT = 31;
+
+    /** Mask extracting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    /** Access flags. */
+    private static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002,
+        ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    /** Constant pool tags. */
+    private static final int CONSTANT_UTF8 = 1, CONSTANT_INTEGER = 3,
+        CONSTANT_CLASS = 7, CONSTANT_FIELDREF = 9, CONSTANT_METHODREF = 10,
+        CONSTANT_NAME_AND_TYPE = 12;
+
+    /** Opcodes. */
+    private static final int ICONST_0 = 0x03, ICONST_MAX = 5,
+        BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13, ILOAD = 0x15,
+        ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, IALOAD = 0x2e, AALOAD = 0x32,
+        ISTORE = 0x36, IASTORE = 0x4f, POP = 0x57, DUP = 0x59,
+        IADD = 0x60, ISUB = 0x64, IMUL = 0x68, ISHR = 0x7a, IAND = 0x7e,
+        IOR = 0x80, IRETURN = 0xac, RETURN = 0xb1, GETSTATIC = 0xb2,
+        PUTSTATIC = 0xb3, GETFIELD = 0xb4, PUTFIELD = 0xb5,
+        INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Differential tests of Engine: SpecializedEngines and
+ *  InterpretedEngines against Machine.
+ *  @author Eric Huang
+ */
+public class EngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Check that ENGINE, created from MACHINE, converts KEYS random
+     *  keystrokes from RANDOM as MACHINE does and stores the same
+     *  settings, interrupting with calls of store(). */
+    private static void checkAgainst(Engine engine, Machine machine,
+                                     int keys, Random random) {
+        Machine stored = machine.copy();
+        int size = machine.alphabet().size();
+        for (int k = 0; k < keys; k += 1) {
+            int c = random.nextInt(size);
+            machine.advance();
+            assertEquals("keystroke " + k, machine.convert(c),
+                         engine.convert(c));
+            if (random.nextInt(100) == 0) {
+                engine.store(stored);
+                ArrayList<Rotor> expected = machine.rotors(),
+                    actual = stored.rotors();
+                for (int s = 0; s < expected.size(); s += 1) {
+                    assertEquals(expected.get(s).setting(),
+                                 actual.get(s).setting());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkSpecializedMatchesMachine() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 12; trial += 1) {
+            int size = trial % 2 == 0 ? 26 : 5 + trial;
+            LoadGenerator generator = new LoadGenerator(trial);
+            Machine machine = generatedMachine(generator,
+                generator.config(size, 6, 2, 2, 3 + trial % 4));
+            Engine engine = Engine.create(machine);
+            assertTrue(engine instanceof SpecializedEngine);
+            checkAgainst(engine, machine, 20000, random);
+        }
+    }
+
+    @Test
+    public void checkInterpretedMatchesMachine() {
+        Random random = new Random(2);
+        for (int trial = 0; trial < 4; trial += 1) {
+            LoadGenerator generator = new LoadGenerator(trial);
+            Machine machine = generatedMachine(generator, 26);
+            checkAgainst(new InterpretedEngine(machine), machine, 5000,
+                         random);
+        }
+    }
+
+    @Test
+    public void checkDoubleStepping() {
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        allRotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        allRotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        allRotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        allRotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "EK"));
+        allRotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        Machine machine = new Machine(UPPER, 5, 3, allRotors);
+        machine.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        machine.setRotors("AQDU");
+        machine.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        Engine engine = Engine.create(machine);
+        assertTrue(engine instanceof SpecializedEngine);
+        checkAgainst(engine, machine, 30000, new Random(3));
+    }
+
+    @Test
+    public void checkSharedClass() {
+        LoadGenerator generator = new LoadGenerator(7);
+        Machine machine =
+            Main.parseConfig(generator.config(26, 5, 1, 1, 5));
+        Main.applySetting(machine, generator.setting(machine));
+        Machine other = machine.copy();
+        other.rotors().get(other.rotors().size() - 1).set(3);
+        Engine first = Engine.create(machine),
+            second = Engine.create(other);
+        assertSame(first.getClass(), second.getClass());
+        Random random = new Random(4);
+        checkAgainst(first, machine, 2000, random);
+        checkAgainst(second, other, 2000, random);
+    }
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/** Encryption with one configuration, for use from other programs and
+ *  from any number of threads at once.  Each call converts one message
+ *  from the state given by a setting line, as Main does for the lines
+ *  after a setting line, except that the message is not upper-cased or
+ *  grouped: blanks are kept and do not advance the rotors, and any other
+ *  character outside the alphabet is an error.  Calls are independent:
+ *  rotors a setting line gives no position start at the first
+ *  character of the alphabet, not where another call left them.
+ *
+ *  Each distinct setting line is parsed and checked once, giving a
+ *  template machine that later calls copy their state from.  Calls borrow
+ *  machines from a small pool, taking and returning them with single
+ *  atomic operations, and messages given as CharSequences are converted
+ *  in a buffer private to each thread, so that once warmed up a call
+ *  allocates nothing but its result.  Errors in configurations, setting
+ *  lines and messages are reported as IllegalArgumentExceptions.
+ *  @author Eric Huang
+ */
+public final class EnigmaService {
+
+    /** Return a service for the configuration TEXT, in the format of
+     *  Main's configuration files. */
+    public static EnigmaService of(String text) {
+        try {
+            return new EnigmaService(Main.parseConfig(text));
+        } catch (EnigmaException excp) {
+            throw new IllegalArgumentException(excp.getMessage(), excp);
+        }
+    }
+
+    /** Return a service for the configuration in FILE. */
+    public static EnigmaService load(Path file) throws IOException {
+        return of(Files.readString(file));
+    }
+
+    /** A service converting with copies of MACHINE, which has no rotors
+     *  inserted. */
+    EnigmaService(Machine machine) {
+        _machine = machine;
+        _pool = new AtomicReferenceArray<>(
+            Integer.highestOneBit(
+                Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+    }
+
+    /** Return the conversion of MESSAGE from the state given by
+     *  SETTINGLINE. */
+    public String encrypt(String settingLine, CharSequence message) {
+        char[] scratch = _scratch.get();
+        int length = message.length();
+        if (scratch.length < length) {
+            scratch = new char[Math.max(length, scratch.length * 2)];
+            _scratch.set(scratch);
+        }
+        for (int i = 0; i < length; i += 1) {
+            scratch[i] = message.charAt(i);
+        }
+        int end = encrypt(settingLine, scratch, 0, length);
+        return new String(scratch, 0, end);
+    }
+
+    /** Replace MSG[START .. END-1] by its conversion from the state given
+     *  by SETTINGLINE, returning the end of the result, which is END. */
+    public int encrypt(String settingLine, char[] msg, int start, int end) {
+        Machine machine = acquire(settingLine);
+        try {
+            return machine.convert(msg, start, end);
+        } catch (EnigmaException excp) {
+            throw new IllegalArgumentException(excp.getMessage(), excp);
+        } finally {
+            release(machine);
+        }
+    }
+
+    /** Convert the characters remaining in IN to OUT from the state given
+     *  by SETTINGLINE, as many as IN has and OUT has room for, advancing
+     *  the positions of both.  Return the number converted. */
+    public int encrypt(String settingLine, CharBuffer in, CharBuffer out) {
+        Machine machine = acquire(settingLine);
+        try {
+            return machine.convert(in, out);
+        } catch (EnigmaException excp) {
+            throw new IllegalArgumentException(excp.getMessage(), excp);
+        } finally {
+            release(machine);
+        }
+    }
+
+    /** Convert the bytes remaining in IN to OUT from the state given by
+     *  SETTINGLINE, each byte the index of a character of the alphabet,
+     *  as many as IN has and OUT has room for, advancing the positions of
+     *  both.  Return the number converted. */
+    public int encrypt(String settingLine, ByteBuffer in, ByteBuffer out) {
+        Machine machine = acquire(settingLine);
+        try {
+            return machine.convert(in, out);
+        } catch (EnigmaException excp) {
+            throw new IllegalArgumentException(excp.getMessage(), excp);
+        } finally {
+            release(machine);
+        }
+    }
+
+    /** Return a machine from my pool, or a new one if it is empty, set as
+     *  SETTINGLINE directs. */
+    private Machine acquire(String settingLine) {
+        Machine template = template(settingLine);
+        int mask = _pool.length() - 1;
+        int first = (int) Thread.currentThread().getId() & mask;
+        Machine result = null;
+        for (int k = 0; k <= mask && result == null; k += 1) {
+            result = _pool.getAndSet((first + k) & mask, null);
+        }
+        if (result == null) {
+            result = _machine.copy();
+        }
+        result.copyState(template);
+        return result;
+    }
+
+    /** Return MACHINE to my pool, unless it is full. */
+    private void release(Machine machine) {
+        int mask = _pool.length() - 1;
+        int first = (int) Thread.currentThread().getId() & mask;
+        for (int k = 0; k <= mask; k += 1) {
+            if (_pool.compareAndSet((first + k) & mask, null, machine)) {
+                return;
+            }
+        }
+    }
+
+    /** Return a machine set as SETTINGLINE directs, from my cache if it
+     *  is there. */
+    private Machine template(String settingLine) {
+        Machine result = _templates.get(settingLine);
+        if (result == null) {
+            result = _machine.copy();
+            try {
+                Main.applySetting(result, settingLine);
+            } catch (RuntimeException excp) {
+                throw new IllegalArgumentException(
+                    "bad setting line: " + excp.getMessage(), excp);
+            }
+            if (_templates.size() >= MAX_TEMPLATES) {
+                _templates.clear();
+            }
+            _templates.put(settingLine, result);
+        }
+        return result;
+    }
+
+    /** The configuration, with no rotors inserted. */
+    private final Machine _machine;
+
+    /** Idle machines, in slots that are null when empty. */
+    private final AtomicReferenceArray<Machine> _pool;
+
+    /** Machines set up by each setting line recently used.  They are
+     *  only read once published. */
+    private final ConcurrentHashMap<String, Machine> _templates =
+        new ConcurrentHashMap<>();
+
+    /** Each thread's buffer for messages given as CharSequences. */
+    private final ThreadLocal<char[]> _scratch =
+        ThreadLocal.withInitial(() -> new char[SCRATCH_SIZE]);
+
+    /** Most setting lines whose templates are kept. */
+    static final int MAX_TEMPLATES = 1024;
+
+    /** Initial size of each thread's scratch buffer. */
+    private static final int SCRATCH_SIZE = 1 << 10;
+}
@@ -0,0 +1,181 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.TestUtils.*;
+
+/** Tests of EnigmaService.
+ *  @author Eric Huang
+ */
+public class EnigmaServiceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return the conversion of MESSAGE by a fresh machine for
+     *  SMALL_CONFIG set by SETTING. */
+    private static String expected(String setting, String message) {
+        Machine machine = Main.parseConfig(SMALL_CONFIG);
+        Main.applySetting(machine, setting);
+        return machine.convert(message);
+    }
+
+    /** Return a setting line for SMALL_CONFIG chosen by N. */
+    private static String setting(int n) {
+        String[] orders = { "I II III", "III II I", "II III I" };
+        String positions = "";
+        for (int k = 0, rest = n; k < 4; k += 1, rest /= 26) {
+            positions += (char) ('A' + rest % 26);
+        }
+        return "* B BETA " + orders[n % orders.length] + " " + positions
+            + (n % 2 == 0 ? "" : " (AQ) (ZT)");
+    }
+
+    @Test
+    public void checkMatchesMachine() {
+        EnigmaService service = EnigmaService.of(SMALL_CONFIG);
+        String message = "FROM HIS SHOULDER HIAWATHA";
+        for (int n = 0; n < 50; n += 1) {
+            String setting = setting(n * 7919);
+            assertEquals(expected(setting, message),
+                         service.encrypt(setting, message));
+            assertEquals(expected(setting, message),
+                         service.encrypt(setting,
+                                         new StringBuilder(message)));
+        }
+    }
+
+    @Test
+    public void checkCallsAreIndependent() {
+        EnigmaService service = EnigmaService.of(SMALL_CONFIG);
+        String first = service.encrypt("* B BETA I II III AAAA", "HELLO");
+        service.encrypt("* B BETA III II I ZZZZ (AB)", "OTHER TEXT");
+        assertEquals(first, service.encrypt("* B BETA I II III AAAA",
+                                            "HELLO"));
+        assertEquals(expected("* B BETA I II III AA", "HELLO"),
+                     service.encrypt("* B BETA I II III AA", "HELLO"));
+    }
+
+    @Test
+    public void checkBufferVariants() {
+        EnigmaService service = EnigmaService.of(SMALL_CONFIG);
+        String setting = "* B BETA II III I QRST (HX)";
+        String message = "A LONGER MESSAGE THAN THE OTHERS";
+        char[] msg = ("xx" + message + "yy").toCharArray();
+        assertEquals(2 + message.length(),
+                     service.encrypt(setting, msg, 2, 2 + message.length()));
+        assertEquals(expected(setting, message),
+                     new String(msg, 2, message.length()));
+        CharBuffer out = CharBuffer.allocate(10);
+        assertEquals(10, service.encrypt(setting, CharBuffer.wrap(message),
+                                         out));
+        assertEquals(expected(setting, message).substring(0, 10),
+                     new String(out.array()));
+    }
+
+    @Test
+    public void checkErrors() {
+        EnigmaService service = EnigmaService.of(SMALL_CONFIG);
+        String[][] bad = {
+            { "* B BETA I II IV AAAA", "HELLO" },
+            { "B BETA I II III AAAA", "HELLO" },
+            { "* B BETA I II III AAAA (AB) (AC)", "HELLO" },
+            { "* B BETA I II III AAAA", "HELLO!" },
+            { "* B BETA I II III AAAA (AB", "HELLO" },
+            { "* B BETA I II III AAAA (AB))", "HELLO" },
+            { "* B BETA I II III AAAA (A(B)", "HELLO" },
+            { "* B BETA I II III AAAA AB", "HELLO" },
+        };
+        for (int round = 0; round < 2; round += 1) {
+            for (String[] call : bad) {
+                try {
+                    service.encrypt(call[0], call[1]);
+                    fail("accepted " + call[0] + " / " + call[1]);
+                } catch (IllegalArgumentException excp) {
+                    /* Expected. */
+                }
+            }
+        }
+        try {
+            EnigmaService.of("A-Z\n5 3\n I MQ (AB\n");
+            fail("accepted bad configuration");
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+        assertEquals(expected("* B BETA I II III AAAA", "HELLO"),
+                     service.encrypt("* B BETA I II III AAAA", "HELLO"));
+    }
+
+    @Test
+    public void checkConcurrentCalls() throws InterruptedException {
+        EnigmaService service = EnigmaService.of(SMALL_CONFIG);
+        String message = "IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES";
+        String[] expected = new String[40];
+        for (int n = 0; n < expected.length; n += 1) {
+            expected[n] = expected(setting(n * 31), message);
+        }
+        AtomicReference<String> failure = new AtomicReference<>();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t += 1) {
+            int offset = t;
+            Thread thread = new Thread(() -> {
+                for (int k = 0; k < 5000; k += 1) {
+                    int n = (k * 7 + offset) % expected.length;
+                    String actual = service.encrypt(setting(n * 31), message);
+                    if (!actual.equals(expected[n])) {
+                        failure.compareAndSet(null, setting(n * 31) + ": "
+                                              + actual);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void checkSteadyStateAllocation() {
+        if (!(ManagementFactory.getThreadMXBean()
+              instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        EnigmaService service = EnigmaService.of(SMALL_CONFIG);
+        String setting = "* B BETA I II III AXLE (AQ) (ZT)";
+        char[] msg = new char[100];
+        int rounds = 20000;
+        long allocated = 0;
+        for (int pass = 0; pass < 10; pass += 1) {
+            long id = Thread.currentThread().getId();
+            long before = bean.getThreadAllocatedBytes(id);
+            for (int k = 0; k < rounds; k += 1) {
+                java.util.Arrays.fill(msg, 'A');
+                service.encrypt(setting, msg, 0, msg.length);
+            }
+            allocated = bean.getThreadAllocatedBytes(id) - before;
+            if (allocated < rounds) {
+                break;
+            }
+        }
+        assertTrue(allocated + " bytes allocated in " + rounds + " calls",
+                   allocated < rounds);
+    }
+}
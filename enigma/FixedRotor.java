@@ -14,4 +14,12 @@ class FixedRotor extends Rotor {
         set(0);
     }
 
+    @Override
+    Rotor copy() {
+        FixedRotor result = new FixedRotor(name(), permutation());
+        result.set(setting());
+        result.shareTables(this);
+        return result;
+    }
+
 }
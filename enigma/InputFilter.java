@@ -0,0 +1,112 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Classifies input characters for conversion against an Alphabet,
+ *  using tables computed once, so that checking a character never throws
+ *  and costs a bit test and an array load.  The Policy says what becomes
+ *  of characters outside the alphabet.
+ *  @author Eric Huang
+ */
+class InputFilter {
+
+    /** What to do with a character that is not in the alphabet. */
+    enum Policy {
+        /** Stop with an error giving the character's position. */
+        REJECT,
+        /** Drop the character without advancing the rotors. */
+        SKIP,
+        /** Copy the character unchanged without advancing the rotors. */
+        PASS;
+
+        /** Return the policy named NAME, ignoring case. */
+        static Policy named(String name) {
+            for (Policy policy : values()) {
+                if (policy.name().equalsIgnoreCase(name)) {
+                    return policy;
+                }
+            }
+            throw error("unknown input policy: %s", name);
+        }
+    }
+
+    /** A filter for the characters of ALPHABET applying POLICY. */
+    InputFilter(Alphabet alphabet, Policy policy) {
+        int size = alphabet.size();
+        _policy = policy;
+        _chars = new char[size];
+        int max = 0;
+        for (int i = 0; i < size; i += 1) {
+            _chars[i] = alphabet.toChar(i);
+            max = Math.max(max, _chars[i]);
+        }
+        _valid = new long[(max >> WORD_SHIFT) + 1];
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < size; i += 1) {
+            _valid[_chars[i] >> WORD_SHIFT] |= 1L << _chars[i];
+            _index[_chars[i]] = i;
+        }
+    }
+
+    /** Return my policy. */
+    Policy policy() {
+        return _policy;
+    }
+
+    /** Return a filter for the same alphabet applying POLICY. */
+    InputFilter withPolicy(Policy policy) {
+        return policy == _policy ? this : new InputFilter(this, policy);
+    }
+
+    /** A copy of FILTER applying POLICY. */
+    private InputFilter(InputFilter filter, Policy policy) {
+        _policy = policy;
+        _chars = filter._chars;
+        _valid = filter._valid;
+        _index = filter._index;
+    }
+
+    /** Return true iff CH is in the alphabet. */
+    boolean valid(char ch) {
+        int word = ch >> WORD_SHIFT;
+        return word < _valid.length && (_valid[word] & (1L << ch)) != 0;
+    }
+
+    /** Return the index of CH in the alphabet, or -1 if it is not in
+     *  it. */
+    int index(char ch) {
+        return valid(ch) ? _index[ch] : -1;
+    }
+
+    /** Return the character with index INDEX, which must be in range. */
+    char character(int index) {
+        return _chars[index];
+    }
+
+    /** Return the error for CH, not in the alphabet, found at 1-based
+     *  POSITION of its line. */
+    EnigmaException invalid(char ch, int position) {
+        return error("character '%c' at position %d is not in the alphabet",
+                     ch, position);
+    }
+
+    /** Log2 of the number of bits in each word of _valid. */
+    private static final int WORD_SHIFT = 6;
+
+    /** What becomes of characters outside the alphabet. */
+    private final Policy _policy;
+
+    /** Membership bit of each character up to the largest in the
+     *  alphabet. */
+    private final long[] _valid;
+
+    /** Index of each character up to the largest in the alphabet, or -1
+     *  for characters not in it. */
+    private final int[] _index;
+
+    /** The characters of the alphabet in index order. */
+    private final char[] _chars;
+}
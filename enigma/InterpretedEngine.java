@@ -0,0 +1,43 @@
+package enigma;
+
+import java.util.ArrayList;
+
+/** An Engine that converts with a copy of a Machine, going through its
+ *  rotors one at a time.  It works for every machine, and is the
+ *  reference against which SpecializedEngines are checked.
+ *  @author Eric Huang
+ */
+final class InterpretedEngine implements Engine {
+
+    /** An engine starting from MACHINE's current state. */
+    InterpretedEngine(Machine machine) {
+        _machine = machine.copy();
+    }
+
+    @Override
+    public int convert(int c) {
+        _machine.advance();
+        return _machine.convert(c);
+    }
+
+    @Override
+    public void load(Machine machine) {
+        copySettings(machine, _machine);
+    }
+
+    @Override
+    public void store(Machine machine) {
+        copySettings(_machine, machine);
+    }
+
+    /** Set the rotors of TO to the settings of those of FROM. */
+    private static void copySettings(Machine from, Machine to) {
+        ArrayList<Rotor> source = from.rotors(), dest = to.rotors();
+        for (int s = 0; s < source.size(); s += 1) {
+            dest.get(s).set(source.get(s).setting());
+        }
+    }
+
+    /** The machine converting. */
+    private final Machine _machine;
+}
@@ -0,0 +1,229 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** A checkpoint journal for a long conversion.  Each checkpoint records
+ *  how far the input had been read, how much output had been written,
+ *  and a Machine snapshot, and is forced to disk before append returns.
+ *  Records have a fixed length and end with a checksum, so a record torn
+ *  by a crash is recognized and ignored.  The journal begins with a
+ *  header identifying the configuration and the input it was written
+ *  for, so that it is not resumed against others.
+ *  @author Eric Huang
+ */
+class Journal implements AutoCloseable {
+
+    /** A checkpoint: input and output offsets and a machine snapshot. */
+    static final class Checkpoint {
+
+        /** A checkpoint after INPUT bytes were read and OUTPUT bytes
+         *  written, with the machine in state SNAPSHOT. */
+        Checkpoint(long input, long output, long[] snapshot) {
+            _input = input;
+            _output = output;
+            _snapshot = snapshot;
+        }
+
+        /** Return the number of input bytes consumed. */
+        long input() {
+            return _input;
+        }
+
+        /** Return the number of output bytes written. */
+        long output() {
+            return _output;
+        }
+
+        /** Return the machine snapshot. */
+        long[] snapshot() {
+            return _snapshot;
+        }
+
+        /** Input and output offsets. */
+        private final long _input, _output;
+
+        /** Machine state. */
+        private final long[] _snapshot;
+    }
+
+    /** The journal in FILE, created if need be, for snapshots of
+     *  SNAPSHOTLENGTH longs of the configuration whose fingerprint is
+     *  CONFIG, converting the input whose identity() is INPUT. */
+    Journal(Path file, int snapshotLength, long config, long input)
+        throws IOException {
+        _channel = FileChannel.open(file, CREATE, READ, WRITE);
+        _snapshotLength = snapshotLength;
+        _config = config;
+        _input = input;
+        _record = ByteBuffer.allocate(Integer.BYTES * 2
+                                      + Long.BYTES * (snapshotLength + 3));
+    }
+
+    /** Return an identity for the input read by IN: its length and a
+     *  checksum of its first bytes.  Leaves IN's position unchanged. */
+    static long identity(FileChannel in) throws IOException {
+        long size = in.size();
+        ByteBuffer head = ByteBuffer.allocate((int) Math.min(size,
+                                                             IDENTITY_BYTES));
+        while (head.hasRemaining()) {
+            if (in.read(head, head.position()) <= 0) {
+                break;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head.array(), 0, head.position());
+        return size << Integer.SIZE ^ crc.getValue();
+    }
+
+    /** Return the last intact checkpoint, or null if there is none, and
+     *  position the journal to append after it.  A journal that is empty,
+     *  or was torn before its header was complete, has none; one whose
+     *  header names another configuration or input is an error. */
+    Checkpoint last() throws IOException {
+        Checkpoint result = null;
+        long size = _channel.size(), at = HEADER_BYTES;
+        if (size < HEADER_BYTES) {
+            clear();
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (header.hasRemaining()) {
+            if (_channel.read(header, header.position()) <= 0) {
+                break;
+            }
+        }
+        header.flip();
+        if (header.getInt() != HEADER_MAGIC
+            || header.getInt() != _snapshotLength) {
+            throw error("journal was not written for this configuration");
+        }
+        if (header.getLong() != _config) {
+            throw error("journal was written for another configuration");
+        }
+        if (header.getLong() != _input) {
+            throw error("journal was written for another input");
+        }
+        for (long pos = at; pos + _record.capacity() <= size;
+             pos += _record.capacity()) {
+            _record.clear();
+            while (_record.hasRemaining()) {
+                if (_channel.read(_record, pos + _record.position()) <= 0) {
+                    break;
+                }
+            }
+            Checkpoint checkpoint = decode();
+            if (checkpoint == null) {
+                break;
+            }
+            result = checkpoint;
+            at = pos + _record.capacity();
+        }
+        _channel.truncate(at);
+        _channel.position(at);
+        return result;
+    }
+
+    /** Discard all checkpoints, leaving only my header. */
+    void clear() throws IOException {
+        _channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(HEADER_MAGIC).putInt(_snapshotLength);
+        header.putLong(_config).putLong(_input);
+        header.flip();
+        _channel.position(0);
+        while (header.hasRemaining()) {
+            _channel.write(header);
+        }
+        _channel.force(true);
+    }
+
+    /** Durably record CHECKPOINT. */
+    void append(Checkpoint checkpoint) throws IOException {
+        long[] snapshot = checkpoint.snapshot();
+        if (snapshot.length != _snapshotLength) {
+            throw error("snapshot does not match journal");
+        }
+        _record.clear();
+        _record.putInt(MAGIC).putInt(_snapshotLength);
+        _record.putLong(checkpoint.input()).putLong(checkpoint.output());
+        for (long word : snapshot) {
+            _record.putLong(word);
+        }
+        _record.putLong(checksum());
+        _record.flip();
+        while (_record.hasRemaining()) {
+            _channel.write(_record);
+        }
+        _channel.force(false);
+    }
+
+    /** Return the checkpoint in the full _record, or null if it is not
+     *  an intact record. */
+    private Checkpoint decode() {
+        if (_record.hasRemaining()) {
+            return null;
+        }
+        _record.flip();
+        if (_record.getInt() != MAGIC || _record.getInt() != _snapshotLength) {
+            return null;
+        }
+        long input = _record.getLong(), output = _record.getLong();
+        long[] snapshot = new long[_snapshotLength];
+        for (int i = 0; i < snapshot.length; i += 1) {
+            snapshot[i] = _record.getLong();
+        }
+        long stored = _record.getLong();
+        _record.position(_record.position() - Long.BYTES);
+        if (stored != checksum()) {
+            return null;
+        }
+        return new Checkpoint(input, output, snapshot);
+    }
+
+    /** Return the checksum of _record up to its position. */
+    private long checksum() {
+        CRC32 crc = new CRC32();
+        crc.update(_record.array(), 0, _record.position());
+        return crc.getValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Marks the start of each record. */
+    private static final int MAGIC = 0x454e4a31;
+
+    /** Marks the start of the header. */
+    private static final int HEADER_MAGIC = 0x454e4a48;
+
+    /** Bytes in the header: magic, snapshot length, configuration
+     *  fingerprint and input identity. */
+    private static final int HEADER_BYTES = Integer.BYTES * 2
+        + Long.BYTES * 2;
+
+    /** Bytes of the input checksummed by identity(). */
+    private static final int IDENTITY_BYTES = 1 << 20;
+
+    /** Fingerprint of the configuration and identity of the input. */
+    private final long _config, _input;
+
+    /** The journal file. */
+    private final FileChannel _channel;
+
+    /** Number of longs in each snapshot. */
+    private final int _snapshotLength;
+
+    /** Buffer holding one record. */
+    private final ByteBuffer _record;
+}
@@ -0,0 +1,95 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/** Tests of Journal.
+ *  @author Eric Huang
+ */
+public class JournalTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkLastCheckpoint() throws IOException {
+        Path file = Files.createTempFile("journal", ".log");
+        try {
+            try (Journal journal = new Journal(file, 2, 7, 9)) {
+                assertNull(journal.last());
+                journal.append(new Journal.Checkpoint(10, 20,
+                                                      new long[] { 1, 2 }));
+                journal.append(new Journal.Checkpoint(30, 40,
+                                                      new long[] { 3, 4 }));
+            }
+            try (FileChannel channel = FileChannel.open(file, WRITE)) {
+                channel.truncate(channel.size() - 1);
+            }
+            try (Journal journal = new Journal(file, 2, 7, 9)) {
+                Journal.Checkpoint last = journal.last();
+                assertEquals(10, last.input());
+                assertEquals(20, last.output());
+                assertArrayEquals(new long[] { 1, 2 }, last.snapshot());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkRejectsOtherJournals() throws IOException {
+        Path file = Files.createTempFile("journal", ".log");
+        try {
+            try (Journal journal = new Journal(file, 2, 7, 9)) {
+                journal.clear();
+                journal.append(new Journal.Checkpoint(10, 20,
+                                                      new long[] { 1, 2 }));
+            }
+            long[][] others = { { 3, 7, 9 }, { 2, 8, 9 }, { 2, 7, 10 } };
+            for (long[] other : others) {
+                try (Journal journal = new Journal(file, (int) other[0],
+                                                   other[1], other[2])) {
+                    journal.last();
+                    fail("accepted a journal for " + other[0] + " "
+                         + other[1] + " " + other[2]);
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkIdentity() throws IOException {
+        Path a = Files.createTempFile("journal", ".in");
+        Path b = Files.createTempFile("journal", ".in");
+        try {
+            Files.writeString(a, "* B BETA I II III AAAA\nHELLO\n");
+            Files.writeString(b, "* B BETA I II III AAAB\nHELLO\n");
+            try (FileChannel in = FileChannel.open(a, READ);
+                 FileChannel other = FileChannel.open(b, READ)) {
+                in.position(5);
+                long identity = Journal.identity(in);
+                assertEquals(5, in.position());
+                assertEquals(identity, Journal.identity(in));
+                assertFalse(identity == Journal.identity(other));
+            }
+        } finally {
+            Files.delete(a);
+            Files.delete(b);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independent streams in lockstep, one keystroke per
+ *  lane at a time.  All lanes share the rotor order and wirings of a
+ *  template Machine, but each has its own rotor positions and plugboard.
+ *  Every lane behaves exactly as a Machine with that state would under
+ *  convert(String), including the double stepping of middle rotors.
+ *
+ *  Subclasses differ only in how they carry out a step: ScalarLanes
+ *  loops over the lanes, while VectorLanes processes a whole vector of
+ *  lanes per instruction when the jdk.incubator.vector module is
+ *  available.  Both give identical results.
+ *  @author Eric Huang
+ */
+abstract class LaneEngine {
+
+    /** An engine with LANES lanes, padded to a multiple of WIDTH, using
+     *  the rotors of TEMPLATE in their current order.  Every lane starts
+     *  with TEMPLATE's rotor settings and plugboard. */
+    LaneEngine(Machine template, int lanes, int width) {
+        ArrayList<Rotor> rotors = template.rotors();
+        if (rotors.size() < 2) {
+            throw error("machine has no rotors inserted");
+        }
+        if (!rotors.get(0).reflecting()) {
+            throw error("First rotor isn't reflector");
+        }
+        Rotor last = rotors.get(rotors.size() - 1);
+        if (!last.rotates()) {
+            throw error(last.name() + " is fixed: cannot advance");
+        }
+        for (int i = 0; i < rotors.size(); i += 1) {
+            if (rotors.indexOf(rotors.get(i)) != i) {
+                throw error("rotor %s is inserted twice",
+                            rotors.get(i).name());
+            }
+        }
+        _size = template.alphabet().size();
+        _slots = rotors.size() - 1;
+        _lanes = lanes;
+        _width = (lanes + width - 1) / width * width;
+        _names = new String[_slots + 1];
+        _reflector = table(rotors.get(0).permutation(), false);
+        _forward = new int[_slots][];
+        _backward = new int[_slots][];
+        _notches = new int[_slots][];
+        _carries = new boolean[_slots];
+        _positions = new int[_slots][_width];
+        _plugboards = new int[_width * _size];
+        _names[0] = rotors.get(0).name();
+        for (int s = 0; s < _slots; s += 1) {
+            Rotor rotor = rotors.get(s + 1);
+            _names[s + 1] = rotor.name();
+            _forward[s] = table(rotor.permutation(), false);
+            _backward[s] = table(rotor.permutation(), true);
+            _notches[s] = new int[_size];
+            for (int p = 0; p < _size; p += 1) {
+                _notches[s][p] = rotor.notchAt(p) ? 1 : 0;
+            }
+            _carries[s] = rotors.get(s).rotates();
+        }
+        for (int lane = 0; lane < _width; lane += 1) {
+            load(lane, template);
+        }
+    }
+
+    /** Return an engine with LANES lanes modeled on TEMPLATE (see the
+     *  constructor), using vector instructions iff VECTOR and the vector
+     *  module is available. */
+    static LaneEngine create(Machine template, int lanes, boolean vector) {
+        if (vector && VECTOR_AVAILABLE) {
+            try {
+                return new VectorLanes(template, lanes);
+            } catch (LinkageError excp) {
+                /* Fall back to the scalar engine. */
+            }
+        }
+        return new ScalarLanes(template, lanes);
+    }
+
+    /** Return the fastest available engine with LANES lanes modeled on
+     *  TEMPLATE. */
+    static LaneEngine create(Machine template, int lanes) {
+        return create(template, lanes, true);
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Set the rotor positions and plugboard of LANE to the current state
+     *  of MACHINE, which must have the same rotors in the same order as
+     *  my template. */
+    void load(int lane, Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        if (rotors.size() != _slots + 1
+            || machine.alphabet().size() != _size) {
+            throw error("machine does not match lane engine");
+        }
+        for (int s = 0; s <= _slots; s += 1) {
+            if (!rotors.get(s).name().equals(_names[s])) {
+                throw error("machine does not match lane engine");
+            }
+        }
+        for (int s = 0; s < _slots; s += 1) {
+            _positions[s][lane] = rotors.get(s + 1).setting();
+        }
+        Permutation plugboard = machine.plugboard();
+        for (int c = 0; c < _size; c += 1) {
+            _plugboards[lane * _size + c] = plugboard.permute(c);
+        }
+    }
+
+    /** Set the rotors of MACHINE, which must match my template, to the
+     *  current positions of LANE. */
+    void store(int lane, Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        for (int s = 0; s < _slots; s += 1) {
+            rotors.get(s + 1).set(_positions[s][lane]);
+        }
+    }
+
+    /** Return the position of the rotor in SLOT (1 being the leftmost
+     *  non-reflector) in LANE. */
+    int position(int lane, int slot) {
+        return _positions[slot - 1][lane];
+    }
+
+    /** Set the position of the rotor in SLOT of LANE to POSN. */
+    void setPosition(int lane, int slot, int posn) {
+        _positions[slot - 1][lane] = posn;
+    }
+
+    /** For every lane L whose ACTIVE[L] is true, advance its rotors and
+     *  then convert IN[L] (an index into the alphabet), storing the
+     *  result in OUT[L].  All three arrays must have at least width()
+     *  entries; inactive lanes keep their state. */
+    abstract void step(int[] in, int[] out, boolean[] active);
+
+    /** Convert each MESSAGES[L], a sequence of alphabet indices, in lane L
+     *  (which must exist), as convert(String) would, returning the
+     *  results.  Lanes finish at the end of their own messages. */
+    int[][] convert(int[][] messages) {
+        if (messages.length > _lanes) {
+            throw error("more messages than lanes");
+        }
+        int[][] result = new int[messages.length][];
+        int longest = 0;
+        for (int l = 0; l < messages.length; l += 1) {
+            result[l] = new int[messages[l].length];
+            longest = Math.max(longest, messages[l].length);
+        }
+        int[] in = new int[_width], out = new int[_width];
+        boolean[] active = new boolean[_width];
+        for (int t = 0; t < longest; t += 1) {
+            for (int l = 0; l < messages.length; l += 1) {
+                active[l] = t < messages[l].length;
+                in[l] = active[l] ? messages[l][t] : 0;
+                if (in[l] < 0 || in[l] >= _size) {
+                    throw error("character index out of range");
+                }
+            }
+            step(in, out, active);
+            for (int l = 0; l < messages.length; l += 1) {
+                if (active[l]) {
+                    result[l][t] = out[l];
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of lanes after padding to the vector width. */
+    int width() {
+        return _width;
+    }
+
+    /** Return the table mapping each index through PERM, or through its
+     *  inverse if INVERSE. */
+    private int[] table(Permutation perm, boolean inverse) {
+        int[] result = new int[_size];
+        return inverse ? perm.inverseTable(result) : perm.table(result);
+    }
+
+    /** True iff the incubating vector module is present at run time. */
+    private static final boolean VECTOR_AVAILABLE =
+        ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /** Alphabet size. */
+    protected final int _size;
+
+    /** Number of non-reflector rotor slots. */
+    protected final int _slots;
+
+    /** Number of lanes requested. */
+    protected final int _lanes;
+
+    /** Number of lanes after padding. */
+    protected final int _width;
+
+    /** Names of the rotors in each slot, reflector first. */
+    private final String[] _names;
+
+    /** Reflector wiring. */
+    protected final int[] _reflector;
+
+    /** Forward wiring of the rotor in each non-reflector slot, leftmost
+     *  first. */
+    protected final int[][] _forward;
+
+    /** Inverse wiring of each non-reflector rotor. */
+    protected final int[][] _backward;
+
+    /** 1 at the notch positions of each non-reflector rotor, else 0. */
+    protected final int[][] _notches;
+
+    /** True for each non-reflector slot whose left neighbor rotates, so
+     *  that reaching a notch there carries into it. */
+    protected final boolean[] _carries;
+
+    /** Position of each non-reflector rotor (first index) in each lane
+     *  (second index). */
+    protected final int[][] _positions;
+
+    /** Plugboard of every lane: the image of C in lane L is at
+     *  L * _size + C. */
+    protected final int[] _plugboards;
+}
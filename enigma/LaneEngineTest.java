@@ -0,0 +1,111 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Tests of LaneEngine, ScalarLanes and VectorLanes against Machine.
+ *  @author Eric Huang
+ */
+public class LaneEngineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a machine with rotors B, Beta, I, II and III (whose notches
+     *  are placed to exercise double stepping), set to SETTING with
+     *  plugboard PLUGBOARD. */
+    private Machine machine(String setting, String plugboard) {
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        allRotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        allRotors.add(new FixedRotor("Beta",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        allRotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        allRotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "EK"));
+        allRotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        Machine result = new Machine(UPPER, 5, 3, allRotors);
+        result.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        result.setRotors(setting);
+        result.setPlugboard(new Permutation(plugboard, UPPER));
+        return result;
+    }
+
+    /** Check that the lane engine chosen by VECTOR agrees with Machine on
+     *  LANES random messages and settings. */
+    private void checkAgainstMachine(boolean vector, int lanes) {
+        Random random = new Random(lanes);
+        Machine[] machines = new Machine[lanes];
+        Machine[] references = new Machine[lanes];
+        int[][] messages = new int[lanes][];
+        String[] plugboards = {"", "(AQ) (EP)", "(HZ) (BJ) (XM)"};
+        for (int l = 0; l < lanes; l += 1) {
+            char[] setting = new char[4];
+            for (int k = 0; k < setting.length; k += 1) {
+                setting[k] = (char) ('A' + random.nextInt(26));
+            }
+            String plugboard = plugboards[l % plugboards.length];
+            machines[l] = machine(new String(setting), plugboard);
+            references[l] = machine(new String(setting), plugboard);
+            messages[l] = new int[random.nextInt(700)];
+            for (int t = 0; t < messages[l].length; t += 1) {
+                messages[l][t] = random.nextInt(26);
+            }
+        }
+        LaneEngine engine = LaneEngine.create(machines[0], lanes, vector);
+        for (int l = 0; l < lanes; l += 1) {
+            engine.load(l, machines[l]);
+        }
+        int[][] result = engine.convert(messages);
+        for (int l = 0; l < lanes; l += 1) {
+            for (int t = 0; t < messages[l].length; t += 1) {
+                references[l].advance();
+                assertEquals(msg("lanes", "lane %d, char %d", l, t),
+                             references[l].convert(messages[l][t]),
+                             result[l][t]);
+            }
+            for (int s = 1; s < 5; s += 1) {
+                assertEquals(msg("lanes", "lane %d, slot %d", l, s),
+                             references[l].rotors().get(s).setting(),
+                             engine.position(l, s));
+            }
+        }
+    }
+
+    @Test
+    public void scalarMatchesMachine() {
+        checkAgainstMachine(false, 7);
+    }
+
+    @Test
+    public void vectorMatchesMachine() {
+        checkAgainstMachine(true, 37);
+    }
+
+    @Test
+    public void batchConvert() {
+        Machine[] machines = {
+            machine("AAAA", "(AQ) (EP)"), machine("AAAA", "(AQ) (EP)"),
+        };
+        int[] hello = {7, 4, 11, 11, 14};
+        int[][] result = Machine.convert(machines,
+                                         new int[][] {hello, hello});
+        Machine reference = machine("AAAA", "(AQ) (EP)");
+        for (int t = 0; t < hello.length; t += 1) {
+            reference.advance();
+            assertEquals(reference.convert(hello[t]), result[1][t]);
+        }
+        assertEquals(hello.length,
+                     machines[0].rotors().get(4).setting());
+    }
+}
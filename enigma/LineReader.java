@@ -0,0 +1,103 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/** Reads lines from a byte channel while keeping track of the byte offset
+ *  of the next unread line, so that reading can later resume there.
+ *  Lines end at '\n', optionally preceded by '\r', and are decoded with a
+ *  given charset.
+ *  @author Eric Huang
+ */
+class LineReader {
+
+    /** A reader of lines from IN, whose current position is byte OFFSET
+     *  of the input, decoding them with CHARSET. */
+    LineReader(ReadableByteChannel in, long offset, Charset charset) {
+        _in = in;
+        _offset = offset;
+        _charset = charset;
+    }
+
+    /** Return the next line, without its terminator, or null at the end
+     *  of input. */
+    String readLine() throws IOException {
+        int scanned = _start;
+        while (true) {
+            for (int i = scanned; i < _end; i += 1) {
+                if (_buffer[i] == '\n') {
+                    return take(i, i + 1);
+                }
+            }
+            scanned = _end;
+            if (!fill()) {
+                return _start == _end ? null : take(_end, _end);
+            }
+            scanned -= _shifted;
+        }
+    }
+
+    /** Return the byte offset of the next unread line. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Return the line occupying _buffer[_start .. END-1], less a
+     *  trailing '\r', and consume input through NEXT. */
+    private String take(int end, int next) {
+        int last = end;
+        if (last > _start && _buffer[last - 1] == '\r') {
+            last -= 1;
+        }
+        String line = new String(_buffer, _start, last - _start, _charset);
+        _offset += next - _start;
+        _start = next;
+        return line;
+    }
+
+    /** Read more input after the unconsumed bytes, moving or growing the
+     *  buffer as needed and recording in _shifted how far the bytes
+     *  moved.  Returns false at the end of input. */
+    private boolean fill() throws IOException {
+        _shifted = _start;
+        if (_start > 0) {
+            System.arraycopy(_buffer, _start, _buffer, 0, _end - _start);
+            _end -= _start;
+            _start = 0;
+        }
+        if (_end == _buffer.length) {
+            _buffer = Arrays.copyOf(_buffer, 2 * _buffer.length);
+        }
+        int n = _in.read(ByteBuffer.wrap(_buffer, _end,
+                                         _buffer.length - _end));
+        if (n <= 0) {
+            return false;
+        }
+        _end += n;
+        return true;
+    }
+
+    /** Initial buffer size. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of input. */
+    private final ReadableByteChannel _in;
+
+    /** Decodes lines. */
+    private final Charset _charset;
+
+    /** Bytes read but not yet consumed are _buffer[_start .. _end-1]. */
+    private byte[] _buffer = new byte[BUFFER_SIZE];
+
+    /** Bounds of the unconsumed bytes. */
+    private int _start, _end;
+
+    /** Distance the unconsumed bytes moved during the last fill(). */
+    private int _shifted;
+
+    /** Byte offset of _buffer[_start]. */
+    private long _offset;
+}
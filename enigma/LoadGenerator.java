@@ -0,0 +1,320 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Generates configurations and input streams for load and soak tests.
+ *  Everything generated is determined by a seed, so a failing run can be
+ *  reproduced exactly.
+ *
+ *  Configurations have a random alphabet of upper-case letters and
+ *  digits drawn from all of Unicode, random rotor wirings, random
+ *  notches and fixed-point-free involutions as reflectors.  Inputs mix
+ *  setting lines, chosen at random among those a configuration allows,
+ *  with message lines of random lengths.
+ *  @author Eric Huang
+ */
+class LoadGenerator {
+
+    /** Generate a configuration or an input, as described by ARGS:
+     *    config SEED SIZE MOVING FIXED REFLECTORS SLOTS
+     *        writes a configuration with an alphabet of SIZE characters
+     *        (rounded up to an even number), the given numbers of moving
+     *        rotors, non-moving rotors and reflectors, and SLOTS rotor
+     *        slots (see config()).
+     *    input CONFIG SEED MEGABYTES [SETTINGRATE [MAXLENGTH]]
+     *        writes about MEGABYTES of input for the configuration file
+     *        CONFIG, with a setting line before each message line with
+     *        probability SETTINGRATE (default 0.01), and message lines of
+     *        up to MAXLENGTH characters (default 200).
+     *  Output goes to the standard output, in UTF-8, as Main reads
+     *  configuration files. */
+    public static void main(String... args) {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                System.out, StandardCharsets.UTF_8));
+            if (args.length == 7 && args[0].equals("config")) {
+                int[] n = new int[args.length - 2];
+                for (int i = 0; i < n.length; i += 1) {
+                    n[i] = Integer.parseInt(args[i + 2]);
+                }
+                LoadGenerator generator =
+                    new LoadGenerator(Long.parseLong(args[1]));
+                out.write(generator.config(n[0], n[1], n[2], n[3], n[4]));
+            } else if (args.length >= 4 && args.length <= 6
+                       && args[0].equals("input")) {
+                Machine machine = Main.loadConfig(args[1]);
+                LoadGenerator generator =
+                    new LoadGenerator(Long.parseLong(args[2]));
+                double rate = args.length > 4
+                    ? Double.parseDouble(args[4]) : DEFAULT_SETTING_RATE;
+                int length = args.length > 5
+                    ? Integer.parseInt(args[5]) : DEFAULT_MAX_LENGTH;
+                long chars = (long) (Double.parseDouble(args[3]) * (1 << 20));
+                generator.input(machine, out, chars, rate, length);
+            } else {
+                throw error("usage: LoadGenerator config SEED SIZE MOVING "
+                            + "FIXED REFLECTORS SLOTS | input CONFIG SEED "
+                            + "MEGABYTES [SETTINGRATE [MAXLENGTH]]");
+            }
+            out.flush();
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A generator whose output is determined by SEED. */
+    LoadGenerator(long seed) {
+        _random = new Random(seed);
+    }
+
+    /** Return the text of a configuration with an alphabet of SIZE
+     *  characters (rounded up to an even number, so that reflectors can
+     *  be involutions without fixed points), MOVING moving rotors, FIXED
+     *  non-moving rotors, REFLECTORS reflectors and SLOTS rotor slots.
+     *  The number of pawls is the smallest that lets every setting use
+     *  only moving rotors to the right of non-moving ones. */
+    String config(int size, int moving, int fixed, int reflectors,
+                  int slots) {
+        size += size % 2;
+        int pawls = Math.max(1, slots - 1 - fixed);
+        if (size < 2 || size > ALPHABET_POOL.length || reflectors < 1
+            || slots < 2 || pawls >= slots || moving < pawls) {
+            throw error("cannot generate that configuration");
+        }
+        char[] alphabet = alphabet(size);
+        StringBuilder result = new StringBuilder();
+        if (size == 26 && new String(alphabet).equals(UPPER)) {
+            result.append("A-Z");
+        } else {
+            result.append(alphabet);
+        }
+        result.append('\n').append(slots).append(' ').append(pawls)
+            .append('\n');
+        for (int r = 0; r < moving; r += 1) {
+            result.append(" M").append(r).append(" M");
+            int notches = Math.min(size, 1 + _random.nextInt(MAX_NOTCHES));
+            boolean[] notched = new boolean[size];
+            for (int k = 0; k < notches; k += 1) {
+                int c = _random.nextInt(size);
+                if (notched[c]) {
+                    k -= 1;
+                } else {
+                    notched[c] = true;
+                    result.append(alphabet[c]);
+                }
+            }
+            appendCycles(result, alphabet, shuffle(size));
+        }
+        for (int r = 0; r < fixed; r += 1) {
+            result.append(" N").append(r).append(" N");
+            appendCycles(result, alphabet, shuffle(size));
+        }
+        for (int r = 0; r < reflectors; r += 1) {
+            result.append(" R").append(r).append(" R");
+            appendCycles(result, alphabet, involution(size));
+        }
+        return result.toString();
+    }
+
+    /** Write about CHARS characters of input for MACHINE's configuration
+     *  to OUT: a setting line, then message lines of 0 to MAXLENGTH
+     *  characters, each preceded by a new setting line with probability
+     *  SETTINGRATE. */
+    void input(Machine machine, Appendable out, long chars,
+               double settingRate, int maxLength) throws IOException {
+        Alphabet alphabet = machine.alphabet();
+        long written = 0;
+        boolean first = true;
+        StringBuilder line = new StringBuilder();
+        while (written < chars) {
+            line.setLength(0);
+            if (first || _random.nextDouble() < settingRate) {
+                line.append(setting(machine));
+                first = false;
+            } else {
+                int length = _random.nextInt(maxLength + 1);
+                for (int k = 0; k < length; k += 1) {
+                    if (_random.nextInt(WORD_LENGTH) == 0) {
+                        line.append(' ');
+                    } else {
+                        line.append(alphabet.toChar(
+                            _random.nextInt(alphabet.size())));
+                    }
+                }
+            }
+            line.append('\n');
+            out.append(line);
+            written += line.length();
+        }
+    }
+
+    /** Return a random setting line valid for MACHINE's configuration,
+     *  with a random plugboard. */
+    String setting(Machine machine) {
+        ArrayList<Rotor> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (Rotor rotor : machine.allRotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor);
+            } else if (rotor.rotates()) {
+                moving.add(rotor);
+            } else {
+                fixed.add(rotor);
+            }
+        }
+        int slots = machine.numRotors();
+        int pawls = machine.numPawls();
+        if (reflectors.isEmpty() || fixed.size() < slots - 1 - pawls
+            || moving.size() < pawls) {
+            throw error("configuration allows no settings");
+        }
+        StringBuilder result = new StringBuilder("*");
+        result.append(' ').append(pick(reflectors).name());
+        for (int s = 1; s < slots; s += 1) {
+            result.append(' ').append(pick(s < slots - pawls ? fixed
+                                           : moving).name());
+        }
+        result.append(' ');
+        Alphabet alphabet = machine.alphabet();
+        int size = alphabet.size();
+        for (int s = 1; s < slots; s += 1) {
+            result.append(alphabet.toChar(_random.nextInt(size)));
+        }
+        int[] order = shuffle(size);
+        int pairs = _random.nextInt(Math.min(MAX_PLUGS, size / 2) + 1);
+        for (int p = 0; p < pairs; p += 1) {
+            result.append(" (").append(alphabet.toChar(order[2 * p]))
+                .append(alphabet.toChar(order[2 * p + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Remove and return a random element of CHOICES. */
+    private Rotor pick(ArrayList<Rotor> choices) {
+        return choices.remove(_random.nextInt(choices.size()));
+    }
+
+    /** Return SIZE distinct characters that are unchanged by conversion to
+     *  upper case, or the letters A-Z if SIZE is 26.  The first is an
+     *  ASCII letter or digit, as configuration files require. */
+    private char[] alphabet(int size) {
+        if (size == UPPER.length()) {
+            return UPPER.toCharArray();
+        }
+        char[] result = new char[size];
+        result[0] = ASCII.charAt(_random.nextInt(ASCII.length()));
+        int[] order = shuffle(ALPHABET_POOL.length);
+        for (int i = 1, k = 0; i < size; k += 1) {
+            if (ALPHABET_POOL[order[k]] != result[0]) {
+                result[i] = ALPHABET_POOL[order[k]];
+                i += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return a random permutation of 0 .. SIZE-1. */
+    private int[] shuffle(int size) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = i;
+        }
+        for (int i = size - 1; i > 0; i -= 1) {
+            int j = _random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return a random involution of 0 .. SIZE-1, SIZE even, with no
+     *  fixed points. */
+    private int[] involution(int size) {
+        int[] order = shuffle(size);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 2) {
+            result[order[i]] = order[i + 1];
+            result[order[i + 1]] = order[i];
+        }
+        return result;
+    }
+
+    /** Append to RESULT the cycles of PERM, written with the characters
+     *  of ALPHABET, and end the line. */
+    private static void appendCycles(StringBuilder result, char[] alphabet,
+                                     int[] perm) {
+        boolean[] seen = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i += 1) {
+            if (!seen[i]) {
+                result.append(" (");
+                for (int j = i; !seen[j]; j = perm[j]) {
+                    seen[j] = true;
+                    result.append(alphabet[j]);
+                }
+                result.append(')');
+            }
+        }
+        result.append('\n');
+    }
+
+    /** Return the characters usable in generated alphabets: letters and
+     *  digits that are their own upper case and are not special in
+     *  configurations or settings. */
+    private static char[] alphabetPool() {
+        StringBuilder result = new StringBuilder();
+        for (char c = '!'; c < Character.MAX_VALUE; c += 1) {
+            String s = String.valueOf(c);
+            if (Character.isLetterOrDigit(c) && !Character.isSurrogate(c)
+                && s.toUpperCase(Locale.ROOT).equals(s)
+                && s.toUpperCase().equals(s)
+                && s.toLowerCase(Locale.ROOT).toUpperCase(Locale.ROOT)
+                    .equals(s)) {
+                result.append(c);
+            }
+        }
+        return result.toString().toCharArray();
+    }
+
+    /** The upper-case Latin letters. */
+    private static final String UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    /** Characters that may start an alphabet. */
+    private static final String ASCII = UPPER + "0123456789";
+
+    /** Characters that generated alphabets are drawn from. */
+    private static final char[] ALPHABET_POOL = alphabetPool();
+
+    /** Most notches on a generated rotor. */
+    private static final int MAX_NOTCHES = 3;
+
+    /** Most plugboard pairs in a generated setting. */
+    private static final int MAX_PLUGS = 10;
+
+    /** Average number of characters between blanks in messages. */
+    private static final int WORD_LENGTH = 6;
+
+    /** Default probability of a setting line before each message. */
+    static final double DEFAULT_SETTING_RATE = 0.01;
+
+    /** Default longest message line. */
+    static final int DEFAULT_MAX_LENGTH = 200;
+
+    /** Source of all randomness. */
+    private final Random _random;
+}
@@ -0,0 +1,133 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/** Tests of LoadGenerator and SoakRunner.
+ *  @author Eric Huang
+ */
+public class LoadGeneratorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return the machine described by configuration text CONFIG. */
+    private static Machine load(String config) throws IOException {
+        Path file = Files.createTempFile("generated", ".conf");
+        try {
+            Files.writeString(file, config);
+            return Main.loadConfig(file.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkDeterministic() throws IOException {
+        assertEquals(new LoadGenerator(5).config(60, 6, 2, 2, 5),
+                     new LoadGenerator(5).config(60, 6, 2, 2, 5));
+        assertFalse(new LoadGenerator(5).config(60, 6, 2, 2, 5)
+                    .equals(new LoadGenerator(6).config(60, 6, 2, 2, 5)));
+        Machine machine = load(new LoadGenerator(1).config(26, 5, 1, 2, 5));
+        StringBuilder first = new StringBuilder(),
+            second = new StringBuilder();
+        new LoadGenerator(2).input(machine, first, 5000, 0.1, 50);
+        new LoadGenerator(2).input(machine, second, 5000, 0.1, 50);
+        assertEquals(first.toString(), second.toString());
+        assertTrue(first.length() >= 5000);
+    }
+
+    @Test
+    public void checkGeneratedConfig() throws IOException {
+        Machine machine = load(new LoadGenerator(3).config(26, 5, 1, 2, 5));
+        assertEquals(26, machine.alphabet().size());
+        assertEquals(5, machine.numRotors());
+        assertEquals(3, machine.numPawls());
+        assertEquals(8, machine.allRotors().size());
+        for (Rotor rotor : machine.allRotors()) {
+            if (rotor.reflecting()) {
+                for (int c = 0; c < rotor.size(); c += 1) {
+                    assertTrue(rotor.convertForward(c) != c);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkConfigsValidate() throws IOException {
+        for (long seed = 1; seed <= 40; seed += 1) {
+            String config = new LoadGenerator(seed).config(60, 6, 2, 2, 5);
+            assertEquals(config, List.of(),
+                         ConfigValidator.validate(config));
+            Machine machine = load(config);
+            assertEquals(60, machine.alphabet().size());
+            for (int c = 0; c < 60; c += 1) {
+                assertEquals(config.charAt(c), machine.alphabet().toChar(c));
+            }
+        }
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        Machine template =
+            load(new LoadGenerator(4).config(26, 6, 2, 2, 5));
+        StringBuilder input = new StringBuilder();
+        new LoadGenerator(5).input(template, input, 20000, 0.05, 80);
+        Machine encoder = template.copy(), decoder = template.copy();
+        for (String line : input.toString().split("\n")) {
+            if (line.startsWith("*")) {
+                Main.applySetting(encoder, line);
+                Main.applySetting(decoder, line);
+            } else {
+                assertEquals(line, decoder.convert(encoder.convert(line)));
+            }
+        }
+    }
+
+    @Test
+    public void checkMainReadsGeneratedInput() throws IOException {
+        String config = new LoadGenerator(7).config(60, 6, 2, 2, 5);
+        assertTrue(config.chars().anyMatch(c -> c > 127));
+        Path file = Files.createTempFile("generated", ".conf");
+        try {
+            Files.writeString(file, config);
+            Machine machine = Main.loadConfig(file.toString());
+            StringBuilder input = new StringBuilder();
+            new LoadGenerator(8).input(machine, input, 5000, 0.05, 80);
+            StringBuilder expected = new StringBuilder();
+            for (String line : input.toString().split("\n")) {
+                if (line.startsWith("*")) {
+                    Main.applySetting(machine, line);
+                } else {
+                    expected.append(machine.convert(line.replace(" ", "")))
+                        .append("\n");
+                }
+            }
+            String output = TestUtils.runMain(file, input.toString());
+            assertEquals(expected.toString(), output.replace(" ", ""));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void checkSoak() throws IOException {
+        Machine template =
+            load(new LoadGenerator(6).config(26, 5, 1, 1, 5));
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        assertTrue(new SoakRunner(template, 2, 7)
+                   .run(200_000_000L, new PrintStream(log)));
+        assertTrue(log.toString().contains("round trips: all correct"));
+    }
+
+}
@@ -1,9 +1,13 @@
 package enigma;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Collection;
 import java.util.ArrayList;
 
 import static enigma.EnigmaException.*;
+import static enigma.InputFilter.Policy.PASS;
+import static enigma.InputFilter.Policy.REJECT;
 
 /** Class that represents a complete enigma machine.
  *  @author Eric Huang
@@ -20,6 +24,54 @@ class Machine {
         _pawls = pawls;
         _allRotors = allRotors;
         _plugboard = new Permutation("", _alphabet);
+        _strategy = Strategy.choose(alpha.size(), numRotors, 0);
+        _trigger = new boolean[numRotors];
+    }
+
+    /** Return a machine with my configuration and current state whose
+     *  rotors are copies of mine, so that the two may be used
+     *  independently (for example, on different threads). */
+    Machine copy() {
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>();
+        for (Rotor rotor : _allRotors) {
+            allRotors.add(rotor.copy());
+        }
+        for (Rotor rotor : _rotors) {
+            int k = indexOf(rotor);
+            rotors.add(k == -1 ? rotor.copy() : allRotors.get(k));
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     allRotors);
+        result._rotors = rotors;
+        result._plugboard = _plugboard;
+        result._carryOver = _carryOver;
+        result._filter = _filter;
+        result._strategy = _strategy;
+        return result;
+    }
+
+    /** Return the position of ROTOR among allRotors(), or -1 if it is not
+     *  one of them. */
+    int indexOf(Rotor rotor) {
+        int k = 0;
+        for (Rotor element : _allRotors) {
+            if (element == rotor) {
+                return k;
+            }
+            k += 1;
+        }
+        return -1;
+    }
+
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Returns all the rotors available to me. */
+    Collection<Rotor> allRotors() {
+        return _allRotors;
     }
 
     /** Returns my plugboard. */
@@ -70,10 +122,60 @@ class Machine {
      *  numRotors()-1 upper-case letters. The first letter refers to the
      *  leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        if (setting.length() > _rotors.size() - 1) {
+            throw error("Too many rotor settings");
+        }
         for (int i = 0; i < setting.length(); i++) {
             int setnumber = _alphabet.toInt(setting.charAt(i));
             _rotors.get(i + 1).set(setnumber);
         }
+        _carryOver = setting.length() < _rotors.size() - 1;
+    }
+
+    /** Put me in the state of OTHER, a machine with my configuration
+     *  whose inserted rotors are all among its allRotors(): the same
+     *  rotors, by position in allRotors(), at the same settings, the same
+     *  plugboard, and the same record of carried-over settings.  Unlike
+     *  restore(), allocates nothing once I have held as many rotors, and
+     *  OTHER is only read, so many threads may copy the same machine. */
+    void copyState(Machine other) {
+        Rotor[] mine = rotorTable();
+        _rotors.clear();
+        for (int i = 0; i < other._rotors.size(); i += 1) {
+            Rotor rotor = other._rotors.get(i);
+            int k = other.indexOf(rotor);
+            if (k == -1 || k >= mine.length) {
+                throw error("rotor %s is not in the configuration",
+                            rotor.name());
+            }
+            mine[k].set(rotor.setting());
+            _rotors.add(mine[k]);
+        }
+        _plugboard = other._plugboard;
+        _carryOver = other._carryOver;
+    }
+
+    /** Return true iff the last call to setRotors(SETTING) left some of my
+     *  rotors at settings carried over from their earlier use, so that my
+     *  state depends on more than my latest setting line. */
+    boolean carriesOverSettings() {
+        return _carryOver;
+    }
+
+    /** Return the strategy I convert with. */
+    Strategy strategy() {
+        return _strategy;
+    }
+
+    /** Convert with STRATEGY from now on. */
+    void setStrategy(Strategy strategy) {
+        _strategy = strategy;
+    }
+
+    /** Convert from now on with the strategy that Strategy.choose
+     *  expects to be fastest for messages of about LENGTH characters. */
+    void chooseStrategy(long length) {
+        _strategy = Strategy.choose(_alphabet.size(), _numRotors, length);
     }
 
     /** Set the plugboard to PLUGBOARD. */
@@ -99,41 +201,379 @@ class Machine {
     /** Advances the left rotor to any rotor that is positioned at its notch.
      * Advances the rotor at the notch if it has not advanced yet */
     void advance() {
-        ArrayList<Boolean> trigger = new ArrayList<Boolean>();
-        for (int i = 0; i < _rotors.size(); i++) {
-            trigger.add(false);
+        int last = _rotors.size() - 1;
+        boolean[] trigger = _trigger;
+        for (int i = 0; i <= last; i++) {
+            trigger[i] = i == last;
         }
-        for (int i = 0; i < _rotors.size(); i++) {
+        /* Every notch is read before any rotor moves, so a rotor that
+         * fills two slots steps once for each triggered slot. */
+        for (int i = 1; i <= last; i++) {
             if (_rotors.get(i).atNotch() && _rotors.get(i - 1).rotates()) {
-                trigger.set(i, true);
-                trigger.set(i - 1, true);
+                trigger[i] = true;
+                trigger[i - 1] = true;
             }
         }
-        trigger.set(_rotors.size() - 1, true);
-        for (int i = 0; i < _rotors.size(); i++) {
-            if (trigger.get(i)) {
+        for (int i = 0; i <= last; i++) {
+            if (trigger[i]) {
                 _rotors.get(i).advance();
             }
         }
     }
 
+    /** Advance and return the conversion of C, as convert(String) does
+     *  for each character. */
+    private int step(int c) {
+        advance();
+        return convert(c);
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String converted = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char element = msg.charAt(i);
-            if (element == ' ') {
-                converted += ' ';
-            } else {
-                advance();
-                int letterno = _alphabet.toInt(msg.charAt(i));
-                converted += _alphabet.toChar(convert(letterno));
+        char[] converted = msg.toCharArray();
+        int end = convert(converted, 0, converted.length);
+        return new String(converted, 0, end);
+    }
+
+    /** Replace MSG[START .. END-1] by its encoding/decoding, updating
+     *  the state of the rotors accordingly, and return the end of the
+     *  result, which starts at START.  Blanks are left in place and do
+     *  not advance the rotors; other characters outside my alphabet are
+     *  handled according to my input policy, so the result is shorter
+     *  than the original only under InputFilter.Policy.SKIP. */
+    int convert(char[] msg, int start, int end) {
+        InputFilter filter = filter();
+        Engine engine = begin();
+        int result = start;
+        try {
+            for (int i = start; i < end; i += 1) {
+                char ch = msg[i];
+                int c = ch == ' ' ? -1 : filter.index(ch);
+                if (c >= 0) {
+                    c = engine != null ? engine.convert(c) : step(c);
+                    msg[result] = filter.character(c);
+                    result += 1;
+                } else if (ch == ' ' || filter.policy() == PASS) {
+                    msg[result] = ch;
+                    result += 1;
+                } else if (filter.policy() == REJECT) {
+                    throw filter.invalid(ch, i - start + 1);
+                }
+            }
+        } finally {
+            finish(engine);
+        }
+        return result;
+    }
+
+    /** Convert the characters remaining in IN to OUT as for
+     *  convert(String), converting as many as IN has remaining and OUT
+     *  has room for and advancing the positions of both.  Returns the
+     *  number of characters taken from IN, which exceeds the number put
+     *  in OUT by the number skipped under InputFilter.Policy.SKIP. */
+    int convert(CharBuffer in, CharBuffer out) {
+        InputFilter filter = filter();
+        Engine engine = begin();
+        int taken = 0;
+        try {
+            while (in.hasRemaining() && out.hasRemaining()) {
+                char ch = in.get();
+                taken += 1;
+                int c = ch == ' ' ? -1 : filter.index(ch);
+                if (c >= 0) {
+                    c = engine != null ? engine.convert(c) : step(c);
+                    out.put(filter.character(c));
+                } else if (ch == ' ' || filter.policy() == PASS) {
+                    out.put(ch);
+                } else if (filter.policy() == REJECT) {
+                    throw filter.invalid(ch, taken);
+                }
             }
+        } finally {
+            finish(engine);
         }
-        return converted;
+        return taken;
+    }
+
+    /** Set what happens to characters outside my alphabet to POLICY. */
+    void setInputPolicy(InputFilter.Policy policy) {
+        _filter = filter().withPolicy(policy);
     }
 
+    /** Return the filter classifying my input. */
+    private InputFilter filter() {
+        if (_filter == null) {
+            _filter = new InputFilter(_alphabet, REJECT);
+        }
+        return _filter;
+    }
+
+    /** Convert bytes from IN to OUT, each the index of a character in my
+     *  alphabet, advancing the rotors before each as for convert(String).
+     *  Converts as many bytes as IN has remaining and OUT has room for,
+     *  advancing the positions of both, and returns the number converted.
+     *  With a ByteAlphabet, this encrypts arbitrary binary data. */
+    int convert(ByteBuffer in, ByteBuffer out) {
+        int n = Math.min(in.remaining(), out.remaining());
+        int size = _alphabet.size();
+        Engine engine = begin();
+        try {
+            for (int k = 0; k < n; k += 1) {
+                int c = in.get() & BYTE_MASK;
+                if (c >= size) {
+                    throw error("byte %d is outside the alphabet", c);
+                }
+                c = engine != null ? engine.convert(c) : step(c);
+                out.put((byte) c);
+            }
+        } finally {
+            finish(engine);
+        }
+        return n;
+    }
+
+    /** Prepare my rotors to convert under my strategy, and return the
+     *  Engine to convert with, starting from my rotor positions, or null
+     *  to convert directly.  The engine is kept while my rotor order,
+     *  plugboard and non-moving rotor settings stay the same. */
+    private Engine begin() {
+        Rotor.Lookup lookup = _strategy.lookup();
+        for (Rotor rotor : _rotors) {
+            if (rotor.lookup() != lookup) {
+                rotor.setLookup(lookup);
+            }
+        }
+        if (_strategy != Strategy.SPECIALIZED) {
+            return null;
+        }
+        if (!engineCurrent()) {
+            _engine = EngineSpecializer.specialize(this);
+            _engineRotors = _rotors.toArray(new Rotor[0]);
+            _engineSettings = new int[_engineRotors.length];
+            for (int s = 0; s < _engineRotors.length; s += 1) {
+                _engineSettings[s] = _engineRotors[s].setting();
+            }
+            _enginePlugboard = _plugboard;
+        } else if (_engine != null) {
+            _engine.load(this);
+        }
+        return _engine;
+    }
+
+    /** Return true iff _engine was made for my current rotor order,
+     *  plugboard and non-moving rotor settings. */
+    private boolean engineCurrent() {
+        if (_engineRotors == null || _engineRotors.length != _rotors.size()
+            || _enginePlugboard != _plugboard) {
+            return false;
+        }
+        for (int s = 0; s < _engineRotors.length; s += 1) {
+            Rotor rotor = _rotors.get(s);
+            if (rotor != _engineRotors[s]
+                || !rotor.rotates() && rotor.setting() != _engineSettings[s]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Copy the positions of ENGINE, a result of begin(), back to my
+     *  rotors, unless it is null. */
+    private void finish(Engine engine) {
+        if (engine != null) {
+            engine.store(this);
+        }
+    }
+
+    /** Convert each MESSAGES[I], a sequence of alphabet indices, with
+     *  MACHINES[I] as convert(String) would, returning the results and
+     *  leaving each machine in its final state.  The machines must have
+     *  the same rotors in the same order, differing only in rotor settings
+     *  and plugboards, and must not share rotor objects.  They are run in
+     *  lockstep by a LaneEngine, using vector instructions if possible. */
+    static int[][] convert(Machine[] machines, int[][] messages) {
+        if (machines.length != messages.length) {
+            throw error("need one message per machine");
+        }
+        if (machines.length == 0) {
+            return new int[0][];
+        }
+        LaneEngine engine = LaneEngine.create(machines[0], machines.length);
+        for (int i = 0; i < machines.length; i += 1) {
+            engine.load(i, machines[i]);
+        }
+        int[][] result = engine.convert(messages);
+        for (int i = 0; i < machines.length; i += 1) {
+            engine.store(i, machines[i]);
+        }
+        return result;
+    }
+
+    /** Return the number of longs in each of my snapshots, which is the
+     *  same for every machine with my configuration. */
+    int snapshotLength() {
+        int indexBits = bitsFor(_alphabet.size() - 1);
+        int bits = bitsFor(_numRotors) + 1
+            + _numRotors * bitsFor(rotorTable().length - 1)
+            + rotorTable().length * indexBits
+            + _alphabet.size() * indexBits;
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /** Return my complete state, packed into snapshotLength() longs: which
+     *  rotors are inserted, the settings of all of allRotors(), inserted
+     *  or not, since a later setting line that names fewer rotors than I
+     *  have slots carries them over, the plugboard, and whether settings
+     *  were carried over.  Every inserted rotor must be one of
+     *  allRotors(). */
+    long[] snapshot() {
+        Rotor[] table = rotorTable();
+        int rotorBits = bitsFor(table.length - 1);
+        int indexBits = bitsFor(_alphabet.size() - 1);
+        long[] result = new long[snapshotLength()];
+        int at = pack(result, 0, bitsFor(_numRotors), _rotors.size());
+        at = pack(result, at, 1, _carryOver ? 1 : 0);
+        for (Rotor rotor : _rotors) {
+            int k = indexOf(rotor);
+            if (k == -1) {
+                throw error("rotor %s is not in the configuration",
+                            rotor.name());
+            }
+            at = pack(result, at, rotorBits, k);
+        }
+        at = bitsFor(_numRotors) + 1 + _numRotors * rotorBits;
+        for (Rotor rotor : table) {
+            at = pack(result, at, indexBits, rotor.setting());
+        }
+        for (int c = 0; c < _alphabet.size(); c += 1) {
+            at = pack(result, at, indexBits, _plugboard.permute(c));
+        }
+        return result;
+    }
+
+    /** Return me to the state recorded in SNAPSHOT, a result of
+     *  snapshot() on a machine with my configuration.  Takes time
+     *  proportional to the size of the configuration, not to how much
+     *  the machine has converted. */
+    void restore(long[] snapshot) {
+        if (snapshot.length != snapshotLength()) {
+            throw error("snapshot does not match configuration");
+        }
+        Rotor[] table = rotorTable();
+        int rotorBits = bitsFor(table.length - 1);
+        int indexBits = bitsFor(_alphabet.size() - 1);
+        int countBits = bitsFor(_numRotors);
+        int count = (int) unpack(snapshot, 0, countBits);
+        if (count > _numRotors) {
+            throw error("snapshot does not match configuration");
+        }
+        int at = countBits;
+        boolean carryOver = unpack(snapshot, at, 1) != 0;
+        at += 1;
+        ArrayList<Rotor> rotors = new ArrayList<Rotor>(count);
+        for (int i = 0; i < count; i += 1) {
+            int k = (int) unpack(snapshot, at, rotorBits);
+            at += rotorBits;
+            if (k >= table.length) {
+                throw error("snapshot does not match configuration");
+            }
+            rotors.add(table[k]);
+        }
+        at = countBits + 1 + _numRotors * rotorBits;
+        int[] settings = new int[table.length];
+        for (int k = 0; k < table.length; k += 1) {
+            settings[k] = (int) unpack(snapshot, at, indexBits);
+            at += indexBits;
+            if (settings[k] >= _alphabet.size()) {
+                throw error("snapshot does not match configuration");
+            }
+        }
+        int[] plugboard = new int[_alphabet.size()];
+        boolean same = true;
+        for (int c = 0; c < plugboard.length; c += 1) {
+            plugboard[c] = (int) unpack(snapshot, at, indexBits);
+            at += indexBits;
+            same &= plugboard[c] == _plugboard.permute(c);
+        }
+        if (!same) {
+            _plugboard = new Permutation(plugboard, _alphabet);
+        }
+        for (int k = 0; k < table.length; k += 1) {
+            table[k].set(settings[k]);
+        }
+        _rotors = rotors;
+        _carryOver = carryOver;
+    }
+
+    /** Return a 64-bit hash of my configuration: the alphabet, the
+     *  numbers of rotor slots and pawls, and the name, kind, wiring and
+     *  notches of each of allRotors(), in order.  It does not depend on
+     *  my state, so it identifies the configurations that can restore()
+     *  my snapshots. */
+    long fingerprint() {
+        int size = _alphabet.size();
+        long h = mix(mix(size, _numRotors), _pawls);
+        for (int c = 0; c < size; c += 1) {
+            h = mix(h, _alphabet.toChar(c));
+        }
+        for (Rotor rotor : _allRotors) {
+            h = mix(h, rotor.name().hashCode());
+            h = mix(h, rotor.reflecting() ? 2 : rotor.rotates() ? 1 : 0);
+            for (int c = 0; c < size; c += 1) {
+                h = mix(h, rotor.permutation().permute(c) * 2
+                        + (rotor.notchAt(c) ? 1 : 0));
+            }
+        }
+        return h;
+    }
+
+    /** Return hash H combined with VALUE. */
+    private static long mix(long h, long value) {
+        h = (h ^ value) * FINGERPRINT_MULTIPLIER;
+        return h ^ (h >>> FINGERPRINT_SHIFT);
+    }
+
+    /** Return allRotors() as an array, indexed as by indexOf. */
+    private Rotor[] rotorTable() {
+        if (_rotorTable == null) {
+            _rotorTable = _allRotors.toArray(new Rotor[0]);
+        }
+        return _rotorTable;
+    }
+
+    /** Return the number of bits needed to hold values 0 .. MAX. */
+    private static int bitsFor(int max) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(max));
+    }
+
+    /** Store the low WIDTH bits of VALUE at bit AT of WORDS, returning
+     *  the bit after them. */
+    private static int pack(long[] words, int at, int width, long value) {
+        for (int b = 0; b < width; b += 1, at += 1) {
+            words[at / Long.SIZE] |= ((value >>> b) & 1) << (at % Long.SIZE);
+        }
+        return at;
+    }
+
+    /** Return the WIDTH bits at bit AT of WORDS. */
+    private static long unpack(long[] words, int at, int width) {
+        long result = 0;
+        for (int b = 0; b < width; b += 1, at += 1) {
+            result |= ((words[at / Long.SIZE] >>> (at % Long.SIZE)) & 1) << b;
+        }
+        return result;
+    }
+
+    /** Multiplier mixing values into a fingerprint. */
+    private static final long FINGERPRINT_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** Shift mixing values into a fingerprint. */
+    private static final int FINGERPRINT_SHIFT = 29;
+
+    /** Mask extracting the unsigned value of a byte. */
+    private static final int BYTE_MASK = 0xFF;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -151,6 +591,35 @@ class Machine {
      */
     private ArrayList<Rotor> _rotors = new ArrayList<Rotor>();
 
+    /** Scratch space of advance(): which slots step this keystroke. */
+    private final boolean[] _trigger;
+
+    /** True iff some rotor settings predate the last setRotors(SETTING). */
+    private boolean _carryOver;
+
     /** Plugboard for this machine. */
     private Permutation _plugboard;
+
+    /** Classifies input characters, once needed. */
+    private InputFilter _filter;
+
+    /** My available rotors in indexOf order, once needed. */
+    private Rotor[] _rotorTable;
+
+    /** How I convert. */
+    private Strategy _strategy;
+
+    /** Under SPECIALIZED, the engine converting for me, or null if none
+     *  could be generated. */
+    private Engine _engine;
+
+    /** The rotors in my slots when _engine was made, or null if it has
+     *  not been. */
+    private Rotor[] _engineRotors;
+
+    /** The settings of _engineRotors when _engine was made. */
+    private int[] _engineSettings;
+
+    /** My plugboard when _engine was made. */
+    private Permutation _enginePlugboard;
 }
@@ -0,0 +1,297 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/** A reactive stage that converts a stream of text or byte chunks with a
+ *  Machine.  Upstream items are Items holding a CharBuffer, a ByteBuffer
+ *  or a setting line; each buffer is converted into a new buffer of the
+ *  same kind and passed downstream, while setting lines reconfigure the
+ *  machine for the chunks after them and produce no output.
+ *
+ *  At most BUFFER converted chunks are ever held: the processor asks
+ *  upstream for that many items at first and for one more only as each
+ *  one is delivered downstream, so a slow subscriber slows the source
+ *  and memory stays flat no matter how long the stream.  Conversion
+ *  allocates only each output buffer.  A conversion error cancels
+ *  upstream and is signalled downstream after the chunks before it.
+ *  Supports a single subscriber.
+ *  @author Eric Huang
+ */
+class MachineProcessor implements Flow.Processor<MachineProcessor.Item,
+                                                 MachineProcessor.Item> {
+
+    /** A processor converting with MACHINE, applying setting lines with
+     *  SETTER and buffering at most BUFFER converted chunks. */
+    MachineProcessor(Machine machine, BiConsumer<Machine, String> setter,
+                     int buffer) {
+        if (buffer <= 0) {
+            throw new IllegalArgumentException("buffer must be positive");
+        }
+        _machine = machine;
+        _setter = setter;
+        _buffer = buffer;
+    }
+
+    /** A processor converting with MACHINE, applying setting lines as Main
+     *  does and buffering at most BUFFER converted chunks. */
+    MachineProcessor(Machine machine, int buffer) {
+        this(machine, Main::applySetting, buffer);
+    }
+
+    /** One element of the stream: a chunk of text, a chunk of bytes or a
+     *  setting line. */
+    static final class Item {
+
+        /** An item with exactly one of TEXT, BYTES and SETTING non-null. */
+        private Item(CharBuffer text, ByteBuffer bytes, String setting) {
+            _text = text;
+            _bytes = bytes;
+            _setting = setting;
+        }
+
+        /** Return an item carrying the remaining characters of TEXT. */
+        static Item of(CharBuffer text) {
+            return new Item(text, null, null);
+        }
+
+        /** Return an item carrying the remaining bytes of BYTES, each the
+         *  index of a character in the machine's alphabet. */
+        static Item of(ByteBuffer bytes) {
+            return new Item(null, bytes, null);
+        }
+
+        /** Return an item that applies setting line SETTING. */
+        static Item setting(String setting) {
+            return new Item(null, null, setting);
+        }
+
+        /** Return my text, or null if I carry none. */
+        CharBuffer text() {
+            return _text;
+        }
+
+        /** Return my bytes, or null if I carry none. */
+        ByteBuffer bytes() {
+            return _bytes;
+        }
+
+        /** Return my setting line, or null if I am not one. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Text chunk. */
+        private final CharBuffer _text;
+
+        /** Byte chunk. */
+        private final ByteBuffer _bytes;
+
+        /** Setting line. */
+        private final String _setting;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Item> subscriber) {
+        if (_downstream != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                "processor already has a subscriber"));
+            return;
+        }
+        _downstream = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException(
+                        "non-positive request"));
+                } else {
+                    addDemand(n);
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                _cancelled = true;
+                Flow.Subscription upstream = _upstream;
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (_upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        _upstream = subscription;
+        if (_cancelled) {
+            subscription.cancel();
+        } else {
+            subscription.request(_buffer);
+        }
+    }
+
+    @Override
+    public void onNext(Item item) {
+        if (_done) {
+            return;
+        }
+        try {
+            if (item.setting() != null) {
+                _setter.accept(_machine, item.setting());
+                _upstream.request(1);
+                return;
+            }
+            Item result;
+            if (item.text() != null) {
+                CharBuffer in = item.text();
+                CharBuffer out = CharBuffer.allocate(in.remaining());
+                _machine.convert(in, out);
+                result = Item.of(out.flip());
+            } else {
+                ByteBuffer in = item.bytes();
+                ByteBuffer out = in.isDirect()
+                    ? ByteBuffer.allocateDirect(in.remaining())
+                    : ByteBuffer.allocate(in.remaining());
+                _machine.convert(in, out);
+                result = Item.of(out.flip());
+            }
+            _queue.offer(result);
+        } catch (RuntimeException excp) {
+            _upstream.cancel();
+            fail(excp);
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable excp) {
+        fail(excp);
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        drain();
+    }
+
+    /** End the stream with EXCP, unless it has already ended. */
+    private void fail(Throwable excp) {
+        if (!_done) {
+            _failure = excp;
+            _done = true;
+        }
+    }
+
+    /** Add N to the outstanding downstream demand, saturating at
+     *  Long.MAX_VALUE. */
+    private void addDemand(long n) {
+        while (true) {
+            long current = _requested.get();
+            long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            if (_requested.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /** Deliver as many queued chunks as downstream has asked for, and the
+     *  end of the stream once the queue is empty.  Runs on whichever
+     *  thread calls it, but never on two threads at once. */
+    private void drain() {
+        if (_wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super Item> downstream = _downstream;
+            if (downstream != null) {
+                long requested = _requested.get();
+                long emitted = 0;
+                while (emitted != requested && !_cancelled) {
+                    Item item = _queue.poll();
+                    if (item == null) {
+                        break;
+                    }
+                    downstream.onNext(item);
+                    emitted += 1;
+                    if (!_done) {
+                        _upstream.request(1);
+                    }
+                }
+                if (emitted != 0 && requested != Long.MAX_VALUE) {
+                    _requested.addAndGet(-emitted);
+                }
+                if (_cancelled) {
+                    _queue.clear();
+                } else if (_done && _queue.isEmpty() && !_terminated) {
+                    _terminated = true;
+                    if (_failure != null) {
+                        downstream.onError(_failure);
+                    } else {
+                        downstream.onComplete();
+                    }
+                }
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** The converting machine. */
+    private final Machine _machine;
+
+    /** Applies setting lines to _machine. */
+    private final BiConsumer<Machine, String> _setter;
+
+    /** Maximum number of converted chunks held. */
+    private final int _buffer;
+
+    /** Converted chunks awaiting downstream demand. */
+    private final Queue<Item> _queue = new ConcurrentLinkedQueue<>();
+
+    /** Outstanding downstream demand. */
+    private final AtomicLong _requested = new AtomicLong();
+
+    /** Number of pending calls to drain(). */
+    private final AtomicInteger _wip = new AtomicInteger();
+
+    /** The source of items. */
+    private volatile Flow.Subscription _upstream;
+
+    /** The single subscriber. */
+    private volatile Flow.Subscriber<? super Item> _downstream;
+
+    /** True once upstream has ended or conversion has failed. */
+    private volatile boolean _done;
+
+    /** The error ending the stream, if any. */
+    private volatile Throwable _failure;
+
+    /** True once downstream has cancelled. */
+    private volatile boolean _cancelled;
+
+    /** True once downstream has been told the stream ended. */
+    private boolean _terminated;
+}
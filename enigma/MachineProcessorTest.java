@@ -0,0 +1,157 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.Flow;
+
+import static enigma.TestUtils.*;
+
+/** Tests of MachineProcessor.
+ *  @author Eric Huang
+ */
+public class MachineProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return an unset machine with rotors B, BETA, I, II and III. */
+    private Machine machine() {
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        allRotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        allRotors.add(new FixedRotor("BETA",
+                new Permutation(NAVALA.get("Beta"), UPPER)));
+        allRotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        allRotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        allRotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        return new Machine(UPPER, 5, 3, allRotors);
+    }
+
+    /** An upstream source that records how much has been requested. */
+    private static class Source implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /** Total items requested. */
+        private long requested;
+
+        /** True once cancelled. */
+        private boolean cancelled;
+    }
+
+    /** A subscriber that records what it receives and requests items
+     *  only when told to. */
+    private static class Sink implements Flow.Subscriber<
+        MachineProcessor.Item> {
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(MachineProcessor.Item item) {
+            received.add(item.text().toString());
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            failure = excp;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        /** Subscription to the processor. */
+        private Flow.Subscription subscription;
+
+        /** Text of each item received. */
+        private ArrayList<String> received = new ArrayList<>();
+
+        /** Error received, if any. */
+        private Throwable failure;
+
+        /** True once completed. */
+        private boolean completed;
+    }
+
+    @Test
+    public void convertsAndAppliesSettings() {
+        MachineProcessor processor = new MachineProcessor(machine(), 4);
+        Source source = new Source();
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        processor.onSubscribe(source);
+        sink.subscription.request(10);
+        processor.onNext(MachineProcessor.Item.setting(
+            "* B BETA I II III AAAA (AQ) (EP)"));
+        processor.onNext(MachineProcessor.Item.of(
+            CharBuffer.wrap("HELLO WORLD")));
+        processor.onNext(MachineProcessor.Item.setting(
+            "* B BETA I II III AAAA (AQ) (EP)"));
+        processor.onNext(MachineProcessor.Item.of(
+            CharBuffer.wrap("IHBDQ")));
+        processor.onNext(MachineProcessor.Item.of(
+            CharBuffer.wrap(" QMTQZ")));
+        processor.onComplete();
+        assertEquals("[IHBDQ QMTQZ, HELLO,  WORLD]",
+                     sink.received.toString());
+        assertTrue(sink.completed);
+    }
+
+    @Test
+    public void boundsUpstreamDemand() {
+        MachineProcessor processor = new MachineProcessor(machine(), 3);
+        Source source = new Source();
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        processor.onSubscribe(source);
+        assertEquals(3, source.requested);
+        processor.onNext(MachineProcessor.Item.setting(
+            "* B BETA I II III AAAA"));
+        assertEquals(4, source.requested);
+        for (int i = 0; i < 3; i += 1) {
+            processor.onNext(MachineProcessor.Item.of(
+                CharBuffer.wrap("AAAAA")));
+        }
+        assertEquals(4, source.requested);
+        sink.subscription.request(2);
+        assertEquals(2, sink.received.size());
+        assertEquals(6, source.requested);
+    }
+
+    @Test
+    public void reportsErrorsInOrder() {
+        MachineProcessor processor = new MachineProcessor(machine(), 4);
+        Source source = new Source();
+        Sink sink = new Sink();
+        processor.subscribe(sink);
+        processor.onSubscribe(source);
+        processor.onNext(MachineProcessor.Item.setting(
+            "* B BETA I II III AAAA"));
+        processor.onNext(MachineProcessor.Item.of(CharBuffer.wrap("AB")));
+        processor.onNext(MachineProcessor.Item.of(CharBuffer.wrap("A1")));
+        assertTrue(source.cancelled);
+        assertNull(sink.failure);
+        sink.subscription.request(5);
+        assertEquals(1, sink.received.size());
+        assertTrue(sink.failure instanceof EnigmaException);
+    }
+}
@@ -2,6 +2,9 @@ package enigma;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 
 import static enigma.TestUtils.*;
@@ -120,4 +123,132 @@ public class MachineTest {
         assertEquals("Wrong string decryption",
                 "HELLO WORLD", testmachine.convert("IHBDQ QMTQZ"));
     }
+
+    @Test
+    public void copyTest() {
+        ArrayList<Rotor> allRotors =  new ArrayList<Rotor>();
+        allRotors.add(b); allRotors.add(beta); allRotors.add(i);
+        allRotors.add(ii); allRotors.add(iii);
+
+        String[] rotors = {"B", "Beta", "I", "II", "III"};
+
+        Machine testmachine = new Machine(UPPER, 5, 3, allRotors);
+        testmachine.insertRotors(rotors);
+        testmachine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        testmachine.setRotors("AAAA");
+        Machine copy = testmachine.copy();
+        assertEquals("Wrong string encryption by original",
+                "IHBDQ QMTQZ", testmachine.convert("HELLO WORLD"));
+        assertEquals("Copy should not share rotor state",
+                "IHBDQ QMTQZ", copy.convert("HELLO WORLD"));
+        assertFalse(copy.rotors().get(4) == testmachine.rotors().get(4));
+    }
+
+    @Test
+    public void snapshotTest() {
+        ArrayList<Rotor> allRotors =  new ArrayList<Rotor>();
+        allRotors.add(b); allRotors.add(beta); allRotors.add(i);
+        allRotors.add(ii); allRotors.add(iii);
+
+        String[] rotors = {"B", "Beta", "I", "II", "III"};
+
+        Machine testmachine = new Machine(UPPER, 5, 3, allRotors);
+        testmachine.insertRotors(rotors);
+        testmachine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        testmachine.setRotors("AAAA");
+        assertEquals(3, testmachine.snapshotLength());
+        long[] snapshot = testmachine.snapshot();
+        assertEquals("Wrong string encryption",
+                "IHBDQ QMTQZ", testmachine.convert("HELLO WORLD"));
+        testmachine.setPlugboard(new Permutation("", UPPER));
+        testmachine.setRotors("QRST");
+        testmachine.restore(snapshot);
+        assertEquals("Wrong encryption after restore",
+                "IHBDQ QMTQZ", testmachine.convert("HELLO WORLD"));
+        testmachine.restore(snapshot);
+        assertArrayEquals(snapshot, testmachine.snapshot());
+    }
+
+    @Test
+    public void snapshotCarryOverTest() {
+        Rotor iv = new MovingRotor("IV",
+            new Permutation(NAVALA.get("IV"), UPPER), "J");
+        ArrayList<Rotor> allRotors =  new ArrayList<Rotor>();
+        allRotors.add(b); allRotors.add(beta); allRotors.add(i);
+        allRotors.add(ii); allRotors.add(iii); allRotors.add(iv);
+
+        Machine testmachine = new Machine(UPPER, 5, 3, allRotors);
+        testmachine.insertRotors(new String[] {"B", "Beta", "I", "II",
+                                               "III"});
+        testmachine.setRotors("AAAA");
+        testmachine.convert("HELLO WORLD");
+        testmachine.setRotors(new ArrayList<Rotor>());
+        testmachine.insertRotors(new String[] {"B", "Beta", "I", "II",
+                                               "IV"});
+        testmachine.setRotors("AAAA");
+        long[] snapshot = testmachine.snapshot();
+        String[] later = {"B", "Beta", "I", "II", "III"};
+        testmachine.setRotors(new ArrayList<Rotor>());
+        testmachine.insertRotors(later);
+        testmachine.setRotors("A");
+        String expected = testmachine.convert("FROM HIS SHOULDER");
+
+        testmachine.restore(snapshot);
+        testmachine.setRotors(new ArrayList<Rotor>());
+        testmachine.insertRotors(later);
+        testmachine.setRotors("A");
+        assertEquals("Carried-over setting lost by restore",
+                expected, testmachine.convert("FROM HIS SHOULDER"));
+    }
+
+    @Test
+    public void inputPolicyTest() {
+        ArrayList<Rotor> allRotors =  new ArrayList<Rotor>();
+        allRotors.add(b); allRotors.add(beta); allRotors.add(i);
+        allRotors.add(ii); allRotors.add(iii);
+
+        String[] rotors = {"B", "Beta", "I", "II", "III"};
+
+        Machine testmachine = new Machine(UPPER, 5, 3, allRotors);
+        testmachine.insertRotors(rotors);
+        testmachine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        testmachine.setRotors("AAAA");
+        try {
+            testmachine.convert("HELLO, WORLD");
+            fail("Invalid character should be rejected");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("position 6"));
+        }
+        testmachine.setRotors("AAAA");
+        testmachine.setInputPolicy(InputFilter.Policy.SKIP);
+        assertEquals("Wrong encryption skipping",
+                "IHBDQ QMTQZ", testmachine.convert("HELLO,- WORLD!"));
+        testmachine.setRotors("AAAA");
+        testmachine.setInputPolicy(InputFilter.Policy.PASS);
+        assertEquals("Wrong encryption passing",
+                "IHBDQ, QMTQZ 42", testmachine.convert("HELLO, WORLD 42"));
+    }
+
+    @Test
+    public void repeatedRotorsTest() throws IOException {
+        Path dir = Path.of("..", "testing", "correct");
+        String[] lines = Files.readAllLines(dir.resolve("test4.in"))
+            .toArray(new String[0]);
+        String plain = String.join("", lines[1], lines[2], lines[3],
+                                   lines[4]).toUpperCase().replace(" ", "");
+        String cipher = String.join("", lines[7], lines[8], lines[9],
+                                    lines[10]).replace(" ", "");
+        assertEquals("IWEKVLNCDCAYILHNVY", cipher.substring(0, 18));
+        for (Strategy strategy : Strategy.values()) {
+            Machine testmachine =
+                Main.loadConfig(dir.resolve("test4.conf").toString());
+            testmachine.setStrategy(strategy);
+            Main.applySetting(testmachine, lines[0]);
+            assertEquals("Wrong encryption with " + strategy,
+                    cipher, testmachine.convert(plain));
+            Main.applySetting(testmachine, lines[6]);
+            assertEquals("Wrong decryption with " + strategy,
+                    plain, testmachine.convert(cipher));
+        }
+    }
 }
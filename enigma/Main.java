@@ -1,14 +1,42 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.function.ObjLongConsumer;
 
 import static enigma.EnigmaException.*;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 
 /** Enigma simulator.
  *  @author Eric Huang
@@ -23,7 +51,60 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1. All text is read and written in UTF-8 (see
+     *  CHARSET).
+     *
+     *  The positional ARGS may be preceded by options of the form --NAME
+     *  or --NAME=VALUE:
+     *    --pipeline   read, convert and write on separate threads.
+     *    --parallel[=N]  convert the segments headed by each setting line
+     *                 concurrently on N threads (default: one per
+     *                 processor).
+     *    --bytes --setting=LINE  treat ARGS[1] and ARGS[2], which must
+     *                 both be present, as binary files, converting every
+     *                 byte using the setting line LINE.  The configuration
+     *                 must have the byte alphabet 00-FF, whose rotor
+     *                 notches and cycles, and the rotor positions and
+     *                 plugboard cycles of LINE, are written as two-digit
+     *                 hexadecimal numerals, as in "I M41 (00FF7A) (0102)"
+     *                 and "* B III I II 002820 (0102)".
+     *    --journal=FILE [--checkpoint=N] [--resume]  convert ARGS[1] to
+     *                 ARGS[2], which must both be present, recording a
+     *                 checkpoint in FILE after every N megabytes of input
+     *                 (default 64).  With --resume, continue from the last
+     *                 checkpoint in FILE instead of starting over.
+     *    --invalid=POLICY  what to do with message characters outside the
+     *                 alphabet: reject (the default) stops with an error,
+     *                 skip drops them and pass copies them unchanged;
+     *                 neither advances the rotors.
+     *    --strategy=NAME  how to convert: arithmetic, shifted or
+     *                 specialized (see Strategy); auto (the default) to
+     *                 choose from the configuration and the characters per
+     *                 setting line of the input file; or calibrate to time
+     *                 each on messages of that length on this host
+     *                 and use the fastest, reporting the rates on the
+     *                 standard error.
+     *    --batch[=N]  convert many files on N threads (default: one per
+     *                 processor), reading the configuration once.  ARGS[1]
+     *                 and ARGS[2] name an input and an output directory,
+     *                 and each file in the first is converted to the file
+     *                 of the same name in the second; or ARGS[1] alone
+     *                 names a manifest whose lines each name an input and
+     *                 an output file.  Each file is converted as it would
+     *                 be alone, and its output replaces the old one only
+     *                 once complete.  A summary of each file's status,
+     *                 time and throughput goes to the standard output,
+     *                 and the exit code is 1 if any file failed.
+     *    --teletype[=PORT] [--flush-delay=MICROS] [--flush-batch=N]
+     *                 convert each character as it is read from the
+     *                 standard input, or from one connection to PORT on
+     *                 the loopback interface, writing to the standard
+     *                 output or back to the connection.  Output is
+     *                 written when N keystrokes (default 64) are waiting,
+     *                 when the oldest has waited MICROS microseconds
+     *                 (default 200), or when no more input is ready.
+     *                 Keystroke latency percentiles go to the standard
+     *                 error at the end. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -36,29 +117,159 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            addOption(args[first].substring(2));
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = getConfig(args[0]);
+        _inputFile = args.length > 1 ? Paths.get(args[1]) : null;
+
+        if (_options.containsKey("batch")) {
+            if (args.length < 2) {
+                throw error("--batch needs input and output directories "
+                            + "or a manifest");
+            }
+            for (String other : new String[] {
+                    "bytes", "journal", "pipeline", "parallel" }) {
+                if (_options.containsKey(other)) {
+                    throw error("--batch cannot be combined with --%s",
+                                other);
+                }
+            }
+            _inputName = args[1];
+            _outputName = args.length > 2 ? args[2] : null;
+            return;
+        }
+
+        if (_options.containsKey("teletype")) {
+            if (args.length != 1) {
+                throw error("--teletype takes only a configuration file");
+            }
+            for (String other : new String[] {
+                    "bytes", "journal", "pipeline", "parallel" }) {
+                if (_options.containsKey(other)) {
+                    throw error("--teletype cannot be combined with --%s",
+                                other);
+                }
+            }
+            return;
+        }
+
+        if (_options.containsKey("bytes")) {
+            if (args.length != 3) {
+                throw error("byte mode needs input and output files");
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+            return;
+        }
+
+        if (_options.containsKey("journal")) {
+            if (args.length != 3) {
+                throw error("--journal needs input and output files");
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+            return;
+        }
 
         if (args.length > 1) {
             _input = getInput(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new Scanner(System.in, CHARSET);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new PrintStream(System.out, true, CHARSET);
+        }
+    }
+
+    /** Record OPTION, which has the form NAME or NAME=VALUE. */
+    private void addOption(String option) {
+        int eq = option.indexOf('=');
+        if (eq == -1) {
+            _options.put(option, "");
+        } else {
+            _options.put(option.substring(0, eq), option.substring(eq + 1));
+        }
+    }
+
+    /** Return the number of threads requested by option NAME, defaulting
+     *  to the number of available processors. */
+    private int threads(String name) {
+        String value = _options.get(name);
+        if (value.isEmpty()) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            int threads = Integer.parseInt(value);
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad thread count for --%s: %s", name, value);
+    }
+
+    /** Return the number of bytes in the megabytes given by option NAME,
+     *  or DEFAULTMB megabytes if it is absent. */
+    private long megabytes(String name, long defaultMB) {
+        String value = _options.get(name);
+        if (value == null) {
+            return defaultMB << 20;
+        }
+        try {
+            long megabytes = Long.parseLong(value);
+            if (megabytes > 0 && megabytes < 1L << 40) {
+                return megabytes << 20;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad size for --%s: %s", name, value);
+    }
+
+    /** Return the value of option NAME, a whole number at most MAX, or
+     *  DEFAULTVALUE if it is absent. */
+    private long number(String name, long defaultValue, long max) {
+        String value = _options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value);
+            if (number >= 0 && number <= max) {
+                return number;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad value for --%s: %s", name, value);
+    }
+
+    /** Return a Scanner reading the configuration file named NAME. */
+    private static Scanner getConfig(String name) {
+        try {
+            return new Scanner(new File(name), CHARSET);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
         }
     }
 
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    private static Scanner getInput(String name) {
         try {
-            return new Scanner(new File(name));
+            return new Scanner(new File(name), CHARSET);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -67,7 +278,7 @@ public final class Main {
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(new File(name), CHARSET);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -76,25 +287,320 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
         Machine M = readConfig();
+        if (_options.containsKey("invalid")) {
+            M.setInputPolicy(InputFilter.Policy.named(_options.get("invalid")));
+        }
+        if (_options.containsKey("batch")) {
+            processBatch(M);
+            return;
+        }
+        chooseStrategy(M);
+        if (_options.containsKey("teletype")) {
+            processTeletype(M);
+            return;
+        }
+        if (_options.containsKey("bytes")) {
+            processBytes(M);
+            return;
+        }
+        if (_options.containsKey("journal")) {
+            processJournaled(M);
+            return;
+        }
         if (!_input.hasNext("[*].*")) {
             throw error("Missing setting");
         }
-        while (_input.hasNextLine()) {
-            String line = _input.nextLine();
+        if (_options.containsKey("pipeline")) {
+            new Pipeline(M, _input, _output,
+                         line -> applySetting(M, line)).run();
+            return;
+        }
+        if (_options.containsKey("parallel")) {
+            new SegmentProcessor(M, _input, _output, Main::applySetting,
+                                 threads("parallel")).run();
+            return;
+        }
+        convertLines(M, _input, _output);
+    }
+
+    /** Apply the setting lines read from INPUT to M, and print the
+     *  conversions of its other lines on OUTPUT in groups of five. */
+    static void convertLines(Machine M, Scanner input, PrintStream output) {
+        while (input.hasNextLine()) {
+            String line = input.nextLine();
             if (line.matches("[*].*")) {
-                setUp(M, line);
-                if (!(M.rotors().get(0) instanceof Reflector)) {
-                    throw error("First rotor isn't reflector");
-                }
+                applySetting(M, line);
             } else {
                 String translation = M.convert(line.toUpperCase());
-                printMessageLine(translation);
+                printMessageLine(translation, output);
+            }
+        }
+    }
+
+    /** Set the strategy of M as the --strategy option directs. */
+    private void chooseStrategy(Machine M) {
+        String name = _options.getOrDefault("strategy", "auto");
+        if (name.equals("auto")) {
+            M.chooseStrategy(messageLength(_inputFile));
+        } else if (name.equals("calibrate")) {
+            Map<Strategy, Double> rates =
+                Strategy.measure(M, messageLength(_inputFile),
+                                 CALIBRATION_NANOS);
+            M.setStrategy(Strategy.fastest(rates));
+            StringBuilder report = new StringBuilder();
+            for (Map.Entry<Strategy, Double> rate : rates.entrySet()) {
+                report.append(String.format(" %s=%.1f", rate.getKey(),
+                                            rate.getValue()));
+            }
+            System.err.printf("strategy: %s (characters per us:%s)%n",
+                              M.strategy(), report);
+        } else {
+            M.setStrategy(Strategy.named(name));
+        }
+    }
+
+    /** Return the expected length of a message in the file INPUT: its
+     *  length divided by the number of its setting lines, which is how
+     *  much a machine converts in one state, and thus how long one
+     *  Engine is used.  Returns 0 if INPUT is null or not a readable
+     *  file, as for the standard input. */
+    static long messageLength(Path input) {
+        if (input == null || !Files.isRegularFile(input)) {
+            return 0;
+        }
+        try (FileChannel in = FileChannel.open(input, READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+            long settings = 0;
+            boolean lineStart = true;
+            while (in.read(buffer) > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (lineStart && b == '*') {
+                        settings += 1;
+                    }
+                    lineStart = b == '\n';
+                }
+                buffer.clear();
             }
+            return in.size() / Math.max(1, settings);
+        } catch (IOException excp) {
+            return 0;
         }
     }
 
+    /** Convert the files named by _inputName and _outputName, two
+     *  directories or a manifest and null, with copies of M, as directed
+     *  by --batch, and print a summary.  Under --strategy=auto each copy
+     *  gets the strategy for the length of its own input; other
+     *  strategies are chosen once for all. */
+    private void processBatch(Machine M) {
+        List<BatchProcessor.Job> jobs = _outputName == null
+            ? BatchProcessor.manifest(Paths.get(_inputName))
+            : BatchProcessor.directory(Paths.get(_inputName),
+                                       Paths.get(_outputName));
+        ObjLongConsumer<Machine> strategy = Machine::chooseStrategy;
+        if (!_options.getOrDefault("strategy", "auto").equals("auto")) {
+            chooseStrategy(M);
+            strategy = (machine, length) -> { };
+        }
+        long start = System.nanoTime();
+        List<BatchProcessor.Outcome> outcomes =
+            new BatchProcessor(M, jobs, threads("batch"), strategy).run();
+        int failed = BatchProcessor.summarize(outcomes,
+                                              System.nanoTime() - start,
+                                              System.out);
+        if (failed > 0) {
+            throw error("%d of %d files failed", failed, outcomes.size());
+        }
+    }
+
+    /** Convert keystrokes with M as they arrive, as directed by
+     *  --teletype, and report their latencies on the standard error. */
+    private void processTeletype(Machine M) {
+        long delay = number("flush-delay", FLUSH_DELAY_MICROS,
+                            Long.MAX_VALUE / 1000) * 1000;
+        int batch = (int) number("flush-batch", FLUSH_BATCH,
+                                 MAX_FLUSH_BATCH);
+        Teletype teletype;
+        if (_options.get("teletype").isEmpty()) {
+            teletype = new Teletype(M, new InputStreamReader(System.in,
+                                                          CHARSET),
+                                    new OutputStreamWriter(System.out,
+                                                           CHARSET),
+                                    line -> applySetting(M, line),
+                                    delay, batch);
+            teletype.run();
+        } else {
+            int port = (int) number("teletype", 0, MAX_PORT);
+            try (ServerSocket server =
+                     new ServerSocket(port, 1,
+                                      InetAddress.getLoopbackAddress());
+                 Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                teletype = new Teletype(
+                    M, new InputStreamReader(socket.getInputStream(),
+                                             CHARSET),
+                    new OutputStreamWriter(socket.getOutputStream(), CHARSET),
+                    line -> applySetting(M, line), delay, batch);
+                teletype.run();
+            } catch (IOException excp) {
+                throw error("could not serve port %d: %s", port,
+                            excp.getMessage());
+            }
+        }
+        teletype.latencies().report(System.err);
+    }
+
+    /** Convert the bytes of the file named _inputName with M, as set by
+     *  the --setting option, writing them to the file named _outputName.
+     *  Both files are mapped into memory a window at a time, so files of
+     *  any size are converted in constant space. */
+    private void processBytes(Machine M) {
+        if (!(M.alphabet() instanceof ByteAlphabet)) {
+            throw error("byte mode requires the byte alphabet 00-FF");
+        }
+        String setting = _options.get("setting");
+        if (setting == null || setting.isEmpty()) {
+            throw error("byte mode requires --setting");
+        }
+        applySetting(M, setting);
+        try (FileChannel in = FileChannel.open(Paths.get(_inputName), READ);
+             FileChannel out = FileChannel.open(Paths.get(_outputName),
+                                                CREATE, READ, WRITE,
+                                                TRUNCATE_EXISTING)) {
+            long size = in.size();
+            for (long pos = 0; pos < size; pos += BYTE_WINDOW) {
+                long len = Math.min(BYTE_WINDOW, size - pos);
+                MappedByteBuffer src = in.map(READ_ONLY, pos, len);
+                MappedByteBuffer dst = out.map(READ_WRITE, pos, len);
+                M.convert(src, dst);
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s to %s: %s", _inputName,
+                        _outputName, excp.getMessage());
+        }
+    }
+
+    /** Convert the lines of the file named _inputName with M as the
+     *  serial loop of process() does, writing the file named _outputName.
+     *  After every --checkpoint megabytes of input and at the end, the
+     *  output is forced to disk and a checkpoint of the input and output
+     *  offsets and M's state is appended to the journal named by
+     *  --journal.  With --resume, the output is first cut back and M
+     *  restored to the journal's last intact checkpoint, and conversion
+     *  continues from its input offset, so a crash costs only the work
+     *  done since then.  A journal written for another configuration or
+     *  input is rejected. */
+    private void processJournaled(Machine M) {
+        long interval = megabytes("checkpoint", CHECKPOINT_MB);
+        try (FileChannel in = FileChannel.open(Paths.get(_inputName), READ);
+             FileChannel out = FileChannel.open(Paths.get(_outputName),
+                                                CREATE, WRITE);
+             Journal journal = new Journal(Paths.get(_options.get("journal")),
+                                           M.snapshotLength(),
+                                           M.fingerprint(),
+                                           Journal.identity(in))) {
+            Journal.Checkpoint last = null;
+            if (_options.containsKey("resume")) {
+                last = journal.last();
+            } else {
+                journal.clear();
+            }
+            long start = 0, written = 0;
+            if (last != null) {
+                M.restore(last.snapshot());
+                start = last.input();
+                written = last.output();
+            }
+            in.position(start);
+            out.truncate(written);
+            out.position(written);
+            LineReader reader = new LineReader(in, start, CHARSET);
+            _output = new PrintStream(new BufferedOutputStream(
+                Channels.newOutputStream(out), JOURNAL_BUFFER), false,
+                CHARSET);
+            boolean set = last != null;
+            long mark = start;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.matches("[*].*")) {
+                        applySetting(M, line);
+                        set = true;
+                    } else if (set) {
+                        printMessageLine(M.convert(line.toUpperCase()),
+                                         _output);
+                    } else if (line.isBlank()) {
+                        _output.println();
+                    } else {
+                        throw error("Missing setting");
+                    }
+                    if (reader.offset() - mark >= interval) {
+                        mark = reader.offset();
+                        checkpoint(M, journal, mark, out);
+                    }
+                }
+                if (!set) {
+                    throw error("Missing setting");
+                }
+                checkpoint(M, journal, reader.offset(), out);
+            } finally {
+                _output.flush();
+            }
+        } catch (IOException excp) {
+            throw error("could not convert %s to %s: %s", _inputName,
+                        _outputName, excp.getMessage());
+        }
+    }
+
+    /** Force everything written to _output, which writes to OUT, to disk,
+     *  and then append to JOURNAL a checkpoint of M's state after INPUT
+     *  bytes of input. */
+    private void checkpoint(Machine M, Journal journal, long input,
+                            FileChannel out) throws IOException {
+        _output.flush();
+        if (_output.checkError()) {
+            throw new IOException("write failed");
+        }
+        out.force(false);
+        journal.append(new Journal.Checkpoint(input, out.position(),
+                                              M.snapshot()));
+    }
+
+    /** Set M according to the setting line SETTINGS, checking that the
+     *  result is a usable machine. */
+    static void applySetting(Machine M, String settings) {
+        setUp(M, settings);
+        if (!(M.rotors().get(0) instanceof Reflector)) {
+            throw error("First rotor isn't reflector");
+        }
+    }
+
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named NAME. */
+    static Machine loadConfig(String name) {
+        Scanner config = getConfig(name);
+        try {
+            return new Main(config).readConfig();
+        } finally {
+            config.close();
+        }
+    }
+
+    /** Return an Enigma machine configured from TEXT, the contents of a
+     *  configuration file. */
+    static Machine parseConfig(String text) {
+        return new Main(new Scanner(text)).readConfig();
+    }
+
+    /** A Main that only reads configurations, the first from CONFIG. */
+    private Main(Scanner config) {
+        _config = config;
+    }
+
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
@@ -107,6 +613,9 @@ public final class Main {
                 char beg = charRange.charAt(0);
                 char end = charRange.charAt(2);
                 _alphabet = new CharacterRange(beg, end);
+            } else if (_config.hasNext("00-FF")) {
+                _config.nextLine();
+                _alphabet = new ByteAlphabet();
             } else {
                 _alphabet = new DynamicAlphabet(_config.nextLine());
             }
@@ -151,29 +660,83 @@ public final class Main {
                 cycles += _config.next();
             }
 
+            Permutation perm;
+            if (_alphabet instanceof ByteAlphabet) {
+                notches = fromHex(notches);
+                perm = new Permutation(hexCycles(cycles), _alphabet);
+            } else {
+                perm = new Permutation(cycles, _alphabet);
+            }
+
             if (type == 'M') {
-                return new MovingRotor(name.toUpperCase(),
-                        new Permutation(cycles, _alphabet), notches);
+                return new MovingRotor(name.toUpperCase(), perm, notches);
             } else if (type == 'N') {
-                return new FixedRotor(name.toUpperCase(),
-                        new Permutation(cycles, _alphabet));
+                return new FixedRotor(name.toUpperCase(), perm);
             } else {
-                return new Reflector(name.toUpperCase(),
-                        new Permutation(cycles, _alphabet));
+                return new Reflector(name.toUpperCase(), perm);
             }
         } catch (NoSuchElementException excp) {
             throw error("bad rotor description");
         }
     }
 
+    /** Return the characters of the byte alphabet whose values are given
+     *  by HEX, a string of two-digit hexadecimal numerals. */
+    private static String fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("bad hexadecimal string: %s", hex);
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < hex.length(); i += 2) {
+            int hi = Character.digit(hex.charAt(i), HEX),
+                lo = Character.digit(hex.charAt(i + 1), HEX);
+            if (hi == -1 || lo == -1) {
+                throw error("bad hexadecimal string: %s", hex);
+            }
+            result.append((char) (hi * HEX + lo));
+        }
+        return result.toString();
+    }
+
+    /** Return the mapping of byte values described by CYCLES, cycles in
+     *  the form "(hhhh...)(hh...)..." whose elements are two-digit
+     *  hexadecimal numerals.  Values in no cycle map to themselves. */
+    static int[] hexCycles(String cycles) {
+        int[] map = new int[ByteAlphabet.SIZE];
+        for (int i = 0; i < map.length; i += 1) {
+            map[i] = i;
+        }
+        int i = 0;
+        while (i < cycles.length()) {
+            int close = cycles.indexOf(')', i);
+            if (cycles.charAt(i) != '(' || close == -1) {
+                throw error("Incorrect cycles");
+            }
+            String cycle = fromHex(cycles.substring(i + 1, close));
+            for (int k = 0; k < cycle.length(); k += 1) {
+                if (map[cycle.charAt(k)] != cycle.charAt(k)) {
+                    throw error("Incorrect cycles: %02X repeats",
+                                (int) cycle.charAt(k));
+                }
+            }
+            for (int k = 0; k < cycle.length(); k += 1) {
+                map[cycle.charAt(k)] =
+                    cycle.charAt((k + 1) % cycle.length());
+            }
+            i = close + 1;
+        }
+        return map;
+    }
+
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    private static void setUp(Machine M, String settings) {
+        Alphabet alphabet = M.alphabet();
         if (settings.charAt(0) != '*') {
             throw error("Missing setting");
         }
         M.setRotors(new ArrayList<Rotor>());
-        M.setPlugboard(new Permutation("", _alphabet));
+        M.setPlugboard(new Permutation("", alphabet));
         String[] rotors = new String[M.numRotors()];
         String plugboard = "";
         String name = "";
@@ -215,37 +778,66 @@ public final class Main {
         if (moving != M.numPawls()) {
             throw error("Wrong number of moving rotors");
         }
-        M.setRotors(name);
+        M.setRotors(alphabet instanceof ByteAlphabet ? fromHex(name) : name);
+        if (alphabet instanceof ByteAlphabet) {
+            String cycles = plugboard.replaceAll("\\s", "");
+            M.setPlugboard(new Permutation(hexCycles(cycles), alphabet));
+            return;
+        }
+        boolean open = false;
         for (int j = 0; j < plugboard.length(); j++) {
             char item = plugboard.charAt(j);
-            if (item != '(' && item != ')' && item != ' ') {
+            if (item == '(' || item == ')') {
+                if (open == (item == '(')) {
+                    throw error("Incorrect plugboard cycles");
+                }
+                open = item == '(';
+            } else if (item != ' ') {
+                if (!open || !alphabet.contains(item)) {
+                    throw error("Bad plugboard character: %c", item);
+                }
                 String temp = plugboard.substring(j + 1);
                 if (temp.indexOf(plugboard.charAt(j)) != -1) {
                     throw error("Plugboard repeats");
                 }
             }
         }
-        M.setPlugboard(new Permutation(plugboard, _alphabet));
+        if (open) {
+            throw error("Incorrect plugboard cycles");
+        }
+        M.setPlugboard(new Permutation(plugboard, alphabet));
     }
 
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String result = "";
+    /** Print MSG on OUTPUT in groups of five (except that the last group
+     *  may have fewer letters). */
+    private static void printMessageLine(String msg, PrintStream output) {
+        StringBuilder result = new StringBuilder();
+        formatGroups(msg.toCharArray(), 0, msg.length(), result);
+        output.println(result);
+    }
+
+    /** Append MSG[START .. END-1] to RESULT in groups of five (except
+     *  that the last group may have fewer letters), ignoring leading and
+     *  trailing whitespace and all blanks. */
+    static void formatGroups(char[] msg, int start, int end,
+                             StringBuilder result) {
+        while (start < end && msg[start] <= ' ') {
+            start += 1;
+        }
+        while (end > start && msg[end - 1] <= ' ') {
+            end -= 1;
+        }
         int counter = 0;
-        msg = msg.trim();
-        for (int i = 0; msg.length() > i; i++) {
-            if (counter % 5 == 0 && counter != 0
-                    && result.charAt(result.length() - 1) != ' ') {
-                result += ' ';
-            }
-            if (msg.charAt(i) != ' ') {
-                result += msg.charAt(i);
-                counter++;
+        for (int i = start; i < end; i += 1) {
+            if (msg[i] != ' ') {
+                if (counter % 5 == 0 && counter != 0) {
+                    result.append(' ');
+                }
+                result.append(msg[i]);
+                counter += 1;
             }
         }
-        _output.println(result);
     }
 
     /** Alphabet used in this machine. */
@@ -259,5 +851,53 @@ public final class Main {
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** Names of the input and output files in byte and journaled
+     *  modes, and of the input and output directories, or the manifest
+     *  and null, in batch mode. */
+    private String _inputName, _outputName;
+
+    /** The input file, or null if input is the standard input. */
+    private Path _inputFile;
+
+    /** Nanoseconds spent timing strategies under --strategy=calibrate. */
+    private static final long CALIBRATION_NANOS = 300_000_000L;
+
+    /** Size of the buffer messageLength() reads with. */
+    private static final int SCAN_BUFFER = 1 << 16;
+
+    /** Size of the windows in which byte mode maps its files. */
+    private static final long BYTE_WINDOW = 1 << 24;
+
+    /** Default megabytes of input between checkpoints. */
+    private static final long CHECKPOINT_MB = 64;
+
+    /** Size of the output buffer in journaled mode. */
+    private static final int JOURNAL_BUFFER = 1 << 16;
+
+    /** Default microseconds a keystroke waits under --teletype. */
+    private static final long FLUSH_DELAY_MICROS = 200;
+
+    /** Default keystrokes waiting to be written under --teletype. */
+    private static final long FLUSH_BATCH = 64;
+
+    /** Most keystrokes that may wait under --teletype. */
+    private static final long MAX_FLUSH_BATCH = 1 << 20;
+
+    /** Largest TCP port number. */
+    private static final long MAX_PORT = 65535;
+
+    /** Radix of hexadecimal numerals. */
+    private static final int HEX = 16;
+
+    /** Charset of configuration, input, output and journal files, and of
+     *  the standard streams, whatever the platform's charset, so that
+     *  alphabets outside ASCII read the same everywhere, as
+     *  ConfigValidator and LoadGenerator do. */
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /** Options given on the command line, mapped to their values ("" for
+     *  options without one). */
+    private HashMap<String, String> _options = new HashMap<>();
 }
 
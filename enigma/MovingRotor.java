@@ -26,14 +26,22 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        char notch = alphabet().toChar(setting());
+    boolean notchAt(int posn) {
+        char notch = alphabet().toChar(posn);
         if (_notches.indexOf(notch) != -1) {
             return true;
         }
         return false;
     }
 
+    @Override
+    Rotor copy() {
+        MovingRotor result = new MovingRotor(name(), permutation(), _notches);
+        result.set(setting());
+        result.shareTables(this);
+        return result;
+    }
+
     @Override
     boolean rotates() {
         return true;
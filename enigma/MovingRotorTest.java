@@ -71,6 +71,22 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorLookups() {
+        for (Rotor.Lookup lookup : Rotor.Lookup.values()) {
+            setRotor("I", NAVALA, "");
+            rotor.setLookup(lookup);
+            checkRotor("Rotor I " + lookup, UPPER_STRING, NAVALA_MAP.get("I"));
+            rotor.advance();
+            checkRotor("Rotor I advanced " + lookup, UPPER_STRING,
+                       NAVALB_MAP.get("I"));
+            rotor.set(25);
+            checkRotor("Rotor I set " + lookup, UPPER_STRING,
+                       NAVALZ_MAP.get("I"));
+            assertEquals(lookup, rotor.copy().lookup());
+        }
+    }
+
     @Test
     public void checkRotorNotches() {
         setRotor("I", NAVALA, "ADJ");
@@ -0,0 +1,420 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** Computes the stepping period of a machine's rotor order: how many
+ *  keystrokes pass before its rotors repeat a setting, and how many
+ *  settings they pass through on the way.  Only the rotors that move
+ *  matter, so a stepping state is their positions, packed into a long,
+ *  and stepping is a function on longs that follows Machine.advance.
+ *  Cycles are found with Brent's algorithm, which keeps two states
+ *  rather than every state seen.
+ *
+ *  Between two keystrokes that move more than the rightmost rotor, only
+ *  the rightmost rotor moves, and where the next such keystroke falls
+ *  can be read off the state.  The analyzer jumps over those stretches,
+ *  so that it costs about period() / size() steps, not period().
+ *  @author Eric Huang
+ */
+final class PeriodAnalyzer {
+
+    /** Print the period of the rotor order and starting positions of a
+     *  setting line, given a configuration file, and with --all, survey
+     *  every start on THREADS threads.  Arguments are CONFIG SETTING
+     *  [--all [THREADS]]. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4
+                || args.length > 2 && !args[2].equals("--all")) {
+                throw error("usage: PeriodAnalyzer CONFIG SETTING "
+                            + "[--all [THREADS]]");
+            }
+            Machine machine = Main.loadConfig(args[0]);
+            Main.applySetting(machine, args[1]);
+            PeriodAnalyzer analyzer = new PeriodAnalyzer(machine);
+            long start = System.nanoTime();
+            Orbit orbit = analyzer.orbit(analyzer.state(machine));
+            System.out.printf("period %d, tail %d, %d settings reached "
+                              + "(%.2f s)%n", orbit.period(), orbit.tail(),
+                              orbit.settings(),
+                              (System.nanoTime() - start) * 1e-9);
+            if (args.length > 2) {
+                int threads = args.length > 3 ? Integer.parseInt(args[3])
+                    : Runtime.getRuntime().availableProcessors();
+                if (threads <= 0) {
+                    throw error("need at least one thread");
+                }
+                start = System.nanoTime();
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                Survey survey;
+                try {
+                    survey = analyzer.survey(pool);
+                } finally {
+                    pool.shutdown();
+                }
+                System.out.printf("%d of %d settings lie on %d cycles, "
+                                  + "longest tail %d (%.2f s)%n",
+                                  survey.recurrent(), analyzer.settings(),
+                                  survey.cycles(), survey.longestTail(),
+                                  (System.nanoTime() - start) * 1e-9);
+                for (Map.Entry<Long, Long> entry
+                         : survey.periods().entrySet()) {
+                    System.out.printf("  period %d: %d settings%n",
+                                      entry.getKey(), entry.getValue());
+                }
+            }
+            return;
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Where the settings starting from one state go. */
+    static final class Orbit {
+
+        /** An orbit reaching a cycle of PERIOD settings after TAIL
+         *  keystrokes. */
+        Orbit(long tail, long period) {
+            _tail = tail;
+            _period = period;
+        }
+
+        /** Return the number of keystrokes before the first setting that
+         *  recurs. */
+        long tail() {
+            return _tail;
+        }
+
+        /** Return the number of keystrokes after which settings repeat
+         *  once they have begun to. */
+        long period() {
+            return _period;
+        }
+
+        /** Return the number of distinct settings reached, counting the
+         *  start. */
+        long settings() {
+            return _tail + _period;
+        }
+
+        /** Tail and period lengths. */
+        private final long _tail, _period;
+    }
+
+    /** The orbits of all starting states together. */
+    static final class Survey {
+
+        /** Return the number of settings that recur, those every start
+         *  reaches again and again once past its tail. */
+        long recurrent() {
+            long result = 0;
+            for (long settings : _periods.values()) {
+                result += settings;
+            }
+            return result;
+        }
+
+        /** Return the number of distinct cycles. */
+        long cycles() {
+            long result = 0;
+            for (Map.Entry<Long, Long> entry : _periods.entrySet()) {
+                result += entry.getValue() / entry.getKey();
+            }
+            return result;
+        }
+
+        /** Return the number of recurrent settings lying on cycles of each
+         *  length, by length. */
+        TreeMap<Long, Long> periods() {
+            return _periods;
+        }
+
+        /** Return the longest tail from a start whose rightmost rotor is
+         *  at position 0. */
+        long longestTail() {
+            return _longestTail;
+        }
+
+        /** Add the counts in OTHER to mine. */
+        void merge(Survey other) {
+            for (Map.Entry<Long, Long> entry : other._periods.entrySet()) {
+                _periods.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+            _longestTail = Math.max(_longestTail, other._longestTail);
+        }
+
+        /** Recurrent settings by cycle length. */
+        private final TreeMap<Long, Long> _periods = new TreeMap<>();
+
+        /** Longest tail seen. */
+        private long _longestTail;
+    }
+
+    /** An analyzer for the rotors inserted in MACHINE, in their current
+     *  order.  The last slot must hold a moving rotor. */
+    PeriodAnalyzer(Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        int last = rotors.size() - 1;
+        if (last < 0 || !rotors.get(last).rotates()) {
+            throw error("the last slot holds no moving rotor");
+        }
+        _size = machine.alphabet().size();
+        int moving = 0;
+        for (Rotor rotor : rotors) {
+            moving += rotor.rotates() ? 1 : 0;
+        }
+        _bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, _size - 1));
+        if ((long) moving * _bits > Long.SIZE - 1) {
+            throw error("%d moving rotors of %d positions do not fit in a "
+                        + "long", moving, _size);
+        }
+        _mask = (1L << _bits) - 1;
+        _slots = new int[moving];
+        _notches = new boolean[moving][_size];
+        _leftMoves = new boolean[moving];
+        for (int s = 0, j = 0; s <= last; s += 1) {
+            Rotor rotor = rotors.get(s);
+            if (rotor.rotates()) {
+                _slots[j] = s;
+                _leftMoves[j] = s > 0 && rotors.get(s - 1).rotates();
+                for (int p = 0; p < _size; p += 1) {
+                    _notches[j][p] = rotor.notchAt(p);
+                }
+                j += 1;
+            }
+        }
+        _toEvent = new int[_size];
+        int right = moving - 1, first = -1;
+        for (int p = 0; p < _size && first == -1; p += 1) {
+            first = _leftMoves[right] && _notches[right][p] ? p : -1;
+        }
+        for (int p = _size - 1, next = first + _size; p >= 0; p -= 1) {
+            if (_leftMoves[right] && _notches[right][p]) {
+                next = p;
+            }
+            _toEvent[p] = first == -1 ? NONE : next - p;
+        }
+    }
+
+    /** Return the number of moving rotors. */
+    int moving() {
+        return _slots.length;
+    }
+
+    /** Return the number of stepping states, size() ** moving(). */
+    long settings() {
+        long result = 1;
+        for (int j = 0; j < _slots.length; j += 1) {
+            result *= _size;
+        }
+        return result;
+    }
+
+    /** Return the stepping state of MACHINE, which has the same rotor
+     *  order as the machine I was made from. */
+    long state(Machine machine) {
+        ArrayList<Rotor> rotors = machine.rotors();
+        long result = 0;
+        for (int j = 0; j < _slots.length; j += 1) {
+            result = (result << _bits) | rotors.get(_slots[j]).setting();
+        }
+        return result;
+    }
+
+    /** Return the position of moving rotor J, counting from the left, in
+     *  STATE. */
+    int position(long state, int j) {
+        return (int) (state >>> ((_slots.length - 1 - j) * _bits) & _mask);
+    }
+
+    /** Return the state following STATE after one keystroke. */
+    long step(long state) {
+        int k = _slots.length;
+        long result = 0;
+        boolean rightNotch = false;
+        for (int j = k - 1; j >= 0; j -= 1) {
+            int p = position(state, j);
+            boolean notch = _notches[j][p];
+            boolean moves = j == k - 1 || _leftMoves[j] && notch
+                || rightNotch;
+            rightNotch = _leftMoves[j] && notch;
+            if (moves) {
+                p = p == _size - 1 ? 0 : p + 1;
+            }
+            result |= (long) p << ((k - 1 - j) * _bits);
+        }
+        return result;
+    }
+
+    /** Return the number of keystrokes from STATE that move only the
+     *  rightmost rotor before one that moves another, or NONE if none
+     *  ever does. */
+    private long quiet(long state) {
+        for (int j = 0; j < _slots.length - 1; j += 1) {
+            if (_leftMoves[j] && _notches[j][position(state, j)]) {
+                return 0;
+            }
+        }
+        return _toEvent[(int) (state & _mask)];
+    }
+
+    /** Return STATE with its rightmost rotor advanced by D. */
+    private long turn(long state, long d) {
+        long p = state & _mask;
+        return state - p + (p + d) % _size;
+    }
+
+    /** Return the state after the next keystroke from STATE that moves
+     *  a rotor besides the rightmost, setting TAKEN[0] to the number of
+     *  keystrokes taken.  If there is none, return STATE, which recurs
+     *  after size() keystrokes. */
+    private long leap(long state, long[] taken) {
+        long d = quiet(state);
+        if (d == NONE) {
+            taken[0] = _size;
+            return state;
+        }
+        taken[0] = d + 1;
+        return step(turn(state, d));
+    }
+
+    /** Return the state N keystrokes after STATE. */
+    long skip(long state, long n) {
+        while (n > 0) {
+            long d = quiet(state);
+            if (d == NONE || d >= n) {
+                return turn(state, n);
+            }
+            state = step(turn(state, d));
+            n -= d + 1;
+        }
+        return state;
+    }
+
+    /** Return the orbit of START, a stepping state. */
+    Orbit orbit(long start) {
+        long[] taken = new long[1];
+        long power = 1, leaps = 1;
+        long tortoise = start, hare = leap(start, taken);
+        while (tortoise != hare) {
+            if (power == leaps) {
+                tortoise = hare;
+                power *= 2;
+                leaps = 0;
+            }
+            hare = leap(hare, taken);
+            leaps += 1;
+        }
+        long period = 0;
+        for (long i = 0; i < leaps; i += 1) {
+            hare = leap(hare, taken);
+            period += taken[0];
+        }
+        long tail = 0;
+        tortoise = start;
+        hare = skip(start, period);
+        while (tortoise != hare) {
+            /* Turning both rightmost rotors alike cannot make them equal,
+             * and at least one of them has an event coming. */
+            long d = Math.min(quiet(tortoise), quiet(hare));
+            tortoise = step(turn(tortoise, d));
+            hare = step(turn(hare, d));
+            tail += d + 1;
+        }
+        return new Orbit(tail, period);
+    }
+
+    /** Return the orbits of every stepping state, computed on POOL.
+     *  Every orbit passes a state whose rightmost rotor is at 0 within
+     *  size() keystrokes, and each cycle of length L holds L / size() of
+     *  them, so only those states are followed. */
+    Survey survey(ForkJoinPool pool) {
+        Survey result = new Survey();
+        pool.invoke(new Part(0, settings() / _size, result));
+        return result;
+    }
+
+    /** Surveys a range of starts whose rightmost rotor is at 0. */
+    private final class Part extends RecursiveAction {
+
+        /** Surveys starts LOW .. HIGH-1, numbered by the positions of
+         *  all but the rightmost rotor, adding the results to INTO. */
+        Part(long low, long high, Survey into) {
+            _low = low;
+            _high = high;
+            _into = into;
+        }
+
+        @Override
+        protected void compute() {
+            if (_high - _low > GRAIN) {
+                long mid = (_low + _high) >>> 1;
+                Survey upper = new Survey();
+                invokeAll(new Part(_low, mid, _into),
+                          new Part(mid, _high, upper));
+                _into.merge(upper);
+                return;
+            }
+            for (long n = _low; n < _high; n += 1) {
+                long start = 0, rest = n;
+                for (int shift = _bits; shift < _slots.length * _bits;
+                     shift += _bits) {
+                    start |= rest % _size << shift;
+                    rest /= _size;
+                }
+                Orbit orbit = orbit(start);
+                if (orbit.tail() == 0) {
+                    _into._periods.merge(orbit.period(), (long) _size,
+                                         Long::sum);
+                }
+                _into._longestTail =
+                    Math.max(_into._longestTail, orbit.tail());
+            }
+        }
+
+        /** Range of starts. */
+        private final long _low, _high;
+
+        /** Where results go. */
+        private final Survey _into;
+    }
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Bits per position in a packed state. */
+    private final int _bits;
+
+    /** Mask of one position's bits. */
+    private final long _mask;
+
+    /** Slot of each moving rotor, left to right.  Moving rotor J's
+     *  position occupies bits (moving() - 1 - J) * _bits and up. */
+    private final int[] _slots;
+
+    /** Whether moving rotor J has a notch at each position. */
+    private final boolean[][] _notches;
+
+    /** Whether the slot to the left of moving rotor J holds a moving
+     *  rotor, so that J's notches count. */
+    private final boolean[] _leftMoves;
+
+    /** Keystrokes until the rightmost rotor, at each position, reaches a
+     *  notch that counts, or NONE. */
+    private final int[] _toEvent;
+
+    /** Marks a keystroke that never comes. */
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /** Most starts a Part follows itself. */
+    private static final long GRAIN = 16;
+}
@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** Tests of PeriodAnalyzer against stepping Machines one keystroke at a
+ *  time.
+ *  @author Eric Huang
+ */
+public class PeriodAnalyzerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return the orbit of MACHINE's current setting found by stepping it
+     *  and remembering every setting seen, as {tail, period}.  Leaves
+     *  MACHINE unchanged. */
+    private static long[] simulate(Machine machine, PeriodAnalyzer analyzer) {
+        Machine sample = machine.copy();
+        HashMap<Long, Long> seen = new HashMap<>();
+        for (long k = 0; ; k += 1) {
+            Long first = seen.putIfAbsent(analyzer.state(sample), k);
+            if (first != null) {
+                return new long[] { first, k - first };
+            }
+            sample.advance();
+        }
+    }
+
+    /** Return a machine for a random configuration from GENERATOR with an
+     *  alphabet of SIZE characters and MOVING moving rotors, set up
+     *  randomly. */
+    private static Machine randomMachine(LoadGenerator generator, int size,
+                                         int moving) {
+        return generatedMachine(generator,
+                                generator.config(size, moving + 1, 1, 1,
+                                                 moving + 2));
+    }
+
+    @Test
+    public void checkStepMatchesMachine() {
+        for (int trial = 0; trial < 10; trial += 1) {
+            LoadGenerator generator = new LoadGenerator(trial);
+            Machine machine = randomMachine(generator, 6 + trial, 3);
+            PeriodAnalyzer analyzer = new PeriodAnalyzer(machine);
+            long state = analyzer.state(machine);
+            for (int k = 0; k < 2000; k += 1) {
+                machine.advance();
+                state = analyzer.step(state);
+                assertEquals(analyzer.state(machine), state);
+            }
+        }
+    }
+
+    @Test
+    public void checkSkip() {
+        LoadGenerator generator = new LoadGenerator(3);
+        Machine machine = randomMachine(generator, 10, 3);
+        PeriodAnalyzer analyzer = new PeriodAnalyzer(machine);
+        Random random = new Random(1);
+        for (int trial = 0; trial < 50; trial += 1) {
+            long state = analyzer.state(machine);
+            int n = random.nextInt(300);
+            for (int k = 0; k < n; k += 1) {
+                machine.advance();
+            }
+            assertEquals(analyzer.state(machine), analyzer.skip(state, n));
+        }
+    }
+
+    @Test
+    public void checkOrbitsMatchSimulation() {
+        for (int trial = 0; trial < 40; trial += 1) {
+            LoadGenerator generator = new LoadGenerator(trial);
+            Machine machine =
+                randomMachine(generator, 4 + trial % 7, 1 + trial % 4);
+            PeriodAnalyzer analyzer = new PeriodAnalyzer(machine);
+            long[] expected = simulate(machine, analyzer);
+            PeriodAnalyzer.Orbit orbit =
+                analyzer.orbit(analyzer.state(machine));
+            String label = "trial " + trial;
+            assertEquals(label, expected[0], orbit.tail());
+            assertEquals(label, expected[1], orbit.period());
+        }
+    }
+
+    @Test
+    public void checkDoubleStepping() {
+        ArrayList<Rotor> allRotors = new ArrayList<Rotor>();
+        allRotors.add(new Reflector("B",
+                new Permutation(NAVALA.get("B"), UPPER)));
+        allRotors.add(new MovingRotor("I",
+                new Permutation(NAVALA.get("I"), UPPER), "Q"));
+        allRotors.add(new MovingRotor("II",
+                new Permutation(NAVALA.get("II"), UPPER), "E"));
+        allRotors.add(new MovingRotor("III",
+                new Permutation(NAVALA.get("III"), UPPER), "V"));
+        Machine machine = new Machine(UPPER, 4, 3, allRotors);
+        machine.insertRotors(new String[] {"B", "I", "II", "III"});
+        machine.setRotors("AAA");
+        PeriodAnalyzer analyzer = new PeriodAnalyzer(machine);
+        PeriodAnalyzer.Orbit orbit = analyzer.orbit(analyzer.state(machine));
+        assertEquals(26 * 25 * 26, orbit.period());
+        assertEquals(0, orbit.tail());
+        PeriodAnalyzer.Survey survey =
+            analyzer.survey(ForkJoinPool.commonPool());
+        assertEquals(26 * 25 * 26, survey.recurrent());
+        assertEquals(1, survey.cycles());
+    }
+
+    @Test
+    public void checkSurveyMatchesSimulation() {
+        for (int trial = 0; trial < 12; trial += 1) {
+            LoadGenerator generator = new LoadGenerator(100 + trial);
+            Machine machine =
+                randomMachine(generator, 4 + trial % 4, 2 + trial % 3);
+            PeriodAnalyzer analyzer = new PeriodAnalyzer(machine);
+            ArrayList<Rotor> rotors = machine.rotors();
+            int size = machine.alphabet().size();
+            TreeMap<Long, Long> periods = new TreeMap<>();
+            long longestTail = 0;
+            for (long n = 0; n < analyzer.settings(); n += 1) {
+                long rest = n;
+                for (int s = rotors.size() - 1; s > 0; s -= 1) {
+                    if (rotors.get(s).rotates()) {
+                        rotors.get(s).set((int) (rest % size));
+                        rest /= size;
+                    }
+                }
+                long[] orbit = simulate(machine, analyzer);
+                if (orbit[0] == 0) {
+                    periods.merge(orbit[1], 1L, Long::sum);
+                }
+                if (n % size == 0) {
+                    longestTail = Math.max(longestTail, orbit[0]);
+                }
+            }
+            PeriodAnalyzer.Survey survey =
+                analyzer.survey(ForkJoinPool.commonPool());
+            assertEquals("trial " + trial, periods, survey.periods());
+            assertEquals(longestTail, survey.longestTail());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -18,6 +20,27 @@ class Permutation {
         _cycles = cycles;
     }
 
+    /** Set this Permutation to the one mapping each index I of ALPHABET to
+     *  MAP[I].  MAP must contain every index of ALPHABET exactly once.
+     *  This form suits alphabets whose characters cannot be written in
+     *  cycle notation, such as ByteAlphabet. */
+    Permutation(int[] map, Alphabet alphabet) {
+        if (map.length != alphabet.size()) {
+            throw error("permutation has wrong size");
+        }
+        _alphabet = alphabet;
+        _map = map.clone();
+        _inverse = new int[map.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < map.length; i += 1) {
+            if (map[i] < 0 || map[i] >= map.length
+                || _inverse[map[i]] != -1) {
+                throw error("not a permutation");
+            }
+            _inverse[map[i]] = i;
+        }
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
@@ -41,6 +64,9 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
+        if (_map != null) {
+            return _map[wrap(p)];
+        }
         char letter = _alphabet.toChar(p);
         return _alphabet.toInt(permute(letter));
     }
@@ -48,6 +74,9 @@ class Permutation {
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
+        if (_map != null) {
+            return _inverse[wrap(c)];
+        }
         char letter = _alphabet.toChar(c);
         return _alphabet.toInt(invert(letter));
     }
@@ -55,6 +84,9 @@ class Permutation {
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
+        if (_map != null) {
+            return _alphabet.toChar(_map[_alphabet.toInt(p)]);
+        }
         int i = _cycles.indexOf(p);
         if (i == -1) {
             return p;
@@ -73,6 +105,9 @@ class Permutation {
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
+        if (_map != null) {
+            return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
+        }
         int i = _cycles.indexOf(c);
         if (i == -1) {
             return c;
@@ -90,25 +125,68 @@ class Permutation {
         }
     }
 
+    /** Set DEST, whose length must be size(), to the table of this
+     *  permutation (see Permutations) and return it. */
+    int[] table(int[] dest) {
+        for (int i = 0; i < dest.length; i += 1) {
+            dest[i] = permute(i);
+        }
+        return dest;
+    }
+
+    /** Set DEST, whose length must be size(), to the table of the
+     *  inverse of this permutation and return it. */
+    int[] inverseTable(int[] dest) {
+        return Permutations.inverse(table(new int[size()]), dest);
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
     }
 
     /** Return true iff this permutation is a derangement (i.e., a
-     *  permutation for which no value maps to itself). */
+     *  permutation for which no value maps to itself).  Takes time
+     *  proportional to the size of the alphabet plus the length of the
+     *  cycles. */
     boolean derangement() {
-        for (int i = 0; i < size(); i++) {
-            if (_cycles.indexOf(_alphabet.toChar(i)) == -1) {
-                return false;
+        if (_map != null) {
+            for (int i = 0; i < _map.length; i += 1) {
+                if (_map[i] == i) {
+                    return false;
+                }
             }
+            return true;
         }
-        return true;
+        boolean[] moved = new boolean[size()];
+        int count = 0;
+        for (int i = 0; i < _cycles.length(); i += 1) {
+            char c = _cycles.charAt(i);
+            if (c == '(' || c == ')' || Character.isWhitespace(c)
+                || !_alphabet.contains(c)) {
+                continue;
+            }
+            boolean alone = i > 0 && _cycles.charAt(i - 1) == '('
+                && i + 1 < _cycles.length() && _cycles.charAt(i + 1) == ')';
+            int index = _alphabet.toInt(c);
+            if (!alone && !moved[index]) {
+                moved[index] = true;
+                count += 1;
+            }
+        }
+        return count == size();
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** Cycles for this permutation. */
+    /** Cycles for this permutation, if given in cycle notation. */
     private String _cycles;
+
+    /** Image of each index, if this permutation was given as a table;
+     *  otherwise null. */
+    private int[] _map;
+
+    /** Preimage of each index, when _map is not null. */
+    private int[] _inverse;
 }
@@ -71,4 +71,94 @@ public class PermutationTest {
         assertEquals(22, p.invert(5));
     }
 
+    @Test
+    public void checkTablePerm() {
+        Permutation p = new Permutation(new int[] {2, 0, 1, 3},
+                                        new CharacterRange('A', 'D'));
+        assertEquals(2, p.permute(0));
+        assertEquals(3, p.permute(3));
+        assertEquals(1, p.invert(0));
+        assertEquals('C', p.permute('A'));
+        assertEquals('B', p.invert('A'));
+        assertFalse(p.derangement());
+    }
+
+    @Test (expected = EnigmaException.class)
+    public void checkBadTablePerm() {
+        new Permutation(new int[] {1, 1, 0}, new CharacterRange('A', 'C'));
+    }
+
+    @Test
+    public void checkAlgebra() {
+        String cycles = "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)";
+        int[] p = Permutations.fromCycles(cycles, UPPER, new int[26]);
+        assertEquals(cycles, Permutations.toCycles(p, UPPER));
+        Permutation perm = new Permutation(cycles, UPPER);
+        assertArrayEquals(p, perm.table(new int[26]));
+        int[] inv = Permutations.inverse(p, new int[26]);
+        assertArrayEquals(inv, perm.inverseTable(new int[26]));
+        int[] id = Permutations.identity(new int[26]);
+        assertArrayEquals(id, Permutations.compose(p, inv, new int[26]));
+
+        int[] square = Permutations.compose(p, p, new int[26]);
+        assertArrayEquals(square, Permutations.power(p, 2, new int[26]));
+        assertArrayEquals(inv, Permutations.power(p, -1, new int[26]));
+        assertArrayEquals(id, Permutations.power(p, 0, new int[26]));
+        assertArrayEquals(id, Permutations.power(p, 420, new int[26]));
+        int[] slow = Permutations.identity(new int[26]);
+        for (int k = 0; k < 7; k += 1) {
+            Permutations.compose(slow, p, slow);
+        }
+        assertArrayEquals(slow, Permutations.power(p, 7, new int[26]));
+        assertArrayEquals(slow,
+                          Permutations.power(p, 7 + 420L * 1000000007L,
+                                             new int[26]));
+
+        int[] by = Permutations.fromCycles("(AB) (CDE)", UPPER, new int[26]);
+        int[] conj = Permutations.conjugate(p, by, new int[26]);
+        int[] byInv = Permutations.inverse(by, new int[26]);
+        int[] direct = Permutations.compose(
+            Permutations.compose(byInv, p, new int[26]), by, new int[26]);
+        assertArrayEquals(direct, conj);
+        assertArrayEquals(Permutations.cycleType(p),
+                          Permutations.cycleType(conj));
+    }
+
+    @Test
+    public void checkCycles() {
+        int[] p = {1, 2, 0, 4, 3, 5};
+        assertArrayEquals(new int[] {3, 2, 1}, Permutations.cycleType(p));
+        int[] lengths = new int[6];
+        assertEquals(3, Permutations.cycleType(p, lengths));
+        int[] order = new int[6];
+        assertEquals(3, Permutations.cycles(p, order, lengths));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5}, order);
+        assertEquals(3, lengths[0]);
+        assertEquals(2, lengths[1]);
+        assertEquals(1, lengths[2]);
+        int[] q = {3, 5, 4, 0, 2, 1};
+        assertEquals(3, Permutations.cycles(q, order, lengths));
+        assertArrayEquals(new int[] {0, 3, 1, 5, 2, 4}, order);
+        assertEquals("", Permutations.toCycles(Permutations.identity(
+            new int[3]), new CharacterRange('A', 'C')));
+    }
+
+    @Test
+    public void checkDerangement() {
+        assertTrue(new Permutation("(AB) (CD)", new CharacterRange('A', 'D'))
+                   .derangement());
+        assertFalse(new Permutation("(AB) (C) (D)",
+                                    new CharacterRange('A', 'D'))
+                    .derangement());
+        assertFalse(new Permutation("(ABC)", new CharacterRange('A', 'D'))
+                    .derangement());
+        assertTrue(new Permutation("(1B) (2D)", new DynamicAlphabet("B1D2"))
+                   .derangement());
+    }
+
+    @Test (expected = EnigmaException.class)
+    public void checkRepeatedCycleChar() {
+        Permutations.fromCycles("(ABCC)", UPPER, new int[26]);
+    }
+
 }
@@ -0,0 +1,231 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Operations on permutations of 0 .. N-1 stored as tables: an int[] P of
+ *  length N that maps each I to P[I].  Each operation writes its result
+ *  into a destination array supplied by the caller, which must have
+ *  length N, and returns it, so that loops over many permutations need
+ *  not allocate.  Unless stated otherwise, a destination may not be the
+ *  same array as an operand.
+ *
+ *  Products are written in the order applied: compose(P, Q, D) is the
+ *  permutation that applies P and then Q.
+ *  @author Eric Huang
+ */
+final class Permutations {
+
+    /** Not instantiable. */
+    private Permutations() {
+    }
+
+    /** Set DEST to the identity and return it. */
+    static int[] identity(int[] dest) {
+        for (int i = 0; i < dest.length; i += 1) {
+            dest[i] = i;
+        }
+        return dest;
+    }
+
+    /** Set DEST to the permutation applying FIRST and then SECOND, and
+     *  return it.  DEST may be FIRST, but not SECOND. */
+    static int[] compose(int[] first, int[] second, int[] dest) {
+        for (int i = 0; i < dest.length; i += 1) {
+            dest[i] = second[first[i]];
+        }
+        return dest;
+    }
+
+    /** Set DEST to the inverse of PERM and return it. */
+    static int[] inverse(int[] perm, int[] dest) {
+        for (int i = 0; i < perm.length; i += 1) {
+            dest[perm[i]] = i;
+        }
+        return dest;
+    }
+
+    /** Set DEST to PERM applied K times (its inverse applied -K times, if
+     *  K is negative) and return it.  Rather than squaring repeatedly,
+     *  this rotates each cycle of PERM by K modulo its length, which
+     *  takes time proportional to the length of PERM whatever K is. */
+    static int[] power(int[] perm, long k, int[] dest) {
+        Arrays.fill(dest, -1);
+        for (int i = 0; i < perm.length; i += 1) {
+            if (dest[i] != -1) {
+                continue;
+            }
+            int length = 1;
+            for (int j = perm[i]; j != i; j = perm[j]) {
+                length += 1;
+            }
+            int image = i;
+            for (long r = Math.floorMod(k, length); r > 0; r -= 1) {
+                image = perm[image];
+            }
+            for (int j = i, n = 0; n < length; n += 1) {
+                dest[j] = image;
+                j = perm[j];
+                image = perm[image];
+            }
+        }
+        return dest;
+    }
+
+    /** Set DEST to the conjugate of PERM by BY, which applies the inverse
+     *  of BY, then PERM, then BY, and return it.  The conjugate is PERM
+     *  with its elements renamed by BY: where PERM maps I to J, DEST maps
+     *  BY[I] to BY[J]. */
+    static int[] conjugate(int[] perm, int[] by, int[] dest) {
+        for (int i = 0; i < perm.length; i += 1) {
+            dest[by[i]] = by[perm[i]];
+        }
+        return dest;
+    }
+
+    /** Decompose PERM into cycles, including those of length 1.  Set
+     *  ORDER to the elements of PERM listed cycle by cycle, each cycle
+     *  starting at its smallest element and the cycles in increasing
+     *  order of those elements, and set the first entries of LENGTHS to
+     *  the lengths of the cycles in the same order.  Return the number of
+     *  cycles.  ORDER and LENGTHS must be distinct from PERM and from each
+     *  other. */
+    static int cycles(int[] perm, int[] order, int[] lengths) {
+        Arrays.fill(lengths, 0);
+        for (int i = 0, at = 0; i < perm.length; i += 1) {
+            if (lengths[i] != 0) {
+                continue;
+            }
+            int start = at;
+            int j = i;
+            do {
+                lengths[j] = -1;
+                order[at] = j;
+                at += 1;
+                j = perm[j];
+            } while (j != i);
+            lengths[i] = at - start;
+        }
+        return compact(lengths);
+    }
+
+    /** Set the first entries of DEST to the cycle type of PERM, the
+     *  lengths of its cycles (including those of length 1) in decreasing
+     *  order, and return their number.  DEST must not be PERM. */
+    static int cycleType(int[] perm, int[] dest) {
+        Arrays.fill(dest, 0);
+        for (int i = 0; i < perm.length; i += 1) {
+            if (dest[i] != 0) {
+                continue;
+            }
+            int length = 0;
+            int j = i;
+            do {
+                dest[j] = -1;
+                length += 1;
+                j = perm[j];
+            } while (j != i);
+            dest[i] = length;
+        }
+        int count = compact(dest);
+        Arrays.sort(dest, 0, count);
+        for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+            int t = dest[i];
+            dest[i] = dest[j];
+            dest[j] = t;
+        }
+        return count;
+    }
+
+    /** Return the cycle type of PERM as a new array: the lengths of its
+     *  cycles in decreasing order. */
+    static int[] cycleType(int[] perm) {
+        int[] lengths = new int[perm.length];
+        return Arrays.copyOf(lengths, cycleType(perm, lengths));
+    }
+
+    /** Move the positive entries of VALUES, which are otherwise -1, to
+     *  its start, keeping their order, and return their number. */
+    private static int compact(int[] values) {
+        int count = 0;
+        for (int i = 0; i < values.length; i += 1) {
+            if (values[i] > 0) {
+                values[count] = values[i];
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    /** Return PERM in the cycle notation accepted by Permutation, naming
+     *  elements by their characters in ALPHABET and omitting cycles of
+     *  length 1, as in "(AELT) (BKN)". */
+    static String toCycles(int[] perm, Alphabet alphabet) {
+        StringBuilder result = new StringBuilder();
+        boolean[] seen = new boolean[perm.length];
+        for (int i = 0; i < perm.length; i += 1) {
+            if (seen[i] || perm[i] == i) {
+                continue;
+            }
+            if (result.length() > 0) {
+                result.append(' ');
+            }
+            result.append('(');
+            int j = i;
+            do {
+                seen[j] = true;
+                result.append(alphabet.toChar(j));
+                j = perm[j];
+            } while (j != i);
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Set DEST, whose length must be ALPHABET's size, to the permutation
+     *  written as CYCLES in cycle notation over ALPHABET, and return it.
+     *  Elements not mentioned map to themselves. */
+    static int[] fromCycles(String cycles, Alphabet alphabet, int[] dest) {
+        if (dest.length != alphabet.size()) {
+            throw error("permutation has wrong size");
+        }
+        Arrays.fill(dest, -1);
+        int first = -1, prev = -1;
+        for (int k = 0; k < cycles.length(); k += 1) {
+            char c = cycles.charAt(k);
+            if (Character.isWhitespace(c)) {
+                continue;
+            } else if (c == '(' && first == -1 && prev == -1) {
+                first = prev = -2;
+            } else if (c == ')' && first != -1) {
+                if (first >= 0) {
+                    dest[prev] = first;
+                }
+                first = prev = -1;
+            } else if (first != -1 && alphabet.contains(c)) {
+                int x = alphabet.toInt(c);
+                if (dest[x] != -1 || x == first || x == prev) {
+                    throw error("character %c repeated in cycles", c);
+                }
+                if (first < 0) {
+                    first = x;
+                } else {
+                    dest[prev] = x;
+                }
+                prev = x;
+            } else {
+                throw error("bad cycle notation: %s", cycles);
+            }
+        }
+        if (first != -1) {
+            throw error("unterminated cycle: %s", cycles);
+        }
+        for (int i = 0; i < dest.length; i += 1) {
+            if (dest[i] == -1) {
+                dest[i] = i;
+            }
+        }
+        return dest;
+    }
+}
@@ -0,0 +1,217 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+/** Processes an input stream of setting and message lines in three
+ *  concurrent stages: a reader thread that parses lines into Chunks, a
+ *  converting stage on the calling thread, and a writer thread that
+ *  groups converted lines and prints them.  Adjacent stages are linked by
+ *  RingBuffers of preallocated chunks, so a slow stage holds back the
+ *  ones before it.  The output is exactly what processing the lines one
+ *  at a time would produce, up to and including the first error.
+ *  @author Eric Huang
+ */
+class Pipeline {
+
+    /** A pipeline that applies setting lines from INPUT to MACHINE using
+     *  SETTER, converts message lines with MACHINE and prints the
+     *  results on OUTPUT. */
+    Pipeline(Machine machine, Scanner input, PrintStream output,
+             Consumer<String> setter) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _setter = setter;
+        _parsed = new RingBuffer<>(RING_SIZE,
+            () -> new Chunk(CHUNK_LINES, CHUNK_CHARS));
+        _converted = new RingBuffer<>(RING_SIZE,
+            () -> new Chunk(CHUNK_LINES, CHUNK_CHARS));
+    }
+
+    /** Process all of the input, returning once every converted line has
+     *  been printed.  Rethrows the first error encountered, after
+     *  printing the output of all lines that precede it. */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread writer = new Thread(this::write, "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        RuntimeException failure;
+        try {
+            failure = convert();
+        } finally {
+            _parsed.close();
+        }
+        join(writer);
+        if (failure != null) {
+            throw failure;
+        }
+        if (_writeFailure != null) {
+            throw _writeFailure;
+        }
+    }
+
+    /** Reader stage: split the input into lines and publish them in
+     *  chunks, upper-casing message lines as Main does. */
+    private void read() {
+        Chunk chunk = _parsed.claim();
+        if (chunk == null) {
+            return;
+        }
+        chunk.clear();
+        try {
+            while (_input.hasNextLine()) {
+                String line = _input.nextLine();
+                if (!line.isEmpty() && line.charAt(0) == '*') {
+                    chunk.add(line, true);
+                } else {
+                    chunk.addUpperCase(line);
+                }
+                if (chunk.full()) {
+                    _parsed.publish();
+                    chunk = _parsed.claim();
+                    if (chunk == null) {
+                        return;
+                    }
+                    chunk.clear();
+                }
+            }
+            chunk.setLast();
+        } catch (RuntimeException excp) {
+            chunk.fail(excp);
+        }
+        _parsed.publish();
+    }
+
+    /** Converting stage: apply setting lines and convert message lines
+     *  until the input or an error ends the stream.  Returns the error,
+     *  if any, after publishing every converted line that precedes it. */
+    private RuntimeException convert() {
+        Chunk out = _converted.claim();
+        out.clear();
+        RuntimeException failure = null;
+        while (failure == null) {
+            Chunk in = _parsed.take();
+            if (in == null) {
+                break;
+            }
+            char[] chars = in.chars();
+            for (int k = 0; k < in.lines() && failure == null; k += 1) {
+                try {
+                    if (in.setting(k)) {
+                        _setter.accept(new String(chars, in.start(k),
+                                                  in.end(k) - in.start(k)));
+                    } else {
+                        int start = in.start(k);
+                        int end = _machine.convert(chars, start, in.end(k));
+                        if (out.full()) {
+                            _converted.publish();
+                            out = _converted.claim();
+                            if (out == null) {
+                                return _writeFailure;
+                            }
+                            out.clear();
+                        }
+                        out.add(chars, start, end);
+                    }
+                } catch (RuntimeException excp) {
+                    failure = excp;
+                }
+            }
+            if (failure == null) {
+                failure = in.failure();
+            }
+            boolean last = in.last();
+            _parsed.release();
+            if (last) {
+                break;
+            }
+        }
+        if (failure != null) {
+            out.fail(failure);
+        } else {
+            out.setLast();
+        }
+        _converted.publish();
+        return failure;
+    }
+
+    /** Writer stage: print each converted line in groups of five. */
+    private void write() {
+        StringBuilder text = new StringBuilder();
+        String newline = System.lineSeparator();
+        try {
+            while (true) {
+                Chunk chunk = _converted.take();
+                if (chunk == null) {
+                    return;
+                }
+                text.setLength(0);
+                for (int k = 0; k < chunk.lines(); k += 1) {
+                    Main.formatGroups(chunk.chars(), chunk.start(k),
+                                      chunk.end(k), text);
+                    text.append(newline);
+                }
+                _output.print(text);
+                boolean last = chunk.last();
+                _converted.release();
+                if (last) {
+                    _output.flush();
+                    return;
+                }
+            }
+        } catch (RuntimeException excp) {
+            _writeFailure = excp;
+            _converted.close();
+        }
+    }
+
+    /** Wait for THREAD to finish. */
+    private static void join(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Number of chunks in each ring. */
+    private static final int RING_SIZE = 8;
+
+    /** Maximum number of lines per chunk. */
+    private static final int CHUNK_LINES = 1024;
+
+    /** Initial character capacity of each chunk. */
+    private static final int CHUNK_CHARS = 1 << 16;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Source of setting and message lines. */
+    private final Scanner _input;
+
+    /** Destination of converted lines. */
+    private final PrintStream _output;
+
+    /** Applies a setting line to _machine. */
+    private final Consumer<String> _setter;
+
+    /** Chunks of parsed lines, from the reader to the converter. */
+    private final RingBuffer<Chunk> _parsed;
+
+    /** Chunks of converted lines, from the converter to the writer. */
+    private final RingBuffer<Chunk> _converted;
+
+    /** Error that stopped the writer, if any. */
+    private volatile RuntimeException _writeFailure;
+}
@@ -0,0 +1,65 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** Tests of Main's --pipeline mode against serial processing.
+ *  @author Eric Huang
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Directory of the integration tests' correct cases. */
+    private static final Path CORRECT = Path.of("..", "testing", "correct");
+
+    /** Check that Main converts INPUT with the configuration file CONFIG
+     *  the same way with --pipeline as without, returning the output. */
+    private static String check(Path config, String input)
+        throws IOException {
+        String expected = runMain(config, input);
+        assertEquals(expected, runMain(config, input, "--pipeline"));
+        return expected;
+    }
+
+    @Test
+    public void checkIntegrationCases() throws IOException {
+        String[][] cases = { { "default.conf", "test1" },
+                             { "testec.conf", "testec" } };
+        for (String[] test : cases) {
+            Path config = CORRECT.resolve(test[0]);
+            String input = Files.readString(CORRECT.resolve(test[1] + ".in"));
+            String output =
+                Files.readString(CORRECT.resolve(test[1] + ".out"));
+            assertEquals(output, check(config, input));
+            check(config, input.repeat(3000));
+        }
+    }
+
+    @Test
+    public void checkErrorPath() throws IOException {
+        Path config = CORRECT.resolve("default.conf");
+        String input = Files.readString(CORRECT.resolve("test1.in"));
+        String[] bad = { "* B BETA I II IX AAAA\n",
+                         "* B BETA I II III AAAA (AB\n",
+                         "HELLO 1\n" };
+        String before = input.repeat(2000);
+        String expected = runMain(config, before);
+        for (String line : bad) {
+            String output = check(config, before + line + input);
+            assertTrue(output.startsWith(expected));
+            assertTrue(output.substring(expected.length())
+                       .startsWith("Error: "));
+        }
+    }
+}
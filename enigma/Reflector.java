@@ -25,6 +25,13 @@ class Reflector extends FixedRotor {
         }
     }
 
+    @Override
+    Rotor copy() {
+        Reflector result = new Reflector(name(), permutation());
+        result.shareTables(this);
+        return result;
+    }
+
     @Override
     int convertBackward(int e) {
         throw error("Reflector can only convert forward");
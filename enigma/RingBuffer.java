@@ -0,0 +1,144 @@
+package enigma;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/** A bounded ring of preallocated slots connecting exactly one producer
+ *  thread to exactly one consumer thread.  The producer claims the next
+ *  free slot, fills it in place and publishes it; the consumer takes the
+ *  oldest published slot and releases it once it is done with it.  Each
+ *  index is written by only one side, so no locks are needed, and a full
+ *  ring stalls the producer until the consumer catches up.
+ *  @author Eric Huang
+ */
+class RingBuffer<T> {
+
+    /** A ring of CAPACITY slots, a power of two, each initially holding
+     *  a value produced by FACTORY. */
+    RingBuffer(int capacity, Supplier<T> factory) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power"
+                                               + " of two");
+        }
+        @SuppressWarnings("unchecked")
+        T[] slots = (T[]) new Object[capacity];
+        for (int i = 0; i < capacity; i += 1) {
+            slots[i] = factory.get();
+        }
+        _slots = slots;
+        _mask = capacity - 1;
+    }
+
+    /** Return the next free slot for the producer to fill, waiting while
+     *  the ring is full.  Returns null if the ring has been closed. */
+    T claim() {
+        long head = _head.get();
+        while (head - _cachedTail >= _slots.length) {
+            _cachedTail = _tail.get();
+            if (head - _cachedTail < _slots.length) {
+                break;
+            }
+            if (!pause(_producerWaits++)) {
+                return null;
+            }
+        }
+        _producerWaits = 0;
+        return _slots[(int) head & _mask];
+    }
+
+    /** Make the slot most recently returned by claim() visible to the
+     *  consumer. */
+    void publish() {
+        _head.lazySet(_head.get() + 1);
+    }
+
+    /** Return the oldest published slot, waiting while the ring is
+     *  empty.  Returns null if the ring has been closed. */
+    T take() {
+        long tail = _tail.get();
+        while (tail >= _cachedHead) {
+            _cachedHead = _head.get();
+            if (tail < _cachedHead) {
+                break;
+            }
+            if (!pause(_consumerWaits++)) {
+                return null;
+            }
+        }
+        _consumerWaits = 0;
+        return _slots[(int) tail & _mask];
+    }
+
+    /** Return the slot most recently returned by take() to the
+     *  producer. */
+    void release() {
+        _tail.lazySet(_tail.get() + 1);
+    }
+
+    /** Abandon this ring: any thread waiting in claim() or take(), now or
+     *  later, gives up and receives null. */
+    void close() {
+        _closed = true;
+    }
+
+    /** Return true iff close() has been called. */
+    boolean closed() {
+        return _closed;
+    }
+
+    /** Back off for the ATTEMPT'th consecutive time: spin at first, then
+     *  yield the processor for progressively longer.  Returns false iff
+     *  the ring has been closed and the caller should stop waiting. */
+    private boolean pause(int attempt) {
+        if (_closed) {
+            return false;
+        }
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return true;
+    }
+
+    /** Number of busy-wait iterations before yielding. */
+    private static final int SPINS = 100;
+
+    /** Number of yields before parking. */
+    private static final int YIELDS = 100;
+
+    /** Length of each park, in nanoseconds. */
+    private static final long PARK_NANOS = 50_000;
+
+    /** The preallocated slots. */
+    private final T[] _slots;
+
+    /** Mask reducing a sequence number to a slot index. */
+    private final int _mask;
+
+    /** Sequence number of the next slot to publish (written only by
+     *  the producer). */
+    private final AtomicLong _head = new AtomicLong();
+
+    /** Sequence number of the next slot to take (written only by the
+     *  consumer). */
+    private final AtomicLong _tail = new AtomicLong();
+
+    /** Producer's last observed value of _tail. */
+    private long _cachedTail;
+
+    /** Consumer's last observed value of _head. */
+    private long _cachedHead;
+
+    /** Consecutive unsuccessful waits by the producer. */
+    private int _producerWaits;
+
+    /** Consecutive unsuccessful waits by the consumer. */
+    private int _consumerWaits;
+
+    /** True once the ring has been abandoned. */
+    private volatile boolean _closed;
+}
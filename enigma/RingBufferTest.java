@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Tests of RingBuffer.
+ *  @author Eric Huang
+ */
+public class RingBufferTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return a ring of CAPACITY one-element slots. */
+    private static RingBuffer<long[]> ring(int capacity) {
+        return new RingBuffer<>(capacity, () -> new long[1]);
+    }
+
+    @Test
+    public void checkCapacity() {
+        int[] bad = { 0, -4, 3, 6 };
+        for (int capacity : bad) {
+            try {
+                ring(capacity);
+                fail("accepted capacity " + capacity);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void checkWraparound() {
+        RingBuffer<long[]> ring = ring(4);
+        long[][] slots = new long[4][];
+        for (int i = 0; i < 4; i += 1) {
+            slots[i] = ring.claim();
+            slots[i][0] = i;
+            ring.publish();
+        }
+        for (int i = 0; i < 4; i += 1) {
+            long[] slot = ring.take();
+            assertSame(slots[i], slot);
+            assertEquals(i, slot[0]);
+            ring.release();
+        }
+        for (long n = 4; n < 100; n += 3) {
+            for (long k = n; k < n + 3; k += 1) {
+                long[] slot = ring.claim();
+                assertSame(slots[(int) k % 4], slot);
+                slot[0] = k;
+                ring.publish();
+            }
+            for (long k = n; k < n + 3; k += 1) {
+                assertEquals(k, ring.take()[0]);
+                ring.release();
+            }
+        }
+    }
+
+    @Test
+    public void checkFullRingWaits() throws InterruptedException {
+        RingBuffer<long[]> ring = ring(2);
+        long[] first = ring.claim();
+        ring.publish();
+        ring.claim();
+        ring.publish();
+        AtomicReference<long[]> claimed = new AtomicReference<>();
+        Thread producer = new Thread(() -> claimed.set(ring.claim()));
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+        assertNull(claimed.get());
+        assertSame(first, ring.take());
+        ring.release();
+        producer.join();
+        assertSame(first, claimed.get());
+    }
+
+    @Test
+    public void checkEmptyRingWaits() throws InterruptedException {
+        RingBuffer<long[]> ring = ring(2);
+        AtomicReference<long[]> taken = new AtomicReference<>();
+        Thread consumer = new Thread(() -> taken.set(ring.take()));
+        consumer.start();
+        consumer.join(100);
+        assertTrue(consumer.isAlive());
+        long[] slot = ring.claim();
+        slot[0] = 7;
+        ring.publish();
+        consumer.join();
+        assertSame(slot, taken.get());
+        assertEquals(7, taken.get()[0]);
+    }
+
+    @Test
+    public void checkClose() throws InterruptedException {
+        RingBuffer<long[]> ring = ring(2);
+        AtomicReference<long[]> taken = new AtomicReference<>(new long[1]);
+        Thread consumer = new Thread(() -> taken.set(ring.take()));
+        consumer.start();
+        consumer.join(100);
+        ring.close();
+        consumer.join();
+        assertTrue(ring.closed());
+        assertNull(taken.get());
+        ring.claim();
+        ring.publish();
+        ring.claim();
+        ring.publish();
+        assertNull(ring.claim());
+    }
+
+    @Test
+    public void checkHandoff() throws InterruptedException {
+        RingBuffer<long[]> ring = ring(4);
+        final long count = 200_000;
+        Thread producer = new Thread(() -> {
+            for (long k = 0; k < count; k += 1) {
+                ring.claim()[0] = k;
+                ring.publish();
+            }
+        });
+        producer.start();
+        for (long k = 0; k < count; k += 1) {
+            assertEquals(k, ring.take()[0]);
+            ring.release();
+        }
+        producer.join();
+    }
+}
@@ -51,32 +51,113 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         setting = posn;
+        _row = posn * size();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        setting = _permutation.alphabet().toInt(cposn);
+        set(_permutation.alphabet().toInt(cposn));
     }
 
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int contacthit = Math.floorMod((p + setting), alphabet().size());
-        int contactout = _permutation.permute(contacthit);
-        return Math.floorMod((contactout - setting), alphabet().size());
+        if (_lookup == null) {
+            setLookup(Lookup.forSize(size()));
+        }
+        if (_forwardRows != null) {
+            return _forwardRows[_row + p];
+        }
+        return _wrap[_forwardContacts[p + setting] - setting];
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int contacthit = Math.floorMod((e + setting), alphabet().size());
-        int contactout = _permutation.invert(contacthit);
-        return Math.floorMod((contactout - setting), alphabet().size());
+        if (_lookup == null) {
+            setLookup(Lookup.forSize(size()));
+        }
+        if (_backwardRows != null) {
+            return _backwardRows[_row + e];
+        }
+        return _wrap[_backwardContacts[e + setting] - setting];
+    }
+
+    /** How a rotor maps contacts at its current setting. */
+    enum Lookup {
+        /** One table row per setting: a conversion is a single load, at
+         *  the cost of 2 * size() * size() ints. */
+        SHIFTED,
+        /** Tables of 2 * size() entries indexed by contact plus setting,
+         *  which never need reducing modulo size(). */
+        ARITHMETIC;
+
+        /** Return the lookup used by default for alphabets of SIZE
+         *  characters: SHIFTED while its tables fit in TABLE_LIMIT bytes
+         *  (the system property enigma.rotorTableLimit, if set). */
+        static Lookup forSize(int size) {
+            long bytes = 2L * size * size * Integer.BYTES;
+            return bytes <= TABLE_LIMIT ? SHIFTED : ARITHMETIC;
+        }
+    }
+
+    /** Return the lookup I use, or null if I have not converted yet. */
+    Lookup lookup() {
+        return _lookup;
+    }
+
+    /** Convert using LOOKUP from now on, computing its tables. */
+    void setLookup(Lookup lookup) {
+        int n = size();
+        boolean reflector = reflecting();
+        _forwardRows = _backwardRows = null;
+        _forwardContacts = _backwardContacts = null;
+        if (lookup == Lookup.SHIFTED) {
+            _forwardRows = new int[n * n];
+            _backwardRows = reflector ? null : new int[n * n];
+            for (int s = 0; s < n; s += 1) {
+                for (int c = 0; c < n; c += 1) {
+                    int contact = (c + s) % n;
+                    _forwardRows[s * n + c] =
+                        (_permutation.permute(contact) - s + n) % n;
+                    if (!reflector) {
+                        _backwardRows[s * n + c] =
+                            (_permutation.invert(contact) - s + n) % n;
+                    }
+                }
+            }
+        } else {
+            _forwardContacts = new int[2 * n];
+            _backwardContacts = new int[2 * n];
+            _wrap = new int[2 * n];
+            for (int j = 0; j < 2 * n; j += 1) {
+                _forwardContacts[j] = _permutation.permute(j % n) + n;
+                _backwardContacts[j] = _permutation.invert(j % n) + n;
+                _wrap[j] = j % n;
+            }
+        }
+        _lookup = lookup;
+    }
+
+    /** Use the same lookup and tables as ROTOR, which has my
+     *  permutation.  The tables are never modified, so may be shared. */
+    void shareTables(Rotor rotor) {
+        _lookup = rotor._lookup;
+        _forwardRows = rotor._forwardRows;
+        _backwardRows = rotor._backwardRows;
+        _forwardContacts = rotor._forwardContacts;
+        _backwardContacts = rotor._backwardContacts;
+        _wrap = rotor._wrap;
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return notchAt(setting());
+    }
+
+    /** Returns true iff I would be at a notch at setting POSN. */
+    boolean notchAt(int posn) {
         return false;
     }
 
@@ -87,6 +168,15 @@ class Rotor {
         }
     }
 
+    /** Return a new rotor like me, with the same setting, that can be
+     *  used independently of me. */
+    Rotor copy() {
+        Rotor result = new Rotor(_name, _permutation);
+        result.set(setting());
+        result.shareTables(this);
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -101,4 +191,26 @@ class Rotor {
     /** Setting for this rotor. */
     private int setting;
 
+    /** Offset of the row for my setting in the SHIFTED tables. */
+    private int _row;
+
+    /** The lookup I use, once chosen. */
+    private Lookup _lookup;
+
+    /** Under SHIFTED, the forward and inverse conversion of each contact
+     *  at each setting, one row of size() entries per setting. */
+    private int[] _forwardRows, _backwardRows;
+
+    /** Under ARITHMETIC, the image of each contact index modulo size(),
+     *  plus size(), under my permutation and its inverse. */
+    private int[] _forwardContacts, _backwardContacts;
+
+    /** Under ARITHMETIC, each index below 2 * size() modulo size(). */
+    private int[] _wrap;
+
+    /** Largest number of bytes a rotor's SHIFTED tables may take by
+     *  default. */
+    private static final long TABLE_LIMIT =
+        Long.getLong("enigma.rotorTableLimit", 1 << 20);
+
 }
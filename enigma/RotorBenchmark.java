@@ -0,0 +1,118 @@
+package enigma;
+
+import java.util.Random;
+
+/** Measures the speed of rotor conversion under each Rotor.Lookup for a
+ *  range of alphabet sizes, to locate the size above which the SHIFTED
+ *  tables stop paying for themselves.
+ *  @author Eric Huang
+ */
+public class RotorBenchmark {
+
+    /** Print the nanoseconds per keystroke for each lookup and each
+     *  alphabet size in ARGS (by default, a range from 26 to 4096). */
+    public static void main(String... args) {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.printf("%6s %10s %10s %10s%n", "size", "SHIFTED",
+                          "ARITHMETIC", "KB/rotor");
+        Integer crossover = null;
+        for (int size : sizes) {
+            double shifted = measure(size, Rotor.Lookup.SHIFTED);
+            double arithmetic = measure(size, Rotor.Lookup.ARITHMETIC);
+            System.out.printf("%6d %10.2f %10.2f %10d%n", size, shifted,
+                              arithmetic, 2L * size * size * 4 / 1024);
+            if (crossover == null && shifted > arithmetic) {
+                crossover = size;
+            }
+        }
+        if (crossover == null) {
+            System.out.println("SHIFTED was faster at every size");
+        } else {
+            System.out.printf("ARITHMETIC wins from size %d%n", crossover);
+        }
+    }
+
+    /** Return the nanoseconds per keystroke of a machine with three
+     *  rotors over an alphabet of SIZE characters, using LOOKUP. */
+    private static double measure(int size, Rotor.Lookup lookup) {
+        Random random = new Random(size);
+        char[] letters = new char[size];
+        for (int i = 0; i < size; i += 1) {
+            letters[i] = (char) (FIRST_CHAR + i);
+        }
+        Alphabet alphabet = new DynamicAlphabet(new String(letters));
+        Rotor[] rotors = new Rotor[ROTORS];
+        for (int r = 0; r < ROTORS; r += 1) {
+            rotors[r] = new MovingRotor("R" + r,
+                new Permutation(shuffle(size, random), alphabet), "");
+            rotors[r].setLookup(lookup);
+            rotors[r].set(random.nextInt(size));
+        }
+        int[] input = new int[INPUT];
+        for (int i = 0; i < input.length; i += 1) {
+            input[i] = random.nextInt(size);
+        }
+        long best = Long.MAX_VALUE;
+        int sink = 0;
+        for (int trial = 0; trial < TRIALS; trial += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; i < input.length; i += 1) {
+                int c = input[i];
+                rotors[ROTORS - 1].advance();
+                if (i % size == 0) {
+                    rotors[ROTORS - 2].advance();
+                }
+                for (int r = ROTORS - 1; r >= 0; r -= 1) {
+                    c = rotors[r].convertForward(c);
+                }
+                for (int r = 0; r < ROTORS; r += 1) {
+                    c = rotors[r].convertBackward(c);
+                }
+                sink += c;
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        _sink = sink;
+        return (double) best / input.length;
+    }
+
+    /** Return a random permutation of 0 .. SIZE-1 drawn from RANDOM. */
+    private static int[] shuffle(int size, Random random) {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i += 1) {
+            result[i] = i;
+        }
+        for (int i = size - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Alphabet sizes measured by default. */
+    private static final int[] DEFAULT_SIZES =
+        {26, 64, 128, 256, 384, 512, 1024, 2048, 4096};
+
+    /** First character of the generated alphabets. */
+    private static final char FIRST_CHAR = '\u0100';
+
+    /** Number of rotors converted through. */
+    private static final int ROTORS = 3;
+
+    /** Number of keystrokes per trial. */
+    private static final int INPUT = 1 << 20;
+
+    /** Number of timed trials, of which the fastest counts. */
+    private static final int TRIALS = 7;
+
+    /** Keeps results live so the timed loop is not optimized away. */
+    private static volatile int _sink;
+}
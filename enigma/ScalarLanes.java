@@ -0,0 +1,54 @@
+package enigma;
+
+/** A LaneEngine that steps its lanes one at a time with ordinary scalar
+ *  code.  It is the fallback when vector instructions are unavailable and
+ *  the reference against which VectorLanes is checked.
+ *  @author Eric Huang
+ */
+class ScalarLanes extends LaneEngine {
+
+    /** An engine with LANES lanes modeled on TEMPLATE. */
+    ScalarLanes(Machine template, int lanes) {
+        super(template, lanes, 1);
+    }
+
+    @Override
+    void step(int[] in, int[] out, boolean[] active) {
+        int last = _slots - 1;
+        for (int l = 0; l < _width; l += 1) {
+            if (!active[l]) {
+                continue;
+            }
+            boolean right = true;
+            for (int s = last; s >= 0; s -= 1) {
+                int posn = _positions[s][l];
+                boolean trigger = _carries[s] && _notches[s][posn] != 0;
+                if (trigger || right) {
+                    _positions[s][l] = posn + 1 == _size ? 0 : posn + 1;
+                }
+                right = trigger;
+            }
+            int base = l * _size;
+            int c = _plugboards[base + in[l]];
+            for (int s = last; s >= 0; s -= 1) {
+                c = shift(_forward[s], c, _positions[s][l]);
+            }
+            c = _reflector[c];
+            for (int s = 0; s <= last; s += 1) {
+                c = shift(_backward[s], c, _positions[s][l]);
+            }
+            out[l] = _plugboards[base + c];
+        }
+    }
+
+    /** Return the result of passing C through WIRING, a rotor table,
+     *  when the rotor is at position POSN. */
+    private int shift(int[] wiring, int c, int posn) {
+        int contact = c + posn;
+        if (contact >= _size) {
+            contact -= _size;
+        }
+        int result = wiring[contact] - posn;
+        return result < 0 ? result + _size : result;
+    }
+}
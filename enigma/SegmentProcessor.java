@@ -0,0 +1,296 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+/** Processes an input stream of setting and message lines by splitting it
+ *  into segments, each a setting line and the message lines that follow
+ *  it, and converting segments concurrently on a pool of threads, each
+ *  with its own copy of the machine.  Results are printed in input order,
+ *  and the first error in input order ends processing after the output of
+ *  every line before it has been printed, just as in serial processing.
+ *
+ *  A setting line that gives fewer positions than there are rotors leaves
+ *  the others where earlier segments put them, and lines that precede the
+ *  first setting line use the machine's initial state.  Such segments are
+ *  not independent, so they are converted in order on the original
+ *  machine, which tracks the final rotor settings of every segment.
+ *  @author Eric Huang
+ */
+class SegmentProcessor {
+
+    /** A processor that reads INPUT, applies its setting lines using
+     *  SETTER and converts its messages with copies of MACHINE, printing
+     *  the results on OUTPUT and using THREADS worker threads. */
+    SegmentProcessor(Machine machine, Scanner input, PrintStream output,
+                     BiConsumer<Machine, String> setter, int threads) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _setter = setter;
+        _threads = threads;
+        _allRotors = new ArrayList<>(machine.allRotors());
+        for (int i = 0; i < threads; i += 1) {
+            _machines.add(machine.copy());
+        }
+    }
+
+    /** Process all of the input.  Rethrows the first error encountered,
+     *  after printing the output of all lines that precede it. */
+    void run() {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads, r -> {
+            Thread thread = new Thread(r, "enigma-segment");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        int limit = _threads * IN_FLIGHT_PER_THREAD;
+        try {
+            Segment current = null;
+            while (_input.hasNextLine()) {
+                String line = _input.nextLine();
+                if (!line.isEmpty() && line.charAt(0) == '*') {
+                    if (current != null) {
+                        pending.add(submit(pool, current));
+                    }
+                    current = new Segment(line);
+                } else {
+                    if (current == null) {
+                        current = new Segment(null);
+                    }
+                    current.add(line.toUpperCase());
+                }
+                while (pending.size() >= limit) {
+                    finish(pending.remove());
+                }
+            }
+            if (current != null) {
+                pending.add(submit(pool, current));
+            }
+            while (!pending.isEmpty()) {
+                finish(pending.remove());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the eventual result of converting SEGMENT, using POOL if
+     *  SEGMENT is independent of those before it. */
+    private Future<Result> submit(ExecutorService pool, Segment segment) {
+        if (segment.header() == null) {
+            return CompletableFuture.completedFuture(new Result(segment));
+        }
+        return pool.submit(() -> {
+            Machine machine = _machines.poll();
+            try {
+                return convert(machine, segment, true);
+            } finally {
+                _machines.add(machine);
+            }
+        });
+    }
+
+    /** Print the result of the segment whose conversion is PENDING,
+     *  converting it serially first if it could not be done in parallel,
+     *  and rethrow its error if it had one. */
+    private void finish(Future<Result> pending) {
+        Result result = await(pending);
+        if (result.dependent()) {
+            result = convert(_machine, result.segment(), false);
+        } else {
+            int[] state = result.finalState();
+            for (int i = 0; state != null && i < state.length; i += 2) {
+                _allRotors.get(state[i]).set(state[i + 1]);
+            }
+        }
+        _output.print(result.text());
+        if (result.failure() != null) {
+            throw result.failure();
+        }
+    }
+
+    /** Convert SEGMENT on MACHINE.  If INDEPENDENT, gives up if the
+     *  segment turns out to depend on earlier ones, and otherwise records
+     *  the final settings of the rotors it used. */
+    private Result convert(Machine machine, Segment segment,
+                           boolean independent) {
+        StringBuilder text = new StringBuilder();
+        String newline = System.lineSeparator();
+        try {
+            if (segment.header() != null) {
+                _setter.accept(machine, segment.header());
+            }
+            if (independent && machine.carriesOverSettings()) {
+                return new Result(segment);
+            }
+            for (String line : segment.lines()) {
+                char[] msg = line.toCharArray();
+                int end = machine.convert(msg, 0, msg.length);
+                Main.formatGroups(msg, 0, end, text);
+                text.append(newline);
+            }
+        } catch (RuntimeException excp) {
+            return new Result(segment, text.toString(), null, excp);
+        }
+        int[] state = null;
+        if (independent) {
+            ArrayList<Rotor> rotors = machine.rotors();
+            state = new int[2 * rotors.size()];
+            for (int i = 0; i < rotors.size(); i += 1) {
+                state[2 * i] = machine.indexOf(rotors.get(i));
+                state[2 * i + 1] = rotors.get(i).setting();
+            }
+        }
+        return new Result(segment, text.toString(), state, null);
+    }
+
+    /** Return the result of PENDING once it is available. */
+    private static Result await(Future<Result> pending) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pending.get();
+                } catch (InterruptedException excp) {
+                    interrupted = true;
+                } catch (ExecutionException excp) {
+                    Throwable cause = excp.getCause();
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw (RuntimeException) cause;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** A setting line and the message lines that follow it. */
+    private static class Segment {
+
+        /** A segment headed by setting line HEADER, or by no setting line
+         *  if HEADER is null. */
+        Segment(String header) {
+            _header = header;
+        }
+
+        /** Return my setting line, or null if I have none. */
+        String header() {
+            return _header;
+        }
+
+        /** Return my message lines, already in upper case. */
+        ArrayList<String> lines() {
+            return _lines;
+        }
+
+        /** Add LINE to my message lines. */
+        void add(String line) {
+            _lines.add(line);
+        }
+
+        /** My setting line. */
+        private final String _header;
+
+        /** My message lines. */
+        private final ArrayList<String> _lines = new ArrayList<>();
+    }
+
+    /** The outcome of converting a Segment. */
+    private static class Result {
+
+        /** The result for SEGMENT when it cannot be converted
+         *  independently. */
+        Result(Segment segment) {
+            this(segment, null, null, null);
+        }
+
+        /** The result for SEGMENT, consisting of the printed TEXT of its
+         *  lines, the final settings FINALSTATE of its rotors and the error
+         *  FAILURE that ended it, if any. */
+        Result(Segment segment, String text, int[] finalState,
+               RuntimeException failure) {
+            _segment = segment;
+            _text = text;
+            _finalState = finalState;
+            _failure = failure;
+        }
+
+        /** Return the segment I am the result for. */
+        Segment segment() {
+            return _segment;
+        }
+
+        /** Return true iff my segment must be converted in order. */
+        boolean dependent() {
+            return _text == null;
+        }
+
+        /** Return the output of my segment. */
+        String text() {
+            return _text;
+        }
+
+        /** Return pairs of (index in allRotors(), setting) giving the final
+         *  settings of the rotors my segment used, or null if it failed. */
+        int[] finalState() {
+            return _finalState;
+        }
+
+        /** Return the error that ended my segment, or null. */
+        RuntimeException failure() {
+            return _failure;
+        }
+
+        /** The segment converted. */
+        private final Segment _segment;
+
+        /** Printed output of the segment. */
+        private final String _text;
+
+        /** Final rotor settings. */
+        private final int[] _finalState;
+
+        /** Error ending the segment. */
+        private final RuntimeException _failure;
+    }
+
+    /** Number of segments that may be outstanding per worker thread. */
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    /** The original machine, used for segments that must be converted in
+     *  order and kept in the state serial processing would leave it. */
+    private final Machine _machine;
+
+    /** Source of setting and message lines. */
+    private final Scanner _input;
+
+    /** Destination of converted lines. */
+    private final PrintStream _output;
+
+    /** Applies a setting line to a machine. */
+    private final BiConsumer<Machine, String> _setter;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** The rotors of _machine, indexed as in allRotors(). */
+    private final ArrayList<Rotor> _allRotors;
+
+    /** Idle machine copies for the worker threads. */
+    private final ConcurrentLinkedQueue<Machine> _machines =
+        new ConcurrentLinkedQueue<>();
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Tests of Main's --parallel mode against serial processing.
+ *  @author Eric Huang
+ */
+public class SegmentProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** The integration tests' default configuration. */
+    private static final Path CONFIG =
+        Path.of("..", "testing", "correct", "default.conf");
+
+    /** Check that Main converts INPUT with CONFIG the same way with
+     *  --parallel on one, two and four threads as without, returning the
+     *  output. */
+    private static String check(String input) throws IOException {
+        String expected = runMain(CONFIG, input);
+        for (int threads = 1; threads <= 4; threads *= 2) {
+            assertEquals(expected,
+                         runMain(CONFIG, input, "--parallel=" + threads));
+        }
+        return expected;
+    }
+
+    /** Return a setting line for CONFIG drawn with RANDOM that gives a
+     *  position for each of the first POSITIONS moving rotors. */
+    private static String setting(Random random, int positions) {
+        String[] rotors = { "I", "II", "III", "IV", "V" };
+        StringBuilder result = new StringBuilder("* B BETA");
+        for (int i = 0; i < 3; i += 1) {
+            int k = i + random.nextInt(rotors.length - i);
+            String rotor = rotors[k];
+            rotors[k] = rotors[i];
+            rotors[i] = rotor;
+            result.append(" ").append(rotor);
+        }
+        result.append(" A");
+        for (int i = 0; i < positions; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+        }
+        return result.append(" (AQ) (EP)\n").toString();
+    }
+
+    @Test
+    public void checkIntegrationCase() throws IOException {
+        Path dir = CONFIG.getParent();
+        String input = Files.readString(dir.resolve("test1.in"));
+        assertEquals(Files.readString(dir.resolve("test1.out")),
+                     check(input));
+        check(input.repeat(500));
+    }
+
+    @Test
+    public void checkCarryOver() throws IOException {
+        Random random = new Random(3);
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 200; k += 1) {
+            input.append(setting(random, k % 5 == 0 ? random.nextInt(3) : 3));
+            for (int n = random.nextInt(4); n > 0; n -= 1) {
+                input.append("HELLO WORLD\n");
+            }
+        }
+        assertFalse(check(input.toString()).contains("Error"));
+    }
+
+    @Test
+    public void checkErrorInMiddleSegment() throws IOException {
+        Random random = new Random(4);
+        StringBuilder before = new StringBuilder();
+        for (int k = 0; k < 100; k += 1) {
+            before.append(setting(random, k % 7 == 0 ? 1 : 3));
+            before.append("THE QUICK BROWN FOX\nJUMPS OVER\n");
+        }
+        String expected = runMain(CONFIG, before.toString());
+        String[] bad = { "* B BETA I II IX AAAA\nHELLO\n",
+                         "* B BETA I II III AAAA (AB\nHELLO\n",
+                         "* B BETA I II III AAAA\nHELLO 1\n",
+                         "* B BETA I II III AA\nHELLO\nWORLD 1\n" };
+        for (String segment : bad) {
+            String output = check(before + segment + before);
+            assertTrue(output.startsWith(expected));
+            int error = output.indexOf("Error: ", expected.length());
+            assertTrue(error >= 0);
+            assertFalse(output.substring(error).contains("\n"));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+/** A CompactMachine whose table holds shorts, for alphabets of more than
+ *  256 characters.
+ *  @author Eric Huang
+ */
+final class ShortCompactMachine extends CompactMachine {
+
+    /** A compact machine in the current state of MACHINE. */
+    ShortCompactMachine(Machine machine) {
+        super(machine);
+        int[] wiring = wiring(machine);
+        _table = new short[wiring.length];
+        for (int k = 0; k < wiring.length; k += 1) {
+            _table[k] = (short) wiring[k];
+        }
+    }
+
+    /** A copy of ORIGINAL sharing its table. */
+    private ShortCompactMachine(ShortCompactMachine original) {
+        super(original);
+        _table = original._table;
+    }
+
+    @Override
+    CompactMachine copy() {
+        return new ShortCompactMachine(this);
+    }
+
+    @Override
+    int width() {
+        return Short.BYTES;
+    }
+
+    @Override
+    public int convert(int c) {
+        advance();
+        short[] table = _table;
+        int[] positions = _positions;
+        int n = _size, last = _slots - 1;
+        int x = table[2 * _slots * n + c] & MASK;
+        for (int s = last; s >= 0; s -= 1) {
+            int p = positions[s];
+            int k = x + p;
+            k -= n & (n - 1 - k) >> SIGN_SHIFT;
+            x = (table[2 * s * n + k] & MASK) - p;
+            x += n & x >> SIGN_SHIFT;
+        }
+        for (int s = 1; s <= last; s += 1) {
+            int p = positions[s];
+            int k = x + p;
+            k -= n & (n - 1 - k) >> SIGN_SHIFT;
+            x = (table[(2 * s + 1) * n + k] & MASK) - p;
+            x += n & x >> SIGN_SHIFT;
+        }
+        return table[2 * _slots * n + x] & MASK;
+    }
+
+    /** Mask recovering an unsigned entry. */
+    private static final int MASK = 0xFFFF;
+
+    /** Shift that turns a negative int into -1 and others into 0. */
+    private static final int SIGN_SHIFT = 31;
+
+    /** The wirings and plugboard (see CompactMachine). */
+    private final short[] _table;
+}
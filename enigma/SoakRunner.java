@@ -0,0 +1,354 @@
+package enigma;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import static enigma.EnigmaException.*;
+
+/** Runs conversions for a fixed time to expose throughput drift, memory
+ *  leaks and incorrect results.  Worker threads repeatedly generate a
+ *  block of input with a LoadGenerator, encrypt it, decrypt the result
+ *  with a fresh machine, and check that they get the input back.  Every
+ *  interval the runner reports throughput, garbage collections and heap
+ *  use; at the end it compares the first and last intervals.  Blocks are
+ *  seeded from the run's seed, the worker and the block number, so a
+ *  failure can be reproduced from its report.
+ *  @author Eric Huang
+ */
+class SoakRunner {
+
+    /** Run a soak test as described by ARGS: CONFIG SECONDS [THREADS
+     *  [SEED]], where CONFIG names a configuration file.  Exits with
+     *  code 1 if any round trip fails. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2 || args.length > 4) {
+                throw error("usage: SoakRunner CONFIG SECONDS [THREADS "
+                            + "[SEED]]");
+            }
+            Machine template = Main.loadConfig(args[0]);
+            double seconds = Double.parseDouble(args[1]);
+            int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+            SoakRunner runner = new SoakRunner(template, threads, seed);
+            if (runner.run((long) (seconds * 1e9), System.out)) {
+                return;
+            }
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number: %s%n", excp.getMessage());
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A runner converting with copies of TEMPLATE on THREADS threads,
+     *  generating input from SEED. */
+    SoakRunner(Machine template, int threads, long seed) {
+        if (threads <= 0) {
+            throw error("need at least one thread");
+        }
+        _template = template;
+        _threads = threads;
+        _seed = seed;
+    }
+
+    /** Run for NANOS nanoseconds, reporting to LOG, and return true iff
+     *  every round trip succeeded. */
+    boolean run(long nanos, PrintStream log) {
+        long interval = Math.max(MIN_INTERVAL, nanos / INTERVALS);
+        List<NotificationEmitter> emitters = listenForPauses();
+        long start = System.nanoTime(), deadline = start + nanos;
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < _threads; t += 1) {
+            int worker = t;
+            Thread thread = new Thread(() -> work(worker, deadline),
+                                       "soak-" + t);
+            thread.setDaemon(true);
+            workers.add(thread);
+            thread.start();
+        }
+        log.printf("%7s %10s %6s %9s %9s %11s %11s%n", "time", "MB/s", "GCs",
+                   "GC ms", "max ms", "heap MB", "live MB");
+        ArrayList<Sample> samples = new ArrayList<>();
+        Sample previous = new Sample(start);
+        while (previous.time() < deadline) {
+            long wake = Math.min(deadline, previous.time() + interval);
+            sleepUntil(wake);
+            Sample sample = new Sample(System.nanoTime());
+            samples.add(sample);
+            sample.print(previous, start, log);
+            previous = sample;
+            if (_failure.get() != null) {
+                break;
+            }
+        }
+        for (Thread thread : workers) {
+            try {
+                thread.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(_pauseListener);
+            } catch (javax.management.ListenerNotFoundException excp) {
+                /* Already gone. */
+            }
+        }
+        summarize(samples, start, log);
+        return _failure.get() == null;
+    }
+
+    /** Convert blocks on behalf of worker WORKER until DEADLINE. */
+    private void work(int worker, long deadline) {
+        for (long block = 0; System.nanoTime() < deadline
+                 && _failure.get() == null; block += 1) {
+            long seed = _seed * SEED_MULTIPLIER + worker * BLOCK_SPAN + block;
+            try {
+                roundTrip(seed);
+            } catch (RuntimeException | IOException excp) {
+                _failure.compareAndSet(null, String.format(
+                    "block seed %d: %s", seed, excp));
+            }
+        }
+    }
+
+    /** Generate the block with seed SEED, encrypt and decrypt it, and
+     *  record a failure if the result differs from the block. */
+    private void roundTrip(long seed) throws IOException {
+        StringBuilder text = new StringBuilder();
+        new LoadGenerator(seed).input(_template, text, BLOCK_CHARS,
+                                      LoadGenerator.DEFAULT_SETTING_RATE,
+                                      LoadGenerator.DEFAULT_MAX_LENGTH);
+        String[] lines = text.toString().split("\n");
+        Machine encoder = _template.copy(), decoder = _template.copy();
+        long converted = 0;
+        for (int k = 0; k < lines.length; k += 1) {
+            String line = lines[k];
+            if (line.startsWith("*")) {
+                Main.applySetting(encoder, line);
+                Main.applySetting(decoder, line);
+                continue;
+            }
+            String cipher = encoder.convert(line);
+            String plain = decoder.convert(cipher);
+            converted += 2 * line.length();
+            if (!plain.equals(line)) {
+                _failure.compareAndSet(null, String.format(
+                    "block seed %d, line %d: decrypted %s as %s", seed,
+                    k + 1, line, plain));
+                return;
+            }
+        }
+        _converted.addAndGet(converted);
+    }
+
+    /** Register to hear of each garbage collection pause, returning the
+     *  beans to unregister from. */
+    private List<NotificationEmitter> listenForPauses() {
+        ArrayList<NotificationEmitter> result = new ArrayList<>();
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(_pauseListener, null, null);
+                result.add(emitter);
+            }
+        }
+        return result;
+    }
+
+    /** Record the duration of the garbage collection described by
+     *  NOTIFICATION, if it describes one.  HANDBACK is unused. */
+    private void recordPause(Notification notification, Object handback) {
+        if (notification.getType().equals(GarbageCollectionNotificationInfo
+                                          .GARBAGE_COLLECTION_NOTIFICATION)) {
+            GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from(
+                    (CompositeData) notification.getUserData());
+            _maxPause.accumulateAndGet(info.getGcInfo().getDuration(),
+                                       Math::max);
+        }
+    }
+
+    /** Sleep until System.nanoTime() reaches WAKE. */
+    private static void sleepUntil(long wake) {
+        long left;
+        while ((left = wake - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(left / MILLION, (int) (left % MILLION));
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /** Print the overall results of the run whose interval samples are
+     *  SAMPLES and which started at START to LOG. */
+    private void summarize(List<Sample> samples, long start,
+                           PrintStream log) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        Sample last = samples.get(samples.size() - 1);
+        double seconds = (last.time() - start) / 1e9;
+        log.printf("%nconverted %.1f MB in %.1f s: %.2f MB/s on %d threads%n",
+                   last.converted() / 1e6, seconds,
+                   last.converted() / 1e6 / seconds, _threads);
+        log.printf("garbage collections: %d taking %d ms, longest %d ms%n",
+                   last.collections(), last.collectionMillis(),
+                   _maxPause.get());
+        if (samples.size() >= 3) {
+            Sample first = samples.get(0), second = samples.get(1);
+            Sample penultimate = samples.get(samples.size() - 2);
+            double early = second.rate(first);
+            double late = last.rate(penultimate);
+            log.printf("throughput drift: %+.1f%% (%.2f -> %.2f MB/s)%n",
+                       100 * (late - early) / early, early, late);
+            log.printf("live heap growth: %+.1f MB (%.1f -> %.1f MB)%n",
+                       (last.live() - second.live()) / 1e6,
+                       second.live() / 1e6, last.live() / 1e6);
+        }
+        String failure = _failure.get();
+        log.println(failure == null ? "round trips: all correct"
+                    : "round trips: FAILED at " + failure);
+    }
+
+    /** The state of the run at one moment. */
+    private final class Sample {
+
+        /** A sample taken at TIME (from System.nanoTime()). */
+        Sample(long time) {
+            _time = time;
+            _converted = SoakRunner.this._converted.get();
+            long count = 0, millis = 0;
+            for (GarbageCollectorMXBean gc
+                     : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            _collections = count;
+            _collectionMillis = millis;
+            long used = 0, live = 0;
+            for (MemoryPoolMXBean pool
+                     : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    used += pool.getUsage().getUsed();
+                    if (pool.getCollectionUsage() != null) {
+                        live += pool.getCollectionUsage().getUsed();
+                    }
+                }
+            }
+            _used = used;
+            _live = live;
+        }
+
+        /** Return when I was taken. */
+        long time() {
+            return _time;
+        }
+
+        /** Return the characters converted so far. */
+        long converted() {
+            return _converted;
+        }
+
+        /** Return the garbage collections so far. */
+        long collections() {
+            return _collections;
+        }
+
+        /** Return the milliseconds spent collecting garbage so far. */
+        long collectionMillis() {
+            return _collectionMillis;
+        }
+
+        /** Return the heap in use after the latest collections. */
+        long live() {
+            return _live;
+        }
+
+        /** Return the conversion rate in MB/s since PREVIOUS. */
+        double rate(Sample previous) {
+            return (_converted - previous._converted) * 1e3
+                / Math.max(1, _time - previous._time);
+        }
+
+        /** Print the interval since PREVIOUS, for a run that started at
+         *  START, to LOG. */
+        void print(Sample previous, long start, PrintStream log) {
+            log.printf("%6.1fs %10.2f %6d %9d %9d %11.1f %11.1f%n",
+                       (_time - start) / 1e9, rate(previous),
+                       _collections - previous._collections,
+                       _collectionMillis - previous._collectionMillis,
+                       _maxPause.get(), _used / 1e6, _live / 1e6);
+        }
+
+        /** Time taken. */
+        private final long _time;
+
+        /** Characters converted. */
+        private final long _converted;
+
+        /** Garbage collection count and time. */
+        private final long _collections, _collectionMillis;
+
+        /** Heap in use now and after the latest collections. */
+        private final long _used, _live;
+    }
+
+    /** Fewest nanoseconds between reports. */
+    private static final long MIN_INTERVAL = 1_000_000_000L;
+
+    /** Number of reports in a long run. */
+    private static final int INTERVALS = 20;
+
+    /** Nanoseconds per millisecond. */
+    private static final long MILLION = 1_000_000;
+
+    /** Characters of input per block. */
+    private static final long BLOCK_CHARS = 1 << 18;
+
+    /** Multipliers spreading run and worker seeds apart. */
+    private static final long SEED_MULTIPLIER = 1_000_003,
+        BLOCK_SPAN = 1L << 32;
+
+    /** The configuration under test. */
+    private final Machine _template;
+
+    /** Number of worker threads. */
+    private final int _threads;
+
+    /** Seed of the run. */
+    private final long _seed;
+
+    /** Characters converted so far, counting both directions. */
+    private final AtomicLong _converted = new AtomicLong();
+
+    /** Longest garbage collection so far, in milliseconds. */
+    private final AtomicLong _maxPause = new AtomicLong();
+
+    /** Description of the first failure, if any. */
+    private final AtomicReference<String> _failure = new AtomicReference<>();
+
+    /** Calls recordPause; kept so that it can be unregistered. */
+    private final NotificationListener _pauseListener = this::recordPause;
+}
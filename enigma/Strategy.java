@@ -0,0 +1,148 @@
+package enigma;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** The ways a Machine can carry out conversions.  No one way is fastest
+ *  everywhere: SHIFTED tables cost 2 * size * size ints per rotor, which
+ *  is nothing for A-Z but spills out of cache for alphabets of hundreds
+ *  of characters, and a SpecializedEngine only repays generating its
+ *  class and composing its tables over long inputs.  choose() estimates
+ *  the best from the shape of a configuration, and measure() times the
+ *  candidates on this host.
+ *  @author Eric Huang
+ */
+enum Strategy {
+    /** Rotors use Rotor.Lookup.ARITHMETIC. */
+    ARITHMETIC,
+    /** Rotors use Rotor.Lookup.SHIFTED. */
+    SHIFTED,
+    /** Conversions go through an Engine generated for the machine's state
+     *  (see EngineSpecializer), whose rotors use SHIFTED otherwise. */
+    SPECIALIZED;
+
+    /** Return the lookup rotors use under me. */
+    Rotor.Lookup lookup() {
+        return this == ARITHMETIC ? Rotor.Lookup.ARITHMETIC
+            : Rotor.Lookup.SHIFTED;
+    }
+
+    /** Return the strategy named NAME, ignoring case. */
+    static Strategy named(String name) {
+        for (Strategy strategy : values()) {
+            if (strategy.name().equalsIgnoreCase(name)) {
+                return strategy;
+            }
+        }
+        throw error("unknown strategy: %s", name);
+    }
+
+    /** Return the strategy expected to be fastest for an alphabet of SIZE
+     *  characters and SLOTS rotor slots converting messages of about
+     *  LENGTH characters each, that is, LENGTH characters for each
+     *  setting line, since every new rotor order or plugboard needs a new
+     *  Engine, or the one named by the system property
+     *  enigma.strategy, if set.  Alphabets too large for SHIFTED tables
+     *  (see Rotor.Lookup.forSize) use ARITHMETIC.  Otherwise, inputs of
+     *  SPECIALIZE_LENGTH or more use SPECIALIZED, and shorter ones use
+     *  SHIFTED while the tables of all slots together fit in
+     *  TABLE_BUDGET bytes. */
+    static Strategy choose(int size, int slots, long length) {
+        String forced = System.getProperty(PROPERTY);
+        if (forced != null) {
+            return named(forced);
+        }
+        if (Rotor.Lookup.forSize(size) != Rotor.Lookup.SHIFTED) {
+            return ARITHMETIC;
+        } else if (length >= SPECIALIZE_LENGTH) {
+            return SPECIALIZED;
+        }
+        long tables = 2L * size * size * Integer.BYTES * slots;
+        return tables <= TABLE_BUDGET ? SHIFTED : ARITHMETIC;
+    }
+
+    /** Return the conversion rate, in characters per microsecond, of
+     *  each strategy on a copy of MACHINE, spending about NANOS
+     *  nanoseconds in all.  Each is timed on messages of LENGTH random
+     *  characters (at most CALIBRATION_LENGTH).  If MACHINE has no rotors
+     *  inserted, it is timed with a setting chosen at random.  Strategies
+     *  that cannot run on MACHINE are left out. */
+    static Map<Strategy, Double> measure(Machine machine, long length,
+                                         long nanos) {
+        Machine sample = machine.copy();
+        if (sample.rotors().isEmpty()) {
+            Main.applySetting(sample,
+                              new LoadGenerator(SEED).setting(sample));
+        }
+        Random random = new Random(SEED);
+        int size = sample.alphabet().size();
+        char[] message =
+            new char[(int) Math.max(1, Math.min(length, CALIBRATION_LENGTH))];
+        for (int i = 0; i < message.length; i += 1) {
+            message[i] = sample.alphabet().toChar(random.nextInt(size));
+        }
+        char[] work = new char[message.length];
+        EnumMap<Strategy, Double> result = new EnumMap<>(Strategy.class);
+        Strategy[] candidates = values();
+        for (Strategy strategy : candidates) {
+            if (strategy.lookup() == Rotor.Lookup.SHIFTED
+                && Rotor.Lookup.forSize(size) != Rotor.Lookup.SHIFTED) {
+                continue;
+            }
+            sample.setStrategy(strategy);
+            long start = System.nanoTime();
+            long deadline = start + nanos / candidates.length;
+            long measured = start, converted = 0;
+            for (int round = 0; round == 0 || System.nanoTime() < deadline;
+                 round += 1) {
+                if (round == WARMUP_ROUNDS) {
+                    measured = System.nanoTime();
+                    converted = 0;
+                }
+                System.arraycopy(message, 0, work, 0, message.length);
+                sample.convert(work, 0, work.length);
+                converted += work.length;
+            }
+            long elapsed = Math.max(1, System.nanoTime() - measured);
+            result.put(strategy, converted * 1e3 / elapsed);
+        }
+        return result;
+    }
+
+    /** Return the strategy with the highest rate in RATES, a result of
+     *  measure(). */
+    static Strategy fastest(Map<Strategy, Double> rates) {
+        Strategy result = SHIFTED;
+        double best = -1;
+        for (Map.Entry<Strategy, Double> entry : rates.entrySet()) {
+            if (entry.getValue() > best) {
+                result = entry.getKey();
+                best = entry.getValue();
+            }
+        }
+        return result;
+    }
+
+    /** System property naming a strategy for choose() to return. */
+    static final String PROPERTY = "enigma.strategy";
+
+    /** Most bytes of SHIFTED tables, over all slots, that choose() expects
+     *  to stay in cache. */
+    static final long TABLE_BUDGET = 2 << 20;
+
+    /** Fewest characters for which choose() expects a SpecializedEngine
+     *  to repay its setup. */
+    static final long SPECIALIZE_LENGTH = 1 << 16;
+
+    /** Longest message measure() times. */
+    private static final long CALIBRATION_LENGTH = 1 << 16;
+
+    /** Conversions measure() runs before timing each strategy. */
+    private static final int WARMUP_ROUNDS = 3;
+
+    /** Seed of calibration messages and settings. */
+    private static final long SEED = 1;
+}
@@ -0,0 +1,115 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+/** Tests of Strategy and of Machine's conversions under each.
+ *  @author Eric Huang
+ */
+public class StrategyTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void checkChoose() {
+        assertEquals(Strategy.SHIFTED, Strategy.choose(26, 5, 100));
+        assertEquals(Strategy.SPECIALIZED,
+                     Strategy.choose(26, 5, Strategy.SPECIALIZE_LENGTH));
+        assertEquals(Strategy.ARITHMETIC, Strategy.choose(256, 5, 100));
+        assertEquals(Strategy.SPECIALIZED,
+                     Strategy.choose(256, 5, 1 << 30));
+        assertEquals(Strategy.ARITHMETIC, Strategy.choose(1000, 5, 1 << 30));
+        assertEquals(Strategy.SPECIALIZED, Strategy.named("Specialized"));
+        try {
+            Strategy.named("fastest");
+            fail("unknown strategy accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkMessageLength() throws IOException {
+        Path file = Files.createTempFile("strategy", ".in");
+        try {
+            Files.writeString(file, "* B BETA I II III AAAA\nHELLO*\n"
+                              + "* B BETA I II III AAAB\n*\n");
+            assertEquals(Files.size(file) / 3, Main.messageLength(file));
+            Files.writeString(file, "HELLO WORLD\n");
+            assertEquals(12, Main.messageLength(file));
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(0, Main.messageLength(null));
+        assertEquals(0, Main.messageLength(file));
+    }
+
+    @Test
+    public void checkStrategiesAgree() throws IOException {
+        LoadGenerator generator = new LoadGenerator(11);
+        Machine template =
+            Main.parseConfig(generator.config(26, 6, 2, 2, 5));
+        StringBuilder input = new StringBuilder();
+        generator.input(template, input, 30000, 0.05, 200);
+        String[] lines = input.toString().split("\n");
+        Machine reference = template.copy();
+        reference.setStrategy(Strategy.SHIFTED);
+        Machine[] machines = new Machine[Strategy.values().length];
+        for (Strategy strategy : Strategy.values()) {
+            machines[strategy.ordinal()] = template.copy();
+            machines[strategy.ordinal()].setStrategy(strategy);
+        }
+        Random random = new Random(12);
+        for (String line : lines) {
+            if (line.startsWith("*")) {
+                Main.applySetting(reference, line);
+                for (Machine machine : machines) {
+                    Main.applySetting(machine, line);
+                }
+                if (random.nextBoolean()) {
+                    int setting = random.nextInt(26);
+                    reference.rotors().get(1).set(setting);
+                    for (Machine machine : machines) {
+                        machine.rotors().get(1).set(setting);
+                    }
+                }
+                continue;
+            }
+            String expected = reference.convert(line);
+            for (Machine machine : machines) {
+                assertEquals(machine.strategy().toString(), expected,
+                             machine.convert(line));
+            }
+        }
+        for (Machine machine : machines) {
+            for (int s = 0; s < reference.rotors().size(); s += 1) {
+                assertEquals(reference.rotors().get(s).setting(),
+                             machine.rotors().get(s).setting());
+            }
+        }
+    }
+
+    @Test
+    public void checkMeasure() {
+        Machine machine =
+            Main.parseConfig(new LoadGenerator(13).config(26, 5, 1, 1, 5));
+        Map<Strategy, Double> rates =
+            Strategy.measure(machine, 1000, 30_000_000L);
+        assertEquals(Strategy.values().length, rates.size());
+        for (double rate : rates.values()) {
+            assertTrue(rate > 0);
+        }
+        assertTrue(rates.containsKey(Strategy.fastest(rates)));
+        assertTrue(machine.rotors().isEmpty());
+    }
+}
@@ -0,0 +1,300 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts keystrokes one at a time as they arrive, for an operator
+ *  typing at a console or over a socket.  The input has the form Main
+ *  reads, setting lines and message lines, and the output is what Main
+ *  would print, but each message character is converted and placed in
+ *  its group of five as soon as it is read rather than when its line
+ *  ends.
+ *
+ *  Converted characters are held until one of three things happens: a
+ *  batch of keystrokes is waiting, the oldest waiting keystroke has
+ *  waited the maximum delay, or no more input is ready, so that the
+ *  next read would block.  The last rule means a lone keystroke is
+ *  written at once, while a burst of pasted text is written in batches.
+ *  The latency of each keystroke, from the return of the read that
+ *  delivered it to the return of the flush that delivered its output,
+ *  is recorded in a histogram.
+ *
+ *  Keystrokes reach the program only as the source delivers them: a
+ *  terminal in its usual line-editing mode sends nothing before the end
+ *  of each line, so consoles should be put in character mode, for
+ *  instance by "stty -icanon".
+ *  @author Eric Huang
+ */
+class Teletype {
+
+    /** A teletype converting INPUT with MACHINE to OUTPUT, applying
+     *  setting lines to MACHINE with SETTER.  It writes its output when
+     *  MAXBATCH keystrokes are waiting or the oldest has waited MAXDELAY
+     *  nanoseconds, if not before. */
+    Teletype(Machine machine, Reader input, Writer output,
+             Consumer<String> setter, long maxDelay, int maxBatch) {
+        if (maxDelay < 0) {
+            throw error("flush delay must not be negative");
+        }
+        if (maxBatch <= 0) {
+            throw error("flush batch must be positive");
+        }
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _setter = setter;
+        _maxDelay = maxDelay;
+        _maxBatch = maxBatch;
+        _pending = new char[2 * maxBatch];
+        _stamps = new long[maxBatch];
+    }
+
+    /** Convert all of the input, returning once its output has all been
+     *  written.  On an error, writes the output of the keystrokes before
+     *  it and rethrows it. */
+    void run() {
+        try {
+            try {
+                while (true) {
+                    if (_count > 0 && !_input.ready()) {
+                        flush();
+                    }
+                    int ch = _input.read();
+                    if (ch < 0) {
+                        break;
+                    }
+                    key((char) ch, System.nanoTime());
+                    if (_count >= _maxBatch
+                        || _count > 0
+                           && System.nanoTime() - _stamps[0] >= _maxDelay) {
+                        flush();
+                    }
+                }
+                if (_inSetting) {
+                    _setter.accept(_setting.toString());
+                } else if (!_atLineStart) {
+                    key('\n', System.nanoTime());
+                }
+            } finally {
+                flush();
+            }
+        } catch (IOException excp) {
+            throw error("teletype I/O failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the latencies of the keystrokes converted so far. */
+    Latencies latencies() {
+        return _latencies;
+    }
+
+    /** Handle keystroke CH, read at time STAMP. */
+    private void key(char ch, long stamp) {
+        if (_inSetting) {
+            if (ch == '\n') {
+                _inSetting = false;
+                _atLineStart = true;
+                _setter.accept(_setting.toString());
+                _started = true;
+            } else if (ch != '\r') {
+                _setting.append(ch);
+            }
+            return;
+        }
+        if (ch == '\n') {
+            _pending[_length++] = '\n';
+            _stamps[_count++] = stamp;
+            _atLineStart = true;
+            _group = 0;
+            return;
+        }
+        if (_atLineStart && ch == '*') {
+            _inSetting = true;
+            _setting.setLength(0);
+            _setting.append(ch);
+            return;
+        }
+        _atLineStart = false;
+        if (ch == ' ' || ch == '\r') {
+            return;
+        }
+        if (!_started) {
+            throw error("Missing setting");
+        }
+        _key[0] = Character.toUpperCase(ch);
+        if (_machine.convert(_key, 0, 1) == 1) {
+            if (_group == GROUP) {
+                _pending[_length++] = ' ';
+                _group = 0;
+            }
+            _pending[_length++] = _key[0];
+            _stamps[_count++] = stamp;
+            _group += 1;
+        }
+    }
+
+    /** Write the waiting output and record the latencies of the
+     *  keystrokes that produced it. */
+    private void flush() throws IOException {
+        if (_count == 0) {
+            return;
+        }
+        _output.write(_pending, 0, _length);
+        _output.flush();
+        long now = System.nanoTime();
+        for (int k = 0; k < _count; k += 1) {
+            _latencies.record(now - _stamps[k]);
+        }
+        _length = _count = 0;
+    }
+
+    /** A histogram of latencies in nanoseconds.  Values below 2 * SUB are
+     *  counted exactly; larger ones in buckets of which there are SUB
+     *  between each power of two and the next, so that a percentile is
+     *  reported within 1 / SUB of the truth. */
+    static final class Latencies {
+
+        /** Count a latency of NANOS nanoseconds. */
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            _counts[bucket(nanos)] += 1;
+            _count += 1;
+            _max = Math.max(_max, nanos);
+        }
+
+        /** Return the number of latencies counted. */
+        long count() {
+            return _count;
+        }
+
+        /** Return the largest latency counted, or 0 if none. */
+        long max() {
+            return _max;
+        }
+
+        /** Return the least latency, to within my precision, that at
+         *  least PERCENT percent of those counted do not exceed, or 0 if
+         *  none have been counted. */
+        long percentile(double percent) {
+            long rank = Math.max(1, (long) Math.ceil(percent / 100 * _count));
+            long seen = 0;
+            for (int i = 0; i < _counts.length; i += 1) {
+                seen += _counts[i];
+                if (seen >= rank) {
+                    return Math.min(_max, highest(i));
+                }
+            }
+            return _max;
+        }
+
+        /** Print the usual percentiles, in microseconds, on OUT. */
+        void report(PrintStream out) {
+            out.printf("%d keystrokes, latency (us):", _count);
+            for (double percent : PERCENTS) {
+                out.printf(" p%s %.1f", percent == (int) percent
+                           ? Integer.toString((int) percent)
+                           : Double.toString(percent),
+                           percentile(percent) / 1e3);
+            }
+            out.printf(" max %.1f%n", _max / 1e3);
+        }
+
+        /** Return the bucket holding NANOS. */
+        private static int bucket(long nanos) {
+            if (nanos < 2 * SUB) {
+                return (int) nanos;
+            }
+            int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)
+                - SUB_BITS;
+            return shift * SUB + (int) (nanos >>> shift);
+        }
+
+        /** Return the largest value in bucket I. */
+        private static long highest(int i) {
+            if (i < 2 * SUB) {
+                return i;
+            }
+            int shift = i / SUB - 1;
+            long top = i % SUB + SUB;
+            return ((top + 1) << shift) - 1;
+        }
+
+        /** Number of latencies in each bucket. */
+        private final long[] _counts = new long[(Long.SIZE - SUB_BITS) * SUB];
+
+        /** Number of latencies counted. */
+        private long _count;
+
+        /** Largest latency counted. */
+        private long _max;
+
+        /** Percentiles reported. */
+        private static final double[] PERCENTS = { 50, 90, 99, 99.9 };
+
+        /** Log base 2 of SUB. */
+        private static final int SUB_BITS = 5;
+
+        /** Buckets between successive powers of two. */
+        private static final int SUB = 1 << SUB_BITS;
+    }
+
+    /** Letters in a group. */
+    private static final int GROUP = 5;
+
+    /** The machine converting. */
+    private final Machine _machine;
+
+    /** Source of keystrokes. */
+    private final Reader _input;
+
+    /** Destination of output. */
+    private final Writer _output;
+
+    /** Applies setting lines. */
+    private final Consumer<String> _setter;
+
+    /** Longest a keystroke waits to be written, in nanoseconds. */
+    private final long _maxDelay;
+
+    /** Most keystrokes waiting to be written. */
+    private final int _maxBatch;
+
+    /** Output waiting to be written: at most two characters, a letter
+     *  and the blank before its group, per keystroke. */
+    private final char[] _pending;
+
+    /** Number of characters in _pending. */
+    private int _length;
+
+    /** Read times of the keystrokes whose output is in _pending. */
+    private final long[] _stamps;
+
+    /** Number of keystrokes whose output is in _pending. */
+    private int _count;
+
+    /** The setting line being read, if _inSetting. */
+    private final StringBuilder _setting = new StringBuilder();
+
+    /** True while reading a setting line. */
+    private boolean _inSetting;
+
+    /** True if no keystroke has been read on the current line. */
+    private boolean _atLineStart = true;
+
+    /** True once a setting line has been applied. */
+    private boolean _started;
+
+    /** Letters in the current group. */
+    private int _group;
+
+    /** The keystroke being converted. */
+    private final char[] _key = new char[1];
+
+    /** Latencies recorded. */
+    private final Latencies _latencies = new Latencies();
+}
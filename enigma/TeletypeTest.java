@@ -0,0 +1,149 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** Tests of Teletype.
+ *  @author Eric Huang
+ */
+public class TeletypeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** An input in Main's format. */
+    private static final String INPUT =
+        "* B BETA III II I AAAA (YF) (ZH)\n"
+        + "Hello World\n\n  From his shoulder Hiawatha  \n"
+        + "* B BETA I II III AXLE\r\nTook the camera of rosewood\r\n"
+        + "ABCDE\nABCDEF";
+
+    /** A writer recording what each flush delivers. */
+    private static final class Recorder extends StringWriter {
+        @Override
+        public void flush() {
+            String all = toString();
+            _flushes.add(all.substring(_flushed));
+            _flushed = all.length();
+        }
+
+        /** Output delivered by each flush. */
+        private final ArrayList<String> _flushes = new ArrayList<>();
+
+        /** Length of the output flushed so far. */
+        private int _flushed;
+    }
+
+    /** A reader of TEXT that never has input ready. */
+    private static final class Slow extends StringReader {
+        Slow(String text) {
+            super(text);
+        }
+
+        @Override
+        public boolean ready() {
+            return false;
+        }
+    }
+
+    /** Return the output of Main for INPUT. */
+    private static String expected(String input) {
+        Machine machine = Main.parseConfig(SMALL_CONFIG);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+        Main.convertLines(machine, new Scanner(input), out);
+        out.close();
+        return bytes.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    /** Return the flushes of a teletype converting INPUT, with limits
+     *  MAXDELAY and MAXBATCH. */
+    private static List<String> run(Reader input, long maxDelay,
+                                    int maxBatch) {
+        Machine machine = Main.parseConfig(SMALL_CONFIG);
+        Recorder output = new Recorder();
+        Teletype teletype =
+            new Teletype(machine, input, output,
+                         line -> Main.applySetting(machine, line),
+                         maxDelay, maxBatch);
+        teletype.run();
+        assertTrue(teletype.latencies().count() > 0);
+        return output._flushes;
+    }
+
+    @Test
+    public void checkMatchesMain() {
+        String expected = expected(INPUT);
+        for (int batch : new int[] { 1, 3, 64 }) {
+            assertEquals(expected,
+                         String.join("", run(new StringReader(INPUT),
+                                             Long.MAX_VALUE, batch)));
+            assertEquals(expected,
+                         String.join("", run(new Slow(INPUT), 0, batch)));
+        }
+    }
+
+    @Test
+    public void checkFlushPolicy() {
+        String input = "* B BETA I II III AAAA\nABCDEFG\n";
+        List<String> flushes = run(new StringReader(input),
+                                   Long.MAX_VALUE, 3);
+        assertEquals(3, flushes.size());
+        assertEquals(3, flushes.get(0).length());
+        assertEquals(4, flushes.get(1).length());
+        assertEquals(2, flushes.get(2).length());
+        flushes = run(new Slow(input), Long.MAX_VALUE, 64);
+        assertEquals(8, flushes.size());
+        flushes = run(new StringReader(input), 0, 64);
+        assertEquals(8, flushes.size());
+        flushes = run(new StringReader(input), Long.MAX_VALUE, 64);
+        assertEquals(1, flushes.size());
+    }
+
+    @Test
+    public void checkMissingSetting() {
+        try {
+            run(new StringReader("\nHELLO\n"), 0, 4);
+            fail("accepted a message before any setting");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkLatencies() {
+        Teletype.Latencies latencies = new Teletype.Latencies();
+        assertEquals(0, latencies.percentile(50));
+        for (long k = 1; k <= 1000; k += 1) {
+            latencies.record(k * 1000);
+        }
+        assertEquals(1000, latencies.count());
+        assertEquals(1_000_000, latencies.max());
+        long[][] cases = { { 50, 500_000 }, { 90, 900_000 },
+                           { 99, 990_000 }, { 100, 1_000_000 } };
+        for (long[] c : cases) {
+            long actual = latencies.percentile(c[0]);
+            assertTrue(c[0] + ": " + actual,
+                       actual >= c[1] && actual <= c[1] + c[1] / 32);
+        }
+        for (long k = 0; k < 64; k += 1) {
+            Teletype.Latencies exact = new Teletype.Latencies();
+            exact.record(k);
+            assertEquals(k, exact.percentile(50));
+        }
+    }
+}
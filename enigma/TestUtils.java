@@ -1,5 +1,9 @@
 package enigma;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -11,6 +15,60 @@ class TestUtils {
     protected static final String UPPER_STRING =
         "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
 
+    /** A small configuration: the naval rotors I, II, III and Beta and
+     *  reflector B. */
+    static final String SMALL_CONFIG = "A-Z\n5 3\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " BETA N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) "
+        + "(SZ) (TV)\n";
+
+    /** Return a machine configured by CONFIG and set up with a setting
+     *  line drawn by GENERATOR. */
+    static Machine generatedMachine(LoadGenerator generator, String config) {
+        Machine result = Main.parseConfig(config);
+        Main.applySetting(result, generator.setting(result));
+        return result;
+    }
+
+    /** Return a machine for a configuration drawn by GENERATOR with an
+     *  alphabet of SIZE characters, six moving rotors, two fixed rotors,
+     *  two reflectors and five slots, set up with a setting line it also
+     *  draws. */
+    static Machine generatedMachine(LoadGenerator generator, int size) {
+        return generatedMachine(generator,
+                                generator.config(size, 6, 2, 2, 5));
+    }
+
+    /** Return what Main prints when it converts INPUT, written to a
+     *  temporary file, with the configuration file CONFIG and the
+     *  command-line options OPTIONS, followed by "Error: " and the
+     *  message of the error that stopped it, if any. */
+    static String runMain(Path config, String input, String... options)
+        throws IOException {
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.writeString(in, input);
+            String[] args = Arrays.copyOf(options, options.length + 3);
+            args[options.length] = config.toString();
+            args[options.length + 1] = in.toString();
+            args[options.length + 2] = out.toString();
+            String error = "";
+            try {
+                new Main(args).process();
+            } catch (EnigmaException excp) {
+                error = "Error: " + excp.getMessage();
+            }
+            return Files.readString(out) + error;
+        } finally {
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
     /** Return an identifying error message for failed assertions.
      *  TESTID identifies the test, MSGFORMAT and ARGS provide
      *  the details, as for String.format. */
@@ -0,0 +1,176 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Decrypts one ciphertext under many candidate settings at once, as a
+ *  key search does.  The ciphertext is held once as alphabet indices, and
+ *  candidates are taken in batches of BATCH CompactMachines that advance
+ *  together: the outer loop runs over the ciphertext and the inner one
+ *  over the batch, so each character is read once per batch.  A Scorer
+ *  rates each decrypted character, and a candidate drops out as soon as
+ *  its score so far plus the best the rest of the message could add
+ *  falls short of the threshold, so that a wrong key usually costs a
+ *  small part of the message.
+ *  @author Eric Huang
+ */
+final class TrialDecryptor {
+
+    /** Rates decrypted text one character at a time. */
+    interface Scorer {
+        /** Return the score of plaintext index C at position I of the
+         *  message, following index PREVIOUS, or -1 if I is 0. */
+        double score(int i, int previous, int c);
+
+        /** Return the highest score any one character can get. */
+        double best();
+    }
+
+    /** Not instantiable. */
+    private TrialDecryptor() {
+    }
+
+    /** Return the score of CIPHER, alphabet indices, decrypted under each
+     *  of CANDIDATES, whose rotors must be set up and distinct (see
+     *  CompactMachine), rated by SCORER.  A
+     *  candidate whose score cannot reach THRESHOLD is abandoned and gets
+     *  Double.NEGATIVE_INFINITY.  CANDIDATES are not changed. */
+    static double[] trialDecrypt(int[] cipher, List<Machine> candidates,
+                                 Scorer scorer, double threshold) {
+        double[] result = new double[candidates.size()];
+        CompactMachine[] batch = new CompactMachine[BATCH];
+        double[] scores = new double[BATCH];
+        int[] previous = new int[BATCH];
+        int[] live = new int[BATCH];
+        double best = scorer.best();
+        for (int first = 0; first < result.length; first += BATCH) {
+            int width = Math.min(BATCH, result.length - first);
+            for (int k = 0; k < width; k += 1) {
+                batch[k] = CompactMachine.create(candidates.get(first + k));
+                scores[k] = 0;
+                previous[k] = -1;
+                live[k] = k;
+                result[first + k] = Double.NEGATIVE_INFINITY;
+            }
+            int alive = width;
+            for (int i = 0; i < cipher.length && alive > 0; i += 1) {
+                int c = cipher[i];
+                double need = threshold - best * (cipher.length - i - 1);
+                for (int j = 0; j < alive; j += 1) {
+                    int k = live[j];
+                    int p = batch[k].convert(c);
+                    scores[k] += scorer.score(i, previous[k], p);
+                    previous[k] = p;
+                    if (scores[k] < need) {
+                        alive -= 1;
+                        live[j] = live[alive];
+                        j -= 1;
+                    }
+                }
+            }
+            for (int j = 0; j < alive; j += 1) {
+                result[first + live[j]] = scores[live[j]];
+            }
+        }
+        return result;
+    }
+
+    /** Return trialDecrypt() of CIPHERTEXT, whose characters must be in
+     *  the alphabet of CANDIDATES apart from whitespace, which is
+     *  skipped. */
+    static double[] trialDecrypt(String ciphertext, List<Machine> candidates,
+                                 Scorer scorer, double threshold) {
+        if (candidates.isEmpty()) {
+            return new double[0];
+        }
+        return trialDecrypt(indices(candidates.get(0).alphabet(), ciphertext),
+                            candidates, scorer, threshold);
+    }
+
+    /** Return the indices in ALPHABET of the characters of TEXT, skipping
+     *  whitespace. */
+    static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            if (!alphabet.contains(ch)) {
+                throw error("character %c is not in the alphabet", ch);
+            }
+            result[n] = alphabet.toInt(ch);
+            n += 1;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return a scorer giving 1 to each character equal to the one at the
+     *  same position of PLAIN, alphabet indices, and 0 to the rest.
+     *  Positions past the end of PLAIN score 1. */
+    static Scorer crib(int[] plain) {
+        return new Scorer() {
+            @Override
+            public double score(int i, int previous, int c) {
+                return i >= plain.length || plain[i] == c ? 1 : 0;
+            }
+
+            @Override
+            public double best() {
+                return 1;
+            }
+        };
+    }
+
+    /** Return a scorer giving each character the logarithm of its
+     *  probability after the one before it, estimated from the pairs of
+     *  characters of ALPHABET in SAMPLE, with one added to each count.
+     *  The first character is scored by its own frequency. */
+    static Scorer bigrams(Alphabet alphabet, String sample) {
+        int size = alphabet.size();
+        double[] table = new double[(size + 1) * size];
+        int previous = -1;
+        for (int i = 0; i < sample.length(); i += 1) {
+            char ch = sample.charAt(i);
+            if (!alphabet.contains(ch)) {
+                continue;
+            }
+            int c = alphabet.toInt(ch);
+            table[c] += 1;
+            if (previous != -1) {
+                table[(previous + 1) * size + c] += 1;
+            }
+            previous = c;
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int row = 0; row <= size; row += 1) {
+            double total = size;
+            for (int c = 0; c < size; c += 1) {
+                total += table[row * size + c];
+            }
+            for (int c = 0; c < size; c += 1) {
+                int at = row * size + c;
+                table[at] = Math.log((table[at] + 1) / total);
+                best = Math.max(best, table[at]);
+            }
+        }
+        double highest = best;
+        return new Scorer() {
+            @Override
+            public double score(int i, int prev, int c) {
+                return table[(prev + 1) * size + c];
+            }
+
+            @Override
+            public double best() {
+                return highest;
+            }
+        };
+    }
+
+    /** Candidates advanced together. */
+    static final int BATCH = 64;
+}
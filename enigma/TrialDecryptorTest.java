@@ -0,0 +1,147 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** Tests of TrialDecryptor.
+ *  @author Eric Huang
+ */
+public class TrialDecryptorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Plaintext for the tests. */
+    private static final String PLAIN =
+        "IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES IT WAS THE AGE "
+        + "OF WISDOM IT WAS THE AGE OF FOOLISHNESS IT WAS THE EPOCH OF "
+        + "BELIEF IT WAS THE EPOCH OF INCREDULITY IT WAS THE SEASON OF LIGHT "
+        + "IT WAS THE SEASON OF DARKNESS IT WAS THE SPRING OF HOPE IT WAS "
+        + "THE WINTER OF DESPAIR WE HAD EVERYTHING BEFORE US WE HAD NOTHING "
+        + "BEFORE US";
+
+    /** Counts the characters it scores, for its scorer. */
+    private static final class Counting implements TrialDecryptor.Scorer {
+
+        /** Counts calls of SCORER. */
+        Counting(TrialDecryptor.Scorer scorer) {
+            _scorer = scorer;
+        }
+
+        @Override
+        public double score(int i, int previous, int c) {
+            calls += 1;
+            return _scorer.score(i, previous, c);
+        }
+
+        @Override
+        public double best() {
+            return _scorer.best();
+        }
+
+        /** Characters scored. */
+        long calls;
+
+        /** Scorer counted. */
+        private final TrialDecryptor.Scorer _scorer;
+    }
+
+    /** Return MACHINE, set up with 1 + WRONG settings: the first the
+     *  current setting of MACHINE, and the rest random, from GENERATOR. */
+    private static ArrayList<Machine> candidates(Machine machine, int wrong,
+                                                 LoadGenerator generator) {
+        ArrayList<Machine> result = new ArrayList<>();
+        result.add(machine.copy());
+        for (int k = 0; k < wrong; k += 1) {
+            Machine candidate = machine.copy();
+            Main.applySetting(candidate, generator.setting(candidate));
+            result.add(candidate);
+        }
+        return result;
+    }
+
+    @Test
+    public void checkScoresMatchMachine() {
+        LoadGenerator generator = new LoadGenerator(1);
+        Machine machine = generatedMachine(generator, 26);
+        ArrayList<Machine> candidates =
+            candidates(machine, 2 * TrialDecryptor.BATCH + 5, generator);
+        int[] cipher = TrialDecryptor.indices(UPPER, PLAIN);
+        TrialDecryptor.Scorer scorer = TrialDecryptor.bigrams(UPPER, PLAIN);
+        double[] scores =
+            TrialDecryptor.trialDecrypt(cipher, candidates, scorer,
+                                        Double.NEGATIVE_INFINITY);
+        for (int k = 0; k < candidates.size(); k += 1) {
+            Machine sample = candidates.get(k).copy();
+            double expected = 0;
+            int previous = -1;
+            for (int i = 0; i < cipher.length; i += 1) {
+                sample.advance();
+                int p = sample.convert(cipher[i]);
+                expected += scorer.score(i, previous, p);
+                previous = p;
+            }
+            assertEquals("candidate " + k, expected, scores[k], 1e-9);
+        }
+    }
+
+    @Test
+    public void checkCribRejectsEarly() {
+        LoadGenerator generator = new LoadGenerator(2);
+        Machine machine = generatedMachine(generator, 26);
+        int wrong = 1000;
+        ArrayList<Machine> candidates = candidates(machine, wrong, generator);
+        int[] plain = TrialDecryptor.indices(UPPER, PLAIN);
+        int[] cipher = plain.clone();
+        Machine encoder = machine.copy();
+        for (int i = 0; i < cipher.length; i += 1) {
+            encoder.advance();
+            cipher[i] = encoder.convert(plain[i]);
+        }
+        Counting scorer = new Counting(TrialDecryptor.crib(plain));
+        double[] scores =
+            TrialDecryptor.trialDecrypt(cipher, candidates, scorer,
+                                        0.9 * cipher.length);
+        assertEquals(cipher.length, scores[0], 0);
+        for (int k = 1; k < scores.length; k += 1) {
+            assertEquals(Double.NEGATIVE_INFINITY, scores[k], 0);
+        }
+        long perWrong = (scorer.calls - cipher.length) / wrong;
+        assertTrue("scored " + perWrong + " characters per wrong key",
+                   perWrong < 0.15 * cipher.length);
+    }
+
+    @Test
+    public void checkBigramsFindKey() {
+        LoadGenerator generator = new LoadGenerator(3);
+        Machine machine = generatedMachine(generator, 26);
+        ArrayList<Machine> candidates = candidates(machine, 300, generator);
+        String cipher = machine.copy().convert(PLAIN.replace(" ", ""));
+        TrialDecryptor.Scorer scorer = TrialDecryptor.bigrams(UPPER, PLAIN);
+        int[] plain = TrialDecryptor.indices(UPPER, PLAIN);
+        double perfect = 0;
+        for (int i = 0; i < plain.length; i += 1) {
+            perfect += scorer.score(i, i == 0 ? -1 : plain[i - 1], plain[i]);
+        }
+        double[] scores =
+            TrialDecryptor.trialDecrypt(cipher, candidates, scorer,
+                                        perfect * 1.2);
+        assertEquals(perfect, scores[0], 1e-9);
+        for (int k = 1; k < scores.length; k += 1) {
+            assertEquals(Double.NEGATIVE_INFINITY, scores[k], 0);
+        }
+    }
+
+    @Test
+    public void checkIndicesSkipWhitespace() {
+        assertArrayEquals(new int[] { 0, 1, 25 },
+                          TrialDecryptor.indices(UPPER, " A\tB Z\n"));
+    }
+}
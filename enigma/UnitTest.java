@@ -11,7 +11,19 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         textui.runClasses(PermutationTest.class,
-                MovingRotorTest.class, MachineTest.class);
+                MovingRotorTest.class, MachineTest.class,
+                RingBufferTest.class, PipelineTest.class,
+                SegmentProcessorTest.class, LaneEngineTest.class,
+                MachineProcessorTest.class, CatalogTest.class,
+                ConfigRegistryTest.class, LoadGeneratorTest.class,
+                ConfigValidatorTest.class, ContainerTest.class,
+                EngineTest.class, StrategyTest.class,
+                WordMatcherTest.class, DifferentialFuzzerTest.class,
+                CompactMachineTest.class, PeriodAnalyzerTest.class,
+                TrialDecryptorTest.class, BatchProcessorTest.class,
+                EnigmaServiceTest.class, DepthAttackTest.class,
+                TeletypeTest.class, JournalTest.class,
+                ByteModeTest.class);
     }
 
 }
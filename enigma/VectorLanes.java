@@ -0,0 +1,99 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+import static jdk.incubator.vector.VectorOperators.EQ;
+import static jdk.incubator.vector.VectorOperators.GE;
+import static jdk.incubator.vector.VectorOperators.LT;
+import static jdk.incubator.vector.VectorOperators.NE;
+
+/** A LaneEngine that steps a full vector of lanes at once using the
+ *  incubating Vector API.  Rotor and plugboard lookups become gathers,
+ *  and notch checks and stepping become lane-wise compares and blends,
+ *  so that every lane does exactly what ScalarLanes would.  Requires the
+ *  jdk.incubator.vector module (--add-modules jdk.incubator.vector).
+ *  @author Eric Huang
+ */
+class VectorLanes extends LaneEngine {
+
+    /** An engine with LANES lanes modeled on TEMPLATE. */
+    VectorLanes(Machine template, int lanes) {
+        super(template, lanes, SPECIES.length());
+        _index = new int[SPECIES.length()];
+        _laneBases = new int[_width];
+        for (int l = 0; l < _width; l += 1) {
+            _laneBases[l] = l * _size;
+        }
+    }
+
+    @Override
+    void step(int[] in, int[] out, boolean[] active) {
+        int last = _slots - 1;
+        for (int base = 0; base < _width; base += SPECIES.length()) {
+            VectorMask<Integer> act =
+                VectorMask.fromArray(SPECIES, active, base);
+            if (!act.anyTrue()) {
+                continue;
+            }
+            VectorMask<Integer> right = act;
+            for (int s = last; s >= 0; s -= 1) {
+                IntVector posn =
+                    IntVector.fromArray(SPECIES, _positions[s], base);
+                VectorMask<Integer> trigger = SPECIES.maskAll(false);
+                if (_carries[s]) {
+                    trigger = gather(_notches[s], posn, act)
+                        .compare(NE, 0).and(act);
+                }
+                IntVector moved = posn.add(1);
+                moved = moved.blend(0, moved.compare(EQ, _size));
+                posn.blend(moved, trigger.or(right))
+                    .intoArray(_positions[s], base);
+                right = trigger;
+            }
+            IntVector laneBase = IntVector.fromArray(SPECIES, _laneBases,
+                                                     base);
+            IntVector c = IntVector.fromArray(SPECIES, in, base);
+            c = gather(_plugboards, c.add(laneBase), act);
+            for (int s = last; s >= 0; s -= 1) {
+                c = shift(_forward[s], c, s, base, act);
+            }
+            c = gather(_reflector, c, act);
+            for (int s = 0; s <= last; s += 1) {
+                c = shift(_backward[s], c, s, base, act);
+            }
+            c = gather(_plugboards, c.add(laneBase), act);
+            c.intoArray(out, base, act);
+        }
+    }
+
+    /** Return the result of passing each lane of C through WIRING, the
+     *  table of the rotor in slot S, for the lanes starting at BASE that
+     *  are set in ACT. */
+    private IntVector shift(int[] wiring, IntVector c, int s, int base,
+                            VectorMask<Integer> act) {
+        IntVector posn = IntVector.fromArray(SPECIES, _positions[s], base);
+        IntVector contact = c.add(posn);
+        contact = contact.sub(_size, contact.compare(GE, _size));
+        IntVector result = gather(wiring, contact, act).sub(posn);
+        return result.add(_size, result.compare(LT, 0));
+    }
+
+    /** Return TABLE[INDICES] for the lanes set in ACT (zero elsewhere). */
+    private IntVector gather(int[] table, IntVector indices,
+                             VectorMask<Integer> act) {
+        indices.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0, act);
+    }
+
+    /** The preferred vector shape of this host. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Scratch space holding gather indices. */
+    private final int[] _index;
+
+    /** Offset of each lane's plugboard within _plugboards. */
+    private final int[] _laneBases;
+}
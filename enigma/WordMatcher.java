@@ -0,0 +1,219 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Finds every occurrence of any of a list of words in a stream of
+ *  alphabet indices, such as the output of an Engine, in one pass and
+ *  without building strings.  This is the Aho-Corasick automaton, stored
+ *  as a complete transition table of states() * size ints, so that each
+ *  index costs one table lookup plus a test for a match.
+ *
+ *  Words are numbered by their position in the list given to the
+ *  constructor.  A word listed more than once is reported under its
+ *  first number.
+ *  @author Eric Huang
+ */
+final class WordMatcher {
+
+    /** Receives the matches found by a search. */
+    interface Hits {
+        /** Record an occurrence of word number WORD ending just before
+         *  position END of the text searched.  Return false to stop the
+         *  search. */
+        boolean hit(int word, long end);
+    }
+
+    /** A matcher for WORDS, which must be non-empty strings of characters
+     *  in ALPHABET. */
+    WordMatcher(Alphabet alphabet, List<String> words) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _words = words.toArray(new String[0]);
+        int total = 1;
+        for (String word : _words) {
+            if (word.isEmpty()) {
+                throw error("empty word");
+            }
+            total += word.length();
+        }
+        _next = new int[total * _size];
+        _word = new int[total];
+        _link = new int[total];
+        Arrays.fill(_next, -1);
+        Arrays.fill(_word, -1);
+        int states = 1;
+        for (int w = 0; w < _words.length; w += 1) {
+            int state = 0;
+            for (int k = 0; k < _words[w].length(); k += 1) {
+                char ch = _words[w].charAt(k);
+                if (!alphabet.contains(ch)) {
+                    throw error("character %c of %s is not in the alphabet",
+                                ch, _words[w]);
+                }
+                int edge = state * _size + alphabet.toInt(ch);
+                if (_next[edge] == -1) {
+                    _next[edge] = states;
+                    states += 1;
+                }
+                state = _next[edge];
+            }
+            if (_word[state] == -1) {
+                _word[state] = w;
+            }
+        }
+        _states = states;
+        link();
+    }
+
+    /** Complete the transition table, so that each state has a successor
+     *  for every index, and set _link, visiting the trie breadth first so
+     *  that each state's failure state is finished before it. */
+    private void link() {
+        int[] failure = new int[_states];
+        int[] queue = new int[_states];
+        int head = 0, tail = 0;
+        _link[0] = -1;
+        for (int c = 0; c < _size; c += 1) {
+            int child = _next[c];
+            if (child == -1) {
+                _next[c] = 0;
+            } else {
+                failure[child] = 0;
+                _link[child] = -1;
+                queue[tail] = child;
+                tail += 1;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head];
+            head += 1;
+            int fail = failure[state];
+            for (int c = 0; c < _size; c += 1) {
+                int edge = state * _size + c;
+                int child = _next[edge];
+                int fallback = _next[fail * _size + c];
+                if (child == -1) {
+                    _next[edge] = fallback;
+                } else {
+                    failure[child] = fallback;
+                    _link[child] = _word[fallback] != -1 ? fallback
+                        : _link[fallback];
+                    queue[tail] = child;
+                    tail += 1;
+                }
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of words I search for. */
+    int words() {
+        return _words.length;
+    }
+
+    /** Return word number W. */
+    String word(int w) {
+        return _words[w];
+    }
+
+    /** Return the number of states of my automaton. */
+    int states() {
+        return _states;
+    }
+
+    /** Search TEXT[START .. END-1], alphabet indices, reporting each
+     *  occurrence of a word to HITS in order of where it ends, with
+     *  positions counted from START.  Return false iff HITS stopped the
+     *  search. */
+    boolean search(int[] text, int start, int end, Hits hits) {
+        int state = 0;
+        for (int i = start; i < end; i += 1) {
+            state = _next[state * _size + text[i]];
+            /* The AND is -1 only if both are. */
+            if ((_word[state] & _link[state]) != -1
+                && !report(state, i - start + 1, hits)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Search the conversions by ENGINE of CIPHER[START .. END-1],
+     *  alphabet indices, as search(int[], int, int, Hits) does, without
+     *  storing them.  ENGINE advances once per index converted, so if the
+     *  search stops early it is left part way through CIPHER.  Return
+     *  false iff HITS stopped the search. */
+    boolean search(Engine engine, int[] cipher, int start, int end,
+                   Hits hits) {
+        int state = 0;
+        for (int i = start; i < end; i += 1) {
+            state = _next[state * _size + engine.convert(cipher[i])];
+            if ((_word[state] & _link[state]) != -1
+                && !report(state, i - start + 1, hits)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of the first word found in the conversion by
+     *  ENGINE of CIPHER[START .. END-1], the word ending earliest and the
+     *  longest of those, or -1 if there is none.  Conversion stops at the
+     *  first match. */
+    int first(Engine engine, int[] cipher, int start, int end) {
+        int state = 0;
+        for (int i = start; i < end; i += 1) {
+            state = _next[state * _size + engine.convert(cipher[i])];
+            if (_word[state] != -1) {
+                return _word[state];
+            } else if (_link[state] != -1) {
+                return _word[_link[state]];
+            }
+        }
+        return -1;
+    }
+
+    /** Report the words ending at STATE, which end just before position
+     *  END, to HITS, longest first.  Return false iff HITS asked to
+     *  stop. */
+    private boolean report(int state, long end, Hits hits) {
+        if (_word[state] == -1) {
+            state = _link[state];
+        }
+        for (; state != -1; state = _link[state]) {
+            if (!hits.hit(_word[state], end)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** The words sought. */
+    private final String[] _words;
+
+    /** Number of states. */
+    private final int _states;
+
+    /** Successor of state S on index C at _next[S * _size + C]. */
+    private final int[] _next;
+
+    /** The first word spelled by the path to each state, or -1. */
+    private final int[] _word;
+
+    /** For each state, the state for the longest proper suffix of its
+     *  path that spells a word, or -1. */
+    private final int[] _link;
+}
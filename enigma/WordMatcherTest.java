@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** Tests of WordMatcher.
+ *  @author Eric Huang
+ */
+public class WordMatcherTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return TEXT as indices in UPPER. */
+    private static int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    /** Return the hits of MATCHER in TEXT as "WORD@END" strings. */
+    private static List<String> hits(WordMatcher matcher, String text) {
+        ArrayList<String> result = new ArrayList<>();
+        int[] indices = indices(text);
+        assertTrue(matcher.search(indices, 0, indices.length,
+                                  (word, end) -> {
+                                      result.add(matcher.word(word) + "@"
+                                                 + end);
+                                      return true;
+                                  }));
+        return result;
+    }
+
+    /** Return the occurrences of WORDS in TEXT as "WORD@END" strings, in
+     *  order of END and then of decreasing length, found with indexOf. */
+    private static List<String> naive(List<String> words, String text) {
+        ArrayList<String> result = new ArrayList<>();
+        for (int end = 1; end <= text.length(); end += 1) {
+            ArrayList<String> ending = new ArrayList<>();
+            for (String word : words) {
+                if (!ending.contains(word)
+                    && text.startsWith(word, end - word.length())) {
+                    ending.add(word);
+                }
+            }
+            ending.sort((a, b) -> b.length() - a.length());
+            for (String word : ending) {
+                result.add(word + "@" + end);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void checkOverlapping() {
+        List<String> words = Arrays.asList("HE", "SHE", "HIS", "HERS",
+                                           "S", "HE");
+        WordMatcher matcher = new WordMatcher(UPPER, words);
+        assertEquals(Arrays.asList("S@1", "SHE@3", "HE@3", "HERS@5",
+                                   "S@5", "HIS@8", "S@8"),
+                     hits(matcher, "SHERSHIS"));
+        assertEquals(naive(words, "USHERSAIDHISHERSHE"),
+                     hits(matcher, "USHERSAIDHISHERSHE"));
+    }
+
+    @Test
+    public void checkRandom() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 50; trial += 1) {
+            ArrayList<String> words = new ArrayList<>();
+            for (int w = 0; w < 20; w += 1) {
+                words.add(randomText(random, 1 + random.nextInt(4), 3));
+            }
+            String text = randomText(random, 500, 3);
+            assertEquals(naive(words, text),
+                         hits(new WordMatcher(UPPER, words), text));
+        }
+    }
+
+    /** Return LENGTH random characters from the first LETTERS of A-Z,
+     *  chosen with RANDOM. */
+    private static String randomText(Random random, int length,
+                                     int letters) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = (char) ('A' + random.nextInt(letters));
+        }
+        return new String(result);
+    }
+
+    @Test
+    public void checkEarlyStop() {
+        WordMatcher matcher =
+            new WordMatcher(UPPER, Arrays.asList("AB", "B"));
+        int[] text = indices("XABXABAB");
+        ArrayList<Long> ends = new ArrayList<>();
+        assertFalse(matcher.search(text, 0, text.length, (word, end) -> {
+            ends.add(end);
+            return ends.size() < 3;
+        }));
+        assertEquals(Arrays.asList(3L, 3L, 6L), ends);
+    }
+
+    @Test
+    public void checkEngineSearch() {
+        Machine machine =
+            Main.parseConfig(new LoadGenerator(3).config(26, 5, 1, 1, 5));
+        Main.applySetting(machine, new LoadGenerator(4).setting(machine));
+        String plain = "WEATHERREPORTFORTHEBAYOFBISCAYNOTHINGTOREPORT";
+        int[] cipher = indices(machine.copy().convert(plain));
+        List<String> words = Arrays.asList("BISCAY", "REPORT", "ZULU");
+        WordMatcher matcher = new WordMatcher(UPPER, words);
+        ArrayList<String> found = new ArrayList<>();
+        assertTrue(matcher.search(Engine.create(machine), cipher, 0,
+                                  cipher.length, (word, end) -> {
+                                      found.add(matcher.word(word) + "@"
+                                                + end);
+                                      return true;
+                                  }));
+        assertEquals(naive(words, plain), found);
+        Engine engine = Engine.create(machine);
+        assertEquals(1, matcher.first(engine, cipher, 0, cipher.length));
+        Machine stopped = machine.copy();
+        engine.store(stopped);
+        assertEquals((machine.rotors().get(4).setting() + 13) % 26,
+                     stopped.rotors().get(4).setting());
+        assertEquals(-1, new WordMatcher(UPPER, Arrays.asList("ZULU"))
+                     .first(Engine.create(machine), cipher, 0,
+                            cipher.length));
+    }
+
+    @Test
+    public void checkBadWords() {
+        for (String bad : new String[] {"", "ABC1"}) {
+            try {
+                new WordMatcher(UPPER, Arrays.asList("OK", bad));
+                fail("bad word accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+}